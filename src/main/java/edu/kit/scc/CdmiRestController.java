@@ -19,46 +19,80 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.Base64Codec;
+import org.snia.cdmiserver.codec.BatchReader;
+import org.snia.cdmiserver.codec.BlockCompression;
+import org.snia.cdmiserver.codec.CdmiJsonWriter;
+import org.snia.cdmiserver.codec.CdmiRequestBody;
+import org.snia.cdmiserver.codec.ValueHash;
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.exception.BadRequestException;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.Capability;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.util.EntityTags;
 import org.snia.cdmiserver.util.MediaTypes;
+import org.snia.cdmiserver.util.ModificationCount;
+import org.snia.cdmiserver.util.Projection;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.HandlerMapping;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Principal;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
 import javax.security.auth.Subject;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @RestController
 @ComponentScan(basePackages = {"edu.kit.scc", "org.snia.cdmiserver"})
@@ -66,6 +100,14 @@ public class CdmiRestController {
 
   private static final Logger log = LoggerFactory.getLogger(CdmiRestController.class);
 
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+  // number of batch creates grouped by their parents before they are executed
+  private static final int BATCH_SIZE = 1000;
+
+  // number of times the record of an object is read and written until no other write came between
+  private static final int RECORD_UPDATE_ATTEMPTS = 16;
+
   @Autowired
   private CdmiObjectDao cdmiObjectDao;
 
@@ -84,6 +126,12 @@ public class CdmiRestController {
   @Value("${cdmi.qos.backend.type}")
   private String backendType;
 
+  @Value("${cdmi.data.maxValueRange:67108864}")
+  private int maxValueRange;
+
+  @Value("${cdmi.data.spoolDirectory:${java.io.tmpdir}}")
+  private String spoolDirectory;
+
   private StorageBackend storageBackend;
 
   @PostConstruct
@@ -132,7 +180,8 @@ public class CdmiRestController {
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/cdmi_capabilities/**", method = RequestMethod.GET)
-  public ResponseEntity<?> getCapabilities(HttpServletRequest request) {
+  public ResponseEntity<?> getCapabilities(HttpServletRequest request,
+      HttpServletResponse response) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.setContentType(new MediaType("application", "cdmi-capability+json"));
@@ -151,15 +200,7 @@ public class CdmiRestController {
     Capability capability = capabilityDao.findByPath(path);
 
     if (capability != null) {
-      JSONObject capabilityJson = capability.toJson();
-
-      if (query != null) {
-        return new ResponseEntity<String>(filterQueryFields(capabilityJson, query).toString(),
-            responseHeaders, HttpStatus.OK);
-      } else {
-        return new ResponseEntity<String>(capabilityJson.toString(), responseHeaders,
-            HttpStatus.OK);
-      }
+      return writeResponse(capability, Projection.parse(query), request, response);
     }
 
     return new ResponseEntity<String>("Capabilities not found", responseHeaders,
@@ -175,7 +216,7 @@ public class CdmiRestController {
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/cdmi_objectid/{objectId}", method = RequestMethod.GET)
   public ResponseEntity<?> getCdmiObjectById(@PathVariable String objectId,
-      HttpServletRequest request) {
+      HttpServletRequest request, HttpServletResponse response) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -186,15 +227,16 @@ public class CdmiRestController {
     String query = request.getQueryString();
     log.debug("Requested object query {}", query);
 
-    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObject(objectId);
+    Projection projection = Projection.parse(query);
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObject(objectId, projection);
 
     if (cdmiObject != null) {
-      String objectString;
       try {
-        objectString = generateResponse(cdmiObject, query, responseHeaders);
-        if (objectString != null) {
-          return new ResponseEntity<String>(objectString, responseHeaders, HttpStatus.OK);
+        // storage back-end integration, unless none of the fields it reports on is selected
+        if (projection.includesStorageBackendStatus()) {
+          getCurrentStatusFromStorageBackend(cdmiObject);
         }
+        return writeResponse(cdmiObject, projection, request, response);
       } catch (BackEndException e) {
         log.warn(
             "WARNING: could not get current object status from storage back-end {} for object {}",
@@ -212,7 +254,8 @@ public class CdmiRestController {
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/**", method = RequestMethod.GET)
-  public ResponseEntity<?> getCdmiObjectByPath(HttpServletRequest request) {
+  public ResponseEntity<?> getCdmiObjectByPath(HttpServletRequest request,
+      HttpServletResponse response) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -229,15 +272,21 @@ public class CdmiRestController {
     String query = request.getQueryString();
     log.debug("Requested object query {}", query);
 
-    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    Projection projection = Projection.parse(query);
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path, projection);
+
+    if (cdmiObject instanceof DataObject && !isCdmiRequest(request.getHeader("Accept"))) {
+      return getDataObjectValue((DataObject) cdmiObject, path, request.getHeader("Range"),
+          response);
+    }
 
     if (cdmiObject != null) {
-      String objectString;
       try {
-        objectString = generateResponse(cdmiObject, query, responseHeaders);
-        if (objectString != null) {
-          return new ResponseEntity<String>(objectString, responseHeaders, HttpStatus.OK);
+        // storage back-end integration, unless none of the fields it reports on is selected
+        if (projection.includesStorageBackendStatus()) {
+          getCurrentStatusFromStorageBackend(cdmiObject);
         }
+        return writeResponse(cdmiObject, projection, request, response);
       } catch (BackEndException ex) {
         log.warn(
             "WARNING: could not get current object status from storage back-end {} for object {}",
@@ -255,23 +304,23 @@ public class CdmiRestController {
 
         if (currentCapabilitiesUri.contains("/cdmi_capabilities/container")) {
           log.debug("is storage back-end container ...");
-          String body = "{}";
           String contentType = "application/cdmi-container+json";
-          newCdmiObject = updateOrCreate(null, path, body, contentType);
+          newCdmiObject = updateOrCreate(null, path, new CdmiRequestBody(new JSONObject()),
+              contentType, null, false, null, null);
         } else if (currentCapabilitiesUri.contains("/cdmi_capabilities/dataobject")) {
           log.debug("is storage back-end dataobject ...");
-          String body = "{}";
           String contentType = "application/cdmi-object+json";
-          newCdmiObject = updateOrCreate(null, path, body, contentType);
+          newCdmiObject = updateOrCreate(null, path, new CdmiRequestBody(new JSONObject()),
+              contentType, null, false, null, null);
         } else {
           return new ResponseEntity<String>("Unsupported CDMI capabilities URI format",
               responseHeaders, HttpStatus.NOT_IMPLEMENTED);
         }
 
-        String objectString = generateResponse(newCdmiObject, query, responseHeaders);
-        if (objectString != null) {
-          return new ResponseEntity<String>(objectString, responseHeaders, HttpStatus.OK);
+        if (projection.includesStorageBackendStatus()) {
+          getCurrentStatusFromStorageBackend(newCdmiObject);
         }
+        return writeResponse(newCdmiObject, projection, request, response);
       } catch (BackEndException ex) {
         log.warn(
             "WARNING: could not get current object status from storage back-end {} for object {}",
@@ -282,7 +331,11 @@ public class CdmiRestController {
   }
 
   /**
-   * Put path endpoint.
+   * Put path endpoint. The body is parsed while it is read, a value is spooled and streamed into
+   * the data object's content, so large values aren't held in memory. A whole value is checked
+   * against the hash of the X-CDMI-Value-Hash header or the request's cdmi_value_hash metadata.
+   * With an If-Match header, the object is only updated if it is still at the version of one of
+   * its entity tags, otherwise the response is 412.
    * 
    * @param request the {@link HttpServletRequest}
    * @return a JSON serialized {@link Container} or {@link DataObject}
@@ -291,7 +344,10 @@ public class CdmiRestController {
   @RequestMapping(path = "/**", method = RequestMethod.PUT,
       consumes = {"application/cdmi-object", "application/cdmi-container", "application/json"})
   public ResponseEntity<?> putCdmiObject(@RequestHeader("Content-Type") String contentType,
-      @RequestBody String body, HttpServletRequest request) {
+      @RequestHeader(value = "X-CDMI-Partial", required = false) String partialHeader,
+      @RequestHeader(value = "X-CDMI-Value-Hash", required = false) String valueHash,
+      @RequestHeader(value = "If-Match", required = false) String ifMatch,
+      HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -306,11 +362,34 @@ public class CdmiRestController {
     log.debug("Normalized path {}", path);
 
     CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    String expectedVersion = null;
+    if (ifMatch != null) {
+      if (cdmiObject == null || !EntityTags.matches(ifMatch, cdmiObject.getVersion())) {
+        return new ResponseEntity<String>("Precondition failed", responseHeaders,
+            HttpStatus.PRECONDITION_FAILED);
+      }
+      expectedVersion = cdmiObject.getVersion();
+    }
 
-    try {
-      CdmiObject newCdmiObject = updateOrCreate(cdmiObject, path, body, contentType);
-      String objectString = generateResponse(newCdmiObject, null, responseHeaders);
-      if (objectString != null) {
+    try (CdmiRequestBody body =
+        CdmiRequestBody.parse(request.getInputStream(), Paths.get(spoolDirectory))) {
+      boolean partial = Boolean.parseBoolean(partialHeader);
+      long[] valueRange = Projection.parse(request.getQueryString()).getValueRange();
+      JSONObject metadata = body.getJson().optJSONObject("metadata");
+      if (valueHash == null && metadata != null && body.hasValue() && valueRange == null) {
+        valueHash = metadata.optString(ValueHash.METADATA_NAME, null);
+      }
+      CdmiObject newCdmiObject =
+          updateOrCreate(cdmiObject, path, body, contentType, valueRange, partial, valueHash,
+              expectedVersion);
+      if (!partial && isUploading(newCdmiObject)) {
+        return new ResponseEntity<String>(
+            "Partial upload is " + ((DataObject) newCdmiObject).getPercentComplete() + "% complete",
+            responseHeaders, HttpStatus.CONFLICT);
+      }
+      if (newCdmiObject instanceof Container || newCdmiObject instanceof DataObject) {
+        // storage back-end integration
+        getCurrentStatusFromStorageBackend(newCdmiObject);
         if (newCdmiObject instanceof Container) {
           if (cdmiObject instanceof Container) {
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
@@ -329,19 +408,227 @@ public class CdmiRestController {
       log.warn("WARNING: {} from storage back-end {} for object {}", ex.getMessage(), backendType,
           path);
       return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.CONFLICT);
+    } catch (PreconditionFailedException ex) {
+      log.warn("WARNING: {}", ex.getMessage());
+      return new ResponseEntity<String>("Precondition failed", responseHeaders,
+          HttpStatus.PRECONDITION_FAILED);
+    } catch (BadRequestException ex) {
+      log.warn("WARNING: {} for object {}", ex.getMessage(), path);
+      if (cdmiObject == null) {
+        // the data object created for the rejected value
+        dataObjectDao.deleteByPath(path);
+      }
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.BAD_REQUEST);
+    } catch (UnsupportedOperationException ex) {
+      return new ResponseEntity<String>("Not supported", responseHeaders,
+          HttpStatus.NOT_IMPLEMENTED);
+    } catch (JSONException ex) {
+      log.warn("WARNING: {} for object {}", ex.getMessage(), path);
+    } catch (IOException ex) {
+      log.warn("WARNING: could not read request body for object {}, {}", path, ex.getMessage());
     }
     return new ResponseEntity<String>("Bad request", responseHeaders, HttpStatus.BAD_REQUEST);
   }
 
   /**
-   * Delete path endpoint.
+   * Put path endpoint for non-CDMI content types. The request body is streamed into the data
+   * object's content. With a Content-Range header only the given range of an existing data object
+   * is written, with the append query the body is appended to it. The whole content is checked
+   * against the hash of an X-CDMI-Value-Hash header.
    * 
    * @param request the {@link HttpServletRequest}
    * @return a {@link ResponseEntity}
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/**", method = RequestMethod.PUT)
+  public ResponseEntity<?> putNonCdmiObject(
+      @RequestHeader(value = "Content-Type", required = false) String contentType,
+      @RequestHeader(value = "Content-Range", required = false) String contentRange,
+      @RequestHeader(value = "X-CDMI-Partial", required = false) String partialHeader,
+      @RequestHeader(value = "X-CDMI-Value-Hash", required = false) String valueHash,
+      HttpServletRequest request) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+
+    log.debug("Create or update non-CDMI path {} as {}", path, contentType);
+
+    path = Paths.get(path).normalize().toString();
+    log.debug("Normalized path {}", path);
+
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    if (cdmiObject != null && !(cdmiObject instanceof DataObject)) {
+      return new ResponseEntity<String>("Not a data object", responseHeaders, HttpStatus.CONFLICT);
+    }
+    if (contentType == null) {
+      contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+    boolean append = "append".equals(request.getQueryString());
+    boolean partial = Boolean.parseBoolean(partialHeader);
+
+    try {
+      if (partial || isUploading(cdmiObject)) {
+        return putPartialObject(path, contentType, contentRange, partial, valueHash, cdmiObject,
+            request);
+      }
+      if (contentRange != null || (append && cdmiObject != null)) {
+        if (cdmiObject == null) {
+          return new ResponseEntity<String>("Object not found", responseHeaders,
+              HttpStatus.NOT_FOUND);
+        }
+        if (valueHash != null) {
+          return new ResponseEntity<String>("X-CDMI-Value-Hash is only checked for whole values",
+              responseHeaders, HttpStatus.BAD_REQUEST);
+        }
+        return updateNonCdmiObject(path, contentRange, request);
+      }
+      DataObject dataObject = dataObjectDao.createNonCdmiByPath(path, contentType,
+          Channels.newChannel(request.getInputStream()), valueHash);
+      if (dataObject != null) {
+        if (cdmiObject != null) {
+          return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        return new ResponseEntity<>(HttpStatus.CREATED);
+      }
+    } catch (IOException ex) {
+      log.warn("WARNING: could not read request body for object {}, {}", path, ex.getMessage());
+    } catch (BadRequestException ex) {
+      log.warn("WARNING: {} for object {}", ex.getMessage(), path);
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.BAD_REQUEST);
+    } catch (UnsupportedOperationException ex) {
+      return new ResponseEntity<String>("Non-CDMI content not supported", responseHeaders,
+          HttpStatus.NOT_IMPLEMENTED);
+    }
+    return new ResponseEntity<String>("Bad request", responseHeaders, HttpStatus.BAD_REQUEST);
+  }
+
+  /**
+   * Stages the request body as a chunk of a partial upload, into the given range or as the whole
+   * content if there is none, and publishes the upload with the final request, the one without
+   * X-CDMI-Partial: true. Chunks may be sent in parallel, but the final request only once all other
+   * chunks have been received. The final request's value hash is checked before publishing.
+   */
+  private ResponseEntity<?> putPartialObject(String path, String contentType, String contentRange,
+      boolean partial, String valueHash, CdmiObject cdmiObject, HttpServletRequest request)
+      throws IOException {
+    long position = 0;
+    long count = request.getContentLengthLong();
+    long size = -1;
+    if (contentRange != null) {
+      long[] byteRange = getContentRange(contentRange);
+      if (byteRange == null
+          || (count >= 0 && count != byteRange[1] - byteRange[0] + 1)) {
+        return new ResponseEntity<String>("Invalid content range", HttpStatus.BAD_REQUEST);
+      }
+      position = byteRange[0];
+      count = byteRange[1] - byteRange[0] + 1;
+      size = byteRange[2];
+    }
+
+    if (cdmiObject == null) {
+      // the new data object stays empty until the upload is published
+      if (dataObjectDao.createNonCdmiByPath(path, contentType,
+          Channels.newChannel(new ByteArrayInputStream(new byte[0]))) == null) {
+        return new ResponseEntity<String>("Bad request", HttpStatus.BAD_REQUEST);
+      }
+    }
+
+    DataObject dataObject = dataObjectDao.findByPath(path);
+    if (count != 0 || size >= 0) {
+      dataObject = dataObjectDao.updatePartialContent(path, position, count, size,
+          Channels.newChannel(request.getInputStream()));
+    }
+    if (dataObject != null && !partial) {
+      dataObject = dataObjectDao.publishContent(path, valueHash);
+      if (dataObject != null && isUploading(dataObject)) {
+        return new ResponseEntity<String>(
+            "Partial upload is " + dataObject.getPercentComplete() + "% complete",
+            HttpStatus.CONFLICT);
+      }
+    }
+    if (dataObject != null) {
+      if (cdmiObject == null) {
+        return new ResponseEntity<>(HttpStatus.CREATED);
+      }
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    return new ResponseEntity<String>("Bad request", HttpStatus.BAD_REQUEST);
+  }
+
+  /**
+   * Checks if the given object is a data object with an unpublished partial upload.
+   */
+  private static boolean isUploading(CdmiObject cdmiObject) {
+    return cdmiObject instanceof DataObject
+        && "Processing".equals(((DataObject) cdmiObject).getCompletionStatus());
+  }
+
+  /**
+   * Writes the request body into the given range of the data object, or appends it if there is no
+   * range.
+   */
+  private ResponseEntity<?> updateNonCdmiObject(String path, String contentRange,
+      HttpServletRequest request) throws IOException {
+    DataObject dataObject;
+    if (contentRange != null) {
+      long[] byteRange = getContentRange(contentRange);
+      long count = byteRange != null ? byteRange[1] - byteRange[0] + 1 : -1;
+      if (byteRange == null
+          || (request.getContentLengthLong() >= 0 && request.getContentLengthLong() != count)) {
+        return new ResponseEntity<String>("Invalid content range", HttpStatus.BAD_REQUEST);
+      }
+      dataObject = dataObjectDao.updateContent(path, byteRange[0], count,
+          Channels.newChannel(request.getInputStream()));
+    } else {
+      dataObject = dataObjectDao.appendContent(path, Channels.newChannel(request.getInputStream()));
+    }
+    if (dataObject != null) {
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    return new ResponseEntity<String>("Bad request", HttpStatus.BAD_REQUEST);
+  }
+
+  /**
+   * Gets the first and last byte and the complete size of a Content-Range header, e.g. bytes
+   * 0-499/1234.
+   * 
+   * @param contentRange the Content-Range header
+   * @return the first and last byte and the size, -1 if unknown, or <code>null</code> if the header
+   *         is invalid
+   */
+  private static long[] getContentRange(String contentRange) {
+    Matcher matcher = CONTENT_RANGE.matcher(contentRange.trim());
+    if (matcher.matches()) {
+      try {
+        long rangeStart = Long.valueOf(matcher.group(1));
+        long rangeStop = Long.valueOf(matcher.group(2));
+        long size = "*".equals(matcher.group(3)) ? -1 : Long.valueOf(matcher.group(3));
+        if (rangeStart <= rangeStop && (size < 0 || rangeStop < size)) {
+          return new long[] {rangeStart, rangeStop, size};
+        }
+      } catch (NumberFormatException ex) {
+        // fall through
+      }
+    }
+    log.warn("Invalid content range {}", contentRange);
+    return null;
+  }
+
+  /**
+   * Delete path endpoint. With an If-Match header, the object is only deleted if it is still at
+   * the version of one of its entity tags, otherwise the response is 412.
+   * 
+   * @param ifMatch the If-Match header
+   * @param request the {@link HttpServletRequest}
+   * @return a {@link ResponseEntity}
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/**", method = RequestMethod.DELETE)
-  public ResponseEntity<?> deleteCdmiObject(HttpServletRequest request) {
+  public ResponseEntity<?> deleteCdmiObject(
+      @RequestHeader(value = "If-Match", required = false) String ifMatch,
+      HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -356,9 +643,17 @@ public class CdmiRestController {
 
     CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
 
-    if (cdmiObject != null) {
+    if (ifMatch != null && (cdmiObject == null
+        || !EntityTags.matches(ifMatch, cdmiObject.getVersion()))) {
+      return new ResponseEntity<String>("Precondition failed", responseHeaders,
+          HttpStatus.PRECONDITION_FAILED);
+    }
+    String expectedVersion = ifMatch != null ? cdmiObject.getVersion() : null;
+
+    try {
       if (cdmiObject instanceof Container) {
-        Container container = containerDao.deleteByPath(path);
+        Container container = expectedVersion != null
+            ? containerDao.deleteByPath(path, expectedVersion) : containerDao.deleteByPath(path);
         if (container != null) {
           return new ResponseEntity<String>("Container deleted", responseHeaders,
               HttpStatus.NO_CONTENT);
@@ -367,7 +662,8 @@ public class CdmiRestController {
               HttpStatus.CONFLICT);
         }
       } else if (cdmiObject instanceof DataObject) {
-        DataObject dataObject = dataObjectDao.deleteByPath(path);
+        DataObject dataObject = expectedVersion != null
+            ? dataObjectDao.deleteByPath(path, expectedVersion) : dataObjectDao.deleteByPath(path);
         if (dataObject != null) {
           return new ResponseEntity<String>("Data object deleted", responseHeaders,
               HttpStatus.NO_CONTENT);
@@ -376,55 +672,565 @@ public class CdmiRestController {
               HttpStatus.CONFLICT);
         }
       }
+    } catch (PreconditionFailedException ex) {
+      log.warn("WARNING: {}", ex.getMessage());
+      return new ResponseEntity<String>("Precondition failed", responseHeaders,
+          HttpStatus.PRECONDITION_FAILED);
     }
     return new ResponseEntity<String>("Not found", responseHeaders, HttpStatus.NOT_FOUND);
   }
 
-  private String generateResponse(CdmiObject cdmiObject, String query, HttpHeaders responseHeaders)
-      throws BackEndException {
-    String objectString = null;
-    if (cdmiObject instanceof Container) {
-      responseHeaders.setContentType(new MediaType("application", "cdmi-container+json"));
-      Container container = (Container) cdmiObject;
+  /**
+   * Batch endpoint for many small operations below the container at the path. The body is a JSON
+   * array or newline delimited JSON of operations, each with an "op" of create, update or delete
+   * and a "path" relative to the container. The rest of an operation is the CDMI request body of
+   * the object, a container is created for an "objectType" of application/cdmi-container. Updates
+   * and deletes with an "ifMatch" entity tag are only applied to the object at its version.
+   *
+   * <p>
+   * Consecutive creates are grouped by their parent, which is linked to all of its new children
+   * at once instead of once per child. Updates and deletes are applied in order after the creates
+   * before them. The result of every operation is streamed back as a line of JSON with its index,
+   * path and HTTP status, once the operation or its group is done.
+   * </p>
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @param response the {@link HttpServletResponse} the results are streamed to
+   * @return a {@link ResponseEntity} if the batch couldn't be started
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/**", method = RequestMethod.POST,
+      consumes = {MediaTypes.NDJSON, MediaType.APPLICATION_JSON_VALUE})
+  public ResponseEntity<?> postBatch(HttpServletRequest request, HttpServletResponse response) {
 
-      // storage back-end integration
-      getCurrentStatusFromStorageBackend(container);
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
 
-      if (query != null) {
-        objectString = filterQueryFields(container.toJson(), query).toString();
+    log.debug("Batch below path {}", path);
+
+    path = Paths.get(path).normalize().toString();
+    log.debug("Normalized path {}", path);
+
+    // only the container's type is needed, so don't read all of its children
+    if (!(cdmiObjectDao.getCdmiObjectByPath(path, 0, 0) instanceof Container)) {
+      return new ResponseEntity<String>("Container not found", responseHeaders,
+          HttpStatus.NOT_FOUND);
+    }
+
+    try {
+      BatchReader reader = new BatchReader(request.getInputStream());
+      response.setStatus(HttpStatus.OK.value());
+      response.setContentType(MediaTypes.NDJSON);
+      response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+      response.setHeader("X-CDMI-Specification-Version", "1.1.1");
+      Writer out = new BufferedWriter(
+          new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+
+      List<BatchItem> creates = new ArrayList<>();
+      int index = 0;
+      while (true) {
+        JSONObject operation;
+        try {
+          operation = reader.next();
+        } catch (JSONException ex) {
+          // the rest of a malformed body can't be read
+          log.warn("WARNING: {} in batch below {}", ex.getMessage(), path);
+          BatchItem item = new BatchItem(index, null, new JSONObject());
+          item.setResult(HttpStatus.BAD_REQUEST, ex.getMessage());
+          writeResults(Collections.singletonList(item), out);
+          break;
+        }
+        if (operation == null) {
+          break;
+        }
+        BatchItem item = new BatchItem(index++, getBatchPath(path, operation), operation);
+        if (item.path != null && "create".equals(operation.optString("op"))) {
+          creates.add(item);
+          if (creates.size() >= BATCH_SIZE) {
+            createBatch(creates, out);
+          }
+          continue;
+        }
+        // the creates before the operation are done first
+        createBatch(creates, out);
+        executeBatchItem(item);
+        writeResults(Collections.singletonList(item), out);
+      }
+      createBatch(creates, out);
+      out.flush();
+      response.flushBuffer();
+    } catch (IOException ex) {
+      log.warn("WARNING: could not stream batch below {}, {}", path, ex.getMessage());
+      if (!response.isCommitted()) {
+        response.reset();
+        return new ResponseEntity<String>("Bad request", responseHeaders, HttpStatus.BAD_REQUEST);
+      }
+    }
+    // the response has been written
+    return null;
+  }
+
+  /**
+   * Gets the normalized path of a batch operation, which has to be below the batch's container.
+   * 
+   * @return the path or <code>null</code> if the operation's path is missing or outside
+   */
+  private static String getBatchPath(String path, JSONObject operation) {
+    String relativePath = operation.optString("path", "");
+    if (relativePath.isEmpty()) {
+      return null;
+    }
+    Path container = Paths.get(path);
+    Path itemPath = Paths.get(path, relativePath).normalize();
+    if (!itemPath.startsWith(container) || itemPath.equals(container)) {
+      return null;
+    }
+    return itemPath.toString();
+  }
+
+  /**
+   * Creates the objects of the pending create operations, one DAO call for all containers and one
+   * for all data objects of the same parent, and streams their results.
+   */
+  private void createBatch(List<BatchItem> creates, Writer out) throws IOException {
+    if (creates.isEmpty()) {
+      return;
+    }
+    // grouped by type and parent, in the order of their first operation
+    Map<String, List<BatchItem>> groups = new LinkedHashMap<>();
+    for (BatchItem item : creates) {
+      String parentPath = Paths.get(item.path).getParent().toString();
+      String key = (isBatchContainer(item) ? MediaTypes.CONTAINER : MediaTypes.DATA_OBJECT) + ":"
+          + parentPath;
+      List<BatchItem> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(key, group);
+      }
+      group.add(item);
+    }
+
+    for (List<BatchItem> group : groups.values()) {
+      String parentPath = Paths.get(group.get(0).path).getParent().toString();
+      List<String> names = new ArrayList<>(group.size());
+      for (BatchItem item : group) {
+        names.add(Paths.get(item.path).getFileName().toString());
+      }
+      List<? extends CdmiObject> created;
+      if (isBatchContainer(group.get(0))) {
+        List<Container> containerRequests = new ArrayList<>(group.size());
+        for (BatchItem item : group) {
+          containerRequests.add(Container.fromJson(item.operation));
+        }
+        created = containerDao.createChildrenByPath(parentPath, names, containerRequests);
       } else {
-        objectString = container.toJson().toString();
+        List<DataObject> dataObjectRequests = new ArrayList<>(group.size());
+        for (BatchItem item : group) {
+          dataObjectRequests.add(DataObject.fromJson(item.operation));
+        }
+        created = dataObjectDao.createChildrenByPath(parentPath, names, dataObjectRequests);
       }
-    } else if (cdmiObject instanceof DataObject) {
-      responseHeaders.setContentType(new MediaType("application", "cdmi-object+json"));
-      DataObject dataObject = (DataObject) cdmiObject;
 
-      // storage back-end integration
-      getCurrentStatusFromStorageBackend(dataObject);
+      for (int i = 0; i < group.size(); i++) {
+        BatchItem item = group.get(i);
+        CdmiObject cdmiObject = created.get(i);
+        if (cdmiObject == null) {
+          CdmiObject existingObject = cdmiObjectDao.getCdmiObjectByPath(item.path);
+          if (isBatchContainer(item) ? existingObject instanceof Container
+              : existingObject instanceof DataObject) {
+            // an existing object is updated, like by a PUT
+            executeBatchUpdate(item, existingObject);
+          } else {
+            item.setResult(HttpStatus.CONFLICT, "Object could not be created");
+          }
+        } else if (item.operation.has("value") || item.operation.has("capabilitiesURI")
+            || item.operation.has("copy")) {
+          // what the grouped create doesn't write is written like an update of the new object
+          executeBatchUpdate(item, cdmiObject);
+          if (item.status == HttpStatus.NO_CONTENT) {
+            item.setResult(HttpStatus.CREATED, null);
+          }
+        } else {
+          item.objectId = cdmiObject.getObjectId();
+          item.setResult(HttpStatus.CREATED, null);
+        }
+      }
+      writeResults(group, out);
+    }
+    creates.clear();
+  }
+
+  private static boolean isBatchContainer(BatchItem item) {
+    return item.operation.optString("objectType").contains(MediaTypes.CONTAINER);
+  }
 
-      if (query != null) {
-        objectString = filterQueryFields(dataObject.toJson(), query).toString();
+  /**
+   * Executes a batch update or delete, or records why the operation is rejected.
+   */
+  private void executeBatchItem(BatchItem item) {
+    String op = item.operation.optString("op");
+    if (!"create".equals(op) && !"update".equals(op) && !"delete".equals(op)) {
+      item.setResult(HttpStatus.BAD_REQUEST, "Unknown operation " + op);
+      return;
+    }
+    if (item.path == null) {
+      item.setResult(HttpStatus.BAD_REQUEST, "Path missing or outside of the container");
+      return;
+    }
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(item.path);
+    if (!(cdmiObject instanceof Container) && !(cdmiObject instanceof DataObject)) {
+      item.setResult(HttpStatus.NOT_FOUND, "Not found");
+      return;
+    }
+    String ifMatch = item.operation.optString("ifMatch", null);
+    if (ifMatch != null) {
+      if (!EntityTags.matches(ifMatch, cdmiObject.getVersion())) {
+        item.setResult(HttpStatus.PRECONDITION_FAILED, "Precondition failed");
+        return;
+      }
+      item.expectedVersion = cdmiObject.getVersion();
+    }
+
+    if ("update".equals(op)) {
+      executeBatchUpdate(item, cdmiObject);
+      return;
+    }
+    try {
+      CdmiObject deletedObject;
+      if (cdmiObject instanceof Container) {
+        deletedObject = item.expectedVersion != null
+            ? containerDao.deleteByPath(item.path, item.expectedVersion)
+            : containerDao.deleteByPath(item.path);
       } else {
-        objectString = dataObject.toJson().toString();
+        deletedObject = item.expectedVersion != null
+            ? dataObjectDao.deleteByPath(item.path, item.expectedVersion)
+            : dataObjectDao.deleteByPath(item.path);
       }
-    } else if (cdmiObject instanceof Capability) {
-      responseHeaders.setContentType(new MediaType("application", "cdmi-capability+json"));
-      Capability capability = (Capability) cdmiObject;
-      if (query != null) {
-        objectString = filterQueryFields(capability.toJson(), query).toString();
+      if (deletedObject != null) {
+        item.objectId = deletedObject.getObjectId();
+        item.setResult(HttpStatus.NO_CONTENT, null);
       } else {
-        objectString = capability.toJson().toString();
+        item.setResult(HttpStatus.CONFLICT, "Object could not be deleted");
       }
+    } catch (PreconditionFailedException ex) {
+      log.warn("WARNING: {}", ex.getMessage());
+      item.setResult(HttpStatus.PRECONDITION_FAILED, "Precondition failed");
+    }
+  }
+
+  /**
+   * Updates the object of a batch operation like a PUT of the operation as CDMI request body.
+   */
+  private void executeBatchUpdate(BatchItem item, CdmiObject cdmiObject) {
+    String contentType =
+        cdmiObject instanceof Container ? MediaTypes.CONTAINER : MediaTypes.DATA_OBJECT;
+    // the operation is parsed again, so its value is spooled and decoded like that of a PUT
+    byte[] operation = item.operation.toString().getBytes(StandardCharsets.UTF_8);
+    try (CdmiRequestBody body = CdmiRequestBody.parse(new ByteArrayInputStream(operation),
+        Paths.get(spoolDirectory))) {
+      JSONObject metadata = body.getJson().optJSONObject("metadata");
+      String valueHash = metadata != null && body.hasValue()
+          ? metadata.optString(ValueHash.METADATA_NAME, null) : null;
+      CdmiObject updatedObject = updateOrCreate(cdmiObject, item.path, body, contentType, null,
+          false, valueHash, item.expectedVersion);
+      if (updatedObject != null) {
+        item.objectId = updatedObject.getObjectId();
+        item.setResult(HttpStatus.NO_CONTENT, null);
+      } else {
+        item.setResult(HttpStatus.BAD_REQUEST, "Bad request");
+      }
+    } catch (BackEndException ex) {
+      log.warn("WARNING: {} from storage back-end {} for object {}", ex.getMessage(), backendType,
+          item.path);
+      item.setResult(HttpStatus.CONFLICT, ex.getMessage());
+    } catch (PreconditionFailedException ex) {
+      log.warn("WARNING: {}", ex.getMessage());
+      item.setResult(HttpStatus.PRECONDITION_FAILED, "Precondition failed");
+    } catch (BadRequestException ex) {
+      log.warn("WARNING: {} for object {}", ex.getMessage(), item.path);
+      item.setResult(HttpStatus.BAD_REQUEST, ex.getMessage());
+    } catch (UnsupportedOperationException ex) {
+      item.setResult(HttpStatus.NOT_IMPLEMENTED, "Not supported");
+    } catch (JSONException | IOException ex) {
+      log.warn("WARNING: {} for object {}", ex.getMessage(), item.path);
+      item.setResult(HttpStatus.BAD_REQUEST, "Bad request");
+    }
+  }
+
+  /**
+   * Writes the results of batch operations as lines of JSON and flushes them to the client.
+   */
+  private static void writeResults(List<BatchItem> items, Writer out) throws IOException {
+    for (BatchItem item : items) {
+      JSONObject result = new JSONObject();
+      result.put("index", item.index);
+      if (item.path != null) {
+        result.put("path", item.path);
+      }
+      result.put("status", item.status.value());
+      if (item.objectId != null) {
+        result.put("objectID", item.objectId);
+      }
+      if (item.error != null) {
+        result.put("error", item.error);
+      }
+      out.write(result.toString());
+      out.write('\n');
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the CDMI representation of the object to the response, with the fields of the query
+   * selected while it is written. No JSON tree or string of the object is built, so the response of
+   * a container with many children takes no more heap than its listing, and a requested range of a
+   * data object's value is streamed from its content.
+   *
+   * <p>
+   * The response carries the {@link EntityTags entity tag} of the representation, a request whose
+   * If-None-Match header matches it is answered with 304 Not Modified without writing the object.
+   * The version of a data object doesn't follow its content, so ranges of the value are not tagged.
+   * </p>
+   */
+  private ResponseEntity<?> writeResponse(CdmiObject cdmiObject, Projection projection,
+      HttpServletRequest request, HttpServletResponse response) {
+    String contentType;
+    if (cdmiObject instanceof Container) {
+      contentType = "application/cdmi-container+json";
+    } else if (cdmiObject instanceof DataObject) {
+      contentType = "application/cdmi-object+json";
+    } else if (cdmiObject instanceof Capability) {
+      contentType = "application/cdmi-capability+json";
     } else if (cdmiObject instanceof Domain) {
-      responseHeaders.setContentType(new MediaType("application", "cdmi-domain+json"));
-      Domain domain = (Domain) cdmiObject;
-      if (query != null) {
-        objectString = filterQueryFields(domain.toJson(), query).toString();
+      contentType = "application/cdmi-domain+json";
+    } else {
+      return new ResponseEntity<String>("Object not found", HttpStatus.NOT_FOUND);
+    }
+
+    long[] valueRange = projection.getValueRange();
+    if (valueRange == null) {
+      String entityTag = EntityTags.getEntityTag(cdmiObject, projection);
+      if (entityTag != null
+          && new ServletWebRequest(request, response).checkNotModified(entityTag)) {
+        response.setHeader("X-CDMI-Specification-Version", "1.1.1");
+        return null;
+      }
+    }
+
+    FileChannel content = null;
+    if (cdmiObject instanceof DataObject && valueRange != null) {
+      content = openValueRange((DataObject) cdmiObject, valueRange);
+    }
+    try {
+      response.setStatus(HttpStatus.OK.value());
+      response.setContentType(contentType);
+      response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+      response.setHeader("X-CDMI-Specification-Version", "1.1.1");
+      Writer out = new BufferedWriter(
+          new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+      CdmiJsonWriter writer = new CdmiJsonWriter(out, projection);
+      if (content != null) {
+        writer.write((DataObject) cdmiObject, content, valueRange[0], valueRange[1]);
       } else {
-        objectString = domain.toJson().toString();
+        writer.write(cdmiObject);
+      }
+      out.flush();
+      response.flushBuffer();
+    } catch (IOException ex) {
+      log.warn("WARNING: could not write object {}, {}", cdmiObject.getObjectId(),
+          ex.getMessage());
+      if (!response.isCommitted()) {
+        response.reset();
+        return new ResponseEntity<String>("Object could not be read",
+            HttpStatus.INTERNAL_SERVER_ERROR);
+      }
+    } finally {
+      if (content != null) {
+        try {
+          content.close();
+        } catch (IOException ex) {
+          log.warn("WARNING: could not close content of object {}, {}", cdmiObject.getObjectId(),
+              ex.getMessage());
+        }
+      }
+    }
+    // the response has been written
+    return null;
+  }
+
+  /**
+   * Checks whether the client accepts a CDMI representation of the requested object, otherwise
+   * data objects are returned as their plain content.
+   * 
+   * @param accept the request's Accept header
+   * @return <code>true</code> if there is no Accept header or it accepts CDMI or JSON
+   */
+  private static boolean isCdmiRequest(String accept) {
+    if (accept == null) {
+      return true;
+    }
+    try {
+      for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+        if (mediaType.includes(MediaType.APPLICATION_JSON)
+            || mediaType.getSubtype().startsWith("cdmi-")) {
+          return true;
+        }
       }
+    } catch (InvalidMediaTypeException ex) {
+      log.warn("Invalid Accept header {}", accept);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Writes the content of the data object, or the requested byte ranges of it, to the response. The
+   * content is transferred from the file channel at the ranges' positions, so it is never held on
+   * the heap as a whole.
+   */
+  private ResponseEntity<?> getDataObjectValue(DataObject dataObject, String path, String range,
+      HttpServletResponse response) {
+    try (FileChannel content = dataObjectDao.openContent(path)) {
+      if (content == null) {
+        return new ResponseEntity<String>("Object content not found", HttpStatus.NOT_FOUND);
+      }
+      long size = content.size();
+      response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+      List<long[]> ranges = getRequestedByteRanges(range, size);
+      if (ranges == null) {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(dataObject.getMimetype());
+        response.setContentLengthLong(size);
+        if (ValueHash.get(dataObject) != null) {
+          response.setHeader("X-CDMI-Value-Hash", ValueHash.get(dataObject));
+        }
+        transferContent(content, 0, size, Channels.newChannel(response.getOutputStream()));
+      } else if (ranges.isEmpty()) {
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+        return new ResponseEntity<String>("Requested range not satisfiable", responseHeaders,
+            HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+      } else if (ranges.size() == 1) {
+        long[] byteRange = ranges.get(0);
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType(dataObject.getMimetype());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, getContentRange(byteRange, size));
+        response.setContentLengthLong(byteRange[1] - byteRange[0] + 1);
+        transferContent(content, byteRange[0], byteRange[1] - byteRange[0] + 1,
+            Channels.newChannel(response.getOutputStream()));
+      } else {
+        transferByteRanges(content, ranges, dataObject.getMimetype(), response);
+      }
+      response.flushBuffer();
+    } catch (UnsupportedOperationException ex) {
+      return new ResponseEntity<String>("Non-CDMI content not supported",
+          HttpStatus.NOT_IMPLEMENTED);
+    } catch (IOException ex) {
+      log.warn("WARNING: could not transfer content of object {}, {}", path, ex.getMessage());
+      if (!response.isCommitted()) {
+        response.reset();
+        return new ResponseEntity<String>("Object content could not be read",
+            HttpStatus.INTERNAL_SERVER_ERROR);
+      }
+    }
+    // the response has been written
+    return null;
+  }
+
+  /**
+   * Gets the byte ranges of a Range header, resolved against the content's size.
+   * 
+   * @param range the Range header
+   * @param size the size of the content
+   * @return the first and last byte of each satisfiable range, an empty list if none is
+   *         satisfiable or <code>null</code> if no valid range was requested
+   */
+  private List<long[]> getRequestedByteRanges(String range, long size) {
+    if (range == null) {
+      return null;
+    }
+    List<HttpRange> httpRanges;
+    try {
+      httpRanges = HttpRange.parseRanges(range);
+    } catch (IllegalArgumentException ex) {
+      // invalid ranges are ignored
+      log.warn("Invalid range {}", range);
+      return null;
+    }
+    if (httpRanges.isEmpty()) {
+      return null;
+    }
+    List<long[]> byteRanges = new ArrayList<>();
+    for (HttpRange httpRange : httpRanges) {
+      long rangeStart = httpRange.getRangeStart(size);
+      if (rangeStart < size) {
+        byteRanges.add(new long[] {rangeStart, httpRange.getRangeEnd(size)});
+      }
+    }
+    return byteRanges;
+  }
+
+  private static String getContentRange(long[] byteRange, long size) {
+    return "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + size;
+  }
+
+  /**
+   * Writes the given byte ranges of the content as a multipart/byteranges response.
+   */
+  private void transferByteRanges(FileChannel content, List<long[]> ranges, String mimetype,
+      HttpServletResponse response) throws IOException {
+    long size = content.size();
+    String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+    List<byte[]> partHeaders = new ArrayList<>();
+    long length = 0;
+    for (long[] byteRange : ranges) {
+      byte[] partHeader = ("\r\n--" + boundary + "\r\n" + HttpHeaders.CONTENT_TYPE + ": "
+          + mimetype + "\r\n" + HttpHeaders.CONTENT_RANGE + ": " + getContentRange(byteRange, size)
+          + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+      partHeaders.add(partHeader);
+      length += partHeader.length + byteRange[1] - byteRange[0] + 1;
+    }
+    byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    length += end.length;
+
+    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+    response.setContentType("multipart/byteranges; boundary=" + boundary);
+    response.setContentLengthLong(length);
+
+    WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+    for (int i = 0; i < ranges.size(); i++) {
+      long[] byteRange = ranges.get(i);
+      writeFully(ByteBuffer.wrap(partHeaders.get(i)), target);
+      transferContent(content, byteRange[0], byteRange[1] - byteRange[0] + 1, target);
+    }
+    writeFully(ByteBuffer.wrap(end), target);
+  }
+
+  /**
+   * Transfers the given part of the content with positional reads, which don't change the channel's
+   * position, so any number of ranges can be transferred in parallel.
+   */
+  private static void transferContent(FileChannel content, long position, long count,
+      WritableByteChannel target) throws IOException {
+    long end = position + count;
+    while (position < end) {
+      long transferred = content.transferTo(position, end - position, target);
+      if (transferred <= 0) {
+        throw new EOFException("content truncated at " + position);
+      }
+      position += transferred;
+    }
+  }
+
+  private static void writeFully(ByteBuffer buffer, WritableByteChannel target)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
     }
-    return objectString;
   }
 
   private void setAuthenticatedSubject() {
@@ -443,29 +1249,40 @@ public class CdmiRestController {
     }
   }
 
-  private CdmiObject updateOrCreate(CdmiObject cdmiObject, String path, String body,
-      String contentType) throws BackEndException {
+  private CdmiObject updateOrCreate(CdmiObject cdmiObject, String path, CdmiRequestBody body,
+      String contentType, long[] valueRange, boolean partial, String valueHash,
+      String expectedVersion) throws BackEndException {
     // create or update container
     if (contentType.contains(MediaTypes.CONTAINER)) {
       if (cdmiObject == null) {
         log.warn("Create container...");
-        Container containerRequest = Container.fromJson(new JSONObject(body));
+        Container containerRequest = Container.fromJson(body.getJson());
         cdmiObject = containerDao.createByPath(path, containerRequest);
       }
       if (cdmiObject instanceof Container) {
         log.debug("Update container...");
         Container existingContainer = (Container) cdmiObject;
         // update allowed for "metadata" and "capabilitiesURI"
-        JSONObject updateJson = new JSONObject(body);
+        JSONObject updateJson = body.getJson();
+        JSONObject changes = new JSONObject();
         if (updateJson.has("metadata")) {
-          existingContainer.setMetadata(updateJson.getJSONObject("metadata"));
+          changes.put("metadata", updateJson.getJSONObject("metadata"));
+        }
+        if (expectedVersion != null) {
+          // the version of the If-Match header is compared before anything else changes, the
+          // count changes the version, so any other write with the same tag fails
+          applyChanges(existingContainer, changes);
+          ModificationCount.increment(existingContainer);
+          if (cdmiObjectDao.updateCdmiObject(existingContainer, path, expectedVersion) == null) {
+            return null;
+          }
         }
         if (updateJson.has("capabilitiesURI")) {
           // Change of QoS
           try {
             setAuthenticatedSubject();
             storageBackend.updateCdmiObject(path, updateJson.getString("capabilitiesURI"));
-            existingContainer.setCapabilitiesUri(updateJson.getString("capabilitiesURI"));
+            changes.put("capabilitiesURI", updateJson.getString("capabilitiesURI"));
           } catch (BackEndException ex) {
             // ex.printStackTrace();
             log.warn("WARNING: could not trigger QoS change for configured storage back-end {}",
@@ -473,31 +1290,65 @@ public class CdmiRestController {
             throw new BackEndException("could not trigger QoS change");
           }
         }
-        Container updatedContainer = (Container) cdmiObjectDao.updateCdmiObject(existingContainer);
-        return updatedContainer;
+        return updateRecord(path, changes);
       }
     }
     // create or update data object
     if (contentType.contains(MediaTypes.DATA_OBJECT)) {
-      if (cdmiObject == null) {
+      if (body.getJson().has("copy") && !(cdmiObject instanceof Container)) {
+        if (body.hasValue()) {
+          throw new BadRequestException("copy and value can't be combined");
+        }
+        if (expectedVersion != null && cdmiObject instanceof DataObject) {
+          // the copy replaces the whole object, so it is claimed first
+          ModificationCount.increment((DataObject) cdmiObject);
+          cdmiObjectDao.updateCdmiObject(cdmiObject, path, expectedVersion);
+        }
+        String sourcePath = getCopySourcePath(body.getJson().getString("copy"));
+        log.debug("Copy data object {}...", sourcePath);
+        // the request's metadata is set below
+        cdmiObject = sourcePath != null ? dataObjectDao.copyByPath(path, sourcePath) : null;
+        if (cdmiObject == null) {
+          return null;
+        }
+        // the object was claimed before the copy
+        expectedVersion = null;
+      } else if (cdmiObject == null) {
         log.warn("Create data object...");
-        DataObject dataObjectRequest = DataObject.fromJson(new JSONObject(body));
+        // the value is written below
+        DataObject dataObjectRequest = DataObject.fromJson(body.getJson());
         cdmiObject = dataObjectDao.createByPath(path, dataObjectRequest);
       }
       if (cdmiObject instanceof DataObject) {
         log.debug("Update data object...");
         DataObject existingDataObject = (DataObject) cdmiObject;
         // update allowed for "value", "metadata" and "capabilitiesURI"
-        JSONObject updateJson = new JSONObject(body);
+        JSONObject updateJson = body.getJson();
+        JSONObject changes = new JSONObject();
         if (updateJson.has("metadata")) {
-          existingDataObject.setMetadata(updateJson.getJSONObject("metadata"));
+          changes.put("metadata", updateJson.getJSONObject("metadata"));
+        }
+        if (expectedVersion != null) {
+          // the version of the If-Match header is compared before the value is written, the
+          // count changes the version, so any other write with the same tag fails
+          applyChanges(existingDataObject, changes);
+          ModificationCount.increment(existingDataObject);
+          if (cdmiObjectDao.updateCdmiObject(existingDataObject, path, expectedVersion) == null) {
+            return null;
+          }
         }
         if (updateJson.has("capabilitiesURI")) {
           // Change of QoS
           try {
             setAuthenticatedSubject();
             storageBackend.updateCdmiObject(path, updateJson.getString("capabilitiesURI"));
-            existingDataObject.setCapabilitiesUri(updateJson.getString("capabilitiesURI"));
+            changes.put("capabilitiesURI", updateJson.getString("capabilitiesURI"));
+            if (body.hasValue() && valueRange == null) {
+              // the value is stored as its new capability class asks for, e.g. compressed
+              if (updateRecord(path, changes) == null) {
+                return null;
+              }
+            }
           } catch (BackEndException ex) {
             // ex.printStackTrace();
             log.warn("WARNING: could not trigger QoS change for configured storage back-end {}",
@@ -505,18 +1356,151 @@ public class CdmiRestController {
             throw new BackEndException("could not trigger QoS change");
           }
         }
-        if (updateJson.has("value")) {
-          // Change of content
-          dataObjectDao.updateContent(path, updateJson.getString("value").getBytes());
+        boolean staged = partial || isUploading(existingDataObject);
+        if (valueHash != null && valueRange != null && !staged) {
+          throw new BadRequestException("X-CDMI-Value-Hash is only checked for whole values");
+        }
+        String valueTransferEncoding = updateJson.optString("valuetransferencoding",
+            existingDataObject.getValuetransferencoding());
+        long valueLength = body.getDecodedValueLength(valueTransferEncoding);
+        if (valueLength < 0 || (body.hasValue() && valueRange != null
+            && valueLength != valueRange[1] - valueRange[0] + 1)) {
+          log.warn("Value doesn't match its encoding or the value range");
+          return null;
+        }
+        try {
+          if (staged && (body.hasValue() || partial)) {
+            // Chunk of a partial upload
+            if (changes.length() > 0 && updateRecord(path, changes) == null) {
+              return null;
+            }
+            // the staging updates the progress of the record
+            try (ReadableByteChannel value = openValue(body, valueTransferEncoding)) {
+              existingDataObject = dataObjectDao.updatePartialContent(path,
+                  valueRange != null ? valueRange[0] : 0, valueLength, -1, value);
+            }
+            if (existingDataObject != null && !partial) {
+              existingDataObject = dataObjectDao.publishContent(path, valueHash);
+            }
+            return existingDataObject;
+          } else if (body.hasValue() && valueRange != null) {
+            // Change of a part of the content
+            try (ReadableByteChannel value = openValue(body, valueTransferEncoding)) {
+              if (dataObjectDao.updateContent(path, valueRange[0], valueLength, value) == null) {
+                return null;
+              }
+            }
+          } else if (body.hasValue()) {
+            // Change of content
+            try (ReadableByteChannel value = openValue(body, valueTransferEncoding)) {
+              if (dataObjectDao.updateContent(path, value, valueHash) == null) {
+                return null;
+              }
+            }
+          }
+        } catch (IOException ex) {
+          log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+          return null;
+        }
+        // applied to the record as it is after the value was written, so no write is lost
+        DataObject updatedDataObject = (DataObject) updateRecord(path, changes);
+        if (staged && !partial) {
+          // final request without a value
+          updatedDataObject = dataObjectDao.publishContent(path, valueHash);
         }
-        DataObject updatedDataObject =
-            (DataObject) cdmiObjectDao.updateCdmiObject(existingDataObject);
         return updatedDataObject;
       }
     }
     return null;
   }
 
+  /**
+   * Writes the changes of a request to the record of an object. The record is read again and only
+   * written if it is still at the version it was read at, otherwise the changes are applied to the
+   * record of the next read, so no write of another request in between is lost.
+   *
+   * @param changes the "metadata" and "capabilitiesURI" of the request
+   * @return the written object or <code>null</code> if it couldn't be written
+   */
+  private CdmiObject updateRecord(String path, JSONObject changes) {
+    for (int attempt = 0; attempt < RECORD_UPDATE_ATTEMPTS; attempt++) {
+      CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+      if (!(cdmiObject instanceof Container) && !(cdmiObject instanceof DataObject)) {
+        return null;
+      }
+      if (changes.length() == 0) {
+        return cdmiObject;
+      }
+      applyChanges(cdmiObject, changes);
+      try {
+        return cdmiObjectDao.updateCdmiObject(cdmiObject, path, cdmiObject.getVersion());
+      } catch (PreconditionFailedException ex) {
+        log.debug("object {} changed while it was updated, {}", path, ex.getMessage());
+      }
+    }
+    log.warn("WARNING: object {} changed on every attempt to update it", path);
+    return null;
+  }
+
+  /**
+   * Applies the "metadata" and "capabilitiesURI" of a request to an object. The metadata
+   * maintained by the server, the cdmi_value_hash, cdmi_value_compression and cdmi_mcount, is
+   * kept.
+   */
+  private static void applyChanges(CdmiObject cdmiObject, JSONObject changes) {
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      if (changes.has("metadata")) {
+        long modificationCount = ModificationCount.get(container);
+        container.setMetadata(changes.getJSONObject("metadata"));
+        ModificationCount.set(container, modificationCount);
+      }
+      if (changes.has("capabilitiesURI")) {
+        container.setCapabilitiesUri(changes.getString("capabilitiesURI"));
+      }
+    } else if (cdmiObject instanceof DataObject) {
+      DataObject dataObject = (DataObject) cdmiObject;
+      if (changes.has("metadata")) {
+        String storedHash = ValueHash.get(dataObject);
+        BlockCompression storedCompression = BlockCompression.get(dataObject);
+        long modificationCount = ModificationCount.get(dataObject);
+        dataObject.setMetadata(changes.getJSONObject("metadata"));
+        ModificationCount.set(dataObject, modificationCount);
+        ValueHash.set(dataObject, storedHash);
+        BlockCompression.set(dataObject, storedCompression);
+      }
+      if (changes.has("capabilitiesURI")) {
+        dataObject.setCapabilitiesUri(changes.getString("capabilitiesURI"));
+      }
+    }
+  }
+
+  /**
+   * Gets the path of the data object to copy, given by its path or its objectId URI.
+   * 
+   * @return the path or <code>null</code> if there is no data object with the objectId
+   */
+  private String getCopySourcePath(String uri) {
+    String objectIdPrefix = "/cdmi_objectid/";
+    if (uri.startsWith(objectIdPrefix)) {
+      CdmiObject source = cdmiObjectDao.getCdmiObject(uri.substring(objectIdPrefix.length()));
+      if (!(source instanceof DataObject)) {
+        return null;
+      }
+      DataObject dataObject = (DataObject) source;
+      return Paths.get(dataObject.getParentUri(), dataObject.getObjectName()).toString();
+    }
+    return Paths.get(uri).normalize().toString();
+  }
+
+  private void getCurrentStatusFromStorageBackend(CdmiObject cdmiObject) throws BackEndException {
+    if (cdmiObject instanceof Container) {
+      getCurrentStatusFromStorageBackend((Container) cdmiObject);
+    } else if (cdmiObject instanceof DataObject) {
+      getCurrentStatusFromStorageBackend((DataObject) cdmiObject);
+    }
+  }
+
   private void getCurrentStatusFromStorageBackend(DataObject dataObject) throws BackEndException {
     // add information from storage back-end
     try {
@@ -584,57 +1568,80 @@ public class CdmiRestController {
   }
 
   /**
-   * Filters the requested JSON object according to the query parameters.
-   * 
-   * @param json the requested {@link JSONObject}
-   * @param query the given query parameters
-   * @return the filtered {@link JSONObject}
+   * Opens the spooled value of a CDMI update, decoding it while it is read if the value is
+   * transferred base64 encoded.
    */
-  public JSONObject filterQueryFields(JSONObject json, String query) {
-    String[] queryFields = query.split(";");
-    List<String> queryList = Arrays.asList(queryFields);
-
-    JSONArray names = json.names();
-    JSONArray children = json.optJSONArray("children");
+  private static ReadableByteChannel openValue(CdmiRequestBody body, String valueTransferEncoding)
+      throws IOException {
+    InputStream value = body.openValue();
+    if ("base64".equals(valueTransferEncoding)) {
+      value = Base64Codec.decode(value);
+    }
+    return Channels.newChannel(value);
+  }
 
-    for (int i = 0; i < names.length(); i++) {
-      String name = names.getString(i);
-      if (!queryList.contains(name)) {
-        json.remove(name);
+  /**
+   * Opens the data object's content to read the requested range of its value from, and narrows the
+   * range to the content and to the maximum value range.
+   *
+   * @return the content or <code>null</code> if no byte of the range can be read
+   */
+  private FileChannel openValueRange(DataObject dataObject, long[] valueRange) {
+    String path = Paths.get(dataObject.getParentUri(), dataObject.getObjectName()).toString();
+    FileChannel content = null;
+    try {
+      content = dataObjectDao.openContent(path);
+      if (content == null) {
+        return null;
+      }
+      valueRange[1] = Math.min(Math.min(valueRange[1], content.size() - 1),
+          valueRange[0] + maxValueRange - 1);
+      if (valueRange[0] <= valueRange[1]) {
+        return content;
+      }
+    } catch (UnsupportedOperationException ex) {
+      log.debug("value ranges not supported for object {}", path);
+    } catch (IOException ex) {
+      log.warn("WARNING: could not read value of object {}, {}", path, ex.getMessage());
+    }
+    if (content != null) {
+      try {
+        content.close();
+      } catch (IOException ex) {
+        log.warn("WARNING: could not close content of object {}, {}", path, ex.getMessage());
       }
     }
+    return null;
+  }
 
-    if (children != null) {
-      for (String queryField : queryList) {
-        if (queryField.contains("children:")) {
-          String[] childrenRange = queryField.split(":");
-          String range = childrenRange[1];
-          String[] rangeValues = range.split("-");
+  /**
+   * An operation of a batch request and its result.
+   */
+  private static class BatchItem {
 
-          JSONArray returnChildren = new JSONArray();
-          int rangeStart = Integer.valueOf(rangeValues[0]);
+    private final int index;
 
-          if (rangeValues.length > 1) {
-            int rangeStop = Integer.valueOf(rangeValues[1]);
-            for (int i = rangeStart; i <= rangeStop; i++) {
-              try {
-                returnChildren.put(children.get(i));
-              } catch (JSONException ex) {
-                log.warn("Requested range out of bounds, {}", i);
-              }
-            }
-          } else {
-            try {
-              returnChildren.put(children.get(rangeStart));
-            } catch (JSONException ex) {
-              log.warn("Requested range out of bounds, {}", rangeStart);
-            }
-          }
-          json.put("children", returnChildren);
-          break;
-        }
-      }
+    private final String path;
+
+    private final JSONObject operation;
+
+    private String expectedVersion;
+
+    private HttpStatus status;
+
+    private String objectId;
+
+    private String error;
+
+    private BatchItem(int index, String path, JSONObject operation) {
+      this.index = index;
+      this.path = path;
+      this.operation = operation;
+    }
+
+    private void setResult(HttpStatus status, String error) {
+      this.status = status;
+      this.error = error;
     }
-    return json;
   }
 }
@@ -0,0 +1,20 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.cache;
+
+public interface CacheInvalidationPublisher {
+
+  /**
+   * Tells the caches of all other server instances to evict the given keys.
+   *
+   * @param keys CDMI URL paths or <code>objectid:</code> followed by an object id
+   */
+  public void publish(String... keys);
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.cache;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.util.Projection;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, in-process LRU cache in front of any {@link CdmiObjectDao}.
+ *
+ * <p>
+ * Objects are cached in their JSON form and every hit returns a fresh deep copy, since callers
+ * modify the returned objects. Only whole objects are cached, reads of a range of children always go
+ * to the delegate. Writes through this DAO evict the affected entries locally and, if an
+ * {@link CacheInvalidationPublisher} is set, on all other server instances.
+ * </p>
+ */
+public class CachingCdmiObjectDao implements CdmiObjectDao {
+
+  private static final Logger log = LoggerFactory.getLogger(CachingCdmiObjectDao.class);
+
+  private static final String OBJECT_ID_PREFIX = "objectid:";
+
+  private CdmiObjectDao cdmiObjectDao;
+
+  private CacheInvalidationPublisher invalidationPublisher;
+
+  private int maxSize = 10000;
+
+  private Map<String, CachedObject> objects = createLruMap();
+
+  private Map<String, String> paths = createLruMap();
+
+  // incremented on every eviction, so reads racing with a write don't cache stale objects
+  private long generation;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  public CdmiObjectDao getCdmiObjectDao() {
+    return cdmiObjectDao;
+  }
+
+  public void setCdmiObjectDao(CdmiObjectDao cdmiObjectDao) {
+    this.cdmiObjectDao = cdmiObjectDao;
+  }
+
+  public CacheInvalidationPublisher getInvalidationPublisher() {
+    return invalidationPublisher;
+  }
+
+  public void setInvalidationPublisher(CacheInvalidationPublisher invalidationPublisher) {
+    this.invalidationPublisher = invalidationPublisher;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of cached objects.
+   *
+   * @return the number of cached objects
+   */
+  public synchronized int getSize() {
+    return objects.size();
+  }
+
+  private <V> Map<String, V> createLruMap() {
+    return new LinkedHashMap<String, V>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  @Override
+  public List<CdmiObject> createChildCdmiObjects(List<? extends CdmiObject> cdmiObjects,
+      List<String> paths, String parentPath) {
+    List<CdmiObject> createdObjects =
+        cdmiObjectDao.createChildCdmiObjects(cdmiObjects, paths, parentPath);
+    // one invalidation for all of them and their parent
+    List<String> keys = new ArrayList<>(2 * cdmiObjects.size() + 2);
+    for (int i = 0; i < cdmiObjects.size(); i++) {
+      keys.add(paths.get(i));
+      keys.add(OBJECT_ID_PREFIX + cdmiObjects.get(i).getObjectId());
+    }
+    if (!cdmiObjects.isEmpty()) {
+      keys.add(parentPath);
+      keys.add(OBJECT_ID_PREFIX + cdmiObjects.get(0).getParentId());
+    }
+    evict(keys.toArray(new String[keys.size()]));
+    return createdObjects;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    return getCdmiObject(objectId, Projection.ALL);
+  }
+
+  /**
+   * Gets the object from the cache unless a range of its children is selected. The children of a
+   * hit are only copied if they are selected. Only misses which select all children are cached, the
+   * others are read with the projection.
+   */
+  @Override
+  public CdmiObject getCdmiObject(String objectId, Projection projection) {
+    if (projection.getChildrenRange() != null) {
+      return cdmiObjectDao.getCdmiObject(objectId, projection);
+    }
+
+    CachedObject cached;
+    long readGeneration;
+    synchronized (this) {
+      cached = objects.get(objectId);
+      readGeneration = generation;
+    }
+
+    if (cached != null) {
+      return hit(cached, projection);
+    }
+
+    misses.incrementAndGet();
+    if (!projection.includes("children")) {
+      return cdmiObjectDao.getCdmiObject(objectId, projection);
+    }
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObject(objectId);
+    put(null, cdmiObject, readGeneration);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, int childrenFrom, int childrenTo) {
+    return cdmiObjectDao.getCdmiObject(objectId, childrenFrom, childrenTo);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    return getCdmiObjectByPath(path, Projection.ALL);
+  }
+
+  /**
+   * Gets the object from the cache unless a range of its children is selected. The children of a
+   * hit are only copied if they are selected. Only misses which select all children are cached, the
+   * others are read with the projection.
+   */
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, Projection projection) {
+    if (projection.getChildrenRange() != null) {
+      return cdmiObjectDao.getCdmiObjectByPath(path, projection);
+    }
+
+    CachedObject cached = null;
+    long readGeneration;
+    synchronized (this) {
+      String objectId = paths.get(path);
+      if (objectId != null) {
+        cached = objects.get(objectId);
+      }
+      readGeneration = generation;
+    }
+
+    if (cached != null) {
+      return hit(cached, projection);
+    }
+
+    misses.incrementAndGet();
+    if (!projection.includes("children")) {
+      return cdmiObjectDao.getCdmiObjectByPath(path, projection);
+    }
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    put(path, cdmiObject, readGeneration);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenFrom, int childrenTo) {
+    return cdmiObjectDao.getCdmiObjectByPath(path, childrenFrom, childrenTo);
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(cdmiObject);
+    evict(OBJECT_ID_PREFIX + cdmiObject.getObjectId());
+    return createdObject;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(cdmiObject, path);
+    evict(path, OBJECT_ID_PREFIX + cdmiObject.getObjectId());
+    return createdObject;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(cdmiObject, path, override);
+    evict(path, OBJECT_ID_PREFIX + cdmiObject.getObjectId());
+    return createdObject;
+  }
+
+  @Override
+  public CdmiObject createChildCdmiObject(CdmiObject cdmiObject, String path, String parentPath) {
+    CdmiObject createdObject = cdmiObjectDao.createChildCdmiObject(cdmiObject, path, parentPath);
+    // the children of the parent changed as well
+    evict(path, OBJECT_ID_PREFIX + cdmiObject.getObjectId(), parentPath,
+        OBJECT_ID_PREFIX + cdmiObject.getParentId());
+    return createdObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    CdmiObject updatedObject = cdmiObjectDao.updateCdmiObject(cdmiObject);
+    evict(OBJECT_ID_PREFIX + cdmiObject.getObjectId());
+    return updatedObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    CdmiObject updatedObject = cdmiObjectDao.updateCdmiObject(cdmiObject, path);
+    evict(path, OBJECT_ID_PREFIX + cdmiObject.getObjectId());
+    return updatedObject;
+  }
+
+  /**
+   * Updates the object if it is still at the expected version. The entries are evicted on a
+   * conflict as well, the version they were read at is likely stale.
+   */
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path, String expectedVersion) {
+    try {
+      return cdmiObjectDao.updateCdmiObject(cdmiObject, path, expectedVersion);
+    } finally {
+      evict(path, OBJECT_ID_PREFIX + cdmiObject.getObjectId());
+    }
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    CdmiObject deletedObject = cdmiObjectDao.deleteCdmiObject(objectId);
+    evict(OBJECT_ID_PREFIX + objectId);
+    return deletedObject;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    return evictDeleted(path, cdmiObjectDao.deleteCdmiObjectByPath(path));
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path, String expectedVersion) {
+    CdmiObject deletedObject;
+    try {
+      deletedObject = cdmiObjectDao.deleteCdmiObjectByPath(path, expectedVersion);
+    } catch (PreconditionFailedException ex) {
+      evict(path);
+      throw ex;
+    }
+    return evictDeleted(path, deletedObject);
+  }
+
+  private CdmiObject evictDeleted(String path, CdmiObject deletedObject) {
+    if (deletedObject == null) {
+      evict(path);
+    } else {
+      // the children of the parent changed as well
+      Path parentPath = Paths.get(path).getParent();
+      evict(path, OBJECT_ID_PREFIX + deletedObject.getObjectId(),
+          parentPath != null ? parentPath.toString() : path,
+          OBJECT_ID_PREFIX + deletedObject.getParentId());
+    }
+    return deletedObject;
+  }
+
+  /**
+   * Evicts the given key from this cache only, e.g. when notified by another server instance.
+   *
+   * @param key a CDMI URL path or <code>objectid:</code> followed by an object id
+   */
+  public synchronized void evictLocal(String key) {
+    generation++;
+    if (key.startsWith(OBJECT_ID_PREFIX)) {
+      objects.remove(key.substring(OBJECT_ID_PREFIX.length()));
+    } else {
+      String objectId = paths.remove(key);
+      if (objectId != null) {
+        objects.remove(objectId);
+      }
+    }
+  }
+
+  private void evict(String... keys) {
+    for (String key : keys) {
+      evictLocal(key);
+    }
+    if (invalidationPublisher != null) {
+      invalidationPublisher.publish(keys);
+    }
+  }
+
+  private synchronized void put(String path, CdmiObject cdmiObject, long readGeneration) {
+    if (cdmiObject == null || readGeneration != generation) {
+      return;
+    }
+    objects.put(cdmiObject.getObjectId(),
+        new CachedObject(copy(cdmiObject.toJson()), cdmiObject.getVersion()));
+    if (path != null) {
+      paths.put(path, cdmiObject.getObjectId());
+    }
+  }
+
+  private CdmiObject hit(CachedObject cached, Projection projection) {
+    long hitCount = hits.incrementAndGet();
+    if (log.isDebugEnabled() && hitCount % 1000 == 0) {
+      log.debug("cache hits {} misses {} size {}", hitCount, misses.get(), getSize());
+    }
+    JSONObject copy = new JSONObject();
+    for (String key : cached.json.keySet()) {
+      if (isProjected(key, projection)) {
+        copy.put(key, copyValue(cached.json.get(key)));
+      }
+    }
+    CdmiObject cdmiObject = RecordCodecs.fromJson(copy);
+    cdmiObject.setVersion(cached.version);
+    return cdmiObject;
+  }
+
+  private static boolean isProjected(String key, Projection projection) {
+    switch (key) {
+      case "children":
+        return projection.includesChildren();
+      case "childrenrange":
+        return projection.includesChildren() || projection.includes("childrenrange");
+      default:
+        return true;
+    }
+  }
+
+  private static JSONObject copy(JSONObject json) {
+    JSONObject copy = new JSONObject();
+    for (String key : json.keySet()) {
+      copy.put(key, copyValue(json.get(key)));
+    }
+    return copy;
+  }
+
+  private static Object copyValue(Object value) {
+    if (value instanceof JSONObject) {
+      return copy((JSONObject) value);
+    }
+    if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      JSONArray copy = new JSONArray();
+      for (int i = 0; i < array.length(); i++) {
+        copy.put(copyValue(array.get(i)));
+      }
+      return copy;
+    }
+    return value;
+  }
+
+  /**
+   * An object in the cache, its JSON and the version it was read with.
+   */
+  private static class CachedObject {
+
+    private final JSONObject json;
+
+    private final String version;
+
+    CachedObject(JSONObject json, String version) {
+      this.json = json;
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.CREATE_CHILDREN_BATCH_SIZE;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.CREATE_CHILDREN_SCRIPT;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.CREATE_SCRIPT;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.DELETE_SCRIPT;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.UPDATE_SCRIPT;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.fromRecord;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.getCreateChildrenKeys;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.getCreateKeys;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.getDeleteKeys;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.getName;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.toStoredJson;
+
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.util.Projection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The redis version of {@link AsyncCdmiObjectDao}, on a {@link PipelinedRedisClient}.
+ *
+ * <p>
+ * Stores objects the same way as {@link CdmiObjectDaoImpl}, so both can be used on the same data.
+ * The blocking operations wait for their asynchronous counterparts, so the calls of concurrent
+ * requests share the pipelined batches instead of holding a connection each.
+ * </p>
+ */
+public class AsyncCdmiObjectDaoImpl implements AsyncCdmiObjectDao {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncCdmiObjectDaoImpl.class);
+
+  private PipelinedRedisClient redisClient;
+
+  private RecordCodec recordCodec = RecordCodecs.forFormat(RecordCodecs.JSON);
+
+  public PipelinedRedisClient getRedisClient() {
+    return redisClient;
+  }
+
+  public void setRedisClient(PipelinedRedisClient redisClient) {
+    this.redisClient = redisClient;
+  }
+
+  public RecordCodec getRecordCodec() {
+    return recordCodec;
+  }
+
+  public void setRecordCodec(RecordCodec recordCodec) {
+    this.recordCodec = recordCodec;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    String objectId = cdmiObject.getObjectId();
+    Long created = join(redisClient.setnx("objectid:" + objectId, toRecord(cdmiObject)));
+    if (created != null && created == 1) {
+      return cdmiObject;
+    }
+
+    log.debug("object id {} already exists", objectId);
+    return getCdmiObject(objectId);
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    return join(create(cdmiObject, path,
+        Arrays.asList(path, "objectid:" + cdmiObject.getObjectId())));
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    return join(updateCdmiObjectAsync(cdmiObject, path));
+  }
+
+  @Override
+  public CdmiObject createChildCdmiObject(CdmiObject cdmiObject, String path, String parentPath) {
+    return join(createChildCdmiObjectAsync(cdmiObject, path, parentPath));
+  }
+
+  @Override
+  public CompletableFuture<CdmiObject> createChildCdmiObjectAsync(CdmiObject cdmiObject,
+      String path, String parentPath) {
+    return create(cdmiObject, path, getCreateKeys(cdmiObject, path, parentPath));
+  }
+
+  /**
+   * Creates the objects with one script call per batch, all batches sent to the pipeline before
+   * the first result is awaited.
+   */
+  @Override
+  public List<CdmiObject> createChildCdmiObjects(List<? extends CdmiObject> cdmiObjects,
+      List<String> paths, String parentPath) {
+    List<CompletableFuture<Object>> results = new ArrayList<>();
+    for (int from = 0; from < cdmiObjects.size(); from += CREATE_CHILDREN_BATCH_SIZE) {
+      int to = Math.min(from + CREATE_CHILDREN_BATCH_SIZE, cdmiObjects.size());
+      List<? extends CdmiObject> batch = cdmiObjects.subList(from, to);
+      Object[] args = new Object[3 * batch.size()];
+      for (int i = 0; i < batch.size(); i++) {
+        CdmiObject cdmiObject = batch.get(i);
+        args[3 * i] = toRecord(cdmiObject);
+        args[3 * i + 1] = getName(paths.get(from + i));
+        args[3 * i + 2] = cdmiObject.getObjectId();
+      }
+      results.add(redisClient.eval(CREATE_CHILDREN_SCRIPT,
+          getCreateChildrenKeys(batch, paths.subList(from, to), parentPath), args));
+    }
+    List<CdmiObject> created = new ArrayList<>(cdmiObjects.size());
+    for (CompletableFuture<Object> result : results) {
+      List<?> existing = (List<?>) join(result);
+      int from = created.size();
+      int to = Math.min(from + CREATE_CHILDREN_BATCH_SIZE, cdmiObjects.size());
+      for (int i = from; i < to; i++) {
+        created.add(existing != null && existing.get(i - from) == null ? cdmiObjects.get(i) : null);
+      }
+    }
+    log.debug("set {} children of {}", created.size(), parentPath);
+    return created;
+  }
+
+  private CompletableFuture<CdmiObject> create(CdmiObject cdmiObject, String path,
+      List<String> keys) {
+    return create(cdmiObject, path, keys, toRecord(cdmiObject), null);
+  }
+
+  /**
+   * Creates the object with the create script, which returns the id of an object already at the
+   * path. A path still referring to an object that is gone is taken over by a second call.
+   */
+  private CompletableFuture<CdmiObject> create(CdmiObject cdmiObject, String path,
+      List<String> keys, byte[] record, String replacedId) {
+    Object[] args = replacedId != null
+        ? new Object[] {record, getName(path), cdmiObject.getObjectId(), replacedId}
+        : new Object[] {record, getName(path), cdmiObject.getObjectId()};
+    return redisClient.eval(CREATE_SCRIPT, keys, args).thenCompose(existingId -> {
+      if (existingId == null) {
+        log.debug("set {}", path);
+        return CompletableFuture.completedFuture(cdmiObject);
+      }
+      String objectId = new String((byte[]) existingId, StandardCharsets.UTF_8);
+      return getCdmiObjectAsync(objectId, 0, -1).thenCompose(existing -> {
+        if (existing != null) {
+          log.debug("path {} already exists", path);
+          return CompletableFuture.completedFuture(existing);
+        }
+        if (replacedId != null) {
+          log.warn("WARNING: path {} refers to another object on every attempt to create it",
+              path);
+          return CompletableFuture.completedFuture(null);
+        }
+        return create(cdmiObject, path, keys, record, objectId);
+      });
+    });
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    return getCdmiObject(objectId, 0, -1);
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, int childrenFrom, int childrenTo) {
+    return join(getCdmiObjectAsync(objectId, childrenFrom, childrenTo));
+  }
+
+  @Override
+  public CompletableFuture<CdmiObject> getCdmiObjectAsync(String objectId, int childrenFrom,
+      int childrenTo) {
+    return redisClient.get("objectid:" + objectId)
+        .thenCompose(
+            record -> withChildren(fromRecord(recordCodec, record), childrenFrom, childrenTo));
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, Projection projection) {
+    return join(redisClient.get("objectid:" + objectId)
+        .thenCompose(record -> withChildren(fromRecord(recordCodec, record), projection)));
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    return getCdmiObjectByPath(path, 0, -1);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenFrom, int childrenTo) {
+    return join(getCdmiObjectByPathAsync(path, childrenFrom, childrenTo));
+  }
+
+  @Override
+  public CompletableFuture<CdmiObject> getCdmiObjectByPathAsync(String path, int childrenFrom,
+      int childrenTo) {
+    return getRecordByPath(path).thenCompose(
+        record -> withChildren(fromRecord(recordCodec, record), childrenFrom, childrenTo));
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, Projection projection) {
+    return join(getRecordByPath(path)
+        .thenCompose(record -> withChildren(fromRecord(recordCodec, record), projection)));
+  }
+
+  /**
+   * Reads the object id the path refers to, then the object, like
+   * {@link CdmiObjectDaoImpl#getCdmiObjectByPath(String, int, int)}.
+   */
+  private CompletableFuture<byte[]> getRecordByPath(String path) {
+    return redisClient.get(path).thenCompose(objectId -> objectId == null
+        ? CompletableFuture.completedFuture(null)
+        : redisClient.get("objectid:" + new String(objectId, StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Reads the selected children of a container, only the size of its children set if just the
+   * childrenrange is selected and nothing if neither is.
+   */
+  private CompletableFuture<CdmiObject> withChildren(CdmiObject cdmiObject,
+      Projection projection) {
+    int[] childrenRange = projection.getChildrenRange();
+    if (childrenRange != null) {
+      return withChildren(cdmiObject, childrenRange[0], childrenRange[1]);
+    }
+    if (projection.includes("children")) {
+      return withChildren(cdmiObject, 0, -1);
+    }
+    if (!(cdmiObject instanceof Container)) {
+      return CompletableFuture.completedFuture(cdmiObject);
+    }
+    Container container = (Container) cdmiObject;
+    container.setChildren(null);
+    container.setChildrenrange(null);
+    if (projection.includes("childrenrange")) {
+      return redisClient.zcard("children:" + container.getObjectId()).thenApply(count -> {
+        container.setChildrenrange(CdmiObject.getChildrenRange(count));
+        return container;
+      });
+    }
+    return CompletableFuture.completedFuture(container);
+  }
+
+  /**
+   * Reads the given range of children of a container. The range and the size of the children set
+   * are independent, so both are requested at once.
+   */
+  private CompletableFuture<CdmiObject> withChildren(CdmiObject cdmiObject, int childrenFrom,
+      int childrenTo) {
+    if (!(cdmiObject instanceof Container)) {
+      return CompletableFuture.completedFuture(cdmiObject);
+    }
+
+    Container container = (Container) cdmiObject;
+    String childrenKey = "children:" + container.getObjectId();
+    CompletableFuture<Set<String>> children =
+        redisClient.zrange(childrenKey, childrenFrom, childrenTo);
+    CompletableFuture<Long> childrenCount = (childrenFrom == 0 && childrenTo == -1)
+        ? children.thenApply(set -> (long) set.size()) : redisClient.zcard(childrenKey);
+
+    return children.thenCombine(childrenCount, (set, count) -> {
+      container.setChildren(new JSONArray(set));
+      container.setChildrenrange(CdmiObject.getChildrenRange(count));
+      return container;
+    });
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    String objectId = cdmiObject.getObjectId();
+    join(redisClient.set("objectid:" + objectId, toRecord(cdmiObject)));
+    log.debug("set {}", "objectid:" + objectId);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    return join(updateCdmiObjectAsync(cdmiObject, path));
+  }
+
+  @Override
+  public CompletableFuture<CdmiObject> updateCdmiObjectAsync(CdmiObject cdmiObject, String path) {
+    String objectId = cdmiObject.getObjectId();
+    return redisClient
+        .mset(toBytes(path), toBytes(objectId), toBytes("objectid:" + objectId),
+            toRecord(cdmiObject))
+        .thenApply(reply -> {
+          log.debug("set {}", path);
+          return cdmiObject;
+        });
+  }
+
+  /**
+   * Updates the object like {@link CdmiObjectDaoImpl#updateCdmiObject(CdmiObject, String, String)},
+   * waiting for the script call to find out whether the version matched.
+   */
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path, String expectedVersion) {
+    String objectId = cdmiObject.getObjectId();
+    Object updated = join(redisClient.eval(UPDATE_SCRIPT,
+        Arrays.asList(path, "objectid:" + objectId), toRecord(cdmiObject), objectId,
+        expectedVersion));
+    if (!Long.valueOf(1).equals(updated)) {
+      throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+    }
+
+    log.debug("set {}", path);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    CdmiObject cdmiObject = getCdmiObject(objectId);
+    join(redisClient.del("objectid:" + objectId, "children:" + objectId));
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    return join(deleteCdmiObjectByPathAsync(path));
+  }
+
+  @Override
+  public CompletableFuture<CdmiObject> deleteCdmiObjectByPathAsync(String path) {
+    return getCdmiObjectByPathAsync(path, 0, -1).thenCompose(cdmiObject -> {
+      if (cdmiObject == null) {
+        return CompletableFuture.completedFuture(null);
+      }
+      return redisClient.eval(DELETE_SCRIPT, getDeleteKeys(cdmiObject, path), getName(path))
+          .thenApply(deleted -> {
+            log.debug("delete {} {} keys", path, deleted);
+            return cdmiObject;
+          });
+    });
+  }
+
+  /**
+   * Deletes the object like {@link CdmiObjectDaoImpl#deleteCdmiObjectByPath(String, String)},
+   * waiting for the script call to find out whether the version matched.
+   */
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path, String expectedVersion) {
+    CdmiObject cdmiObject = getCdmiObjectByPath(path);
+    if (cdmiObject == null) {
+      return null;
+    }
+
+    Object deleted = join(redisClient.eval(DELETE_SCRIPT, getDeleteKeys(cdmiObject, path),
+        getName(path), expectedVersion));
+    if (deleted instanceof Long && (Long) deleted < 0) {
+      throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+    }
+    log.debug("delete {} {} keys", path, deleted);
+    return cdmiObject;
+  }
+
+  /**
+   * Serializes the object for storage and sets its version to the one of the record, so the
+   * written object carries the version it is stored at.
+   */
+  private byte[] toRecord(CdmiObject cdmiObject) {
+    byte[] record = recordCodec.encode(toStoredJson(cdmiObject));
+    cdmiObject.setVersion(RecordCodecs.getVersion(record));
+    return record;
+  }
+
+  private static byte[] toBytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (Exception ex) {
+      Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+      log.error("{} {}", cause.getClass().getName(), cause.getMessage());
+    }
+    return null;
+  }
+}
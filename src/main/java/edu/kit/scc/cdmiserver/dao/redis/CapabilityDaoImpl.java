@@ -53,14 +53,16 @@ public class CapabilityDaoImpl implements CapabilityDao {
     }
 
     log.debug("create the capability meta-data files");
-    log.debug("get parent object {}", parentPath.toString());
+    log.debug("get parent object {}", parentPath);
     Capability parentCapability =
         (Capability) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString());
-    log.debug("parent object {}", parentCapability.toString());
+    log.debug("parent object {}", parentCapability);
 
     Capability capability = new Capability(urlPath.getFileName().toString(), parentPath.toString(),
         parentCapability.getObjectId());
-    log.debug("create capability {}", capability.toJson());
+    if (log.isDebugEnabled()) {
+      log.debug("create capability {}", capability.toJson());
+    }
 
     if (parentCapability.getChildren() == null) {
       parentCapability.setChildren(new JSONArray());
@@ -89,7 +91,6 @@ public class CapabilityDaoImpl implements CapabilityDao {
     // }
 
     capability = (Capability) cdmiObjectDao.createCdmiObject(capability, urlPath.toString(), true);
-    cdmiObjectDao.updateCdmiObject(parentCapability);
     cdmiObjectDao.updateCdmiObject(parentCapability, parentPath.toString());
     // capability = (Capability) cdmiObjectDao.getCdmiObjectByPath(urlPath.toString());
     // log.debug("return capability {}", capability.toJson());
@@ -9,24 +9,83 @@
 
 package edu.kit.scc.cdmiserver.dao.redis;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
-import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
-import org.snia.cdmiserver.model.DataObject;
-import org.snia.cdmiserver.model.Domain;
-import org.snia.cdmiserver.util.MediaTypes;
+import org.snia.cdmiserver.util.Projection;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   private static final Logger log = LoggerFactory.getLogger(CdmiObjectDaoImpl.class);
 
+  // the records are binary, so the scripts taking them pass them on as they are
+  static final RedisScript<byte[]> CREATE_SCRIPT = loadScript("redis/create.lua", byte[].class);
+
+  @SuppressWarnings("rawtypes")
+  static final RedisScript<List> CREATE_CHILDREN_SCRIPT =
+      loadScript("redis/create_children.lua", List.class);
+
+  /**
+   * Maximum number of objects linked into their parent by one call of the script, so a large
+   * batch doesn't block the server for long.
+   */
+  static final int CREATE_CHILDREN_BATCH_SIZE = 1000;
+
+  static final RedisScript<Long> UPDATE_SCRIPT = loadScript("redis/update.lua", Long.class);
+
+  static final RedisScript<Long> DELETE_SCRIPT =
+      loadScript("redis/delete.lua", Long.class);
+
+  static final RedisSerializer<byte[]> RECORD_SERIALIZER = new RecordRedisSerializer();
+
+  // the elements of list script results are deserialized one by one, so records pass through
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  static final RedisSerializer<List> LIST_SERIALIZER = (RedisSerializer) RECORD_SERIALIZER;
+
+  // integer script results aren't deserialized, this only gives the calls their result type
+  static final RedisSerializer<Long> LONG_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
   private StringRedisTemplate redisTemplate;
 
+  private RecordCodec recordCodec = RecordCodecs.forFormat(RecordCodecs.JSON);
+
+  static <T> RedisScript<T> loadScript(String location, Class<T> resultType) {
+    // read the script once, a resource script source would be re-checked for changes on every call
+    try (InputStream in = new ClassPathResource(location).getInputStream()) {
+      return new DefaultRedisScript<>(StreamUtils.copyToString(in, StandardCharsets.UTF_8),
+          resultType);
+    } catch (IOException ex) {
+      throw new IllegalStateException("could not load Redis script " + location, ex);
+    }
+  }
+
   public StringRedisTemplate getRedisTemplate() {
     return redisTemplate;
   }
@@ -35,13 +94,22 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     this.redisTemplate = redisTemplate;
   }
 
+  public RecordCodec getRecordCodec() {
+    return recordCodec;
+  }
+
+  public void setRecordCodec(RecordCodec recordCodec) {
+    this.recordCodec = recordCodec;
+  }
+
   @Override
   public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
     String objectId = cdmiObject.getObjectId();
-    String objectJson = cdmiObject.toJson().toString();
+    byte[] record = toRecord(cdmiObject);
 
-    if (redisTemplate.opsForValue().setIfAbsent("objectid:" + objectId, objectJson)) {
-      log.debug("set {} {}", "objectid:" + objectId, objectJson);
+    if (redisTemplate.execute((RedisCallback<Boolean>) connection -> connection
+        .setNX(toBytes("objectid:" + objectId), record))) {
+      log.debug("set {}", "objectid:" + objectId);
       return cdmiObject;
     }
 
@@ -51,47 +119,196 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   @Override
   public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
-    if (redisTemplate.opsForValue().setIfAbsent(path, cdmiObject.toJson().toString())) {
-      CdmiObject object = createCdmiObject(cdmiObject);
-      log.debug("set {} {}", path, object.toJson().toString());
-      return cdmiObject;
-    }
-
-    log.debug("path {} already exists", path);
-    return getCdmiObjectByPath(path);
+    return createCdmiObject(cdmiObject, path, Arrays.asList(path, "objectid:"
+        + cdmiObject.getObjectId()));
   }
 
   @Override
   public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
-    redisTemplate.opsForValue().set(path, cdmiObject.toJson().toString());
-    CdmiObject object = createCdmiObject(cdmiObject);
-    log.debug("set {} {}", path, object.toJson().toString());
-    return cdmiObject;
+    return updateCdmiObject(cdmiObject, path);
+  }
+
+  /**
+   * Creates the object under the given path and adds it to the children set of its parent in one
+   * atomic script call.
+   */
+  @Override
+  public CdmiObject createChildCdmiObject(CdmiObject cdmiObject, String path, String parentPath) {
+    return createCdmiObject(cdmiObject, path, getCreateKeys(cdmiObject, path, parentPath));
+  }
+
+  /**
+   * Creates the objects with one script call per batch, which links all of them into their parent
+   * with one ZADD.
+   */
+  @Override
+  public List<CdmiObject> createChildCdmiObjects(List<? extends CdmiObject> cdmiObjects,
+      List<String> paths, String parentPath) {
+    List<CdmiObject> created = new ArrayList<>(cdmiObjects.size());
+    for (int from = 0; from < cdmiObjects.size(); from += CREATE_CHILDREN_BATCH_SIZE) {
+      int to = Math.min(from + CREATE_CHILDREN_BATCH_SIZE, cdmiObjects.size());
+      List<? extends CdmiObject> batch = cdmiObjects.subList(from, to);
+      List<String> keys = getCreateChildrenKeys(batch, paths.subList(from, to), parentPath);
+      byte[][] args = new byte[3 * batch.size()][];
+      for (int i = 0; i < batch.size(); i++) {
+        CdmiObject cdmiObject = batch.get(i);
+        args[3 * i] = toRecord(cdmiObject);
+        args[3 * i + 1] = toBytes(getName(paths.get(from + i)));
+        args[3 * i + 2] = toBytes(cdmiObject.getObjectId());
+      }
+      List<?> existing;
+      try {
+        existing = redisTemplate.execute(CREATE_CHILDREN_SCRIPT, RECORD_SERIALIZER,
+            LIST_SERIALIZER, keys, (Object[]) args);
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        existing = null;
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        created.add(existing != null && existing.get(i) == null ? batch.get(i) : null);
+      }
+    }
+    log.debug("set {} children of {}", created.size(), parentPath);
+    return created;
+  }
+
+  /**
+   * Creates the object with the create script, which returns the id of an object already at the
+   * path. A path still referring to an object that is gone is taken over by a second call.
+   */
+  private CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, List<String> keys) {
+    byte[] record = toRecord(cdmiObject);
+    byte[] replacedId = null;
+    for (int attempt = 0; attempt < 2; attempt++) {
+      byte[] existingId;
+      try {
+        Object[] args = replacedId != null
+            ? new Object[] {record, toBytes(getName(path)), toBytes(cdmiObject.getObjectId()),
+                replacedId}
+            : new Object[] {record, toBytes(getName(path)), toBytes(cdmiObject.getObjectId())};
+        existingId = redisTemplate.execute(CREATE_SCRIPT, RECORD_SERIALIZER, RECORD_SERIALIZER,
+            keys, args);
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+
+      if (existingId == null) {
+        log.debug("set {}", path);
+        return cdmiObject;
+      }
+      CdmiObject existing = getCdmiObject(new String(existingId, StandardCharsets.UTF_8));
+      if (existing != null) {
+        log.debug("path {} already exists", path);
+        return existing;
+      }
+      replacedId = existingId;
+    }
+    log.warn("WARNING: path {} refers to another object on every attempt to create it", path);
+    return null;
   }
 
   @Override
   public CdmiObject getCdmiObject(String objectId) {
-    String object = redisTemplate.opsForValue().get("objectid:" + objectId);
+    return getCdmiObject(objectId, 0, -1);
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, int childrenFrom, int childrenTo) {
+    byte[] record = redisTemplate.execute(
+        (RedisCallback<byte[]>) connection -> connection.get(toBytes("objectid:" + objectId)));
+    return withChildren(fromRecord(record), childrenFrom, childrenTo);
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, Projection projection) {
+    byte[] record = redisTemplate.execute(
+        (RedisCallback<byte[]>) connection -> connection.get(toBytes("objectid:" + objectId)));
+    return withChildren(fromRecord(record), projection);
+  }
+
+  /**
+   * Serializes the object for storage and sets its version to the one of the record, so the
+   * written object carries the version it is stored at.
+   */
+  private byte[] toRecord(CdmiObject cdmiObject) {
+    byte[] record = recordCodec.encode(toStoredJson(cdmiObject));
+    cdmiObject.setVersion(RecordCodecs.getVersion(record));
+    return record;
+  }
+
+  private CdmiObject fromRecord(byte[] record) {
+    return fromRecord(recordCodec, record);
+  }
+
+  /**
+   * Serializes the object for storage. The children of a container are kept in their own sorted
+   * set, so they are not part of the stored JSON.
+   */
+  static JSONObject toStoredJson(CdmiObject cdmiObject) {
+    JSONObject json = cdmiObject.toJson();
+    if (cdmiObject instanceof Container) {
+      json.remove("children");
+      json.remove("childrenrange");
+    }
+    return json;
+  }
+
+  /**
+   * Reads the given range of children of a container from its children set. The childrenrange
+   * always reflects the whole set.
+   */
+  private CdmiObject withChildren(CdmiObject cdmiObject, int childrenFrom, int childrenTo) {
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      String childrenKey = "children:" + container.getObjectId();
+
+      Set<String> children =
+          redisTemplate.opsForZSet().range(childrenKey, childrenFrom, childrenTo);
+      long childrenCount = (childrenFrom == 0 && childrenTo == -1) ? children.size()
+          : redisTemplate.opsForZSet().zCard(childrenKey);
+
+      container.setChildren(new JSONArray(children));
+      container.setChildrenrange(CdmiObject.getChildrenRange(childrenCount));
+    }
+    return cdmiObject;
+  }
+
+  /**
+   * Reads the selected children of a container from its children set, only the size of the set if
+   * just the childrenrange is selected and nothing if neither is.
+   */
+  private CdmiObject withChildren(CdmiObject cdmiObject, Projection projection) {
+    int[] childrenRange = projection.getChildrenRange();
+    if (childrenRange != null) {
+      return withChildren(cdmiObject, childrenRange[0], childrenRange[1]);
+    }
+    if (projection.includes("children")) {
+      return withChildren(cdmiObject, 0, -1);
+    }
+    if (!(cdmiObject instanceof Container)) {
+      return cdmiObject;
+    }
+    Container container = (Container) cdmiObject;
+    container.setChildren(null);
+    container.setChildrenrange(null);
+    if (projection.includes("childrenrange")) {
+      long childrenCount =
+          redisTemplate.opsForZSet().zCard("children:" + container.getObjectId());
+      container.setChildrenrange(CdmiObject.getChildrenRange(childrenCount));
+    }
+    return container;
+  }
 
+  static CdmiObject fromRecord(RecordCodec recordCodec, byte[] record) {
+    if (record == null) {
+      return null;
+    }
     try {
-      JSONObject objectJson = new JSONObject(object);
-      String objectType = objectJson.optString("objectType");
-
-      if (objectType != null) {
-        if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(objectJson);
-        } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(objectJson);
-        } else {
-          return CdmiObject.fromJson(objectJson);
-        }
-      }
+      CdmiObject cdmiObject = recordCodec.decode(record);
+      cdmiObject.setVersion(RecordCodecs.getVersion(record));
+      return cdmiObject;
     } catch (Exception ex) {
-      // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
     }
     return null;
@@ -100,17 +317,48 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
   @Override
   public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
     String objectId = cdmiObject.getObjectId();
-    String objectJson = cdmiObject.toJson().toString();
+    byte[] record = toRecord(cdmiObject);
 
-    redisTemplate.opsForValue().set("objectid:" + objectId, objectJson);
-    log.debug("set {} {}", "objectid:" + objectId, objectJson);
+    redisTemplate.execute((RedisCallback<Void>) connection -> {
+      connection.set(toBytes("objectid:" + objectId), record);
+      return null;
+    });
+    log.debug("set {}", "objectid:" + objectId);
     return cdmiObject;
   }
 
+  /**
+   * Updates the object and the reference to it from the given path in one atomic call.
+   */
   @Override
   public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
-    redisTemplate.opsForValue().set(path, cdmiObject.toJson().toString());
-    log.debug("set {} {}", path, cdmiObject.toJson().toString());
+    Map<byte[], byte[]> values = new HashMap<>();
+    values.put(toBytes(path), toBytes(cdmiObject.getObjectId()));
+    values.put(toBytes("objectid:" + cdmiObject.getObjectId()), toRecord(cdmiObject));
+    redisTemplate.execute((RedisCallback<Void>) connection -> {
+      connection.mSet(values);
+      return null;
+    });
+
+    log.debug("set {}", path);
+    return cdmiObject;
+  }
+
+  /**
+   * Updates the object and the reference to it from the given path in one atomic script call,
+   * which compares the version with the SHA-1 hash of the stored record.
+   */
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path, String expectedVersion) {
+    String objectId = cdmiObject.getObjectId();
+    Long updated = redisTemplate.execute(UPDATE_SCRIPT, RECORD_SERIALIZER, LONG_SERIALIZER,
+        Arrays.asList(path, "objectid:" + objectId), toRecord(cdmiObject), toBytes(objectId),
+        toBytes(expectedVersion));
+    if (updated == null || updated != 1) {
+      throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+    }
+
+    log.debug("set {}", path);
     return cdmiObject;
   }
 
@@ -118,48 +366,128 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
   public CdmiObject deleteCdmiObject(String objectId) {
     CdmiObject cdmiObject = getCdmiObject(objectId);
 
-    redisTemplate.delete("objectid:" + objectId);
+    redisTemplate.delete(Arrays.asList("objectid:" + objectId, "children:" + objectId));
 
     return cdmiObject;
   }
 
   @Override
   public CdmiObject getCdmiObjectByPath(String path) {
-    String object = redisTemplate.opsForValue().get(path);
+    return getCdmiObjectByPath(path, 0, -1);
+  }
 
-    try {
-      JSONObject objectJson = new JSONObject(object);
-      String objectType = objectJson.optString("objectType");
-
-      if (objectType != null) {
-        if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(objectJson);
-        } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(objectJson);
-        } else {
-          return CdmiObject.fromJson(objectJson);
-        }
+  /**
+   * Gets the object referenced by the given path. The objectid key isn't known before the path is
+   * read, so a script resolving the reference would access an undeclared key. An object deleted
+   * between both reads is missing, as it would be a moment later.
+   */
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenFrom, int childrenTo) {
+    return withChildren(fromRecord(getRecordByPath(path)), childrenFrom, childrenTo);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, Projection projection) {
+    return withChildren(fromRecord(getRecordByPath(path)), projection);
+  }
+
+  private byte[] getRecordByPath(String path) {
+    return redisTemplate.execute((RedisCallback<byte[]>) connection -> {
+      byte[] objectId = connection.get(toBytes(path));
+      if (objectId == null) {
+        return null;
       }
-    } catch (Exception ex) {
-      // ex.printStackTrace();
-      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
-    }
-    return null;
+      return connection.get(toBytes("objectid:" + new String(objectId, StandardCharsets.UTF_8)));
+    });
   }
 
+  /**
+   * Deletes the object under the given path together with its children set and removes it from the
+   * children set of its parent in one atomic script call.
+   */
   @Override
   public CdmiObject deleteCdmiObjectByPath(String path) {
     CdmiObject cdmiObject = getCdmiObjectByPath(path);
 
-    deleteCdmiObject(cdmiObject.getObjectId());
+    if (cdmiObject != null) {
+      Long deleted =
+          redisTemplate.execute(DELETE_SCRIPT, getDeleteKeys(cdmiObject, path), getName(path));
+      log.debug("delete {} {} keys", path, deleted);
+    }
+
+    return cdmiObject;
+  }
 
-    redisTemplate.delete(path);
+  /**
+   * Like {@link #deleteCdmiObjectByPath(String)}, the delete script comparing the version with the
+   * SHA-1 hash of the stored record first.
+   */
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path, String expectedVersion) {
+    CdmiObject cdmiObject = getCdmiObjectByPath(path);
+
+    if (cdmiObject != null) {
+      Long deleted = redisTemplate.execute(DELETE_SCRIPT, getDeleteKeys(cdmiObject, path),
+          getName(path), expectedVersion);
+      if (deleted != null && deleted < 0) {
+        throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+      }
+      log.debug("delete {} {} keys", path, deleted);
+    }
 
     return cdmiObject;
   }
 
+  private static byte[] toBytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the name of the object at the given path, as listed in the children of its parent.
+   */
+  static String getName(String path) {
+    Path fileName = Paths.get(path).getFileName();
+    return fileName != null ? fileName.toString() : path;
+  }
+
+  /**
+   * Gets the keys of the create script for an object with the given parent.
+   */
+  static List<String> getCreateKeys(CdmiObject cdmiObject, String path, String parentPath) {
+    return Arrays.asList(path, "objectid:" + cdmiObject.getObjectId(), parentPath,
+        "children:" + getParentId(cdmiObject));
+  }
+
+  /**
+   * Gets the keys of the create children script for objects with the same parent.
+   */
+  static List<String> getCreateChildrenKeys(List<? extends CdmiObject> cdmiObjects,
+      List<String> paths, String parentPath) {
+    List<String> keys = new ArrayList<>(2 * cdmiObjects.size() + 2);
+    keys.add(parentPath);
+    keys.add("children:" + getParentId(cdmiObjects.get(0)));
+    for (int i = 0; i < cdmiObjects.size(); i++) {
+      keys.add(paths.get(i));
+      keys.add("objectid:" + cdmiObjects.get(i).getObjectId());
+    }
+    return keys;
+  }
+
+  /**
+   * Gets the keys of the delete script for the given object, the root has no parent to unlink
+   * from.
+   */
+  static List<String> getDeleteKeys(CdmiObject cdmiObject, String path) {
+    String objectId = cdmiObject.getObjectId();
+    if (Paths.get(path).getParent() == null) {
+      return Arrays.asList(path, "objectid:" + objectId, "children:" + objectId);
+    }
+    return Arrays.asList(path, "objectid:" + objectId, "children:" + objectId,
+        "children:" + getParentId(cdmiObject));
+  }
+
+  private static String getParentId(CdmiObject cdmiObject) {
+    String parentId = cdmiObject.getParentId();
+    return parentId != null ? parentId : "";
+  }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.util.MediaTypes;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Moves the children of containers stored by older versions, which kept them as a JSON array
+ * inside the container, into the per-container children sets. Expects the path keys to have been
+ * migrated by {@link PathIndexMigration} already.
+ */
+public class ChildrenIndexMigration extends KeyspaceMigration {
+
+  private static final Logger log = LoggerFactory.getLogger(ChildrenIndexMigration.class);
+
+  @Override
+  public int migrate() {
+    StringRedisTemplate redisTemplate = getRedisTemplate();
+
+    int migrated = 0;
+    for (String key : scanKeys("objectid:*")) {
+      try {
+        byte[] record = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection
+            .get(key.getBytes(StandardCharsets.UTF_8)));
+        // only JSON records were written by versions storing the children inline
+        if (record == null || !RecordCodecs.isJson(record)) {
+          continue;
+        }
+
+        JSONObject json = RecordCodecs.decodeJson(record);
+        if (!MediaTypes.CONTAINER.equals(json.optString("objectType"))
+            || !json.has("children")) {
+          continue;
+        }
+
+        String objectId = json.getString("objectID");
+        JSONArray children = json.optJSONArray("children");
+        if (children != null) {
+          for (int i = 0; i < children.length(); i++) {
+            redisTemplate.opsForZSet().add("children:" + objectId, children.getString(i), 0);
+          }
+        }
+
+        json.remove("children");
+        json.remove("childrenrange");
+        redisTemplate.opsForValue().set(key, json.toString());
+
+        log.debug("migrated {} children of {}", children != null ? children.length() : 0, key);
+        migrated++;
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+
+    if (migrated > 0) {
+      log.info("Moved the children of {} containers into children sets", migrated);
+    }
+    return migrated;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.List;
+
+/**
+ * Routes keys to the masters of a Redis Cluster by their hash slot.
+ *
+ * <p>
+ * The slot map is read from the first reachable of the configured nodes on start, so the router
+ * has to be restarted after the slots of the cluster have been moved.
+ * </p>
+ */
+public class ClusterShardRouter extends ShardRouter {
+
+  private static final Logger log = LoggerFactory.getLogger(ClusterShardRouter.class);
+
+  private static final int SLOTS = 16384;
+
+  private volatile StringRedisTemplate[] slots = new StringRedisTemplate[SLOTS];
+
+  @Override
+  public void start() {
+    for (String node : getNodes()) {
+      int separator = node.lastIndexOf(':');
+      try (Jedis jedis = new Jedis(node.substring(0, separator).trim(),
+          Integer.parseInt(node.substring(separator + 1).trim()))) {
+        setSlots(jedis.clusterSlots());
+        return;
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+    throw new IllegalStateException("could not read the cluster slots from any of " + getNodes());
+  }
+
+  /**
+   * Routes the slots to the masters serving them.
+   *
+   * @param ranges the slot ranges as replied to CLUSTER SLOTS
+   */
+  public void setSlots(List<Object> ranges) {
+    slots = readSlots(ranges);
+  }
+
+  @SuppressWarnings("unchecked")
+  private StringRedisTemplate[] readSlots(List<Object> ranges) {
+    StringRedisTemplate[] slots = new StringRedisTemplate[SLOTS];
+    for (Object range : ranges) {
+      // start slot, end slot, master, replicas
+      List<Object> slotRange = (List<Object>) range;
+      List<Object> master = (List<Object>) slotRange.get(2);
+      StringRedisTemplate shard =
+          connect(SafeEncoder.encode((byte[]) master.get(0)) + ":" + master.get(1));
+      for (long slot = (Long) slotRange.get(0); slot <= (Long) slotRange.get(1); slot++) {
+        slots[(int) slot] = shard;
+      }
+    }
+    return slots;
+  }
+
+  @Override
+  public void stop() {
+    slots = new StringRedisTemplate[SLOTS];
+    super.stop();
+  }
+
+  @Override
+  public StringRedisTemplate getShard(String key) {
+    int slot = JedisClusterCRC16.getSlot(key);
+    StringRedisTemplate shard = slots[slot];
+    if (shard == null) {
+      throw new IllegalStateException("slot " + slot + " is not served by any cluster node");
+    }
+    return shard;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.clients.util.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Distributes keys over independent Redis instances by consistent hashing.
+ *
+ * <p>
+ * Every node is placed on the hash ring a number of times, named after its address, so the order
+ * of the configured nodes doesn't matter and adding a node only moves the keys it takes over.
+ * </p>
+ */
+public class ConsistentHashShardRouter extends ShardRouter {
+
+  private static final int SEED = 0x1234ABCD;
+
+  private int virtualNodes = 160;
+
+  private volatile NavigableMap<Long, StringRedisTemplate> ring = new TreeMap<>();
+
+  public int getVirtualNodes() {
+    return virtualNodes;
+  }
+
+  public void setVirtualNodes(int virtualNodes) {
+    this.virtualNodes = virtualNodes;
+  }
+
+  @Override
+  public void start() {
+    NavigableMap<Long, StringRedisTemplate> ring = new TreeMap<>();
+    for (String node : getNodes()) {
+      StringRedisTemplate shard = connect(node.trim());
+      for (int i = 0; i < virtualNodes; i++) {
+        ring.put(hash(node.trim() + "-" + i), shard);
+      }
+    }
+    this.ring = ring;
+  }
+
+  @Override
+  public void stop() {
+    ring = new TreeMap<>();
+    super.stop();
+  }
+
+  @Override
+  public StringRedisTemplate getShard(String key) {
+    NavigableMap<Long, StringRedisTemplate> ring = this.ring;
+    if (ring.isEmpty()) {
+      throw new IllegalStateException("no shards");
+    }
+    Map.Entry<Long, StringRedisTemplate> entry = ring.ceilingEntry(hash(getHashTag(key)));
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  private static long hash(String value) {
+    return MurmurHash.hash64A(value.getBytes(StandardCharsets.UTF_8), SEED);
+  }
+}
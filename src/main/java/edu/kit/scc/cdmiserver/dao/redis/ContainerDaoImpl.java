@@ -9,7 +9,6 @@
 
 package edu.kit.scc.cdmiserver.dao.redis;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +19,9 @@ import org.snia.cdmiserver.model.Container;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ContainerDaoImpl implements ContainerDao {
 
@@ -49,8 +51,9 @@ public class ContainerDaoImpl implements ContainerDao {
     }
 
     // create the container meta-data files
+    // only the parent's object id is needed, so don't read all of its children
     Container parentContainer =
-        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString());
+        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, 0);
 
     if (parentContainer == null) {
       parentContainer =
@@ -60,36 +63,49 @@ public class ContainerDaoImpl implements ContainerDao {
     Container container = new Container(urlPath.getFileName().toString(), parentPath.toString(),
         parentContainer.getObjectId());
 
-    if (parentContainer.getChildren() == null) {
-      parentContainer.setChildren(new JSONArray());
-    }
-
-    JSONArray children = parentContainer.getChildren();
-    JSONArray filteredChildren = new JSONArray();
-
-    for (int i = 0; i < children.length(); i++) {
-      if (!children.get(i).equals(container.getObjectName())) {
-        filteredChildren.put(children.get(i));
-      }
-    }
-
-    filteredChildren.put(container.getObjectName());
-    parentContainer.setChildren(filteredChildren);
-
-    String childrenRange = CdmiObject.getChildrenRange(parentContainer.getChildren());
-    parentContainer.setChildrenrange(childrenRange);
-
     container.setCompletionStatus("Complete");
     container.setMetadata(containerRequest.getMetadata());
     // container.setCapabilitiesUri(containerRequest.getCapabilitiesUri());
 
-    container = (Container) cdmiObjectDao.createCdmiObject(container, urlPath.toString());
-    cdmiObjectDao.updateCdmiObject(parentContainer);
-    cdmiObjectDao.updateCdmiObject(parentContainer, parentPath.toString());
+    container = (Container) cdmiObjectDao.createChildCdmiObject(container, urlPath.toString(),
+        parentPath.toString());
 
     return container;
   }
 
+  @Override
+  public List<Container> createChildrenByPath(String path, List<String> names,
+      List<Container> containerRequests) {
+    List<Container> containers = new ArrayList<>(names.size());
+    Path parentPath = Paths.get(path.trim());
+    // only the parent's object id is needed, so don't read all of its children
+    CdmiObject parentContainer = cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, 0);
+    if (!(parentContainer instanceof Container)) {
+      log.debug("no parent container {}", parentPath);
+      containers.addAll(Collections.nCopies(names.size(), null));
+      return containers;
+    }
+
+    List<String> paths = new ArrayList<>(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      Container container = new Container(names.get(i), parentPath.toString(),
+          parentContainer.getObjectId());
+
+      container.setCompletionStatus("Complete");
+      container.setMetadata(containerRequests.get(i).getMetadata());
+      containers.add(container);
+      paths.add(parentPath.resolve(names.get(i)).toString());
+    }
+
+    // all of them are linked into the parent at once
+    List<CdmiObject> created =
+        cdmiObjectDao.createChildCdmiObjects(containers, paths, parentPath.toString());
+    for (int i = 0; i < created.size(); i++) {
+      containers.set(i, (Container) created.get(i));
+    }
+    return containers;
+  }
+
   @Override
   public Container deleteByPath(String path) {
     Container container = null;
@@ -100,11 +116,7 @@ public class ContainerDaoImpl implements ContainerDao {
 
       if (container != null) {
 
-        cdmiObjectDao.deleteCdmiObject(container.getObjectId());
         cdmiObjectDao.deleteCdmiObjectByPath(path.trim());
-
-        // removeChild(containerPath.getFileName().toString(),
-        // containerPath.getParent().toString());
       }
     } catch (Exception ex) {
       log.error("ERROR: {}", ex.getMessage());
@@ -112,6 +124,13 @@ public class ContainerDaoImpl implements ContainerDao {
     return container;
   }
 
+  @Override
+  public Container deleteByPath(String path, String expectedVersion) {
+    log.debug("delete container {} at version {}", path.trim(), expectedVersion);
+
+    return (Container) cdmiObjectDao.deleteCdmiObjectByPath(path.trim(), expectedVersion);
+  }
+
   @Override
   public Container findByObjectId(String objectId) {
     return (Container) cdmiObjectDao.getCdmiObject(objectId);
@@ -9,7 +9,6 @@
 
 package edu.kit.scc.cdmiserver.dao.redis;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,8 +19,13 @@ import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class DataObjectDaoImpl implements DataObjectDao {
 
@@ -57,8 +61,9 @@ public class DataObjectDaoImpl implements DataObjectDao {
     }
 
     // create the data object meta-data files
+    // only the parent's object id is needed, so don't read all of its children
     Container parentContainer =
-        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString());
+        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, 0);
 
     if (parentContainer == null) {
       parentContainer = containerDao.createByPath(parentPath.toString(),
@@ -68,39 +73,58 @@ public class DataObjectDaoImpl implements DataObjectDao {
     DataObject dataObject = new DataObject(urlPath.getFileName().toString(), parentPath.toString(),
         parentContainer.getObjectId());
 
-    if (parentContainer.getChildren() == null) {
-      parentContainer.setChildren(new JSONArray());
-    }
+    dataObject.setCompletionStatus("Complete");
+    dataObject.setMetadata(dataObjectRequest.getMetadata());
+    // dataObject.setCapabilitiesUri(dataObjectRequest.getCapabilitiesUri());
 
-    JSONArray children = parentContainer.getChildren();
-    JSONArray filteredChildren = new JSONArray();
+    dataObject = (DataObject) cdmiObjectDao.createChildCdmiObject(dataObject, urlPath.toString(),
+        parentPath.toString());
 
-    for (int i = 0; i < children.length(); i++) {
-      if (!children.get(i).equals(dataObject.getObjectName())) {
-        filteredChildren.put(children.get(i));
-      }
-    }
+    return dataObject;
+  }
 
-    filteredChildren.put(dataObject.getObjectName());
-    parentContainer.setChildren(filteredChildren);
+  @Override
+  public List<DataObject> createChildrenByPath(String path, List<String> names,
+      List<DataObject> dataObjectRequests) {
+    List<DataObject> dataObjects = new ArrayList<>(names.size());
+    Path parentPath = Paths.get(path.trim());
+    // only the parent's object id is needed, so don't read all of its children
+    CdmiObject parentContainer = cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, 0);
+    if (!(parentContainer instanceof Container)) {
+      log.debug("no parent container {}", parentPath);
+      dataObjects.addAll(Collections.nCopies(names.size(), null));
+      return dataObjects;
+    }
 
-    String childrenRange = CdmiObject.getChildrenRange(parentContainer.getChildren());
-    parentContainer.setChildrenrange(childrenRange);
+    List<String> paths = new ArrayList<>(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      DataObject dataObject = new DataObject(names.get(i), parentPath.toString(),
+          parentContainer.getObjectId());
 
-    dataObject.setCompletionStatus("Complete");
-    dataObject.setMetadata(dataObjectRequest.getMetadata());
-    // dataObject.setCapabilitiesUri(dataObjectRequest.getCapabilitiesUri());
+      dataObject.setCompletionStatus("Complete");
+      dataObject.setMetadata(dataObjectRequests.get(i).getMetadata());
+      dataObjects.add(dataObject);
+      paths.add(parentPath.resolve(names.get(i)).toString());
+    }
 
-    dataObject = (DataObject) cdmiObjectDao.createCdmiObject(dataObject, urlPath.toString());
-    cdmiObjectDao.updateCdmiObject(parentContainer);
-    cdmiObjectDao.updateCdmiObject(parentContainer, parentPath.toString());
+    // all of them are linked into the parent at once
+    List<CdmiObject> created =
+        cdmiObjectDao.createChildCdmiObjects(dataObjects, paths, parentPath.toString());
+    for (int i = 0; i < created.size(); i++) {
+      dataObjects.set(i, (DataObject) created.get(i));
+    }
+    return dataObjects;
+  }
 
-    return dataObject;
+  @Override
+  public DataObject createNonCdmiByPath(String path, String contentType,
+      ReadableByteChannel content) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.createNonCDMIByPath()");
   }
 
   @Override
   public DataObject createNonCdmiByPath(String path, String contentType,
-      DataObject dataObjectRequest) {
+      ReadableByteChannel content, String valueHash) {
     throw new UnsupportedOperationException("DataObjectDaoImpl.createNonCDMIByPath()");
   }
 
@@ -114,6 +138,38 @@ public class DataObjectDaoImpl implements DataObjectDao {
     throw new UnsupportedOperationException("DataObjectDaoImpl.updateContent()");
   }
 
+  @Override
+  public DataObject updateContent(String path, ReadableByteChannel content, String valueHash) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.updateContent()");
+  }
+
+  @Override
+  public DataObject updateContent(String path, long position, long count,
+      ReadableByteChannel content) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.updateContent()");
+  }
+
+  @Override
+  public DataObject appendContent(String path, ReadableByteChannel content) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.appendContent()");
+  }
+
+  @Override
+  public DataObject updatePartialContent(String path, long position, long count, long size,
+      ReadableByteChannel content) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.updatePartialContent()");
+  }
+
+  @Override
+  public DataObject publishContent(String path, String valueHash) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.publishContent()");
+  }
+
+  @Override
+  public DataObject copyByPath(String path, String sourcePath) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.copyByPath()");
+  }
+
   @Override
   public DataObject deleteByPath(String path) {
     DataObject dataObject = null;
@@ -123,7 +179,6 @@ public class DataObjectDaoImpl implements DataObjectDao {
       dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
 
       if (dataObject != null) {
-        cdmiObjectDao.deleteCdmiObject(dataObject.getObjectId());
         cdmiObjectDao.deleteCdmiObjectByPath(path.trim());
       }
     } catch (Exception e) {
@@ -132,6 +187,13 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  @Override
+  public DataObject deleteByPath(String path, String expectedVersion) {
+    log.debug("delete data object {} at version {}", path.trim(), expectedVersion);
+
+    return (DataObject) cdmiObjectDao.deleteCdmiObjectByPath(path.trim(), expectedVersion);
+  }
+
   @Override
   public DataObject findByObjectId(String objectId) {
     DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObject(objectId);
@@ -144,4 +206,9 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  @Override
+  public FileChannel openContent(String path) {
+    throw new UnsupportedOperationException("DataObjectDaoImpl.openContent()");
+  }
+
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for one-shot migrations of a keyspace written by older versions. Migrations are
+ * idempotent, so they can run on every start-up.
+ */
+public abstract class KeyspaceMigration {
+
+  private static final Logger log = LoggerFactory.getLogger(KeyspaceMigration.class);
+
+  private StringRedisTemplate redisTemplate;
+
+  public StringRedisTemplate getRedisTemplate() {
+    return redisTemplate;
+  }
+
+  public void setRedisTemplate(StringRedisTemplate redisTemplate) {
+    this.redisTemplate = redisTemplate;
+  }
+
+  /**
+   * Migrates all keys still in the old layout.
+   *
+   * @return the number of migrated objects
+   */
+  public abstract int migrate();
+
+  /**
+   * Gets all keys matching the given pattern, without blocking the server like KEYS would.
+   *
+   * @param pattern the key pattern
+   * @return the matching keys
+   */
+  protected List<String> scanKeys(final String pattern) {
+    return redisTemplate.execute(new RedisCallback<List<String>>() {
+      @Override
+      public List<String> doInRedis(RedisConnection connection) {
+        List<String> keys = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        try (Cursor<byte[]> cursor = connection.scan(options)) {
+          while (cursor.hasNext()) {
+            keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+          }
+        } catch (Exception ex) {
+          log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        }
+        return keys;
+      }
+    });
+  }
+
+  /**
+   * Gets the memory used by the Redis server.
+   *
+   * @return the used memory in bytes or -1 if it couldn't be determined
+   */
+  protected long getUsedMemory() {
+    return redisTemplate.execute(new RedisCallback<Long>() {
+      @Override
+      public Long doInRedis(RedisConnection connection) {
+        try {
+          return Long.valueOf(connection.info("memory").getProperty("used_memory"));
+        } catch (Exception ex) {
+          log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+          return -1L;
+        }
+      }
+    });
+  }
+}
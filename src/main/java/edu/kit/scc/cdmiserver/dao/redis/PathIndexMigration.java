@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * Replaces the copies of objects stored under their path by older versions with a reference to the
+ * object id, so every object is stored only once.
+ */
+public class PathIndexMigration extends KeyspaceMigration {
+
+  private static final Logger log = LoggerFactory.getLogger(PathIndexMigration.class);
+
+  @Override
+  public int migrate() {
+    StringRedisTemplate redisTemplate = getRedisTemplate();
+    long usedMemoryBefore = getUsedMemory();
+
+    int migrated = 0;
+    for (String path : scanKeys("/*")) {
+      try {
+        String object = redisTemplate.opsForValue().get(path);
+        if (object == null || !object.startsWith("{")) {
+          continue;
+        }
+
+        String objectId = new JSONObject(object).getString("objectID");
+
+        // the copy under the object id is the one updated by id, so it wins if both exist
+        redisTemplate.opsForValue().setIfAbsent("objectid:" + objectId, object);
+        redisTemplate.opsForValue().set(path, objectId);
+
+        log.debug("migrated path {} to object id {}", path, objectId);
+        migrated++;
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+
+    if (migrated > 0) {
+      log.info("Replaced {} path copies by object ids, used memory {} -> {} bytes", migrated,
+          usedMemoryBefore, getUsedMemory());
+    }
+    return migrated;
+  }
+}
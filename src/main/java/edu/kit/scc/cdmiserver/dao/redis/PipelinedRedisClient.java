@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * A Redis client which queues the commands of all calling threads and sends them to the server in
+ * pipelined batches over a single connection.
+ *
+ * <p>
+ * Every command returns a {@link CompletableFuture}, which completes once the batch it was sent
+ * with has been answered. Commands issued before waiting for any of them usually end up in the same
+ * batch and so cost a single round trip. The futures are completed on the completion executor, so
+ * the dependent stages of callers don't hold up the connection.
+ * </p>
+ */
+public class PipelinedRedisClient {
+
+  private static final Logger log = LoggerFactory.getLogger(PipelinedRedisClient.class);
+
+  private String host = "localhost";
+
+  private int port = 6379;
+
+  private int maxBatchSize = 1000;
+
+  private Executor completionExecutor = ForkJoinPool.commonPool();
+
+  private final BlockingQueue<Command<?>> queue = new LinkedBlockingQueue<>();
+
+  private volatile boolean running;
+
+  private Thread dispatcher;
+
+  public String getHost() {
+    return host;
+  }
+
+  public void setHost(String host) {
+    this.host = host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  public Executor getCompletionExecutor() {
+    return completionExecutor;
+  }
+
+  public void setCompletionExecutor(Executor completionExecutor) {
+    this.completionExecutor = completionExecutor;
+  }
+
+  /**
+   * Starts sending queued commands to the server.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    dispatcher = new Thread(this::dispatch, "redis-pipeline-" + host + ":" + port);
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Stops sending commands to the server, commands still queued fail.
+   */
+  public synchronized void stop() {
+    running = false;
+    if (dispatcher != null) {
+      dispatcher.interrupt();
+      dispatcher = null;
+    }
+  }
+
+  /**
+   * Queues a command.
+   *
+   * @param command adds the command to the given pipeline
+   * @return a future of the command's result
+   */
+  public <T> CompletableFuture<T> execute(Function<Pipeline, Response<T>> command) {
+    Command<T> queued = new Command<>(command);
+    if (!running) {
+      queued.future.completeExceptionally(new IllegalStateException("client is not started"));
+      return queued.future;
+    }
+    queue.add(queued);
+    return queued.future;
+  }
+
+  public CompletableFuture<byte[]> get(String key) {
+    return execute(pipeline -> pipeline.get(toBytes(key)));
+  }
+
+  public CompletableFuture<String> set(String key, byte[] value) {
+    return execute(pipeline -> pipeline.set(toBytes(key), value));
+  }
+
+  public CompletableFuture<Long> setnx(String key, byte[] value) {
+    return execute(pipeline -> pipeline.setnx(toBytes(key), value));
+  }
+
+  public CompletableFuture<String> mset(byte[]... keysAndValues) {
+    return execute(pipeline -> pipeline.mset(keysAndValues));
+  }
+
+  public CompletableFuture<Long> del(String... keys) {
+    return execute(pipeline -> pipeline.del(keys));
+  }
+
+  public CompletableFuture<Set<String>> zrange(String key, long start, long end) {
+    return execute(pipeline -> pipeline.zrange(key, start, end));
+  }
+
+  public CompletableFuture<Long> zcard(String key) {
+    return execute(pipeline -> pipeline.zcard(key));
+  }
+
+  /**
+   * Queues a script call by its SHA1 digest. Should the server not know the script, e.g. after a
+   * restart, it is sent once more as a whole.
+   *
+   * @param script the {@link RedisScript}
+   * @param keys the keys of the call
+   * @param args the arguments of the call, byte arrays or strings
+   * @return a future of the script's result, a byte array, {@link Long} or <code>null</code>
+   */
+  public CompletableFuture<Object> eval(RedisScript<?> script, List<String> keys, Object... args) {
+    byte[][] params = new byte[keys.size() + args.length][];
+    for (int i = 0; i < keys.size(); i++) {
+      params[i] = toBytes(keys.get(i));
+    }
+    for (int i = 0; i < args.length; i++) {
+      params[keys.size() + i] =
+          args[i] instanceof byte[] ? (byte[]) args[i] : toBytes(args[i].toString());
+    }
+
+    CompletableFuture<Object> result = new CompletableFuture<>();
+    execute(pipeline -> ((ScriptPipeline) pipeline).evalScriptSha(toBytes(script.getSha1()),
+        keys.size(), params))
+        .whenComplete((value, ex) -> {
+          if (ex == null) {
+            result.complete(value);
+          } else if (ex.getMessage() != null && ex.getMessage().startsWith("NOSCRIPT")) {
+            log.debug("send script {}", script.getSha1());
+            execute(pipeline -> ((ScriptPipeline) pipeline)
+                .evalScript(toBytes(script.getScriptAsString()), keys.size(), params))
+                .whenComplete((retryValue, retryEx) -> {
+                  if (retryEx == null) {
+                    result.complete(retryValue);
+                  } else {
+                    result.completeExceptionally(retryEx);
+                  }
+                });
+          } else {
+            result.completeExceptionally(ex);
+          }
+        });
+    return result;
+  }
+
+  private void dispatch() {
+    Jedis jedis = null;
+    List<Command<?>> batch = new ArrayList<>();
+    while (running) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException ex) {
+        break;
+      }
+      queue.drainTo(batch, maxBatchSize - 1);
+
+      List<Response<?>> responses = new ArrayList<>(batch.size());
+      try {
+        if (jedis == null) {
+          jedis = new Jedis(host, port);
+        }
+        ScriptPipeline pipeline = new ScriptPipeline();
+        pipeline.setClient(jedis.getClient());
+        for (Command<?> command : batch) {
+          responses.add(command.command.apply(pipeline));
+        }
+        pipeline.sync();
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        // the connection is in an unknown state, so start over with a new one
+        close(jedis);
+        jedis = null;
+        fail(new ArrayList<>(batch), ex);
+        batch.clear();
+        continue;
+      }
+
+      complete(new ArrayList<>(batch), responses);
+      batch.clear();
+    }
+
+    close(jedis);
+    List<Command<?>> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    fail(remaining, new IllegalStateException("client is stopped"));
+  }
+
+  private void complete(List<Command<?>> batch, List<Response<?>> responses) {
+    completionExecutor.execute(() -> {
+      for (int i = 0; i < batch.size(); i++) {
+        batch.get(i).complete(responses.get(i));
+      }
+    });
+  }
+
+  private void fail(List<Command<?>> batch, Exception ex) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    completionExecutor.execute(() -> {
+      for (Command<?> command : batch) {
+        command.future.completeExceptionally(ex);
+      }
+    });
+  }
+
+  private static byte[] toBytes(String value) {
+    return SafeEncoder.encode(value);
+  }
+
+  private static void close(Jedis jedis) {
+    if (jedis != null) {
+      try {
+        jedis.close();
+      } catch (Exception ex) {
+        log.debug("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+  }
+
+  private static class Command<T> {
+
+    private final Function<Pipeline, Response<T>> command;
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private Command(Function<Pipeline, Response<T>> command) {
+      this.command = command;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(Response<?> response) {
+      try {
+        future.complete(((Response<T>) response).get());
+      } catch (Exception ex) {
+        future.completeExceptionally(ex);
+      }
+    }
+  }
+
+  /**
+   * The scripts of the Jedis pipeline return strings only, the CDMI scripts return binary records
+   * and integers.
+   */
+  private static class ScriptPipeline extends Pipeline {
+
+    private static final Builder<Object> SCRIPT_RESULT = new Builder<Object>() {
+      @Override
+      public Object build(Object data) {
+        return data;
+      }
+    };
+
+    private Response<Object> evalScriptSha(byte[] sha1, int keyCount, byte[]... params) {
+      getClient("").evalsha(sha1, keyCount, params);
+      return getResponse(SCRIPT_RESULT);
+    }
+
+    private Response<Object> evalScript(byte[] script, int keyCount, byte[]... params) {
+      getClient("").eval(script, keyCount, params);
+      return getResponse(SCRIPT_RESULT);
+    }
+  }
+}
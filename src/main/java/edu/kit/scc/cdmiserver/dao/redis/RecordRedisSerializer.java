@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Passes encoded records through as they are. Used for script calls, whose arguments are mixed
+ * records and strings, so all of them are passed as byte arrays.
+ */
+class RecordRedisSerializer implements RedisSerializer<byte[]> {
+
+  @Override
+  public byte[] serialize(byte[] value) {
+    return value;
+  }
+
+  @Override
+  public byte[] deserialize(byte[] bytes) {
+    return bytes;
+  }
+}
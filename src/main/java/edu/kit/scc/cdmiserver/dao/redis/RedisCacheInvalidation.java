@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import edu.kit.scc.cdmiserver.dao.cache.CacheInvalidationPublisher;
+import edu.kit.scc.cdmiserver.dao.cache.CachingCdmiObjectDao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Distributes cache evictions between server instances sharing a Redis server over pub/sub.
+ * Messages consist of the id of the sending instance followed by the evicted keys, one per line.
+ */
+public class RedisCacheInvalidation implements CacheInvalidationPublisher, MessageListener {
+
+  private static final Logger log = LoggerFactory.getLogger(RedisCacheInvalidation.class);
+
+  public static final String CHANNEL = "cdmi:cache:invalidate";
+
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private StringRedisTemplate redisTemplate;
+
+  private CachingCdmiObjectDao cache;
+
+  public StringRedisTemplate getRedisTemplate() {
+    return redisTemplate;
+  }
+
+  public void setRedisTemplate(StringRedisTemplate redisTemplate) {
+    this.redisTemplate = redisTemplate;
+  }
+
+  public CachingCdmiObjectDao getCache() {
+    return cache;
+  }
+
+  public void setCache(CachingCdmiObjectDao cache) {
+    this.cache = cache;
+  }
+
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  @Override
+  public void publish(String... keys) {
+    StringBuilder message = new StringBuilder(instanceId);
+    for (String key : keys) {
+      message.append('\n').append(key);
+    }
+    try {
+      redisTemplate.convertAndSend(CHANNEL, message.toString());
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+    if (cache == null || lines[0].equals(instanceId)) {
+      return;
+    }
+
+    for (int i = 1; i < lines.length; i++) {
+      log.debug("evict {} on request of {}", lines[i], lines[0]);
+      cache.evictLocal(lines[i]);
+    }
+  }
+}
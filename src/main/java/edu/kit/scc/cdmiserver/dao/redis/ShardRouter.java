@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes keys to the Redis instance, the shard, holding them.
+ *
+ * <p>
+ * Like Redis Cluster, only the hash tag of a key is used for routing if it has one, i.e. the part
+ * between the first <code>{</code> and the following <code>}</code> if that isn't empty. So keys
+ * sharing a hash tag are always on the same shard and can be used together in a script or
+ * multi-key command.
+ * </p>
+ */
+public abstract class ShardRouter {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+
+  private List<String> nodes = Collections.singletonList("localhost:6379");
+
+  private final Map<String, JedisConnectionFactory> connectionFactories = new LinkedHashMap<>();
+
+  private final Map<String, StringRedisTemplate> shards = new LinkedHashMap<>();
+
+  public List<String> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Sets the nodes to connect to.
+   *
+   * @param nodes the nodes as <code>host:port</code>
+   */
+  public void setNodes(List<String> nodes) {
+    this.nodes = nodes;
+  }
+
+  /**
+   * Connects to the shards.
+   */
+  public abstract void start();
+
+  /**
+   * Closes the connections to all shards.
+   */
+  public synchronized void stop() {
+    for (JedisConnectionFactory connectionFactory : connectionFactories.values()) {
+      connectionFactory.destroy();
+    }
+    connectionFactories.clear();
+    shards.clear();
+  }
+
+  /**
+   * Gets the shard holding the given key.
+   *
+   * @param key the key
+   * @return the {@link StringRedisTemplate} of the shard
+   */
+  public abstract StringRedisTemplate getShard(String key);
+
+  /**
+   * Gets all shards.
+   *
+   * @return the {@link StringRedisTemplate}s of the shards
+   */
+  public synchronized List<StringRedisTemplate> getShards() {
+    return new ArrayList<>(shards.values());
+  }
+
+  /**
+   * Gets the part of the given key used for routing.
+   *
+   * @param key the key
+   * @return the key's hash tag or the whole key if it has none
+   */
+  public static String getHashTag(String key) {
+    int start = key.indexOf('{');
+    if (start >= 0) {
+      int end = key.indexOf('}', start + 1);
+      if (end > start + 1) {
+        return key.substring(start + 1, end);
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Connects to the given node, once.
+   *
+   * @param node the node as <code>host:port</code>
+   * @return the {@link StringRedisTemplate} of the node
+   */
+  protected synchronized StringRedisTemplate connect(String node) {
+    StringRedisTemplate shard = shards.get(node);
+    if (shard == null) {
+      int separator = node.lastIndexOf(':');
+      JedisConnectionFactory connectionFactory = new JedisConnectionFactory();
+      connectionFactory.setHostName(node.substring(0, separator).trim());
+      connectionFactory.setPort(Integer.parseInt(node.substring(separator + 1).trim()));
+      connectionFactory.afterPropertiesSet();
+
+      shard = new StringRedisTemplate(connectionFactory);
+      connectionFactories.put(node, connectionFactory);
+      shards.put(node, shard);
+      log.debug("connected to shard {}", node);
+    }
+    return shard;
+  }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.LONG_SERIALIZER;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.RECORD_SERIALIZER;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.UPDATE_SCRIPT;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.fromRecord;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.getName;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.loadScript;
+import static edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl.toStoredJson;
+
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.util.Projection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The redis version of {@link CdmiObjectDao} for objects sharded over several Redis instances by a
+ * {@link ShardRouter}.
+ *
+ * <p>
+ * The keys of an object are hash tagged with the path of its parent, e.g. an object at
+ * <code>/container/file</code> with id <code>id</code> is stored as:
+ * </p>
+ * <ul>
+ * <li><code>{/container}/container/file</code>, the path key holding the object id</li>
+ * <li><code>objectid:{/container}id</code>, the serialized object</li>
+ * <li><code>objectpath:id</code>, the path of the object, to find it by its id</li>
+ * <li><code>children:{/container/file}id</code>, the children set if it's a container</li>
+ * </ul>
+ *
+ * <p>
+ * So an object is on the same shard as the children set of its parent, and creating, updating and
+ * deleting it are still atomic. Only the <code>objectpath</code> key and its own children set are
+ * written separately. Objects created without a path are stored under their id as in
+ * {@link CdmiObjectDaoImpl}.
+ * </p>
+ */
+public class ShardedCdmiObjectDaoImpl implements CdmiObjectDao {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardedCdmiObjectDaoImpl.class);
+
+  static final RedisScript<byte[]> CREATE_SCRIPT =
+      loadScript("redis/sharded/create.lua", byte[].class);
+
+  static final RedisScript<Long> DELETE_SCRIPT = loadScript("redis/sharded/delete.lua", Long.class);
+
+  private ShardRouter shardRouter;
+
+  private RecordCodec recordCodec = RecordCodecs.forFormat(RecordCodecs.JSON);
+
+  public ShardRouter getShardRouter() {
+    return shardRouter;
+  }
+
+  public void setShardRouter(ShardRouter shardRouter) {
+    this.shardRouter = shardRouter;
+  }
+
+  public RecordCodec getRecordCodec() {
+    return recordCodec;
+  }
+
+  public void setRecordCodec(RecordCodec recordCodec) {
+    this.recordCodec = recordCodec;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    String key = "objectid:" + cdmiObject.getObjectId();
+    byte[] record = toRecord(cdmiObject);
+
+    if (shardRouter.getShard(key).execute(
+        (RedisCallback<Boolean>) connection -> connection.setNX(toBytes(key), record))) {
+      log.debug("set {}", key);
+      return cdmiObject;
+    }
+
+    log.debug("object id {} already exists", cdmiObject.getObjectId());
+    return getCdmiObject(cdmiObject.getObjectId());
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    return createCdmiObject(cdmiObject, path, Arrays.asList(getPathKey(path),
+        getObjectKeyPrefix(path) + cdmiObject.getObjectId()));
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    return updateCdmiObject(cdmiObject, path);
+  }
+
+  /**
+   * Creates the object under the given path and adds it to the children set of its parent in one
+   * atomic script call, once the parent has been found.
+   */
+  @Override
+  public CdmiObject createChildCdmiObject(CdmiObject cdmiObject, String path, String parentPath) {
+    String parentPathKey = getPathKey(parentPath);
+    if (!shardRouter.getShard(parentPathKey).hasKey(parentPathKey)) {
+      log.error("parent {} does not exist", parentPath);
+      return null;
+    }
+
+    String parentId = cdmiObject.getParentId();
+    return createCdmiObject(cdmiObject, path, Arrays.asList(getPathKey(path),
+        getObjectKeyPrefix(path) + cdmiObject.getObjectId(),
+        "children:{" + getHashTag(path) + "}" + (parentId != null ? parentId : "")));
+  }
+
+  /**
+   * Creates the object with the create script, which returns the id of an object already at the
+   * path. A path still referring to an object that is gone is taken over by a second call.
+   */
+  private CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, List<String> keys) {
+    StringRedisTemplate shard = shardRouter.getShard(keys.get(0));
+    byte[] record = toRecord(cdmiObject);
+    byte[] replacedId = null;
+    for (int attempt = 0; attempt < 2; attempt++) {
+      byte[] existingId;
+      try {
+        Object[] args = replacedId != null
+            ? new Object[] {record, toBytes(getName(path)), toBytes(cdmiObject.getObjectId()),
+                replacedId}
+            : new Object[] {record, toBytes(getName(path)), toBytes(cdmiObject.getObjectId())};
+        existingId =
+            shard.execute(CREATE_SCRIPT, RECORD_SERIALIZER, RECORD_SERIALIZER, keys, args);
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+
+      if (existingId == null) {
+        setPath(cdmiObject.getObjectId(), path);
+        log.debug("set {}", path);
+        return cdmiObject;
+      }
+      // the existing object is on the same shard, tagged with the same parent path
+      String existingKey =
+          getObjectKeyPrefix(path) + new String(existingId, StandardCharsets.UTF_8);
+      byte[] existing = shard
+          .execute((RedisCallback<byte[]>) connection -> connection.get(toBytes(existingKey)));
+      if (existing != null) {
+        log.debug("path {} already exists", path);
+        return withChildren(fromRecord(recordCodec, existing), path, 0, -1);
+      }
+      replacedId = existingId;
+    }
+    log.warn("WARNING: path {} refers to another object on every attempt to create it", path);
+    return null;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    return getCdmiObject(objectId, 0, -1);
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, int childrenFrom, int childrenTo) {
+    String path = getPath(objectId);
+    if (path == null) {
+      return getObjectWithoutPath(objectId);
+    }
+
+    CdmiObject cdmiObject = getCdmiObjectByPath(path, childrenFrom, childrenTo);
+    // the path may hold another object by now
+    return cdmiObject != null && objectId.equals(cdmiObject.getObjectId()) ? cdmiObject : null;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, Projection projection) {
+    String path = getPath(objectId);
+    if (path == null) {
+      return getObjectWithoutPath(objectId);
+    }
+
+    CdmiObject cdmiObject = getCdmiObjectByPath(path, projection);
+    // the path may hold another object by now
+    return cdmiObject != null && objectId.equals(cdmiObject.getObjectId()) ? cdmiObject : null;
+  }
+
+  private CdmiObject getObjectWithoutPath(String objectId) {
+    String key = "objectid:" + objectId;
+    byte[] record = shardRouter.getShard(key)
+        .execute((RedisCallback<byte[]>) connection -> connection.get(toBytes(key)));
+    return fromRecord(recordCodec, record);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    return getCdmiObjectByPath(path, 0, -1);
+  }
+
+  /**
+   * Gets the object referenced by the given path. The path key and the object are on the same
+   * shard, both are read over the same connection.
+   */
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenFrom, int childrenTo) {
+    return withChildren(fromRecord(recordCodec, getRecordByPath(path)), path, childrenFrom,
+        childrenTo);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, Projection projection) {
+    return withChildren(fromRecord(recordCodec, getRecordByPath(path)), path, projection);
+  }
+
+  private byte[] getRecordByPath(String path) {
+    String pathKey = getPathKey(path);
+    return shardRouter.getShard(pathKey).execute((RedisCallback<byte[]>) connection -> {
+      byte[] objectId = connection.get(toBytes(pathKey));
+      if (objectId == null) {
+        return null;
+      }
+      return connection.get(
+          toBytes(getObjectKeyPrefix(path) + new String(objectId, StandardCharsets.UTF_8)));
+    });
+  }
+
+  /**
+   * Reads the selected children of a container from its children set, only the size of the set if
+   * just the childrenrange is selected and nothing if neither is.
+   */
+  private CdmiObject withChildren(CdmiObject cdmiObject, String path, Projection projection) {
+    int[] childrenRange = projection.getChildrenRange();
+    if (childrenRange != null) {
+      return withChildren(cdmiObject, path, childrenRange[0], childrenRange[1]);
+    }
+    if (projection.includes("children")) {
+      return withChildren(cdmiObject, path, 0, -1);
+    }
+    if (!(cdmiObject instanceof Container)) {
+      return cdmiObject;
+    }
+    Container container = (Container) cdmiObject;
+    container.setChildren(null);
+    container.setChildrenrange(null);
+    if (projection.includes("childrenrange")) {
+      String childrenKey = getChildrenKey(path, container.getObjectId());
+      long childrenCount = shardRouter.getShard(childrenKey).opsForZSet().zCard(childrenKey);
+      container.setChildrenrange(CdmiObject.getChildrenRange(childrenCount));
+    }
+    return container;
+  }
+
+  /**
+   * Reads the given range of children of a container from its children set. The childrenrange
+   * always reflects the whole set.
+   */
+  private CdmiObject withChildren(CdmiObject cdmiObject, String path, int childrenFrom,
+      int childrenTo) {
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      String childrenKey = getChildrenKey(path, container.getObjectId());
+      StringRedisTemplate shard = shardRouter.getShard(childrenKey);
+
+      Set<String> children = shard.opsForZSet().range(childrenKey, childrenFrom, childrenTo);
+      long childrenCount = (childrenFrom == 0 && childrenTo == -1) ? children.size()
+          : shard.opsForZSet().zCard(childrenKey);
+
+      container.setChildren(new JSONArray(children));
+      container.setChildrenrange(CdmiObject.getChildrenRange(childrenCount));
+    }
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    String path = getPath(cdmiObject.getObjectId());
+    if (path != null) {
+      return updateCdmiObject(cdmiObject, path);
+    }
+
+    String key = "objectid:" + cdmiObject.getObjectId();
+    byte[] record = toRecord(cdmiObject);
+    shardRouter.getShard(key).execute((RedisCallback<Void>) connection -> {
+      connection.set(toBytes(key), record);
+      return null;
+    });
+    log.debug("set {}", key);
+    return cdmiObject;
+  }
+
+  /**
+   * Updates the object and the reference to it from the given path in one atomic call.
+   */
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    String pathKey = getPathKey(path);
+    Map<byte[], byte[]> values = new HashMap<>();
+    values.put(toBytes(pathKey), toBytes(cdmiObject.getObjectId()));
+    values.put(toBytes(getObjectKeyPrefix(path) + cdmiObject.getObjectId()),
+        toRecord(cdmiObject));
+    shardRouter.getShard(pathKey).execute((RedisCallback<Void>) connection -> {
+      connection.mSet(values);
+      return null;
+    });
+
+    setPath(cdmiObject.getObjectId(), path);
+    log.debug("set {}", path);
+    return cdmiObject;
+  }
+
+  /**
+   * Updates the object and the reference to it from the given path in one atomic script call on
+   * the shard of the path, which compares the version with the SHA-1 hash of the stored record.
+   */
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path, String expectedVersion) {
+    String pathKey = getPathKey(path);
+    String objectId = cdmiObject.getObjectId();
+    Long updated = shardRouter.getShard(pathKey).execute(UPDATE_SCRIPT, RECORD_SERIALIZER,
+        LONG_SERIALIZER, Arrays.asList(pathKey, getObjectKeyPrefix(path) + objectId),
+        toRecord(cdmiObject), toBytes(objectId), toBytes(expectedVersion));
+    if (updated == null || updated != 1) {
+      throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+    }
+
+    setPath(objectId, path);
+    log.debug("set {}", path);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    String path = getPath(objectId);
+    if (path != null) {
+      return deleteCdmiObjectByPath(path);
+    }
+
+    String key = "objectid:" + objectId;
+    CdmiObject cdmiObject = getCdmiObject(objectId);
+    shardRouter.getShard(key).delete(key);
+    return cdmiObject;
+  }
+
+  /**
+   * Deletes the object under the given path and removes it from the children set of its parent in
+   * one atomic script call, its own children set afterwards.
+   */
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    return deleteCdmiObjectByPath(path, null);
+  }
+
+  /**
+   * Like {@link #deleteCdmiObjectByPath(String)}, the delete script comparing the version with the
+   * SHA-1 hash of the stored record first, unless it is <code>null</code>.
+   */
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path, String expectedVersion) {
+    CdmiObject cdmiObject = getCdmiObjectByPath(path);
+    if (cdmiObject == null) {
+      return null;
+    }
+
+    String objectId = cdmiObject.getObjectId();
+    String pathKey = getPathKey(path);
+    String objectKey = getObjectKeyPrefix(path) + objectId;
+    List<String> keys;
+    if (Paths.get(path).getParent() == null) {
+      keys = Arrays.asList(pathKey, objectKey);
+    } else {
+      String parentId = cdmiObject.getParentId();
+      keys = Arrays.asList(pathKey, objectKey,
+          "children:{" + getHashTag(path) + "}" + (parentId != null ? parentId : ""));
+    }
+
+    Long deleted = expectedVersion == null
+        ? shardRouter.getShard(pathKey).execute(DELETE_SCRIPT, keys, getName(path))
+        : shardRouter.getShard(pathKey).execute(DELETE_SCRIPT, keys, getName(path),
+            expectedVersion);
+    if (deleted != null && deleted < 0) {
+      throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+    }
+    log.debug("delete {} {} keys", path, deleted);
+
+    String childrenKey = getChildrenKey(path, objectId);
+    shardRouter.getShard(childrenKey).delete(childrenKey);
+    String objectPathKey = "objectpath:" + objectId;
+    shardRouter.getShard(objectPathKey).delete(objectPathKey);
+
+    return cdmiObject;
+  }
+
+  private String getPath(String objectId) {
+    String key = "objectpath:" + objectId;
+    return shardRouter.getShard(key).opsForValue().get(key);
+  }
+
+  private void setPath(String objectId, String path) {
+    String key = "objectpath:" + objectId;
+    shardRouter.getShard(key).opsForValue().set(key, path);
+  }
+
+  /**
+   * Serializes the object for storage and sets its version to the one of the record, so the
+   * written object carries the version it is stored at.
+   */
+  private byte[] toRecord(CdmiObject cdmiObject) {
+    byte[] record = recordCodec.encode(toStoredJson(cdmiObject));
+    cdmiObject.setVersion(RecordCodecs.getVersion(record));
+    return record;
+  }
+
+  private static byte[] toBytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the hash tag of the keys of the object at the given path, the path of its parent. The
+   * root is its own parent.
+   */
+  static String getHashTag(String path) {
+    Path parent = Paths.get(path).getParent();
+    return parent != null ? parent.toString() : Paths.get(path).toString();
+  }
+
+  static String getPathKey(String path) {
+    return "{" + getHashTag(path) + "}" + path;
+  }
+
+  static String getObjectKeyPrefix(String path) {
+    return "objectid:{" + getHashTag(path) + "}";
+  }
+
+  /**
+   * Gets the key of the children set of the container at the given path, which is on the same
+   * shard as the children.
+   */
+  static String getChildrenKey(String path, String objectId) {
+    return "children:{" + Paths.get(path).toString() + "}" + objectId;
+  }
+}
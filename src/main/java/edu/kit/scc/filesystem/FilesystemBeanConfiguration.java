@@ -9,45 +9,142 @@
 
 package edu.kit.scc.filesystem;
 
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.codec.ValueHash;
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.dao.DataObjectDao;
 import org.snia.cdmiserver.dao.DomainDao;
+import org.snia.cdmiserver.dao.filesystem.BlobStore;
 import org.snia.cdmiserver.dao.filesystem.CapabilityDaoImpl;
 import org.snia.cdmiserver.dao.filesystem.CdmiObjectDaoImpl;
 import org.snia.cdmiserver.dao.filesystem.ContainerDaoImpl;
 import org.snia.cdmiserver.dao.filesystem.DataObjectDaoImpl;
 import org.snia.cdmiserver.dao.filesystem.DomainDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.FileSync;
+import org.snia.cdmiserver.dao.filesystem.FileSyncs;
+import org.snia.cdmiserver.dao.filesystem.ObjectIdDirectoryMigration;
+import org.snia.cdmiserver.dao.filesystem.RecordRecovery;
+import org.snia.cdmiserver.dao.filesystem.StagingDirectory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.nio.file.Paths;
+
 @Configuration
 @Profile({"filesystem", "filesystem-test"})
 public class FilesystemBeanConfiguration {
 
+  private static final String OBJECT_ID_DIRECTORY = "cdmi_objectid";
+
   @Value("${cdmi.data.baseDirectory}")
   private String baseDirectory;
 
   @Value("${cdmi.data.objectIdPrefix}")
   private String objectIdPrefix;
 
+  @Value("${cdmi.data.recordFormat:binary}")
+  private String recordFormat;
+
+  @Value("${cdmi.data.objectIdFanOut:0}")
+  private int objectIdFanOut;
+
+  @Value("${cdmi.data.durability:per-op-fsync}")
+  private String durability;
+
+  @Value("${cdmi.data.valueHash:SHA-256}")
+  private String valueHash;
+
+  @Value("${cdmi.data.deduplication:false}")
+  private boolean deduplication;
+
+  @Value("${cdmi.data.blobCollectInterval:60}")
+  private long blobCollectInterval;
+
+  /**
+   * Initializes how the writes of the file system DAOs are made durable.
+   * 
+   * @return a {@link FileSync}
+   */
+  @Bean(destroyMethod = "close")
+  public FileSync fileSync() {
+    return FileSyncs.forMode(durability);
+  }
+
+  /**
+   * Initializes the directory files are written in before they are renamed to their final name.
+   * 
+   * @return a {@link StagingDirectory}
+   */
+  @Bean
+  public StagingDirectory stagingDirectory(FileSync fileSync) {
+    StagingDirectory stagingDirectory = new StagingDirectory();
+    stagingDirectory.setDirectory(Paths.get(baseDirectory.trim(), OBJECT_ID_DIRECTORY).toString());
+    stagingDirectory.setFileSync(fileSync);
+    return stagingDirectory;
+  }
+
   /**
-   * Initializes the file system version of the CDMI object DAO interface.
+   * Initializes the file system version of the CDMI object DAO interface. It is declared with its
+   * class, as the file system maintenance beans work on its files.
    * 
-   * @return a {@link CdmiObjectDao}
+   * @return a {@link CdmiObjectDaoImpl}
    */
   @Bean
-  public CdmiObjectDao cdmiObjectDao() {
+  public CdmiObjectDaoImpl cdmiObjectDao(FileSync fileSync, StagingDirectory stagingDirectory) {
     CdmiObjectDaoImpl cdmiObjectDaoImpl = new CdmiObjectDaoImpl();
     cdmiObjectDaoImpl.setBaseDirectory(baseDirectory);
     cdmiObjectDaoImpl.setObjectIdPrefix(objectIdPrefix);
-    cdmiObjectDaoImpl.setObjectIdDirectory("cdmi_objectid");
+    cdmiObjectDaoImpl.setObjectIdDirectory(OBJECT_ID_DIRECTORY);
+    cdmiObjectDaoImpl.setObjectIdFanOut(objectIdFanOut);
+    cdmiObjectDaoImpl.setRecordCodec(RecordCodecs.forFormat(recordFormat));
+    cdmiObjectDaoImpl.setFileSync(fileSync);
+    cdmiObjectDaoImpl.setStagingDirectory(stagingDirectory);
     return cdmiObjectDaoImpl;
   }
 
+  /**
+   * Initializes the migration of objectId files from the flat into the fan-out layout.
+   * 
+   * @return a {@link ObjectIdDirectoryMigration}
+   */
+  @Bean
+  public ObjectIdDirectoryMigration objectIdDirectoryMigration(CdmiObjectDaoImpl cdmiObjectDao) {
+    ObjectIdDirectoryMigration objectIdDirectoryMigration = new ObjectIdDirectoryMigration();
+    objectIdDirectoryMigration.setCdmiObjectDao(cdmiObjectDao);
+    return objectIdDirectoryMigration;
+  }
+
+  /**
+   * Initializes the recovery of the objects' records after an unclean shutdown.
+   * 
+   * @return a {@link RecordRecovery}
+   */
+  @Bean
+  public RecordRecovery recordRecovery(CdmiObjectDaoImpl cdmiObjectDao) {
+    RecordRecovery recordRecovery = new RecordRecovery();
+    recordRecovery.setCdmiObjectDao(cdmiObjectDao);
+    return recordRecovery;
+  }
+
+  /**
+   * Initializes the store of deduplicated values and its collector.
+   * 
+   * @return a {@link BlobStore}
+   */
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  public BlobStore blobStore(CdmiObjectDaoImpl cdmiObjectDao, FileSync fileSync) {
+    BlobStore blobStore = new BlobStore();
+    blobStore.setCdmiObjectDao(cdmiObjectDao);
+    blobStore.setFileSync(fileSync);
+    blobStore.setEnabled(deduplication);
+    blobStore.setCollectInterval(blobCollectInterval * 1000);
+    return blobStore;
+  }
+
   /**
    * Initializes the file system version of the {@link ContainerDao}.
    * 
@@ -67,7 +164,8 @@ public class FilesystemBeanConfiguration {
    * @return a {@link DataObjectDao}
    */
   @Bean
-  public DataObjectDao dataObjectDao(CdmiObjectDao cdmiObjectDao) {
+  public DataObjectDao dataObjectDao(CdmiObjectDao cdmiObjectDao, FileSync fileSync,
+      StagingDirectory stagingDirectory, BlobStore blobStore) {
     ContainerDaoImpl containerDaoImpl = new ContainerDaoImpl();
     containerDaoImpl.setBaseDirectoryName(baseDirectory);
     containerDaoImpl.setCdmiObjectDao(cdmiObjectDao);
@@ -76,6 +174,10 @@ public class FilesystemBeanConfiguration {
     dataObjectDaoImpl.setBaseDirectoryName(baseDirectory);
     dataObjectDaoImpl.setCdmiObjectDao(cdmiObjectDao);
     dataObjectDaoImpl.setContainerDao(containerDaoImpl);
+    dataObjectDaoImpl.setFileSync(fileSync);
+    dataObjectDaoImpl.setValueHash(ValueHash.forAlgorithm(valueHash));
+    dataObjectDaoImpl.setBlobStore(blobStore);
+    dataObjectDaoImpl.setStagingDirectory(stagingDirectory);
     return dataObjectDaoImpl;
   }
 
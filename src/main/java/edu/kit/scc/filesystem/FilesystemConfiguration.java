@@ -19,6 +19,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.filesystem.ObjectIdDirectoryMigration;
+import org.snia.cdmiserver.dao.filesystem.RecordRecovery;
 import org.snia.cdmiserver.model.Capability;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
@@ -55,6 +57,12 @@ public class FilesystemConfiguration {
   @Autowired
   private CapabilityDao capabilityDao;
 
+  @Autowired
+  private ObjectIdDirectoryMigration objectIdDirectoryMigration;
+
+  @Autowired
+  private RecordRecovery recordRecovery;
+
   /**
    * Configuration for CDMI file system version.
    * 
@@ -76,6 +84,13 @@ public class FilesystemConfiguration {
       log.debug("cdmi objectid directory {} created", path.toString());
     }
 
+    recordRecovery.start();
+
+    // moves the objectId files of older versions while serving requests
+    Thread migration = new Thread(objectIdDirectoryMigration, "objectid-migration");
+    migration.setDaemon(true);
+    migration.start();
+
     path = Paths.get(baseDirectory, "cdmi_capabilities");
     if (!Files.exists(path)) {
       Files.createDirectory(path);
@@ -154,6 +169,6 @@ public class FilesystemConfiguration {
 
   @PreDestroy
   public void cleanUp() {
-
+    recordRecovery.stop();
   }
 }
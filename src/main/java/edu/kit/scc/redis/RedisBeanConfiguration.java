@@ -9,12 +9,24 @@
 
 package edu.kit.scc.redis;
 
+import edu.kit.scc.cdmiserver.dao.cache.CachingCdmiObjectDao;
+import edu.kit.scc.cdmiserver.dao.redis.AsyncCdmiObjectDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.CapabilityDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl;
+import edu.kit.scc.cdmiserver.dao.redis.ChildrenIndexMigration;
+import edu.kit.scc.cdmiserver.dao.redis.ClusterShardRouter;
+import edu.kit.scc.cdmiserver.dao.redis.ConsistentHashShardRouter;
 import edu.kit.scc.cdmiserver.dao.redis.ContainerDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.DataObjectDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.DomainDaoImpl;
+import edu.kit.scc.cdmiserver.dao.redis.PathIndexMigration;
+import edu.kit.scc.cdmiserver.dao.redis.PipelinedRedisClient;
+import edu.kit.scc.cdmiserver.dao.redis.RedisCacheInvalidation;
+import edu.kit.scc.cdmiserver.dao.redis.ShardRouter;
+import edu.kit.scc.cdmiserver.dao.redis.ShardedCdmiObjectDaoImpl;
 
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
@@ -23,9 +35,16 @@ import org.snia.cdmiserver.dao.DomainDao;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.Executors;
 
 @Configuration
 @Profile({"redis", "redis-embedded"})
@@ -37,6 +56,24 @@ public class RedisBeanConfiguration {
   @Value("${spring.redis.host}")
   private String host;
 
+  @Value("${cdmi.data.recordFormat:binary}")
+  private String recordFormat;
+
+  @Value("${cdmi.cache.size:10000}")
+  private int cacheSize;
+
+  @Value("${cdmi.cache.distributed:true}")
+  private boolean cacheDistributed;
+
+  @Value("${cdmi.redis.pipeline.batchSize:1000}")
+  private int pipelineBatchSize;
+
+  @Value("${cdmi.redis.shards:localhost:6379}")
+  private String shards;
+
+  @Value("${cdmi.redis.sharding:consistent-hash}")
+  private String sharding;
+
   /**
    * Initializes the redis server connection.
    * 
@@ -61,15 +98,162 @@ public class RedisBeanConfiguration {
   }
 
   /**
-   * Initializes the redis version of {@link CdmiObjectDao}.
+   * Initializes the distribution of cache evictions to other server instances.
+   * 
+   * @return a {@link RedisCacheInvalidation}
+   */
+  @Bean
+  RedisCacheInvalidation cacheInvalidation(StringRedisTemplate redisTemplate) {
+    RedisCacheInvalidation cacheInvalidation = new RedisCacheInvalidation();
+    cacheInvalidation.setRedisTemplate(redisTemplate);
+    return cacheInvalidation;
+  }
+
+  /**
+   * Subscribes to the cache evictions of other server instances.
+   * 
+   * @return a {@link RedisMessageListenerContainer}
+   */
+  @Bean
+  RedisMessageListenerContainer cacheInvalidationListenerContainer(
+      JedisConnectionFactory jedisConnectionFactory, RedisCacheInvalidation cacheInvalidation) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(jedisConnectionFactory);
+    // the default executor starts a thread per message, one thread also keeps evictions in order
+    container.setTaskExecutor(Executors.newSingleThreadExecutor());
+    // the subscription blocks its thread, so it needs its own
+    container.setSubscriptionExecutor(Executors.newSingleThreadExecutor());
+    container.addMessageListener(cacheInvalidation,
+        new ChannelTopic(RedisCacheInvalidation.CHANNEL));
+    return container;
+  }
+
+  /**
+   * Initializes the redis version of {@link CdmiObjectDao}, cached in memory unless the cache size
+   * is 0. The objects are sharded if the <code>redis-sharded</code> profile provides a
+   * {@link ShardRouter}. The <code>redis-async</code> profile replaces it with an asynchronous one.
    * 
    * @return a {@link CdmiObjectDao}
    */
   @Bean
-  CdmiObjectDao cdmiObjectDao(StringRedisTemplate redisTemplate) {
+  @Profile("!redis-async")
+  CdmiObjectDao cdmiObjectDao(StringRedisTemplate redisTemplate,
+      Optional<ShardRouter> shardRouter, RedisCacheInvalidation cacheInvalidation) {
+    if (shardRouter.isPresent()) {
+      ShardedCdmiObjectDaoImpl shardedCdmiObjectDaoImpl = new ShardedCdmiObjectDaoImpl();
+      shardedCdmiObjectDaoImpl.setShardRouter(shardRouter.get());
+      shardedCdmiObjectDaoImpl.setRecordCodec(RecordCodecs.forFormat(recordFormat));
+      return cached(shardedCdmiObjectDaoImpl, cacheInvalidation);
+    }
+
     CdmiObjectDaoImpl cdmiObjectDaoImpl = new CdmiObjectDaoImpl();
     cdmiObjectDaoImpl.setRedisTemplate(redisTemplate);
-    return cdmiObjectDaoImpl;
+    cdmiObjectDaoImpl.setRecordCodec(RecordCodecs.forFormat(recordFormat));
+    return cached(cdmiObjectDaoImpl, cacheInvalidation);
+  }
+
+  /**
+   * Initializes the routing of keys to the Redis instances of the <code>redis-sharded</code>
+   * profile, either by consistent hashing over standalone instances or by the slots of a Redis
+   * Cluster.
+   * 
+   * @return a {@link ShardRouter}
+   */
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  @Profile("redis-sharded")
+  ShardRouter shardRouter() {
+    ShardRouter shardRouter;
+    if ("cluster".equals(sharding)) {
+      shardRouter = new ClusterShardRouter();
+    } else if ("consistent-hash".equals(sharding)) {
+      shardRouter = new ConsistentHashShardRouter();
+    } else {
+      throw new IllegalArgumentException("unknown sharding " + sharding);
+    }
+    shardRouter.setNodes(Arrays.asList(shards.split(",")));
+    return shardRouter;
+  }
+
+  /**
+   * Initializes the pipelining redis client of the <code>redis-async</code> profile.
+   * 
+   * @return a {@link PipelinedRedisClient}
+   */
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  @Profile("redis-async")
+  PipelinedRedisClient pipelinedRedisClient() {
+    PipelinedRedisClient pipelinedRedisClient = new PipelinedRedisClient();
+    pipelinedRedisClient.setHost(host);
+    pipelinedRedisClient.setPort(port);
+    pipelinedRedisClient.setMaxBatchSize(pipelineBatchSize);
+    return pipelinedRedisClient;
+  }
+
+  /**
+   * Initializes the asynchronous redis version of {@link CdmiObjectDao}.
+   * 
+   * @return an {@link AsyncCdmiObjectDao}
+   */
+  @Bean
+  @Profile("redis-async")
+  AsyncCdmiObjectDao asyncCdmiObjectDao(PipelinedRedisClient pipelinedRedisClient) {
+    AsyncCdmiObjectDaoImpl asyncCdmiObjectDaoImpl = new AsyncCdmiObjectDaoImpl();
+    asyncCdmiObjectDaoImpl.setRedisClient(pipelinedRedisClient);
+    asyncCdmiObjectDaoImpl.setRecordCodec(RecordCodecs.forFormat(recordFormat));
+    return asyncCdmiObjectDaoImpl;
+  }
+
+  /**
+   * Initializes the {@link CdmiObjectDao} of the <code>redis-async</code> profile, the
+   * asynchronous one cached in memory unless the cache size is 0.
+   * 
+   * @return a {@link CdmiObjectDao}
+   */
+  @Bean
+  @Primary
+  @Profile("redis-async")
+  CdmiObjectDao cachedAsyncCdmiObjectDao(AsyncCdmiObjectDao asyncCdmiObjectDao,
+      RedisCacheInvalidation cacheInvalidation) {
+    return cached(asyncCdmiObjectDao, cacheInvalidation);
+  }
+
+  CdmiObjectDao cached(CdmiObjectDao cdmiObjectDao, RedisCacheInvalidation cacheInvalidation) {
+    if (cacheSize <= 0) {
+      return cdmiObjectDao;
+    }
+
+    CachingCdmiObjectDao cachingCdmiObjectDao = new CachingCdmiObjectDao();
+    cachingCdmiObjectDao.setCdmiObjectDao(cdmiObjectDao);
+    cachingCdmiObjectDao.setMaxSize(cacheSize);
+    if (cacheDistributed) {
+      cachingCdmiObjectDao.setInvalidationPublisher(cacheInvalidation);
+    }
+    cacheInvalidation.setCache(cachingCdmiObjectDao);
+    return cachingCdmiObjectDao;
+  }
+
+  /**
+   * Initializes the migration of objects stored under their path.
+   * 
+   * @return a {@link PathIndexMigration}
+   */
+  @Bean
+  PathIndexMigration pathIndexMigration(StringRedisTemplate redisTemplate) {
+    PathIndexMigration pathIndexMigration = new PathIndexMigration();
+    pathIndexMigration.setRedisTemplate(redisTemplate);
+    return pathIndexMigration;
+  }
+
+  /**
+   * Initializes the migration of containers storing their children inline.
+   * 
+   * @return a {@link ChildrenIndexMigration}
+   */
+  @Bean
+  ChildrenIndexMigration childrenIndexMigration(StringRedisTemplate redisTemplate) {
+    ChildrenIndexMigration childrenIndexMigration = new ChildrenIndexMigration();
+    childrenIndexMigration.setRedisTemplate(redisTemplate);
+    return childrenIndexMigration;
   }
 
   /**
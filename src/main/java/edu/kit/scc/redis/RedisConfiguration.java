@@ -9,6 +9,9 @@
 
 package edu.kit.scc.redis;
 
+import edu.kit.scc.cdmiserver.dao.redis.ChildrenIndexMigration;
+import edu.kit.scc.cdmiserver.dao.redis.PathIndexMigration;
+
 import org.indigo.cdmi.BackEndException;
 import org.indigo.cdmi.BackendCapability;
 import org.indigo.cdmi.BackendCapability.CapabilityType;
@@ -45,6 +48,12 @@ public class RedisConfiguration {
   @Autowired
   private CapabilityDao capabilityDao;
 
+  @Autowired
+  private PathIndexMigration pathIndexMigration;
+
+  @Autowired
+  private ChildrenIndexMigration childrenIndexMigration;
+
   @Value("${cdmi.data.baseDirectory}")
   private String baseDirectory;
 
@@ -57,6 +66,9 @@ public class RedisConfiguration {
    */
   @PostConstruct
   public void init() {
+    pathIndexMigration.migrate();
+    childrenIndexMigration.migrate();
+
     log.debug("Set-up root container...");
 
     CdmiObject rootObject = new CdmiObject();
@@ -9,6 +9,9 @@
 
 package edu.kit.scc.redis;
 
+import edu.kit.scc.cdmiserver.dao.redis.ChildrenIndexMigration;
+import edu.kit.scc.cdmiserver.dao.redis.PathIndexMigration;
+
 import org.indigo.cdmi.BackEndException;
 import org.indigo.cdmi.BackendCapability;
 import org.indigo.cdmi.BackendCapability.CapabilityType;
@@ -25,12 +28,14 @@ import org.snia.cdmiserver.model.Container;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import redis.embedded.RedisServer;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -49,6 +54,12 @@ public class RedisEmbeddedConfiguration {
   @Autowired
   private CapabilityDao capabilityDao;
 
+  @Autowired
+  private PathIndexMigration pathIndexMigration;
+
+  @Autowired
+  private ChildrenIndexMigration childrenIndexMigration;
+
   @Value("${cdmi.data.baseDirectory}")
   private String baseDirectory;
 
@@ -58,7 +69,17 @@ public class RedisEmbeddedConfiguration {
   @Value("${spring.redis.port}")
   private int redisPort;
 
-  private static RedisServer redisServer;
+  @Value("${cdmi.redis.shards}")
+  private String shards;
+
+  @Autowired
+  private Environment environment;
+
+  // only set if this context started the server, another context may share it
+  private RedisServer redisServer;
+
+  // the servers of the shards this context started
+  private final List<RedisServer> shardServers = new ArrayList<>();
 
   /**
    * Initializes in-memory redis.
@@ -68,13 +89,30 @@ public class RedisEmbeddedConfiguration {
   @PostConstruct
   public void init() throws IOException {
     log.debug("Set-up in-memory redis...");
-    redisServer = new RedisServer(redisPort);
+    RedisServer server = new RedisServer(redisPort);
     try {
-      redisServer.start();
+      server.start();
+      redisServer = server;
     } catch (Exception ex) {
       log.warn("Redis servier already running?");
     }
 
+    if (environment.acceptsProfiles("redis-sharded")) {
+      for (String shard : shards.split(",")) {
+        RedisServer shardServer =
+            new RedisServer(Integer.parseInt(shard.substring(shard.lastIndexOf(':') + 1).trim()));
+        try {
+          shardServer.start();
+          shardServers.add(shardServer);
+        } catch (Exception ex) {
+          log.warn("Redis server of shard {} already running?", shard);
+        }
+      }
+    }
+
+    pathIndexMigration.migrate();
+    childrenIndexMigration.migrate();
+
     log.debug("Set-up root container...");
 
     CdmiObject rootObject = new CdmiObject();
@@ -157,5 +195,8 @@ public class RedisEmbeddedConfiguration {
       log.debug("Shutdown in-memory redis");
       redisServer.stop();
     }
+    for (RedisServer shardServer : shardServers) {
+      shardServer.stop();
+    }
   }
 }
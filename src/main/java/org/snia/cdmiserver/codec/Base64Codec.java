@@ -0,0 +1,446 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming base64 codec (RFC 4648, standard alphabet) for the base64 valuetransferencoding.
+ *
+ * <p>
+ * The streams work on blocks of 4 characters and 3 bytes in fixed-size buffers, so a value of any
+ * size is encoded or decoded without holding more than a buffer of it and without reading or
+ * writing the underlying stream byte by byte. When decoding, whitespace is skipped and the padding
+ * is optional; any other character outside the alphabet fails the read with an
+ * {@link IOException}.
+ * </p>
+ */
+public final class Base64Codec {
+
+  static final int BUFFER_SIZE = 8192;
+
+  private static final byte[] ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+          .getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte PAD = '=';
+
+  private static final int INVALID = -1;
+
+  private static final int WHITESPACE = -2;
+
+  private static final int PADDING = -3;
+
+  private static final int[] SEXTETS = new int[256];
+
+  static {
+    for (int i = 0; i < SEXTETS.length; i++) {
+      SEXTETS[i] = INVALID;
+    }
+    for (int i = 0; i < ALPHABET.length; i++) {
+      SEXTETS[ALPHABET[i]] = i;
+    }
+    SEXTETS[' '] = WHITESPACE;
+    SEXTETS['\t'] = WHITESPACE;
+    SEXTETS['\r'] = WHITESPACE;
+    SEXTETS['\n'] = WHITESPACE;
+    SEXTETS[PAD] = PADDING;
+  }
+
+  private Base64Codec() {}
+
+  /**
+   * Gets the length of the padded encoding of the given number of bytes.
+   */
+  public static long getEncodedLength(long length) {
+    return (length + 2) / 3 * 4;
+  }
+
+  /**
+   * Encodes bytes into a padded base64 string.
+   *
+   * @param bytes the bytes to encode
+   * @param offset the offset of the first byte
+   * @param length the number of bytes
+   * @return the base64 string
+   */
+  public static String encodeToString(byte[] bytes, int offset, int length) {
+    byte[] encoded = new byte[(int) getEncodedLength(length)];
+    int position = encodeBlocks(bytes, offset, length / 3, encoded, 0);
+    encodeTail(bytes, offset + length / 3 * 3, length % 3, encoded, position);
+    return new String(encoded, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Wraps a stream of base64 characters, decoding them while they are read.
+   *
+   * @param in the US-ASCII base64 characters
+   * @return the stream of the decoded bytes
+   */
+  public static InputStream decode(InputStream in) {
+    return new DecodingInputStream(in);
+  }
+
+  /**
+   * Wraps a channel of base64 characters, decoding them while they are read.
+   *
+   * @param in the US-ASCII base64 characters
+   * @return the channel of the decoded bytes
+   */
+  public static ReadableByteChannel decode(ReadableByteChannel in) {
+    return Channels.newChannel(decode(Channels.newInputStream(in)));
+  }
+
+  /**
+   * Wraps a stream, encoding the bytes written to it into base64 characters. The padding is written
+   * on {@link OutputStream#close()}, which also closes the wrapped stream.
+   *
+   * @param out the stream of the US-ASCII base64 characters
+   * @return the stream to write the bytes to
+   */
+  public static OutputStream encode(OutputStream out) {
+    return new EncodingOutputStream(out);
+  }
+
+  /**
+   * Wraps a channel, encoding the bytes written to it into base64 characters. The padding is
+   * written on close, which also closes the wrapped channel.
+   *
+   * @param out the channel of the US-ASCII base64 characters
+   * @return the channel to write the bytes to
+   */
+  public static WritableByteChannel encode(WritableByteChannel out) {
+    return Channels.newChannel(encode(Channels.newOutputStream(out)));
+  }
+
+  /**
+   * Encodes whole blocks of 3 bytes.
+   *
+   * @return the position after the encoded characters
+   */
+  private static int encodeBlocks(byte[] source, int offset, int blocks, byte[] target,
+      int position) {
+    for (int i = 0; i < blocks; i++) {
+      int bits = (source[offset++] & 0xff) << 16 | (source[offset++] & 0xff) << 8
+          | (source[offset++] & 0xff);
+      target[position++] = ALPHABET[bits >>> 18];
+      target[position++] = ALPHABET[bits >>> 12 & 0x3f];
+      target[position++] = ALPHABET[bits >>> 6 & 0x3f];
+      target[position++] = ALPHABET[bits & 0x3f];
+    }
+    return position;
+  }
+
+  /**
+   * Encodes the last 1 or 2 bytes, padded to 4 characters.
+   *
+   * @return the position after the encoded characters
+   */
+  private static int encodeTail(byte[] source, int offset, int length, byte[] target,
+      int position) {
+    if (length == 0) {
+      return position;
+    }
+    int bits = (source[offset] & 0xff) << 16;
+    if (length == 2) {
+      bits |= (source[offset + 1] & 0xff) << 8;
+    }
+    target[position++] = ALPHABET[bits >>> 18];
+    target[position++] = ALPHABET[bits >>> 12 & 0x3f];
+    target[position++] = length == 2 ? ALPHABET[bits >>> 6 & 0x3f] : PAD;
+    target[position++] = PAD;
+    return position;
+  }
+
+  private static class DecodingInputStream extends FilterInputStream {
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    // sextets of an incomplete block, e.g. split across buffers or interrupted by whitespace
+    private int bits;
+
+    private int sextets;
+
+    private int padding;
+
+    // decoded bytes that didn't fit into the caller's array
+    private final byte[] pending = new byte[3];
+
+    private int pendingPosition;
+
+    private int pendingLimit;
+
+    DecodingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] octet = new byte[1];
+      int count;
+      while ((count = read(octet, 0, 1)) == 0) {
+        continue;
+      }
+      return count < 0 ? -1 : octet[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      int start = offset;
+      int end = offset + length;
+      while (offset < end) {
+        if (pendingPosition < pendingLimit) {
+          bytes[offset++] = pending[pendingPosition++];
+          continue;
+        }
+        if (position == limit) {
+          if (eof) {
+            break;
+          }
+          fill();
+          continue;
+        }
+        // whole blocks straight into the caller's array
+        if (sextets == 0 && padding == 0) {
+          while (limit - position >= 4 && end - offset >= 3) {
+            int s0 = SEXTETS[buffer[position] & 0xff];
+            int s1 = SEXTETS[buffer[position + 1] & 0xff];
+            int s2 = SEXTETS[buffer[position + 2] & 0xff];
+            int s3 = SEXTETS[buffer[position + 3] & 0xff];
+            if ((s0 | s1 | s2 | s3) < 0) {
+              break;
+            }
+            int block = s0 << 18 | s1 << 12 | s2 << 6 | s3;
+            bytes[offset++] = (byte) (block >>> 16);
+            bytes[offset++] = (byte) (block >>> 8);
+            bytes[offset++] = (byte) block;
+            position += 4;
+          }
+          if (position == limit || offset == end) {
+            continue;
+          }
+        }
+        decodeCharacter(buffer[position++] & 0xff);
+      }
+      int count = offset - start;
+      return count == 0 && eof && pendingPosition == pendingLimit ? -1 : count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      byte[] skipped = new byte[(int) Math.min(count, BUFFER_SIZE)];
+      long total = 0;
+      int read;
+      while (total < count
+          && (read = read(skipped, 0, (int) Math.min(count - total, skipped.length))) > 0) {
+        total += read;
+      }
+      return total;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return pendingLimit - pendingPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {}
+
+    @Override
+    public synchronized void reset() throws IOException {
+      throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads the next characters into the buffer, finishing the last block at the end of the
+     * stream.
+     */
+    private void fill() throws IOException {
+      int count = in.read(buffer, 0, buffer.length);
+      if (count < 0) {
+        eof = true;
+        finish();
+        return;
+      }
+      position = 0;
+      limit = count;
+    }
+
+    private void decodeCharacter(int character) throws IOException {
+      int sextet = SEXTETS[character];
+      if (sextet >= 0) {
+        if (padding > 0) {
+          throw new IOException("Invalid base64, data after the padding");
+        }
+        bits = bits << 6 | sextet;
+        if (++sextets == 4) {
+          emit(3);
+        }
+      } else if (sextet == PADDING) {
+        padding++;
+        if (sextets < 2 || sextets + padding > 4) {
+          throw new IOException("Invalid base64, misplaced padding");
+        }
+        if (sextets + padding == 4) {
+          emitTail();
+        }
+      } else if (sextet == INVALID) {
+        throw new IOException("Invalid base64 character " + character);
+      }
+    }
+
+    /**
+     * Decodes the last, unpadded or incompletely padded block.
+     */
+    private void finish() throws IOException {
+      if (sextets == 1) {
+        throw new IOException("Invalid base64, truncated block");
+      }
+      if (sextets > 1) {
+        emitTail();
+      }
+    }
+
+    private void emitTail() {
+      // 2 sextets carry 1 byte, 3 sextets 2 bytes
+      int count = sextets - 1;
+      bits <<= 6 * (4 - sextets);
+      emit(count);
+      // a padded block ends the data, only whitespace may follow
+      sextets = 0;
+    }
+
+    private void emit(int count) {
+      pending[0] = (byte) (bits >>> 16);
+      pending[1] = (byte) (bits >>> 8);
+      pending[2] = (byte) bits;
+      pendingPosition = 0;
+      pendingLimit = count;
+      bits = 0;
+      sextets = 0;
+    }
+  }
+
+  private static class EncodingOutputStream extends FilterOutputStream {
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    // the bytes of an incomplete block
+    private final byte[] carry = new byte[3];
+
+    private int carried;
+
+    private boolean closed;
+
+    EncodingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int octet) throws IOException {
+      write(new byte[] {(byte) octet}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (carried > 0) {
+        while (carried < 3 && length > 0) {
+          carry[carried++] = bytes[offset++];
+          length--;
+        }
+        if (carried < 3) {
+          return;
+        }
+        reserve(4);
+        position = encodeBlocks(carry, 0, 1, buffer, position);
+        carried = 0;
+      }
+      while (length >= 3) {
+        if (position == buffer.length) {
+          flushBuffer();
+        }
+        int blocks = Math.min(length / 3, (buffer.length - position) / 4);
+        position = encodeBlocks(bytes, offset, blocks, buffer, position);
+        offset += blocks * 3;
+        length -= blocks * 3;
+      }
+      while (length > 0) {
+        carry[carried++] = bytes[offset++];
+        length--;
+      }
+    }
+
+    /**
+     * Flushes the whole blocks written so far, an incomplete block is kept until more bytes are
+     * written or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+      flushBuffer();
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        reserve(4);
+        position = encodeTail(carry, 0, carried, buffer, position);
+        carried = 0;
+        flushBuffer();
+      } finally {
+        out.close();
+      }
+    }
+
+    private void reserve(int count) throws IOException {
+      if (buffer.length - position < count) {
+        flushBuffer();
+      }
+    }
+
+    private void flushBuffer() throws IOException {
+      if (position > 0) {
+        out.write(buffer, 0, position);
+        position = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The operations of a batch request, parsed one at a time while the body is read.
+ *
+ * <p>
+ * The body is either a JSON array of operations or newline delimited JSON with one operation per
+ * line, every operation a JSON object. Only the current operation is kept, so a batch of any size
+ * takes no more heap than its largest operation.
+ * </p>
+ */
+public class BatchReader {
+
+  private final JSONTokener tokener;
+
+  private boolean started;
+
+  private boolean array;
+
+  private boolean done;
+
+  /**
+   * Creates a reader of the given body.
+   *
+   * @param in the UTF-8 encoded JSON array or newline delimited JSON
+   */
+  public BatchReader(InputStream in) {
+    this.tokener = new JSONTokener(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads the next operation.
+   *
+   * @return the operation or <code>null</code> after the last one
+   * @throws JSONException if the body is malformed or an operation isn't a JSON object
+   */
+  public JSONObject next() {
+    if (done) {
+      return null;
+    }
+    char next = tokener.nextClean();
+    if (!started) {
+      started = true;
+      if (next == '[') {
+        array = true;
+        next = tokener.nextClean();
+        if (next == ']') {
+          done = true;
+          return null;
+        }
+      }
+    } else if (array) {
+      if (next == ']') {
+        done = true;
+        return null;
+      }
+      if (next != ',') {
+        throw tokener.syntaxError("Expected a ',' or ']'");
+      }
+      next = tokener.nextClean();
+    }
+    if (next == 0) {
+      if (array) {
+        throw tokener.syntaxError("Expected a ']'");
+      }
+      done = true;
+      return null;
+    }
+    if (next != '{') {
+      throw tokener.syntaxError("An operation must be a JSON object");
+    }
+    tokener.back();
+    return new JSONObject(tokener);
+  }
+}
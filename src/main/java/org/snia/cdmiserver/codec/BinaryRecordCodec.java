@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.util.MediaTypes;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores objects in a compact binary form of their JSON serialization.
+ *
+ * <p>
+ * A record starts with {@link #MAGIC} and the format {@link #VERSION}, followed by the JSON value.
+ * Every value starts with a tag byte. Lengths, counts and integers are varints, integers zigzag
+ * encoded. The keys of the CDMI model and a few frequent values, like the object types, are
+ * replaced by their index in a dictionary. The dictionaries of a version may only be appended to,
+ * any other change needs a new version, which must keep decoding the older ones.
+ * </p>
+ */
+public class BinaryRecordCodec implements RecordCodec {
+
+  /**
+   * The first byte of binary records, never the first byte of a JSON record.
+   */
+  public static final byte MAGIC = (byte) 0xCD;
+
+  public static final byte VERSION = 1;
+
+  private static final byte NULL = 0;
+
+  private static final byte FALSE = 1;
+
+  private static final byte TRUE = 2;
+
+  private static final byte INTEGER = 3;
+
+  private static final byte DOUBLE = 4;
+
+  private static final byte STRING = 5;
+
+  private static final byte STRING_REF = 6;
+
+  private static final byte OBJECT = 7;
+
+  private static final byte ARRAY = 8;
+
+  private static final byte NUMBER = 9;
+
+  private static final List<String> KEYS = Arrays.asList("objectID", "objectType", "objectName",
+      "parentURI", "parentID", "domainURI", "capabilitiesURI", "completionStatus",
+      "percentComplete", "metadata", "exports", "snapshots", "childrenrange", "children",
+      "mimetype", "valuetransferencoding", "valuerange", "value", "capabilities",
+      "deserializevalue", "serialize", "deserialize", "reference", "move", "copy", "cdmi_size",
+      "cdmi_ctime", "cdmi_atime", "cdmi_mtime", "cdmi_acount", "cdmi_mcount",
+      "cdmi_capabilities_allowed", "cdmi_capability_lifetime", "cdmi_capability_lifetime_action",
+      "cdmi_data_redundancy", "cdmi_geographic_placement", "cdmi_latency", "cdmi_throughput",
+      "cdmi_data_storage_lifetime", "cdmi_default_dataobject_capability_class",
+      "cdmi_capabilities_templates");
+
+  private static final List<String> VALUES = Arrays.asList(MediaTypes.CONTAINER,
+      MediaTypes.DATA_OBJECT, MediaTypes.CAPABILITY, MediaTypes.ACCOUNT, MediaTypes.OBJECT,
+      MediaTypes.QUEUE, "Complete", "Processing", "Error", "utf-8", "base64", "json",
+      "text/plain", "application/octet-stream", "/", "/cdmi_capabilities/",
+      "/cdmi_capabilities/container/", "/cdmi_capabilities/dataobject/", "true", "false");
+
+  private static final Map<String, Integer> KEY_INDEX = index(KEYS);
+
+  private static final Map<String, Integer> VALUE_INDEX = index(VALUES);
+
+  private static Map<String, Integer> index(List<String> dictionary) {
+    Map<String, Integer> index = new HashMap<>();
+    for (int i = 0; i < dictionary.size(); i++) {
+      index.put(dictionary.get(i), i);
+    }
+    return index;
+  }
+
+  // records are encoded into a buffer per thread, so only the finished record is allocated
+  private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+
+  @Override
+  public byte[] encode(JSONObject json) {
+    Output out = OUTPUT.get();
+    out.reset();
+    out.writeByte(MAGIC);
+    out.writeByte(VERSION);
+    writeValue(out, json);
+    return out.toByteArray();
+  }
+
+  @Override
+  public CdmiObject decode(byte[] record) {
+    return RecordCodecs.decode(record);
+  }
+
+  /**
+   * Decodes a binary record to JSON.
+   *
+   * @param record the encoded record
+   * @return the record as {@link JSONObject}
+   * @throws IllegalArgumentException if the record isn't a binary record of a known version
+   */
+  static JSONObject decodeJson(byte[] record) {
+    if (record.length < 2 || record[0] != MAGIC) {
+      throw new IllegalArgumentException("not a binary record");
+    }
+    if (record[1] != VERSION) {
+      throw new IllegalArgumentException("unknown binary record version " + record[1]);
+    }
+
+    Input in = new Input(record, 2);
+    try {
+      Object value = readValue(in);
+      if (!(value instanceof JSONObject)) {
+        throw new IllegalArgumentException("binary record doesn't hold an object");
+      }
+      return (JSONObject) value;
+    } catch (IndexOutOfBoundsException ex) {
+      throw new IllegalArgumentException("truncated binary record", ex);
+    }
+  }
+
+  private static void writeValue(Output out, Object value) {
+    if (value == null || value == JSONObject.NULL) {
+      out.writeByte(NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof String) {
+      Integer index = VALUE_INDEX.get(value);
+      if (index != null) {
+        out.writeByte(STRING_REF);
+        out.writeVarint(index);
+      } else {
+        out.writeByte(STRING);
+        out.writeString((String) value);
+      }
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte) {
+      long number = ((Number) value).longValue();
+      out.writeByte(INTEGER);
+      out.writeVarint((number << 1) ^ (number >> 63));
+    } else if (value instanceof Double || value instanceof Float) {
+      out.writeByte(DOUBLE);
+      out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+    } else if (value instanceof Number) {
+      out.writeByte(NUMBER);
+      out.writeString(value.toString());
+    } else if (value instanceof JSONObject) {
+      JSONObject json = (JSONObject) value;
+      out.writeByte(OBJECT);
+      out.writeVarint(json.length());
+      for (String key : json.keySet()) {
+        Integer index = KEY_INDEX.get(key);
+        if (index != null) {
+          out.writeVarint(index + 1);
+        } else {
+          out.writeVarint(0);
+          out.writeString(key);
+        }
+        writeValue(out, json.opt(key));
+      }
+    } else if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      out.writeByte(ARRAY);
+      out.writeVarint(array.length());
+      for (int i = 0; i < array.length(); i++) {
+        writeValue(out, array.opt(i));
+      }
+    } else {
+      // JSONObject.toString() serializes any other value as a string as well
+      out.writeByte(STRING);
+      out.writeString(value.toString());
+    }
+  }
+
+  private static Object readValue(Input in) {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return JSONObject.NULL;
+      case FALSE:
+        return Boolean.FALSE;
+      case TRUE:
+        return Boolean.TRUE;
+      case INTEGER:
+        long zigzag = in.readVarint();
+        long number = (zigzag >>> 1) ^ -(zigzag & 1);
+        if (number == (int) number) {
+          return (int) number;
+        }
+        return number;
+      case DOUBLE:
+        return Double.longBitsToDouble(in.readLong());
+      case STRING:
+        return in.readString();
+      case STRING_REF:
+        return VALUES.get((int) in.readVarint());
+      case NUMBER:
+        String text = in.readString();
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+          return new BigInteger(text);
+        }
+        return new BigDecimal(text);
+      case OBJECT:
+        int length = (int) in.readVarint();
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < length; i++) {
+          int keyIndex = (int) in.readVarint();
+          String key = keyIndex > 0 ? KEYS.get(keyIndex - 1) : in.readString();
+          json.put(key, readValue(in));
+        }
+        return json;
+      case ARRAY:
+        int size = (int) in.readVarint();
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < size; i++) {
+          array.put(readValue(in));
+        }
+        return array;
+      default:
+        throw new IllegalArgumentException("unknown tag " + tag + " in binary record");
+    }
+  }
+
+  private static final class Output {
+
+    // larger buffers are dropped after use, so a single huge record isn't held on to
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private byte[] buffer = new byte[4096];
+
+    private int size;
+
+    private void reset() {
+      if (buffer.length > MAX_RETAINED_SIZE) {
+        buffer = new byte[4096];
+      }
+      size = 0;
+    }
+
+    private void ensure(int length) {
+      if (size + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+      }
+    }
+
+    private void writeByte(byte value) {
+      ensure(1);
+      buffer[size++] = value;
+    }
+
+    private void writeVarint(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+      ensure(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void writeString(String value) {
+      int length = value.length();
+      for (int i = 0; i < length; i++) {
+        if (value.charAt(i) >= 0x80) {
+          byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+          writeVarint(bytes.length);
+          ensure(bytes.length);
+          System.arraycopy(bytes, 0, buffer, size, bytes.length);
+          size += bytes.length;
+          return;
+        }
+      }
+      // plain ASCII, which most of the values are, needs no encoder
+      writeVarint(length);
+      ensure(length);
+      for (int i = 0; i < length; i++) {
+        buffer[size++] = (byte) value.charAt(i);
+      }
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+  }
+
+  private static final class Input {
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private Input(byte[] buffer, int position) {
+      this.buffer = buffer;
+      this.position = position;
+    }
+
+    private byte readByte() {
+      return buffer[position++];
+    }
+
+    private long readVarint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte next = buffer[position++];
+        value |= (long) (next & 0x7F) << shift;
+        if ((next & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("malformed varint in binary record");
+    }
+
+    private long readLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    private String readString() {
+      int length = (int) readVarint();
+      if (length < 0 || position + length > buffer.length) {
+        throw new IllegalArgumentException("truncated binary record");
+      }
+      String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+  }
+}
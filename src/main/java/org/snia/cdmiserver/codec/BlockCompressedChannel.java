@@ -0,0 +1,345 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only {@link FileChannel} over a value in the format of {@link BlockCompression}. Reads
+ * decompress the blocks they overlap, the last one is kept for the reads that follow. Stored blocks
+ * are read from the file directly.
+ */
+final class BlockCompressedChannel extends FileChannel {
+
+  private final FileChannel file;
+
+  private final int blockSize;
+
+  private final long size;
+
+  private final long[] ends;
+
+  private Inflater inflater;
+
+  private byte[] compressed;
+
+  private byte[] block;
+
+  private int cachedBlock = -1;
+
+  private long position;
+
+  private BlockCompressedChannel(FileChannel file, int blockSize, long size, long[] ends) {
+    this.file = file;
+    this.blockSize = blockSize;
+    this.size = size;
+    this.ends = ends;
+  }
+
+  /**
+   * Opens the compressed value of the given file.
+   *
+   * @return the channel or <code>null</code> if the file isn't in the block format
+   */
+  static BlockCompressedChannel open(FileChannel file) throws IOException {
+    ByteBuffer header = readHeader(file);
+    if (header == null) {
+      return null;
+    }
+    if (header.get(8) != BlockCompression.VERSION
+        || header.get(9) != BlockCompression.CODEC_DEFLATE) {
+      throw new IOException("unsupported compressed value version " + header.get(8));
+    }
+    int blockSize = header.getInt(12);
+    ByteBuffer trailer = read(file, file.size() - BlockCompression.TRAILER_SIZE,
+        BlockCompression.TRAILER_SIZE);
+    long indexOffset = trailer.getLong(0);
+    int blocks = trailer.getInt(8);
+    long size = trailer.getLong(12);
+    if (blockSize <= 0 || blocks < 0 || size < 0
+        || (size + blockSize - 1) / blockSize != blocks
+        || indexOffset + 8L * blocks + BlockCompression.TRAILER_SIZE != file.size()) {
+      throw new IOException("corrupt compressed value");
+    }
+
+    ByteBuffer index = read(file, indexOffset, 8 * blocks);
+    long[] ends = new long[blocks];
+    for (int i = 0; i < blocks; i++) {
+      ends[i] = index.getLong(8 * i);
+    }
+    return new BlockCompressedChannel(file, blockSize, size, ends);
+  }
+
+  /**
+   * Reads the header of the given file if its header and trailer are those of a compressed value.
+   *
+   * @return the header or <code>null</code> if the file isn't in the block format
+   */
+  static ByteBuffer readHeader(FileChannel file) throws IOException {
+    long fileSize = file.size();
+    if (fileSize < BlockCompression.HEADER_SIZE + BlockCompression.TRAILER_SIZE) {
+      return null;
+    }
+    ByteBuffer header = read(file, 0, BlockCompression.HEADER_SIZE);
+    ByteBuffer trailer =
+        read(file, fileSize - BlockCompression.TRAILER_SIZE, BlockCompression.TRAILER_SIZE);
+    if (header.getLong(0) != BlockCompression.MAGIC || trailer.getLong(24) != BlockCompression.MAGIC
+        || BlockCompression.getChecksum(header, trailer) != trailer.getInt(20)) {
+      return null;
+    }
+    return header;
+  }
+
+  private static ByteBuffer read(FileChannel file, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (file.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("compressed value truncated at " + position);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Decompresses the given block into the cache, unless it is cached already.
+   */
+  private void load(int index) throws IOException {
+    if (index == cachedBlock) {
+      return;
+    }
+    cachedBlock = -1;
+    long start = getStart(index);
+    int length = (int) (getOffset(index) - start);
+    if (length > blockSize || length < 0) {
+      throw new IOException("corrupt compressed block " + index);
+    }
+    if (inflater == null) {
+      // not needed to read stored blocks
+      inflater = new Inflater(true);
+      compressed = new byte[blockSize];
+      block = new byte[blockSize];
+    }
+
+    readFully(ByteBuffer.wrap(compressed, 0, length), start);
+    inflater.reset();
+    inflater.setInput(compressed, 0, length);
+    try {
+      if (inflater.inflate(block, 0, getLength(index)) != getLength(index)
+          || !inflater.finished()) {
+        throw new IOException("corrupt compressed block " + index);
+      }
+    } catch (DataFormatException ex) {
+      throw new IOException("corrupt compressed block " + index, ex);
+    }
+    cachedBlock = index;
+  }
+
+  /**
+   * Gets the position of the given stored block in the file.
+   */
+  private long getStoredStart(int index) throws IOException {
+    long start = getStart(index);
+    if (getOffset(index) - start != getLength(index)) {
+      throw new IOException("corrupt stored block " + index);
+    }
+    return start;
+  }
+
+  private long getStart(int index) {
+    return index == 0 ? BlockCompression.HEADER_SIZE : getOffset(index - 1);
+  }
+
+  private long getOffset(int index) {
+    return ends[index] & ~BlockCompression.STORED;
+  }
+
+  private boolean isStored(int index) {
+    return (ends[index] & BlockCompression.STORED) != 0;
+  }
+
+  private int getLength(int index) {
+    return (int) Math.min(blockSize, size - (long) index * blockSize);
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    long start = position - buffer.position();
+    while (buffer.hasRemaining()) {
+      if (file.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException("compressed value truncated at " + position);
+      }
+    }
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst, long position) throws IOException {
+    if (position < 0) {
+      throw new IllegalArgumentException("negative position");
+    }
+    if (position >= size) {
+      return -1;
+    }
+    int read = 0;
+    while (dst.hasRemaining() && position < size) {
+      int index = (int) (position / blockSize);
+      int offset = (int) (position % blockSize);
+      int count = Math.min(dst.remaining(), getLength(index) - offset);
+      if (isStored(index)) {
+        ByteBuffer part = dst.duplicate();
+        part.limit(part.position() + count);
+        readFully(part, getStoredStart(index) + offset);
+        dst.position(part.position());
+      } else {
+        load(index);
+        dst.put(block, offset, count);
+      }
+      position += count;
+      read += count;
+    }
+    return read;
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst) throws IOException {
+    int read = read(dst, position);
+    if (read > 0) {
+      position += read;
+    }
+    return read;
+  }
+
+  @Override
+  public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    long read = 0;
+    for (int i = offset; i < offset + length; i++) {
+      if (dsts[i].hasRemaining()) {
+        int count = read(dsts[i]);
+        if (count < 0) {
+          return read > 0 ? read : -1;
+        }
+        read += count;
+        if (dsts[i].hasRemaining()) {
+          break;
+        }
+      }
+    }
+    return read;
+  }
+
+  @Override
+  public synchronized long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    long end = Math.min(size, position + count);
+    long transferred = 0;
+    while (position < end) {
+      int index = (int) (position / blockSize);
+      int offset = (int) (position % blockSize);
+      int length = (int) Math.min(end - position, getLength(index) - offset);
+      if (isStored(index)) {
+        // without copying, like the file's own transfers
+        long written = file.transferTo(getStoredStart(index) + offset, length, target);
+        if (written <= 0) {
+          break;
+        }
+        length = (int) written;
+      } else {
+        load(index);
+        BlockCompression.writeFully(ByteBuffer.wrap(block, offset, length), target);
+      }
+      position += length;
+      transferred += length;
+    }
+    return transferred;
+  }
+
+  @Override
+  public synchronized long position() {
+    return position;
+  }
+
+  @Override
+  public synchronized FileChannel position(long newPosition) {
+    if (newPosition < 0) {
+      throw new IllegalArgumentException("negative position");
+    }
+    position = newPosition;
+    return this;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public FileChannel truncate(long size) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public void force(boolean metaData) {
+    // never written
+  }
+
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size) {
+    throw new UnsupportedOperationException("compressed values can't be mapped");
+  }
+
+  @Override
+  public FileLock lock(long position, long size, boolean shared) {
+    throw new UnsupportedOperationException("compressed values can't be locked");
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) {
+    throw new UnsupportedOperationException("compressed values can't be locked");
+  }
+
+  @Override
+  protected void implCloseChannel() throws IOException {
+    synchronized (this) {
+      if (inflater != null) {
+        inflater.end();
+      }
+    }
+    file.close();
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses values at rest in a seekable block format, for the data objects whose capability
+ * class has a cdmi_compression.
+ *
+ * <p>
+ * The value is split into blocks of {@link #BLOCK_SIZE} bytes, which are compressed independently,
+ * so a range is read by decompressing only the blocks it overlaps. Blocks that don't shrink by an
+ * eighth, e.g. of values compressed already, are stored as they are. The compression a value is
+ * stored in is kept in its data object's record as cdmi_value_compression, so it is read the same
+ * way whether the capability class changed or not, and a value that happens to be in the format is
+ * read as it was written:
+ * </p>
+ *
+ * <pre>
+ * header   magic (8) version (1) codec (1) reserved (2) block size (4)
+ * blocks   the compressed or stored blocks
+ * index    the end offset of each block (8), with the highest bit set if the block is stored
+ * trailer  index offset (8) blocks (4) value size (8) CRC-32 of header and trailer (4) magic (8)
+ * </pre>
+ */
+public final class BlockCompression {
+
+  public static final String METADATA_NAME = "cdmi_compression";
+
+  public static final String VALUE_METADATA_NAME = "cdmi_value_compression";
+
+  public static final String NONE = "none";
+
+  /**
+   * Raw deflate at its fastest level.
+   */
+  public static final String DEFLATE = "deflate";
+
+  public static final int BLOCK_SIZE = 64 * 1024;
+
+  static final int HEADER_SIZE = 16;
+
+  static final int TRAILER_SIZE = 32;
+
+  static final long MAGIC = 0x89434d49425a0d0aL;
+
+  static final byte VERSION = 1;
+
+  static final byte CODEC_DEFLATE = 1;
+
+  static final long STORED = Long.MIN_VALUE;
+
+  private final String name;
+
+  private final int level;
+
+  private final int blockSize;
+
+  private BlockCompression(String name, int level, int blockSize) {
+    this.name = name;
+    this.level = level;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Gets the {@link BlockCompression} for the given cdmi_compression.
+   *
+   * @param name {@link #DEFLATE}, {@link #NONE} or <code>null</code>
+   * @return the {@link BlockCompression} or <code>null</code> for {@link #NONE}
+   * @throws IllegalArgumentException if the compression is unknown
+   */
+  public static BlockCompression forName(String name) {
+    if (name == null || NONE.equalsIgnoreCase(name)) {
+      return null;
+    }
+    if (DEFLATE.equalsIgnoreCase(name)) {
+      return new BlockCompression(DEFLATE, Deflater.BEST_SPEED, BLOCK_SIZE);
+    }
+    throw new IllegalArgumentException("unknown compression " + name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Compresses the value read from the given channel into the block format.
+   *
+   * @param content the channel to read the value from, until it ends
+   * @param file the channel to write the compressed value to
+   * @return the size of the value
+   * @throws IOException in case the value couldn't be read or written
+   */
+  public long compress(ReadableByteChannel content, WritableByteChannel file) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putLong(MAGIC).put(VERSION).put(CODEC_DEFLATE).putShort((short) 0).putInt(blockSize);
+    header.flip();
+    writeFully(header.duplicate(), file);
+
+    byte[] block = new byte[blockSize];
+    byte[] compressed = new byte[blockSize];
+    ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+    long[] ends = new long[16];
+    int blocks = 0;
+    long offset = HEADER_SIZE;
+    long size = 0;
+    Deflater deflater = new Deflater(level, true);
+    try {
+      while (true) {
+        blockBuffer.clear();
+        while (blockBuffer.hasRemaining() && content.read(blockBuffer) >= 0) {
+          // fills the block until the content ends
+        }
+        int length = blockBuffer.position();
+        if (length == 0) {
+          break;
+        }
+        deflater.reset();
+        deflater.setInput(block, 0, length);
+        deflater.finish();
+        int compressedLength = deflater.deflate(compressed, 0, compressed.length);
+        // the output buffer is too small for a block that doesn't shrink, and a block that barely
+        // shrinks isn't worth decompressing on every read
+        boolean stored = !deflater.finished() || compressedLength > length - length / 8;
+        ByteBuffer output = stored ? ByteBuffer.wrap(block, 0, length)
+            : ByteBuffer.wrap(compressed, 0, compressedLength);
+        offset += output.remaining();
+        writeFully(output, file);
+
+        if (blocks == ends.length) {
+          ends = Arrays.copyOf(ends, blocks * 2);
+        }
+        ends[blocks++] = stored ? offset | STORED : offset;
+        size += length;
+        if (length < blockSize) {
+          break;
+        }
+      }
+    } finally {
+      deflater.end();
+    }
+
+    ByteBuffer index = ByteBuffer.allocate(8 * 1024);
+    for (int i = 0; i < blocks; i++) {
+      if (!index.hasRemaining()) {
+        index.flip();
+        writeFully(index, file);
+        index.clear();
+      }
+      index.putLong(ends[i]);
+    }
+    index.flip();
+    writeFully(index, file);
+
+    ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+    trailer.putLong(offset).putInt(blocks).putLong(size);
+    trailer.putInt(getChecksum(header, trailer)).putLong(MAGIC);
+    trailer.flip();
+    writeFully(trailer, file);
+    return size;
+  }
+
+  /**
+   * Opens the value stored in the given file in the block format, which is decompressed while it is
+   * read.
+   *
+   * @param file the file, opened for reading
+   * @return a read-only channel decompressing the file, which closes the file
+   * @throws IOException in case the file couldn't be read or isn't a compressed value
+   */
+  public FileChannel decompress(FileChannel file) throws IOException {
+    FileChannel channel = BlockCompressedChannel.open(file);
+    if (channel == null) {
+      throw new IOException("value isn't " + name + " compressed");
+    }
+    return channel;
+  }
+
+  /**
+   * Gets the cdmi_value_compression of a data object.
+   *
+   * @return the {@link BlockCompression} or <code>null</code> if the value is stored uncompressed
+   * @throws IllegalArgumentException if the compression is unknown
+   */
+  public static BlockCompression get(DataObject dataObject) {
+    JSONObject metadata = dataObject.getMetadata();
+    return metadata != null ? forName(metadata.optString(VALUE_METADATA_NAME, null)) : null;
+  }
+
+  /**
+   * Sets the cdmi_value_compression of a data object, which only the server knows. The metadata is
+   * copied, as it may be shared with the request it was read from.
+   *
+   * @param dataObject the {@link DataObject}
+   * @param compression the {@link BlockCompression} or <code>null</code> if the value is stored
+   *        uncompressed
+   */
+  public static void set(DataObject dataObject, BlockCompression compression) {
+    JSONObject metadata = new JSONObject();
+    if (dataObject.getMetadata() != null) {
+      for (String name : dataObject.getMetadata().keySet()) {
+        metadata.put(name, dataObject.getMetadata().get(name));
+      }
+    }
+    metadata.remove(VALUE_METADATA_NAME);
+    metadata.putOpt(VALUE_METADATA_NAME, compression != null ? compression.getName() : null);
+    dataObject.setMetadata(metadata);
+  }
+
+  /**
+   * Opens the value stored in the given file, which is decompressed while it is read if it is in
+   * the block format.
+   *
+   * @param file the file, opened for reading
+   * @return the file itself, or a read-only channel decompressing it, which closes the file
+   * @throws IOException in case the file couldn't be read or is a corrupt compressed value
+   */
+  public static FileChannel open(FileChannel file) throws IOException {
+    FileChannel channel = BlockCompressedChannel.open(file);
+    return channel != null ? channel : file;
+  }
+
+  /**
+   * Checks if the value stored in the given file is in the block format.
+   *
+   * @param file the file, opened for reading
+   * @return <code>true</code> if it is compressed
+   * @throws IOException in case the file couldn't be read
+   */
+  public static boolean isCompressed(FileChannel file) throws IOException {
+    return BlockCompressedChannel.readHeader(file) != null;
+  }
+
+  /**
+   * Gets the CRC-32 of the header and the trailer up to the checksum, which tells compressed values
+   * from values that happen to begin and end like them.
+   */
+  static int getChecksum(ByteBuffer header, ByteBuffer trailer) {
+    CRC32 crc = new CRC32();
+    crc.update(header.array(), 0, HEADER_SIZE);
+    crc.update(trailer.array(), 0, 20);
+    return (int) crc.getValue();
+  }
+
+  static void writeFully(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
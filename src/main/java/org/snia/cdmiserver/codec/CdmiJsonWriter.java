@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.util.Projection;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the CDMI representation of objects as JSON, with the fields of the query selected while
+ * they are written. Unlike {@link CdmiObject#toJson()} no JSON tree is built, so a container's
+ * children are written from its listing and a range of a data object's value is streamed from its
+ * content.
+ *
+ * <p>
+ * The fields are written in the order of the objects' toJson methods and selected by a
+ * {@link Projection}, this is the only place the fields of a query are selected.
+ * </p>
+ */
+public class CdmiJsonWriter {
+
+  // a multiple of 3 bytes, so the base64 encodings of the chunks can be concatenated
+  private static final int VALUE_CHUNK_SIZE = 3 * 8 * 1024;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer out;
+
+  private final Projection projection;
+
+  private final int[] childrenRange;
+
+  private final long[] valueRange;
+
+  private boolean firstField;
+
+  /**
+   * Creates a writer for the fields selected by the given projection.
+   *
+   * @param out the writer to write the JSON to, it is neither flushed nor closed
+   * @param projection the selected fields, {@link Projection#ALL} to write all fields
+   */
+  public CdmiJsonWriter(Writer out, Projection projection) {
+    this.out = out;
+    this.projection = projection;
+    this.childrenRange = projection.getChildrenRange();
+    this.valueRange = projection.getValueRange();
+  }
+
+  /**
+   * Writes a {@link Container}, {@link DataObject}, {@link Capability} or {@link Domain}.
+   *
+   * @param cdmiObject the object to write
+   * @throws IOException in case the JSON couldn't be written
+   * @throws IllegalArgumentException if the object has no CDMI representation
+   */
+  public void write(CdmiObject cdmiObject) throws IOException {
+    if (cdmiObject instanceof Container) {
+      write((Container) cdmiObject);
+    } else if (cdmiObject instanceof DataObject) {
+      write((DataObject) cdmiObject);
+    } else if (cdmiObject instanceof Capability) {
+      write((Capability) cdmiObject);
+    } else if (cdmiObject instanceof Domain) {
+      write((Domain) cdmiObject);
+    } else {
+      throw new IllegalArgumentException("no CDMI representation of " + cdmiObject);
+    }
+  }
+
+  /**
+   * Writes a {@link Container}.
+   */
+  public void write(Container container) throws IOException {
+    beginObject(container);
+    writeField("objectType", container.getObjectType());
+    writeField("objectName", container.getObjectName());
+    writeField("parentURI", container.getParentUri());
+    writeField("parentID", container.getParentId());
+    writeField("domainURI", container.getDomainUri());
+    writeField("capabilitiesURI", container.getCapabilitiesUri());
+    writeField("completionStatus", container.getCompletionStatus());
+    writeField("percentComplete", container.getPercentComplete());
+    writeMetadata(container.getMetadata());
+    writeField("exports", container.getExports());
+    writeField("snapshots", container.getSnapshots());
+    writeField("childrenrange", container.getChildrenrange());
+    writeChildren(container.getChildren(), container.getChildrenrange());
+    writeField("deserializevalue", container.getDeserializedvalue());
+    writeField("reference", container.getReference());
+    writeField("move", container.getMove());
+    writeField("copy", container.getCopy());
+    writeField("deserialize", container.getDeserialize());
+    out.write('}');
+  }
+
+  /**
+   * Writes a {@link DataObject} with the value it holds, if any.
+   */
+  public void write(DataObject dataObject) throws IOException {
+    writeDataObject(dataObject, null, 0, 0);
+  }
+
+  /**
+   * Writes a {@link DataObject} with a range of its value read from its content. The value is
+   * encoded while it is read, in base64 if that is the data object's valuetransferencoding, and the
+   * range actually read is written as its valuerange.
+   *
+   * @param dataObject the data object to write
+   * @param content the data object's content
+   * @param rangeStart the first byte of the value to write
+   * @param rangeStop the last byte of the value to write
+   * @throws IOException in case the content couldn't be read or the JSON couldn't be written
+   */
+  public void write(DataObject dataObject, FileChannel content, long rangeStart, long rangeStop)
+      throws IOException {
+    writeDataObject(dataObject, content, rangeStart, rangeStop);
+  }
+
+  private void writeDataObject(DataObject dataObject, FileChannel content, long rangeStart,
+      long rangeStop) throws IOException {
+    beginObject(dataObject);
+    writeField("objectType", dataObject.getObjectType());
+    writeField("objectName", dataObject.getObjectName());
+    writeField("parentURI", dataObject.getParentUri());
+    writeField("parentID", dataObject.getParentId());
+    writeField("domainURI", dataObject.getDomainUri());
+    writeField("capabilitiesURI", dataObject.getCapabilitiesUri());
+    writeField("completionStatus", dataObject.getCompletionStatus());
+    writeField("percentComplete", dataObject.getPercentComplete());
+    writeMetadata(dataObject.getMetadata());
+    writeField("mimetype", dataObject.getMimetype());
+    writeField("serialize", dataObject.getSerialize());
+    writeField("valuetransferencoding", dataObject.getValuetransferencoding());
+    if (content != null) {
+      writeName("value");
+      long length = writeValue(content, rangeStart, rangeStop - rangeStart + 1,
+          "base64".equals(dataObject.getValuetransferencoding()));
+      writeField("valuerange", rangeStart + "-" + (rangeStart + length - 1));
+    } else {
+      writeValue(dataObject.getValue());
+    }
+    writeField("deserializevalue", dataObject.getDeserializedvalue());
+    writeField("reference", dataObject.getReference());
+    writeField("move", dataObject.getMove());
+    writeField("copy", dataObject.getCopy());
+    writeField("deserialize", dataObject.getDeserialize());
+    out.write('}');
+  }
+
+  /**
+   * Writes a {@link Capability}.
+   */
+  public void write(Capability capability) throws IOException {
+    beginObject(capability);
+    writeField("objectType", capability.getObjectType());
+    writeField("objectName", capability.getObjectName());
+    writeField("parentURI", capability.getParentUri());
+    writeField("parentID", capability.getParentId());
+    writeField("capabilities", capability.getCapabilities());
+    writeMetadata(capability.getMetadata());
+    writeField("childrenrange", capability.getChildrenrange());
+    writeChildren(capability.getChildren(), capability.getChildrenrange());
+    out.write('}');
+  }
+
+  /**
+   * Writes a {@link Domain}.
+   */
+  public void write(Domain domain) throws IOException {
+    beginObject(domain);
+    writeField("objectType", domain.getObjectType());
+    writeField("objectName", domain.getObjectName());
+    writeField("parentURI", domain.getParentUri());
+    writeField("parentID", domain.getParentId());
+    writeField("domainURI", domain.getDomainUri());
+    writeField("capabilitiesURI", domain.getCapabilitiesUri());
+    writeMetadata(domain.getMetadata());
+    writeField("childrenrange", domain.getChildrenrange());
+    writeChildren(domain.getChildren(), domain.getChildrenrange());
+    writeField("deserializevalue", domain.getDeserializedvalue());
+    writeField("deserialize", domain.getDeserialize());
+    writeField("move", domain.getMove());
+    writeField("copy", domain.getCopy());
+    out.write('}');
+  }
+
+  private void beginObject(CdmiObject cdmiObject) throws IOException {
+    out.write('{');
+    firstField = true;
+    writeField("objectID", cdmiObject.getObjectId());
+  }
+
+  private void writeField(String name, Object value) throws IOException {
+    if (value != null && projection.includes(name)) {
+      writeName(name);
+      writeJson(value);
+    }
+  }
+
+  private void writeName(String name) throws IOException {
+    if (!firstField) {
+      out.write(',');
+    }
+    firstField = false;
+    writeString(name);
+    out.write(':');
+  }
+
+  /**
+   * Writes the metadata, only the items of the selected prefixes unless it is selected as a whole.
+   */
+  private void writeMetadata(JSONObject metadata) throws IOException {
+    if (metadata == null || !projection.includesMetadata()) {
+      return;
+    }
+    writeName("metadata");
+    if (projection.includes("metadata")) {
+      writeJson(metadata);
+      return;
+    }
+    out.write('{');
+    boolean first = true;
+    for (String name : metadata.keySet()) {
+      if (projection.includesMetadata(name)) {
+        if (!first) {
+          out.write(',');
+        }
+        first = false;
+        writeString(name);
+        out.write(':');
+        writeJson(metadata.get(name));
+      }
+    }
+    out.write('}');
+  }
+
+  /**
+   * Writes the children, only those of a requested range unless they have been narrowed to it
+   * when they were read.
+   */
+  private void writeChildren(JSONArray children, String childrenrange) throws IOException {
+    if (children == null) {
+      return;
+    }
+    if (childrenRange == null) {
+      writeField("children", children);
+      return;
+    }
+    int start = 0;
+    int stop = children.length() - 1;
+    if (children.length() >= getChildrenCount(childrenrange)) {
+      start = childrenRange[0];
+      stop = Math.min(childrenRange[1], stop);
+    }
+    writeName("children");
+    out.write('[');
+    for (int i = start; i <= stop; i++) {
+      if (i > start) {
+        out.write(',');
+      }
+      writeJson(children.get(i));
+    }
+    out.write(']');
+  }
+
+  private static int getChildrenCount(String childrenRange) {
+    if (childrenRange == null || childrenRange.isEmpty()) {
+      return 0;
+    }
+    String[] rangeValues = childrenRange.split("-");
+    return Integer.valueOf(rangeValues[rangeValues.length - 1]) + 1;
+  }
+
+  /**
+   * Writes the value a data object holds, or the requested substring of it.
+   */
+  private void writeValue(String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    if (valueRange != null && valueRange[0] < value.length()) {
+      writeName("value");
+      writeString(value.substring((int) valueRange[0],
+          (int) Math.min(valueRange[1] + 1, value.length())));
+    } else {
+      writeField("value", value);
+    }
+  }
+
+  /**
+   * Writes a range of the content as a JSON string, reading it in chunks.
+   *
+   * @return the number of bytes read, less than requested if the content ended before
+   */
+  private long writeValue(FileChannel content, long position, long count, boolean base64)
+      throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(VALUE_CHUNK_SIZE, Math.max(count, 0)));
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer chars = CharBuffer.allocate(base64 ? 0 : bytes.capacity());
+    long read = 0;
+    boolean end = false;
+    out.write('"');
+    while (!end) {
+      // the chunks are filled, so only the last base64 chunk is padded
+      boolean eof = false;
+      while (bytes.hasRemaining() && read < count) {
+        bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + count - read));
+        int n = content.read(bytes, position + read);
+        if (n < 0) {
+          eof = true;
+          break;
+        }
+        read += n;
+      }
+      end = eof || read >= count;
+      bytes.flip();
+      if (base64) {
+        out.write(Base64Codec.encodeToString(bytes.array(), 0, bytes.remaining()));
+        bytes.clear();
+      } else {
+        decoder.decode(bytes, chars, end);
+        if (end) {
+          decoder.flush(chars);
+        }
+        chars.flip();
+        escape(chars);
+        chars.clear();
+        bytes.compact();
+      }
+    }
+    out.write('"');
+    return read;
+  }
+
+  private void writeJson(Object value) throws IOException {
+    try {
+      if (value instanceof String) {
+        writeString((String) value);
+      } else if (value instanceof JSONObject) {
+        ((JSONObject) value).write(out);
+      } else if (value instanceof JSONArray) {
+        ((JSONArray) value).write(out);
+      } else {
+        out.write(JSONObject.valueToString(value));
+      }
+    } catch (JSONException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  private void writeString(String string) throws IOException {
+    out.write('"');
+    escape(string);
+    out.write('"');
+  }
+
+  /**
+   * Writes characters escaped for a JSON string, runs of characters that need no escape at once.
+   */
+  private void escape(CharSequence chars) throws IOException {
+    int end = chars.length();
+    int run = 0;
+    char previous = 0;
+    for (int i = 0; i < end; i++) {
+      char c = chars.charAt(i);
+      String escaped = null;
+      switch (c) {
+        case '"':
+          escaped = "\\\"";
+          break;
+        case '\\':
+          escaped = "\\\\";
+          break;
+        case '/':
+          escaped = previous == '<' ? "\\/" : null;
+          break;
+        case '\b':
+          escaped = "\\b";
+          break;
+        case '\t':
+          escaped = "\\t";
+          break;
+        case '\n':
+          escaped = "\\n";
+          break;
+        case '\f':
+          escaped = "\\f";
+          break;
+        case '\r':
+          escaped = "\\r";
+          break;
+        default:
+          if (c < ' ' || c == '\u2028' || c == '\u2029') {
+            escaped = new String(new char[] {'\\', 'u', HEX[c >> 12], HEX[(c >> 8) & 0xf],
+                HEX[(c >> 4) & 0xf], HEX[c & 0xf]});
+          }
+      }
+      previous = c;
+      if (escaped != null) {
+        append(chars, run, i);
+        out.write(escaped);
+        run = i + 1;
+      }
+    }
+    append(chars, run, end);
+  }
+
+  private void append(CharSequence chars, int start, int end) throws IOException {
+    if (start == end) {
+      return;
+    }
+    if (chars instanceof String) {
+      out.write((String) chars, start, end - start);
+    } else if (chars instanceof CharBuffer && ((CharBuffer) chars).hasArray()) {
+      CharBuffer buffer = (CharBuffer) chars;
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position() + start, end - start);
+    } else {
+      out.append(chars, start, end);
+    }
+  }
+}
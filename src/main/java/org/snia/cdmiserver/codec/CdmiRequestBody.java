@@ -0,0 +1,419 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The JSON body of a CDMI create or update request, parsed while it is read.
+ *
+ * <p>
+ * All members but the value are kept as {@link JSONObject}. The value, which may be as large as the
+ * data object, is spooled as UTF-8 while it is read, in memory up to {@link #MEMORY_THRESHOLD}
+ * bytes and into a temporary file beyond, so it can be decoded according to a
+ * valuetransferencoding sent after it and streamed into the object's content. The spooled file is
+ * deleted on {@link #close()}.
+ * </p>
+ */
+public class CdmiRequestBody implements Closeable {
+
+  public static final int MEMORY_THRESHOLD = 64 * 1024;
+
+  private final JSONObject json;
+
+  private Spool value;
+
+  private int valuePadding;
+
+  /**
+   * Creates a request body without a value.
+   *
+   * @param json the members of the request
+   */
+  public CdmiRequestBody(JSONObject json) {
+    this.json = json;
+  }
+
+  /**
+   * Parses a CDMI request body, spooling its value.
+   *
+   * @param in the UTF-8 encoded JSON body
+   * @param spoolDirectory the directory to spool large values to
+   * @return the {@link CdmiRequestBody}
+   * @throws JSONException if the body isn't a JSON object
+   * @throws IOException in case the body couldn't be read or the value couldn't be spooled
+   */
+  public static CdmiRequestBody parse(InputStream in, Path spoolDirectory) throws IOException {
+    CdmiRequestBody body = new CdmiRequestBody(new JSONObject());
+    try {
+      new Parser(new InputStreamReader(in, StandardCharsets.UTF_8), body, spoolDirectory).parse();
+    } catch (IOException | RuntimeException ex) {
+      body.close();
+      throw ex;
+    }
+    return body;
+  }
+
+  /**
+   * Gets the members of the request, without the value.
+   */
+  public JSONObject getJson() {
+    return json;
+  }
+
+  public boolean hasValue() {
+    return value != null;
+  }
+
+  /**
+   * Gets the length of the value as sent, i.e. before decoding it.
+   *
+   * @return the number of UTF-8 bytes of the value
+   */
+  public long getValueLength() {
+    return value != null ? value.length : 0;
+  }
+
+  /**
+   * Gets the length of the value decoded according to the given valuetransferencoding.
+   *
+   * @param valueTransferEncoding base64 or utf-8
+   * @return the number of decoded bytes or -1 if the value isn't valid base64
+   */
+  public long getDecodedValueLength(String valueTransferEncoding) {
+    long length = getValueLength();
+    if ("base64".equals(valueTransferEncoding)) {
+      if (length % 4 != 0 || valuePadding > 2) {
+        return -1;
+      }
+      return length / 4 * 3 - valuePadding;
+    }
+    return length;
+  }
+
+  /**
+   * Opens the value as sent. The caller has to close the stream.
+   *
+   * @return the UTF-8 bytes of the value
+   * @throws IOException in case the spooled value couldn't be opened
+   */
+  public InputStream openValue() throws IOException {
+    if (value == null) {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+    return value.open();
+  }
+
+  /**
+   * Deletes the spooled value.
+   */
+  @Override
+  public void close() throws IOException {
+    if (value != null) {
+      value.delete();
+    }
+  }
+
+  /**
+   * The value's bytes, in memory until they exceed the threshold.
+   */
+  private static class Spool extends OutputStream {
+
+    private final Path directory;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private Path file;
+
+    private OutputStream fileStream;
+
+    private long length;
+
+    Spool(Path directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    public void write(int octet) throws IOException {
+      write(new byte[] {(byte) octet}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+      if (fileStream == null && memory.size() + count > MEMORY_THRESHOLD) {
+        Files.createDirectories(directory);
+        file = Files.createTempFile(directory, "cdmi-value", null);
+        fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+        memory.writeTo(fileStream);
+        memory = null;
+      }
+      if (fileStream != null) {
+        fileStream.write(bytes, offset, count);
+      } else {
+        memory.write(bytes, offset, count);
+      }
+      length += count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (fileStream != null) {
+        fileStream.close();
+      }
+    }
+
+    InputStream open() throws IOException {
+      if (file != null) {
+        return Files.newInputStream(file);
+      }
+      return new ByteArrayInputStream(memory.toByteArray());
+    }
+
+    void delete() throws IOException {
+      close();
+      if (file != null) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /**
+   * Reads the top-level members of a JSON object. The value is streamed into the spool, the other
+   * members are captured as text and parsed by a {@link JSONTokener}.
+   */
+  private static class Parser {
+
+    private final Reader reader;
+
+    private final CdmiRequestBody body;
+
+    private final Path spoolDirectory;
+
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    Parser(Reader reader, CdmiRequestBody body, Path spoolDirectory) {
+      this.reader = reader;
+      this.body = body;
+      this.spoolDirectory = spoolDirectory;
+    }
+
+    void parse() throws IOException {
+      expect('{');
+      if (peekClean() == '}') {
+        read();
+      } else {
+        while (true) {
+          expect('"');
+          String key = readString();
+          expect(':');
+          if ("value".equals(key) && peekClean() == '"') {
+            if (body.hasValue()) {
+              throw error("duplicate value");
+            }
+            read();
+            spoolValue();
+          } else {
+            String member = readMember();
+            body.json.put(key, new JSONTokener(member).nextValue());
+          }
+          int next = nextClean();
+          if (next == '}') {
+            break;
+          }
+          if (next != ',') {
+            throw error("expected , or }");
+          }
+        }
+      }
+      if (peekClean() != -1) {
+        throw error("text after the JSON object");
+      }
+    }
+
+    private void spoolValue() throws IOException {
+      Spool spool = new Spool(spoolDirectory);
+      body.value = spool;
+      int padding = 0;
+      char[] chunk = new char[buffer.length];
+      try (Writer writer = new OutputStreamWriter(spool, StandardCharsets.UTF_8)) {
+        int count = 0;
+        int character;
+        while ((character = readStringCharacter()) >= 0) {
+          chunk[count++] = (char) character;
+          if (count == chunk.length) {
+            writer.write(chunk, 0, count);
+            count = 0;
+          }
+          padding = character == '=' ? padding + 1 : 0;
+        }
+        writer.write(chunk, 0, count);
+      }
+      body.valuePadding = padding;
+    }
+
+    private String readString() throws IOException {
+      StringBuilder builder = new StringBuilder();
+      int character;
+      while ((character = readStringCharacter()) >= 0) {
+        builder.append((char) character);
+      }
+      return builder.toString();
+    }
+
+    /**
+     * Reads the next character of a string after the opening quote.
+     *
+     * @return the unescaped character or -1 at the closing quote
+     */
+    private int readStringCharacter() throws IOException {
+      int character = read();
+      if (character == '"') {
+        return -1;
+      }
+      if (character == '\\') {
+        character = read();
+        switch (character) {
+          case 'b':
+            return '\b';
+          case 'f':
+            return '\f';
+          case 'n':
+            return '\n';
+          case 'r':
+            return '\r';
+          case 't':
+            return '\t';
+          case 'u':
+            char[] hex = new char[4];
+            for (int i = 0; i < hex.length; i++) {
+              hex[i] = (char) read();
+            }
+            try {
+              return Integer.parseInt(new String(hex), 16);
+            } catch (NumberFormatException ex) {
+              throw error("illegal escape \\u" + new String(hex));
+            }
+          case '"':
+          case '\\':
+          case '/':
+            return character;
+          default:
+            throw error("illegal escape \\" + (char) character);
+        }
+      }
+      if (character < 0 || character < ' ') {
+        throw error("unterminated string");
+      }
+      return character;
+    }
+
+    /**
+     * Captures the text of the next member value, an object, array, string or literal.
+     */
+    private String readMember() throws IOException {
+      StringBuilder builder = new StringBuilder();
+      int depth = 0;
+      peekClean();
+      while (true) {
+        int character = peek();
+        if (character < 0) {
+          throw error("unterminated member");
+        }
+        if (depth == 0 && (character == ',' || character == '}')) {
+          break;
+        }
+        read();
+        builder.append((char) character);
+        if (character == '"') {
+          // copies the string, escapes included
+          while ((character = read()) != '"') {
+            if (character < 0) {
+              throw error("unterminated string");
+            }
+            builder.append((char) character);
+            if (character == '\\') {
+              builder.append((char) read());
+            }
+          }
+          builder.append('"');
+        } else if (character == '{' || character == '[') {
+          depth++;
+        } else if (character == '}' || character == ']') {
+          depth--;
+        }
+      }
+      return builder.toString();
+    }
+
+    private void expect(char expected) throws IOException {
+      if (nextClean() != expected) {
+        throw error("expected " + expected);
+      }
+    }
+
+    private int nextClean() throws IOException {
+      peekClean();
+      return read();
+    }
+
+    private int peekClean() throws IOException {
+      int character;
+      while ((character = peek()) >= 0 && Character.isWhitespace(character)) {
+        position++;
+      }
+      return character;
+    }
+
+    private int peek() throws IOException {
+      if (position == limit) {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit < 0) {
+          limit = 0;
+          return -1;
+        }
+      }
+      return buffer[position];
+    }
+
+    private int read() throws IOException {
+      int character = peek();
+      if (character >= 0) {
+        position++;
+      }
+      return character;
+    }
+
+    private JSONException error(String message) {
+      return new JSONException("Invalid CDMI request body, " + message);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli, RFC 3720) checksum, which Java 8 lacks. Computed 8 bytes at a time with the
+ * slicing-by-8 tables.
+ */
+class Crc32c implements Checksum {
+
+  private static final int POLYNOMIAL = 0x82f63b78;
+
+  private static final int[][] TABLES = new int[8][256];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      int crc = i;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 1) != 0 ? crc >>> 1 ^ POLYNOMIAL : crc >>> 1;
+      }
+      TABLES[0][i] = crc;
+    }
+    for (int i = 0; i < 256; i++) {
+      for (int table = 1; table < TABLES.length; table++) {
+        int previous = TABLES[table - 1][i];
+        TABLES[table][i] = previous >>> 8 ^ TABLES[0][previous & 0xff];
+      }
+    }
+  }
+
+  private int crc = 0xffffffff;
+
+  @Override
+  public void update(int octet) {
+    crc = crc >>> 8 ^ TABLES[0][(crc ^ octet) & 0xff];
+  }
+
+  @Override
+  public void update(byte[] bytes, int offset, int length) {
+    int[] t0 = TABLES[0];
+    int[] t1 = TABLES[1];
+    int[] t2 = TABLES[2];
+    int[] t3 = TABLES[3];
+    int[] t4 = TABLES[4];
+    int[] t5 = TABLES[5];
+    int[] t6 = TABLES[6];
+    int[] t7 = TABLES[7];
+    int value = crc;
+    int end = offset + length;
+    while (end - offset >= 8) {
+      int low = value ^ ((bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+          | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24);
+      value = t7[low & 0xff] ^ t6[low >>> 8 & 0xff] ^ t5[low >>> 16 & 0xff] ^ t4[low >>> 24]
+          ^ t3[bytes[offset + 4] & 0xff] ^ t2[bytes[offset + 5] & 0xff]
+          ^ t1[bytes[offset + 6] & 0xff] ^ t0[bytes[offset + 7] & 0xff];
+      offset += 8;
+    }
+    while (offset < end) {
+      value = value >>> 8 ^ t0[(value ^ bytes[offset++]) & 0xff];
+    }
+    crc = value;
+  }
+
+  /**
+   * Updates the checksum with the remaining bytes of the buffer, which are consumed.
+   */
+  public void update(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      buffer.position(buffer.limit());
+    } else {
+      byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+      while (buffer.hasRemaining()) {
+        int count = Math.min(buffer.remaining(), chunk.length);
+        buffer.get(chunk, 0, count);
+        update(chunk, 0, count);
+      }
+    }
+  }
+
+  @Override
+  public long getValue() {
+    return ~crc & 0xffffffffL;
+  }
+
+  @Override
+  public void reset() {
+    crc = 0xffffffff;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.CdmiObject;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores objects as their JSON serialization, the format used before the codecs were introduced.
+ */
+public class JsonRecordCodec implements RecordCodec {
+
+  // larger writers are dropped after use, so a single huge record isn't held on to
+  private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+  // records are written into a buffer per thread instead of growing a new one for every record
+  private static final ThreadLocal<StringWriter> WRITER =
+      ThreadLocal.withInitial(() -> new StringWriter(4096));
+
+  @Override
+  public byte[] encode(JSONObject json) {
+    StringWriter writer = WRITER.get();
+    writer.getBuffer().setLength(0);
+    json.write(writer);
+    byte[] record = writer.toString().getBytes(StandardCharsets.UTF_8);
+    if (writer.getBuffer().capacity() > MAX_RETAINED_SIZE) {
+      WRITER.remove();
+    }
+    return record;
+  }
+
+  @Override
+  public CdmiObject decode(byte[] record) {
+    return RecordCodecs.decode(record);
+  }
+}
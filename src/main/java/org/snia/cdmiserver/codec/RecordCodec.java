@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.CdmiObject;
+
+/**
+ * Encodes CDMI objects into the records the DAOs store and decodes them again.
+ */
+public interface RecordCodec {
+
+  /**
+   * Encodes the given CDMI object.
+   *
+   * @param cdmiObject the {@link CdmiObject}
+   * @return the encoded record
+   */
+  public default byte[] encode(CdmiObject cdmiObject) {
+    return encode(cdmiObject.toJson());
+  }
+
+  /**
+   * Encodes the given JSON serialization of a CDMI object.
+   *
+   * @param json the serialized object
+   * @return the encoded record
+   */
+  public byte[] encode(JSONObject json);
+
+  /**
+   * Decodes the given record. Records written by any of the codecs can be decoded, so the format
+   * of stored objects can be changed at any time.
+   *
+   * @param record the encoded record
+   * @return the decoded {@link CdmiObject}
+   * @throws IllegalArgumentException if the record can't be decoded
+   */
+  public CdmiObject decode(byte[] record);
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.util.MediaTypes;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Selects record codecs and decodes records of any format.
+ *
+ * <p>
+ * Binary records start with {@link BinaryRecordCodec#MAGIC} followed by the version of their
+ * format, every other record is read as JSON. JSON records have no header, so records stored before
+ * the codecs were introduced remain readable.
+ * </p>
+ */
+public final class RecordCodecs {
+
+  public static final String JSON = "json";
+
+  public static final String BINARY = "binary";
+
+  private static final ValueHash VERSION_HASH = ValueHash.forAlgorithm(ValueHash.SHA1);
+
+  private static final RecordCodec JSON_CODEC = new JsonRecordCodec();
+
+  private static final RecordCodec BINARY_CODEC = new BinaryRecordCodec();
+
+  private RecordCodecs() {}
+
+  /**
+   * Gets the codec writing the given record format.
+   *
+   * @param format the record format, {@link #JSON} or {@link #BINARY}
+   * @return the {@link RecordCodec}
+   * @throws IllegalArgumentException if the format is unknown
+   */
+  public static RecordCodec forFormat(String format) {
+    if (JSON.equalsIgnoreCase(format)) {
+      return JSON_CODEC;
+    }
+    if (BINARY.equalsIgnoreCase(format)) {
+      return BINARY_CODEC;
+    }
+    throw new IllegalArgumentException("unknown record format " + format);
+  }
+
+  /**
+   * Checks whether the given record is in the JSON format.
+   *
+   * @param record the encoded record
+   * @return <code>true</code> if the record is JSON
+   */
+  public static boolean isJson(byte[] record) {
+    return record.length == 0 || record[0] != BinaryRecordCodec.MAGIC;
+  }
+
+  /**
+   * Decodes a record of any format to JSON.
+   *
+   * @param record the encoded record
+   * @return the record as {@link JSONObject}
+   * @throws IllegalArgumentException if the record can't be decoded
+   */
+  public static JSONObject decodeJson(byte[] record) {
+    if (isJson(record)) {
+      try {
+        return new JSONObject(new String(record, StandardCharsets.UTF_8));
+      } catch (Exception ex) {
+        throw new IllegalArgumentException("invalid JSON record", ex);
+      }
+    }
+    return BinaryRecordCodec.decodeJson(record);
+  }
+
+  /**
+   * Decodes a record of any format.
+   *
+   * @param record the encoded record
+   * @return the decoded {@link CdmiObject}
+   * @throws IllegalArgumentException if the record can't be decoded
+   */
+  public static CdmiObject decode(byte[] record) {
+    return fromJson(decodeJson(record));
+  }
+
+  /**
+   * Gets the version of the object stored in the given record, the SHA-1 hash of the record. Every
+   * write of a changed object stores a different record, so the version changes with it. SHA-1 is
+   * what Redis scripts can compute with <code>redis.sha1hex</code>, so the version can be compared
+   * on the server.
+   *
+   * @param record the encoded record
+   * @return the version as hex string
+   */
+  public static String getVersion(byte[] record) {
+    return VERSION_HASH.hash(record);
+  }
+
+  /**
+   * Deserializes the CDMI object of the type given in the JSON.
+   *
+   * @param json a {@link JSONObject}
+   * @return the {@link CdmiObject}
+   */
+  public static CdmiObject fromJson(JSONObject json) {
+    String objectType = json.optString("objectType");
+    if (objectType.equals(MediaTypes.CONTAINER)) {
+      return Container.fromJson(json);
+    } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
+      return DataObject.fromJson(json);
+    } else if (objectType.equals(MediaTypes.ACCOUNT)) {
+      return new Domain(json);
+    } else if (objectType.equals(MediaTypes.CAPABILITY)) {
+      return Capability.fromJson(json);
+    } else {
+      return CdmiObject.fromJson(json);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.codec;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the hash of a data object's value, stored as its cdmi_value_hash metadata.
+ *
+ * <ul>
+ * <li>{@link #SHA256}, {@link #SHA1} and {@link #MD5} are computed by the JDK's {@link MessageDigest}.</li>
+ * <li>{@link #CRC32C} is a much faster checksum, which detects corruption, but not tampering.</li>
+ * </ul>
+ *
+ * <p>
+ * Hashes are lower case hex strings, the CRC-32C as 8 digits. The hash is computed while the value
+ * is streamed through {@link #wrap(ReadableByteChannel)}, so it doesn't take another read of the
+ * stored value.
+ * </p>
+ */
+public final class ValueHash {
+
+  public static final String METADATA_NAME = "cdmi_value_hash";
+
+  public static final String NONE = "none";
+
+  public static final String SHA256 = "SHA-256";
+
+  public static final String SHA1 = "SHA-1";
+
+  public static final String MD5 = "MD5";
+
+  public static final String CRC32C = "CRC32C";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final String algorithm;
+
+  private ValueHash(String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  /**
+   * Gets the {@link ValueHash} for the given algorithm.
+   *
+   * @param algorithm {@link #SHA256}, {@link #SHA1}, {@link #MD5}, {@link #CRC32C} or {@link #NONE}
+   * @return the {@link ValueHash} or <code>null</code> for {@link #NONE}
+   * @throws IllegalArgumentException if the algorithm is unknown
+   */
+  public static ValueHash forAlgorithm(String algorithm) {
+    if (NONE.equalsIgnoreCase(algorithm)) {
+      return null;
+    }
+    for (String known : new String[] {SHA256, SHA1, MD5, CRC32C}) {
+      if (known.equalsIgnoreCase(algorithm)) {
+        return new ValueHash(known);
+      }
+    }
+    throw new IllegalArgumentException("unknown value hash algorithm " + algorithm);
+  }
+
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Gets the cdmi_value_hash of a data object.
+   *
+   * @return the hash or <code>null</code> if it isn't known
+   */
+  public static String get(DataObject dataObject) {
+    JSONObject metadata = dataObject.getMetadata();
+    return metadata != null ? metadata.optString(METADATA_NAME, null) : null;
+  }
+
+  /**
+   * Sets the cdmi_value_hash of a data object. The metadata is copied, as it may be shared with the
+   * request it was read from.
+   *
+   * @param dataObject the {@link DataObject}
+   * @param hash the hash or <code>null</code> to remove a hash that isn't valid anymore
+   */
+  public static void set(DataObject dataObject, String hash) {
+    JSONObject metadata = new JSONObject();
+    if (dataObject.getMetadata() != null) {
+      for (String name : dataObject.getMetadata().keySet()) {
+        metadata.put(name, dataObject.getMetadata().get(name));
+      }
+    }
+    metadata.remove(METADATA_NAME);
+    metadata.putOpt(METADATA_NAME, hash);
+    dataObject.setMetadata(metadata);
+  }
+
+  /**
+   * Checks if an expected hash, as sent by a client, matches the computed one.
+   *
+   * @param expected the expected hex string, upper or lower case
+   * @param actual the computed hash, may be <code>null</code>
+   * @return <code>true</code> if both are equal
+   */
+  public static boolean matches(String expected, String actual) {
+    return actual != null && actual.equalsIgnoreCase(expected.trim());
+  }
+
+  /**
+   * Wraps a channel, hashing the bytes read from it.
+   *
+   * @param content the channel to read the value from
+   * @return the channel to read the value through
+   */
+  public HashingChannel wrap(ReadableByteChannel content) {
+    return new HashingChannel(content, newDigest());
+  }
+
+  /**
+   * Hashes the given bytes.
+   */
+  public String hash(byte[] bytes) {
+    Digest digest = newDigest();
+    digest.update(ByteBuffer.wrap(bytes));
+    return digest.getValue();
+  }
+
+  /**
+   * Hashes the content of the given file, read sequentially from its start.
+   *
+   * @param channel the file
+   * @return the hash
+   * @throws IOException in case the file couldn't be read
+   */
+  public String hash(FileChannel channel) throws IOException {
+    Digest digest = newDigest();
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    long position = 0;
+    int count;
+    while ((count = channel.read(buffer, position)) >= 0) {
+      position += count;
+      buffer.flip();
+      digest.update(buffer);
+      buffer.clear();
+    }
+    return digest.getValue();
+  }
+
+  private Digest newDigest() {
+    if (CRC32C.equals(algorithm)) {
+      Crc32c crc = new Crc32c();
+      return new Digest() {
+        @Override
+        public void update(ByteBuffer buffer) {
+          crc.update(buffer);
+        }
+
+        @Override
+        public String getValue() {
+          long value = crc.getValue();
+          return toHex(new byte[] {(byte) (value >>> 24), (byte) (value >>> 16),
+              (byte) (value >>> 8), (byte) value});
+        }
+      };
+    }
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException ex) {
+      // every JDK supports SHA-256, SHA-1 and MD5
+      throw new IllegalStateException(ex);
+    }
+    return new Digest() {
+      @Override
+      public void update(ByteBuffer buffer) {
+        messageDigest.update(buffer);
+      }
+
+      @Override
+      public String getValue() {
+        return toHex(messageDigest.digest());
+      }
+    };
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = HEX[bytes[i] >>> 4 & 0xf];
+      hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+
+  private interface Digest {
+
+    /**
+     * Updates the digest with the remaining bytes of the buffer, which are consumed.
+     */
+    void update(ByteBuffer buffer);
+
+    String getValue();
+  }
+
+  /**
+   * A channel that hashes the bytes read through it.
+   */
+  public static final class HashingChannel implements ReadableByteChannel {
+
+    private final ReadableByteChannel content;
+
+    private final Digest digest;
+
+    private String value;
+
+    private HashingChannel(ReadableByteChannel content, Digest digest) {
+      this.content = content;
+      this.digest = digest;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+      int position = buffer.position();
+      int count = content.read(buffer);
+      if (count > 0) {
+        ByteBuffer read = buffer.duplicate();
+        read.limit(position + count);
+        read.position(position);
+        digest.update(read);
+      }
+      return count;
+    }
+
+    /**
+     * Gets the hash of the bytes read so far. Once called, the channel must not be read anymore.
+     */
+    public String getValue() {
+      if (value == null) {
+        value = digest.getValue();
+      }
+      return value;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return content.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      content.close();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao;
+
+import org.snia.cdmiserver.model.CdmiObject;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CdmiObjectDao} whose operations can also be issued without blocking. Operations issued
+ * one after the other without waiting for their results are executed concurrently.
+ */
+public interface AsyncCdmiObjectDao extends CdmiObjectDao {
+
+  /**
+   * Creates a new CDMI object at the given path and adds it to the children of its parent.
+   *
+   * @param cdmiObject the {@link CdmiObject}
+   * @param path the CDMI URL path of the new object
+   * @param parentPath the CDMI URL path of the parent object
+   * @return a future of the created {@link CdmiObject} or the object already existing at the given
+   *         path
+   */
+  public CompletableFuture<CdmiObject> createChildCdmiObjectAsync(CdmiObject cdmiObject,
+      String path, String parentPath);
+
+  /**
+   * Gets the CDMI object identified by it's id, with only the given range of its children.
+   *
+   * @param objectId the object's id
+   * @param childrenFrom the index of the first child to return
+   * @param childrenTo the index of the last child to return, inclusive
+   * @return a future of the {@link CdmiObject}, completing with <code>null</code> if there is no
+   *         such object
+   */
+  public CompletableFuture<CdmiObject> getCdmiObjectAsync(String objectId, int childrenFrom,
+      int childrenTo);
+
+  /**
+   * Gets the CDMI object at the given path, with only the given range of its children.
+   *
+   * @param path the CDMI URL path
+   * @param childrenFrom the index of the first child to return
+   * @param childrenTo the index of the last child to return, inclusive
+   * @return a future of the {@link CdmiObject}, completing with <code>null</code> if there is no
+   *         object at the path
+   */
+  public CompletableFuture<CdmiObject> getCdmiObjectByPathAsync(String path, int childrenFrom,
+      int childrenTo);
+
+  /**
+   * Updates the given CDMI object and the reference to it from the given path.
+   *
+   * @param cdmiObject the {@link CdmiObject}
+   * @param path the CDMI URL path
+   * @return a future of the updated {@link CdmiObject}
+   */
+  public CompletableFuture<CdmiObject> updateCdmiObjectAsync(CdmiObject cdmiObject, String path);
+
+  /**
+   * Deletes the CDMI object at the given path.
+   *
+   * @param path the CDMI URL path
+   * @return a future of the deleted {@link CdmiObject}, completing with <code>null</code> if there
+   *         was no object at the path
+   */
+  public CompletableFuture<CdmiObject> deleteCdmiObjectByPathAsync(String path);
+}
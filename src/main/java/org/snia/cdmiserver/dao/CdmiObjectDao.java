@@ -9,7 +9,12 @@
 
 package org.snia.cdmiserver.dao;
 
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.util.Projection;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public interface CdmiObjectDao {
 
@@ -25,6 +30,40 @@ public interface CdmiObjectDao {
 
   public CdmiObject createCdmiObject(CdmiObject cdmiObject, String string, Boolean override);
 
+  /**
+   * Creates a new CDMI object at the given path and adds it to the children of its parent.
+   *
+   * @param cdmiObject the {@link CdmiObject}
+   * @param path the CDMI URL path of the new object
+   * @param parentPath the CDMI URL path of the parent object
+   * @return the created {@link CdmiObject}, the object already existing at the given path or
+   *         <code>null</code> if the object couldn't be created
+   */
+  public CdmiObject createChildCdmiObject(CdmiObject cdmiObject, String path, String parentPath);
+
+  /**
+   * Creates new CDMI objects in the same parent and adds them to its children. The default
+   * creates them one at a time, implementations which can link all of them into the parent at
+   * once override it.
+   *
+   * @param cdmiObjects the {@link CdmiObject}s, all with the same parent
+   * @param paths the CDMI URL paths of the new objects, in the order of the objects
+   * @param parentPath the CDMI URL path of the parent object
+   * @return the created objects in the order of the given ones, <code>null</code> where an
+   *         object already existed at the path or couldn't be created
+   */
+  public default List<CdmiObject> createChildCdmiObjects(List<? extends CdmiObject> cdmiObjects,
+      List<String> paths, String parentPath) {
+    List<CdmiObject> created = new ArrayList<>(cdmiObjects.size());
+    for (int i = 0; i < cdmiObjects.size(); i++) {
+      CdmiObject cdmiObject = cdmiObjects.get(i);
+      CdmiObject result = createChildCdmiObject(cdmiObject, paths.get(i), parentPath);
+      created.add(result != null && cdmiObject.getObjectId().equals(result.getObjectId())
+          ? result : null);
+    }
+    return created;
+  }
+
   /**
    * Gets the CDMI object identified by it's id.
    * 
@@ -33,6 +72,31 @@ public interface CdmiObjectDao {
    */
   public CdmiObject getCdmiObject(String objectId);
 
+  /**
+   * Gets the CDMI object identified by it's id, with only the given range of its children.
+   * 
+   * @param objectId the object's id
+   * @param childrenFrom the index of the first child to return
+   * @param childrenTo the index of the last child to return, inclusive
+   * @return the {@link CdmiObject}
+   */
+  public CdmiObject getCdmiObject(String objectId, int childrenFrom, int childrenTo);
+
+  /**
+   * Gets the CDMI object identified by it's id, with the fields of the given projection. Fields
+   * that aren't selected may be left out, so the children of a container aren't read unless they
+   * are selected.
+   * 
+   * @param objectId the object's id
+   * @param projection the selected fields
+   * @return the {@link CdmiObject}
+   */
+  public default CdmiObject getCdmiObject(String objectId, Projection projection) {
+    int[] childrenRange = projection.getChildrenRange();
+    return childrenRange != null ? getCdmiObject(objectId, childrenRange[0], childrenRange[1])
+        : getCdmiObject(objectId);
+  }
+
   /**
    * Updates the given CDMI object.
    * 
@@ -43,6 +107,18 @@ public interface CdmiObjectDao {
 
   public CdmiObject updateCdmiObject(CdmiObject object, String string);
 
+  /**
+   * Updates the CDMI object at the given path if it is still at the expected version, compared and
+   * written in one atomic step.
+   * 
+   * @param cdmiObject the {@link CdmiObject}
+   * @param path the CDMI URL path
+   * @param expectedVersion the version the object was read at, see {@link CdmiObject#getVersion()}
+   * @return the updated {@link CdmiObject}
+   * @throws PreconditionFailedException if the object is missing or at another version
+   */
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path, String expectedVersion);
+
   /**
    * Deletes the CdmiObject identified by it's id.
    * 
@@ -53,5 +129,41 @@ public interface CdmiObjectDao {
 
   public CdmiObject getCdmiObjectByPath(String string);
 
+  /**
+   * Gets the CDMI object at the given path, with only the given range of its children.
+   * 
+   * @param path the CDMI URL path
+   * @param childrenFrom the index of the first child to return
+   * @param childrenTo the index of the last child to return, inclusive
+   * @return the {@link CdmiObject}
+   */
+  public CdmiObject getCdmiObjectByPath(String path, int childrenFrom, int childrenTo);
+
+  /**
+   * Gets the CDMI object at the given path, with the fields of the given projection. Fields that
+   * aren't selected may be left out, so the children of a container aren't read unless they are
+   * selected.
+   * 
+   * @param path the CDMI URL path
+   * @param projection the selected fields
+   * @return the {@link CdmiObject}
+   */
+  public default CdmiObject getCdmiObjectByPath(String path, Projection projection) {
+    int[] childrenRange = projection.getChildrenRange();
+    return childrenRange != null ? getCdmiObjectByPath(path, childrenRange[0], childrenRange[1])
+        : getCdmiObjectByPath(path);
+  }
+
   public CdmiObject deleteCdmiObjectByPath(String string);
+
+  /**
+   * Deletes the CDMI object at the given path if it is still at the expected version, compared and
+   * deleted in one atomic step.
+   * 
+   * @param path the CDMI URL path
+   * @param expectedVersion the version the object was read at, see {@link CdmiObject#getVersion()}
+   * @return the deleted {@link CdmiObject} or <code>null</code> if there is none
+   * @throws PreconditionFailedException if the object is at another version
+   */
+  public CdmiObject deleteCdmiObjectByPath(String path, String expectedVersion);
 }
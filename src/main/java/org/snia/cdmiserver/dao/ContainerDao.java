@@ -30,8 +30,11 @@ package org.snia.cdmiserver.dao;
 
 import org.snia.cdmiserver.exception.ConflictException;
 import org.snia.cdmiserver.exception.NotFoundException;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.Container;
 
+import java.util.List;
+
 /**
  * <p>
  * DAO for manipulating CDMI <em>Container</em> instances.
@@ -51,6 +54,22 @@ public interface ContainerDao {
    */
   public Container createByPath(String path, Container containerRequest);
 
+  /**
+   * <p>
+   * Create containers with the given names in the container at the specified path, which is
+   * linked to all of them at once.
+   * </p>
+   * 
+   * @param path Path to the existing parent {@link Container}
+   * @param names Names of the new {@link Container}s
+   * @param containerRequests the requested containers, in the order of the names
+   * @return the created containers in the order of the names, <code>null</code> where an object
+   *         already exists, which is left as it is, or couldn't be created, of which nothing is
+   *         left behind
+   */
+  public List<Container> createChildrenByPath(String path, List<String> names,
+      List<Container> containerRequests);
+
   /**
    * <p>
    * Delete the container at the specified path.
@@ -64,6 +83,18 @@ public interface ContainerDao {
    */
   public Container deleteByPath(String path);
 
+  /**
+   * <p>
+   * Delete the container at the specified path if it is still at the expected version.
+   * </p>
+   * 
+   * @param path Path to the requested {@link Container}
+   * @param expectedVersion the version the container was read at
+   * 
+   * @exception PreconditionFailedException if the container is at another version
+   */
+  public Container deleteByPath(String path, String expectedVersion);
+
   /**
    * <p>
    * Find and return a {@link Container} by object id, if any; otherwise, return <code>null</code> .
@@ -30,8 +30,14 @@
 
 package org.snia.cdmiserver.dao;
 
+import org.snia.cdmiserver.exception.BadRequestException;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.DataObject;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
 /**
  * <p>
  * DAO for manipulating CDMI <em>DataObject</em> instances.
@@ -48,12 +54,136 @@ public interface DataObjectDao {
    */
   public DataObject createByPath(String path, DataObject dataObj);
 
-  public DataObject createNonCdmiByPath(String path, String contentType, DataObject dataObj);
+  /**
+   * <p>
+   * Create empty data objects with the given names in the container at the specified path, which
+   * is linked to all of them at once.
+   * </p>
+   * 
+   * @param path Path to the existing parent container
+   * @param names Names of the new {@link DataObject}s
+   * @param dataObjectRequests the requested data objects, in the order of the names
+   * @return the created data objects in the order of the names, <code>null</code> where an object
+   *         already exists, which is left as it is, or couldn't be created, of which nothing is
+   *         left behind
+   */
+  public List<DataObject> createChildrenByPath(String path, List<String> names,
+      List<DataObject> dataObjectRequests);
+
+  /**
+   * <p>
+   * Create or replace the data object at the specified path with a non-CDMI content type. The
+   * content is streamed into the object as it is read from the given channel.
+   * </p>
+   * 
+   * @param path Path to the new or existing {@link DataObject}
+   * @param contentType the content's mime type
+   * @param content the channel to read the content from
+   */
+  public DataObject createNonCdmiByPath(String path, String contentType,
+      ReadableByteChannel content);
+
+  /**
+   * <p>
+   * Create or replace the data object at the specified path with a non-CDMI content type, checking
+   * the content against the hash the client expects before it replaces the old one.
+   * </p>
+   * 
+   * @param path Path to the new or existing {@link DataObject}
+   * @param contentType the content's mime type
+   * @param content the channel to read the content from
+   * @param valueHash the expected cdmi_value_hash of the content or <code>null</code>
+   * @exception BadRequestException if the content doesn't match the expected hash
+   */
+  public DataObject createNonCdmiByPath(String path, String contentType,
+      ReadableByteChannel content, String valueHash);
 
   public DataObject createById(String objectId, DataObject dataObj);
 
   public DataObject updateContent(String path, byte[] content);
 
+  /**
+   * <p>
+   * Replace the content of the data object at the specified path with the content read from the
+   * given channel. Readers see either the old or the new content.
+   * </p>
+   * 
+   * @param path Path to the existing {@link DataObject}
+   * @param content the channel to read the new content from
+   * @param valueHash the expected cdmi_value_hash of the content or <code>null</code>
+   * @exception BadRequestException if the content doesn't match the expected hash
+   */
+  public DataObject updateContent(String path, ReadableByteChannel content, String valueHash);
+
+  /**
+   * <p>
+   * Write the given number of bytes read from the channel into the data object at the specified
+   * path, starting at the given position. The content outside of the written range stays as it is.
+   * </p>
+   * 
+   * @param path Path to the existing {@link DataObject}
+   * @param position the position of the first byte to write
+   * @param count the number of bytes to write
+   * @param content the channel to read the bytes from
+   */
+  public DataObject updateContent(String path, long position, long count,
+      ReadableByteChannel content);
+
+  /**
+   * <p>
+   * Append the content read from the given channel to the data object at the specified path. The
+   * content is appended as a whole or not at all.
+   * </p>
+   * 
+   * @param path Path to the existing {@link DataObject}
+   * @param content the channel to read the content from
+   */
+  public DataObject appendContent(String path, ReadableByteChannel content);
+
+  /**
+   * <p>
+   * Write a chunk of a partial upload into the staging area of the data object at the specified
+   * path. The data object keeps its published content, while its completionStatus is "Processing"
+   * and its percentComplete reports the progress of the upload, until the upload is published.
+   * Chunks can be written concurrently and again, e.g. when resuming a failed upload.
+   * </p>
+   * 
+   * @param path Path to the existing {@link DataObject}
+   * @param position the position of the chunk in the uploaded content
+   * @param count the number of bytes of the chunk or -1 to read until the channel ends
+   * @param size the size of the uploaded content or -1 if it isn't known
+   * @param content the channel to read the chunk from
+   */
+  public DataObject updatePartialContent(String path, long position, long count, long size,
+      ReadableByteChannel content);
+
+  /**
+   * <p>
+   * Atomically replace the content of the data object at the specified path with its partial
+   * upload, if all of its bytes have been received, and set its completionStatus to "Complete". If
+   * bytes are still missing, the data object stays "Processing".
+   * </p>
+   * 
+   * @param path Path to the existing {@link DataObject}
+   * @param valueHash the expected cdmi_value_hash of the uploaded content or <code>null</code>
+   * @exception BadRequestException if the uploaded content doesn't match the expected hash, the
+   *            upload then stays unpublished
+   */
+  public DataObject publishContent(String path, String valueHash);
+
+  /**
+   * <p>
+   * Copy the value, mimetype and metadata of the data object at the source path to the data object
+   * at the specified path, which is created if it doesn't exist. A value shared by deduplication is
+   * linked to instead of copied.
+   * </p>
+   * 
+   * @param path Path to the new or existing {@link DataObject}
+   * @param sourcePath Path to the {@link DataObject} to copy
+   * @return the copy or <code>null</code> if the source doesn't exist
+   */
+  public DataObject copyByPath(String path, String sourcePath);
+
   /**
    * <p>
    * Delete the data object at the specified path.
@@ -63,6 +193,17 @@ public interface DataObjectDao {
    */
   public DataObject deleteByPath(String path);
 
+  /**
+   * <p>
+   * Delete the data object at the specified path if it is still at the expected version.
+   * </p>
+   * 
+   * @param path Path to the requested {@link DataObject}
+   * @param expectedVersion the version the data object was read at
+   * @exception PreconditionFailedException if the data object is at another version
+   */
+  public DataObject deleteByPath(String path, String expectedVersion);
+
   /**
    * <p>
    * Find and return a {@link DataObject} by object id, if any; otherwise, return <code>null</code>.
@@ -81,4 +222,14 @@ public interface DataObjectDao {
    */
   public DataObject findByPath(String path);
 
+  /**
+   * <p>
+   * Open the content of the data object at the specified path for reading, if any; otherwise,
+   * return <code>null</code>. The caller has to close the channel.
+   * </p>
+   * 
+   * @param path Path to the requested {@link DataObject}
+   */
+  public FileChannel openContent(String path);
+
 }
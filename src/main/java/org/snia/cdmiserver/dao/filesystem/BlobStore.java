@@ -0,0 +1,430 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.ValueHash;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores the values of data objects once per content, as blobs named by their SHA-256 digest and
+ * the compression they are stored with, if any.
+ *
+ * <p>
+ * A data object's file is a hard link to its blob, so reading it doesn't change, and the link
+ * count of a blob is its reference count: the blob's own name plus one per data object. Duplicate
+ * uploads and copies only add a link. A blob whose data objects have all been deleted or replaced
+ * is left with its own name only, and is deleted by the collector thread, which sweeps the blob
+ * directory after links have been dropped. A data object sharing its blob is never written in
+ * place, it is {@link #detach(Path) detached} onto a copy of its own first.
+ * </p>
+ *
+ * <p>
+ * The callers link, detach and open data objects' files under the locks of the files, so a file
+ * is never both linked and written in place. Blobs are only created and collected under the lock
+ * of the blob, which is taken after the locks of the files.
+ * </p>
+ */
+public class BlobStore {
+
+  private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+  private static final int LOCKS = 64;
+
+  private static final ValueHash DIGEST = ValueHash.forAlgorithm(ValueHash.SHA256);
+
+  private CdmiObjectDaoImpl cdmiObjectDao;
+
+  private FileSync fileSync = FileSyncs.forMode(FileSyncs.PER_OP_FSYNC);
+
+  private boolean enabled;
+
+  private long collectInterval = 60000;
+
+  private final Object[] blobLocks = new Object[LOCKS];
+
+  private final AtomicLong droppedLinks = new AtomicLong();
+
+  private volatile boolean running;
+
+  private Thread collector;
+
+  /**
+   * Creates a disabled blob store, whose existing blobs are still collected.
+   */
+  public BlobStore() {
+    for (int i = 0; i < LOCKS; i++) {
+      blobLocks[i] = new Object();
+    }
+  }
+
+  public CdmiObjectDaoImpl getCdmiObjectDao() {
+    return cdmiObjectDao;
+  }
+
+  public void setCdmiObjectDao(CdmiObjectDaoImpl cdmiObjectDao) {
+    this.cdmiObjectDao = cdmiObjectDao;
+  }
+
+  public FileSync getFileSync() {
+    return fileSync;
+  }
+
+  public void setFileSync(FileSync fileSync) {
+    this.fileSync = fileSync;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Sets whether new values are stored as blobs. Blobs stored while it was enabled are still
+   * shared and collected when it is disabled.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public long getCollectInterval() {
+    return collectInterval;
+  }
+
+  /**
+   * Sets the milliseconds the collector waits between sweeps of the blob directory, it only sweeps
+   * if links have been dropped since the last sweep.
+   */
+  public void setCollectInterval(long collectInterval) {
+    this.collectInterval = collectInterval;
+  }
+
+  /**
+   * Gets the digest the blob of a value is named by.
+   */
+  public ValueHash getDigest() {
+    return DIGEST;
+  }
+
+  Path getBlobPath(String name) {
+    return cdmiObjectDao.getBlobDirectoryPath().resolve(name.substring(0, 2)).resolve(name);
+  }
+
+  /**
+   * Stores the given file as the blob of the given name, unless an equal blob is stored already,
+   * and replaces the given link with a hard link to the blob. The file is removed in any case. The
+   * caller holds the lock of the link.
+   *
+   * @param file a temporary file with the value
+   * @param name the SHA-256 digest of the value, with the compression it is stored with as a suffix
+   * @param link the data object's file
+   * @return <code>true</code> if an equal blob was stored already
+   * @throws IOException in case the blob couldn't be stored or linked
+   */
+  public boolean store(Path file, String name, Path link) throws IOException {
+    Path blob = getBlobPath(name);
+    boolean stored;
+    try {
+      synchronized (getBlobLock(blob)) {
+        // the collector deletes blobs under the same lock
+        stored = Files.exists(blob);
+        if (!stored) {
+          // the content has to be durable before the name is
+          fileSync.sync(file);
+          try {
+            Files.createLink(blob, file);
+          } catch (NoSuchFileException ex) {
+            Files.createDirectories(blob.getParent());
+            Files.createLink(blob, file);
+          }
+          fileSync.sync(blob.getParent());
+        }
+        cdmiObjectDao.replaceLink(blob, link);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+    fileSync.sync(link.getParent());
+    // the link may have replaced another blob's
+    released();
+    log.debug("linked {} to {} blob {}", link, stored ? "existing" : "new", name);
+    return stored;
+  }
+
+  /**
+   * Checks if the given data object's file shares its blob.
+   */
+  public boolean isShared(Path file) throws IOException {
+    return getLinkCount(file) > 1;
+  }
+
+  /**
+   * Replaces the given link with a hard link to the same file, if the file is a blob. A file that
+   * isn't a blob, e.g. one written in place, is never linked, so writing it doesn't change other
+   * data objects. The caller holds the locks of both files.
+   *
+   * @param file the source data object's file
+   * @param link the target data object's file
+   * @return <code>true</code> if the link has been replaced, <code>false</code> if the file isn't a
+   *         blob
+   * @throws IOException in case the link couldn't be replaced
+   */
+  public boolean link(Path file, Path link) throws IOException {
+    if (!isShared(file)) {
+      return false;
+    }
+    cdmiObjectDao.replaceLink(file, link);
+    fileSync.sync(link.getParent());
+    // the link may have replaced another blob's
+    released();
+    return true;
+  }
+
+  /**
+   * Replaces a data object's file that shares its blob with a copy of its own, so it can be written
+   * in place. The copy isn't a blob anymore, until the data object's value is replaced as a whole.
+   * The caller holds the lock of the file.
+   *
+   * @param file the data object's file
+   * @return <code>true</code> if the file has been copied
+   * @throws IOException in case the file couldn't be copied
+   */
+  public boolean detach(Path file) throws IOException {
+    if (!isShared(file)) {
+      return false;
+    }
+    Path temporaryFile = cdmiObjectDao.getStagingDirectory().getTemporaryFilePath();
+    try {
+      Files.createDirectories(temporaryFile.getParent());
+      Files.copy(file, temporaryFile);
+      fileSync.sync(temporaryFile);
+      Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      Files.deleteIfExists(temporaryFile);
+      throw ex;
+    }
+    fileSync.sync(file.getParent());
+    released();
+    log.debug("detached {} from its blob", file);
+    return true;
+  }
+
+  /**
+   * Notes that a data object's file has been deleted or replaced, which may have left its blob
+   * unreferenced.
+   */
+  public void released() {
+    droppedLinks.incrementAndGet();
+  }
+
+  /**
+   * Deletes the blobs no data object links to anymore.
+   *
+   * @return the number of deleted blobs
+   */
+  public int collect() {
+    droppedLinks.set(0);
+    Path blobDirectory = cdmiObjectDao.getBlobDirectoryPath();
+    if (!Files.isDirectory(blobDirectory)) {
+      return 0;
+    }
+    int collected = 0;
+    try (DirectoryStream<Path> directories = Files.newDirectoryStream(blobDirectory)) {
+      for (Path directory : directories) {
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(directory)) {
+          for (Path blob : blobs) {
+            synchronized (getBlobLock(blob)) {
+              if (getLinkCount(blob) == 1) {
+                Files.delete(blob);
+                collected++;
+              }
+            }
+          }
+        } catch (IOException ex) {
+          log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        }
+      }
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    if (collected > 0) {
+      log.info("Deleted {} unreferenced blobs", collected);
+    }
+    return collected;
+  }
+
+  /**
+   * Counts the blobs and the space their sharing saves.
+   *
+   * @return the {@link Report}
+   */
+  public Report report() {
+    Report report = new Report();
+    Path blobDirectory = cdmiObjectDao.getBlobDirectoryPath();
+    if (!Files.isDirectory(blobDirectory)) {
+      return report;
+    }
+    try (DirectoryStream<Path> directories = Files.newDirectoryStream(blobDirectory)) {
+      for (Path directory : directories) {
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(directory)) {
+          for (Path blob : blobs) {
+            try {
+              long size = Files.readAttributes(blob, BasicFileAttributes.class).size();
+              int references = getLinkCount(blob) - 1;
+              if (references > 0) {
+                report.blobs++;
+                report.references += references;
+                report.storedBytes += size;
+                report.referencedBytes += references * size;
+              } else {
+                report.unreferencedBytes += size;
+              }
+            } catch (NoSuchFileException ex) {
+              // collected concurrently
+            }
+          }
+        }
+      }
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return report;
+  }
+
+  /**
+   * Starts the collector thread.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    if (enabled && !cdmiObjectDao.getObjectIdDirectoryPath().getFileSystem()
+        .supportedFileAttributeViews().contains("unix")) {
+      throw new IllegalStateException("deduplication needs the link counts of a unix file system");
+    }
+    running = true;
+    collector = new Thread(this::run, "blob-collector");
+    collector.setDaemon(true);
+    collector.start();
+  }
+
+  /**
+   * Stops the collector thread.
+   */
+  public synchronized void stop() {
+    running = false;
+    if (collector != null) {
+      collector.interrupt();
+      collector = null;
+    }
+  }
+
+  private void run() {
+    // blobs left by an unclean shutdown
+    collect();
+    log.info("Deduplicated values: {}", report());
+    while (running) {
+      try {
+        Thread.sleep(collectInterval);
+      } catch (InterruptedException ex) {
+        return;
+      }
+      if (droppedLinks.get() > 0 && collect() > 0) {
+        log.info("Deduplicated values: {}", report());
+      }
+    }
+  }
+
+  private Object getBlobLock(Path blob) {
+    return blobLocks[(blob.getFileName().hashCode() & Integer.MAX_VALUE) % LOCKS];
+  }
+
+  private static int getLinkCount(Path file) throws IOException {
+    try {
+      return (Integer) Files.getAttribute(file, "unix:nlink");
+    } catch (UnsupportedOperationException ex) {
+      // no hard links are created without the unix attributes
+      return 1;
+    }
+  }
+
+  /**
+   * The blobs in the store and the space their sharing saves.
+   */
+  public static class Report {
+
+    private long blobs;
+
+    private long references;
+
+    private long storedBytes;
+
+    private long referencedBytes;
+
+    private long unreferencedBytes;
+
+    /**
+     * Gets the number of blobs linked by data objects.
+     */
+    public long getBlobs() {
+      return blobs;
+    }
+
+    /**
+     * Gets the number of data objects linking to blobs.
+     */
+    public long getReferences() {
+      return references;
+    }
+
+    /**
+     * Gets the bytes the linked blobs take up.
+     */
+    public long getStoredBytes() {
+      return storedBytes;
+    }
+
+    /**
+     * Gets the bytes of all data objects linking to blobs.
+     */
+    public long getReferencedBytes() {
+      return referencedBytes;
+    }
+
+    /**
+     * Gets the bytes of the blobs waiting to be collected.
+     */
+    public long getUnreferencedBytes() {
+      return unreferencedBytes;
+    }
+
+    /**
+     * Gets the bytes saved by storing equal values only once.
+     */
+    public long getSavedBytes() {
+      return referencedBytes - storedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return blobs + " blobs linked by " + references + " data objects, " + storedBytes
+          + " bytes stored for " + referencedBytes + " bytes, " + getSavedBytes()
+          + " bytes saved, " + unreferencedBytes + " bytes to be collected";
+    }
+  }
+}
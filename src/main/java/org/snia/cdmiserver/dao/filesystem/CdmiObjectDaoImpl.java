@@ -9,23 +9,32 @@
 
 package org.snia.cdmiserver.dao.filesystem;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
-import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
-import org.snia.cdmiserver.model.DataObject;
-import org.snia.cdmiserver.model.Domain;
-import org.snia.cdmiserver.util.MediaTypes;
+import org.snia.cdmiserver.util.Projection;
 
-import java.nio.file.AccessDeniedException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * This is a prototype implementation of CdmiObject CRUD operations for a file system storage
@@ -38,9 +47,28 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   private static final Logger log = LoggerFactory.getLogger(CdmiObjectDaoImpl.class);
 
+  private static final int LOCKS = 64;
+
   private String objectIdPrefix;
   private String baseDirectory;
   private String objectIdDirectory;
+  private int objectIdFanOut;
+  private volatile boolean flatObjectIdsMigrated;
+  private RecordCodec recordCodec = RecordCodecs.forFormat(RecordCodecs.JSON);
+  private FileSync fileSync = FileSyncs.forMode(FileSyncs.PER_OP_FSYNC);
+  private StagingDirectory stagingDirectory;
+
+  // every write of an object's record holds the lock of its id
+  private final Object[] locks = new Object[LOCKS];
+
+  /**
+   * Creates a DAO for objects stored below the base directory set afterwards.
+   */
+  public CdmiObjectDaoImpl() {
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
 
   public String getObjectIdPrefix() {
     return objectIdPrefix;
@@ -66,6 +94,59 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     this.objectIdDirectory = objectIdDirectory;
   }
 
+  public int getObjectIdFanOut() {
+    return objectIdFanOut;
+  }
+
+  /**
+   * Sets the number of directory levels the objectId files are spread over. Each level has up to
+   * 256 sub-directories named after a byte of the hashed object id, e.g. two levels store an object
+   * at <code>cdmi_objectid/AB/CD/&lt;objectId&gt;</code>. With 0 levels all files are stored in the
+   * objectId directory itself.
+   * 
+   * @param objectIdFanOut the number of levels, 0 to 4
+   */
+  public void setObjectIdFanOut(int objectIdFanOut) {
+    if (objectIdFanOut < 0 || objectIdFanOut > 4) {
+      throw new IllegalArgumentException("objectId fan-out must be between 0 and 4 levels");
+    }
+    this.objectIdFanOut = objectIdFanOut;
+  }
+
+  /**
+   * Marks the objectId files of the flat layout as moved, so objects which aren't found in the
+   * fan-out directories aren't looked up in the flat directory anymore.
+   * 
+   * @param flatObjectIdsMigrated whether all objectId files have been moved
+   */
+  public void setFlatObjectIdsMigrated(boolean flatObjectIdsMigrated) {
+    this.flatObjectIdsMigrated = flatObjectIdsMigrated;
+  }
+
+  public RecordCodec getRecordCodec() {
+    return recordCodec;
+  }
+
+  public void setRecordCodec(RecordCodec recordCodec) {
+    this.recordCodec = recordCodec;
+  }
+
+  public FileSync getFileSync() {
+    return fileSync;
+  }
+
+  public void setFileSync(FileSync fileSync) {
+    this.fileSync = fileSync;
+  }
+
+  public StagingDirectory getStagingDirectory() {
+    return stagingDirectory;
+  }
+
+  public void setStagingDirectory(StagingDirectory stagingDirectory) {
+    this.stagingDirectory = stagingDirectory;
+  }
+
   private Path getCdmiObjectFilePathByUrl(String path) {
     Path fileSystemRoot = Paths.get(baseDirectory.trim());
     Path fileSystemPath = Paths.get(baseDirectory.trim(), path.trim());
@@ -83,8 +164,128 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     return returnPath;
   }
 
-  private Path getObjectIdFilePath(String objectId) {
-    return Paths.get(baseDirectory.trim(), objectIdDirectory, objectId);
+  Path getObjectIdDirectoryPath() {
+    return Paths.get(baseDirectory.trim(), objectIdDirectory);
+  }
+
+  Path getObjectIdFilePath(String objectId) {
+    Path directory = getObjectIdDirectoryPath();
+    if (objectIdFanOut > 0) {
+      CRC32 crc = new CRC32();
+      crc.update(objectId.getBytes(StandardCharsets.UTF_8));
+      String hash = String.format("%08X", crc.getValue());
+      for (int i = 0; i < objectIdFanOut; i++) {
+        directory = directory.resolve(hash.substring(2 * i, 2 * i + 2));
+      }
+    }
+    return directory.resolve(objectId);
+  }
+
+  /**
+   * Gets the objectId file of an existing object, moving it out of the flat layout first if it
+   * hasn't been moved yet.
+   */
+  Path findObjectIdFilePath(String objectId) throws IOException {
+    Path path = getObjectIdFilePath(objectId);
+    if (objectIdFanOut > 0 && !flatObjectIdsMigrated && !Files.exists(path)) {
+      moveFlatObjectIdFile(objectId);
+    }
+    return path;
+  }
+
+  /**
+   * Moves the objectId file of the given object from the flat layout into its fan-out directory.
+   * The file is renamed, so the hard links by path keep pointing to it.
+   * 
+   * @param objectId the object's id
+   * @return <code>true</code> if the file has been moved, <code>false</code> if there was none
+   * @throws IOException in case the file couldn't be moved
+   */
+  boolean moveFlatObjectIdFile(String objectId) throws IOException {
+    Path flatPath = getObjectIdDirectoryPath().resolve(objectId);
+    Path path = getObjectIdFilePath(objectId);
+    if (flatPath.equals(path) || !Files.isRegularFile(flatPath)) {
+      return false;
+    }
+    Files.createDirectories(path.getParent());
+    try {
+      Files.move(flatPath, path, StandardCopyOption.ATOMIC_MOVE);
+    } catch (NoSuchFileException ex) {
+      // moved concurrently
+      return false;
+    }
+    log.debug("moved objectId file {} to {}", flatPath, path);
+    return true;
+  }
+
+  Path getQuarantineDirectoryPath() {
+    return getObjectIdDirectoryPath().resolve(".quarantine");
+  }
+
+  Path getBlobDirectoryPath() {
+    return getObjectIdDirectoryPath().resolve(".blobs");
+  }
+
+  /**
+   * Creates the given file with the given content, all or nothing.
+   * 
+   * @throws FileAlreadyExistsException if the file exists
+   */
+  private void createFile(Path path, byte[] content) throws IOException {
+    Path temporaryFile = stagingDirectory.writeTemporaryFile(content);
+    try {
+      try {
+        Files.createLink(path, temporaryFile);
+      } catch (NoSuchFileException ex) {
+        if (objectIdFanOut == 0) {
+          throw ex;
+        }
+        Files.createDirectories(path.getParent());
+        Files.createLink(path, temporaryFile);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+    fileSync.sync(path.getParent());
+  }
+
+  /**
+   * Replaces the given link with a hard link to the given file. The directory isn't synced.
+   * 
+   * @param path the file to link to
+   * @param link the link to replace
+   * @throws IOException in case the link couldn't be replaced
+   */
+  void replaceLink(Path path, Path link) throws IOException {
+    Path temporaryLink = stagingDirectory.getTemporaryFilePath();
+    try {
+      Files.createLink(temporaryLink, path);
+    } catch (NoSuchFileException ex) {
+      Files.createDirectories(temporaryLink.getParent());
+      Files.createLink(temporaryLink, path);
+    }
+    try {
+      Files.move(temporaryLink, link, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      Files.deleteIfExists(temporaryLink);
+      throw ex;
+    }
+  }
+
+  /**
+   * Gets the path file of the given object if it is a link to the given objectId file.
+   */
+  private Path getLinkedPathFile(CdmiObject object, Path objectIdFilePath) throws IOException {
+    if (object.getParentUri() == null || object.getObjectName() == null) {
+      return null;
+    }
+    Path path = getCdmiObjectFilePathByUrl(
+        Paths.get(object.getParentUri(), object.getObjectName()).toString());
+    return isLinked(path, objectIdFilePath) ? path : null;
+  }
+
+  static boolean isLinked(Path path, Path otherPath) throws IOException {
+    return Files.exists(path) && Files.exists(otherPath) && Files.isSameFile(path, otherPath);
   }
 
   /**
@@ -108,6 +309,7 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
         Files.createLink(getCdmiObjectFilePathByUrl(path),
             getObjectIdFilePath(objectById.getObjectId()));
+        fileSync.sync(getCdmiObjectFilePathByUrl(path).getParent());
 
         // Files.write(getObjectPathForPath(path), object.toJson().toString().getBytes(),
         // StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
@@ -136,12 +338,98 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     return createCdmiObject(cdmiObject, string);
   }
 
+  /**
+   * Creates a new CDMI object at the given path and adds its name to the children of the parent
+   * object's metadata file.
+   * 
+   * @param object the {@link CdmiObject}
+   * @param path the CDMI URL path
+   * @param parentPath the CDMI URL path of the parent object
+   * @return the created {@link CdmiObject}
+   */
+  @Override
+  public CdmiObject createChildCdmiObject(CdmiObject object, String path, String parentPath) {
+    CdmiObject createdObject = createCdmiObject(object, path);
+
+    if (createdObject != null) {
+      // the parent is read and written under its lock, so concurrent creates don't lose children
+      synchronized (getLock(object.getParentId())) {
+        addChildren(Collections.singletonList(path), parentPath);
+      }
+    }
+    return createdObject;
+  }
+
+  /**
+   * Creates the records of all objects first and then rewrites the parent's record once, instead
+   * of once for every child.
+   */
+  @Override
+  public List<CdmiObject> createChildCdmiObjects(List<? extends CdmiObject> cdmiObjects,
+      List<String> paths, String parentPath) {
+    List<CdmiObject> createdObjects = new ArrayList<>(cdmiObjects.size());
+    List<String> createdPaths = new ArrayList<>(cdmiObjects.size());
+    for (int i = 0; i < cdmiObjects.size(); i++) {
+      CdmiObject createdObject = createCdmiObject(cdmiObjects.get(i), paths.get(i));
+      createdObjects.add(createdObject);
+      if (createdObject != null) {
+        createdPaths.add(paths.get(i));
+      }
+    }
+    if (!createdPaths.isEmpty()) {
+      synchronized (getLock(cdmiObjects.get(0).getParentId())) {
+        addChildren(createdPaths, parentPath);
+      }
+    }
+    return createdObjects;
+  }
+
+  /**
+   * Adds the names of the objects at the given paths to the children in the parent's record.
+   */
+  private void addChildren(List<String> paths, String parentPath) {
+    try {
+      Set<String> names = new LinkedHashSet<>();
+      for (String path : paths) {
+        names.add(Paths.get(path.trim()).getFileName().toString());
+      }
+      byte[] content = Files.readAllBytes(getCdmiObjectFilePathByUrl(parentPath));
+      JSONObject parentJson = RecordCodecs.decodeJson(content);
+
+      JSONArray children = parentJson.optJSONArray("children");
+      JSONArray filteredChildren = new JSONArray();
+      if (children != null) {
+        for (int i = 0; i < children.length(); i++) {
+          if (!names.contains(children.get(i))) {
+            filteredChildren.put(children.get(i));
+          }
+        }
+      }
+      for (String name : names) {
+        filteredChildren.put(name);
+      }
+
+      parentJson.put("children", filteredChildren);
+      parentJson.put("childrenrange", CdmiObject.getChildrenRange(filteredChildren));
+
+      Path parentFilePath = getCdmiObjectFilePathByUrl(parentPath);
+      Path parentObjectIdFilePath = findObjectIdFilePath(parentJson.getString("objectID"));
+      replaceRecord(parentObjectIdFilePath,
+          isLinked(parentFilePath, parentObjectIdFilePath) ? parentFilePath : null,
+          recordCodec.encode(parentJson));
+
+      log.debug("update parent objectId file {} {}", parentPath, parentJson);
+    } catch (Exception ex) {
+      // ex.printStackTrace();
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
   @Override
   public CdmiObject createCdmiObject(CdmiObject object) {
     try {
 
-      Files.write(getObjectIdFilePath(object.getObjectId()), object.toJson().toString().getBytes(),
-          StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+      createFile(getObjectIdFilePath(object.getObjectId()), recordCodec.encode(object));
 
       log.debug("create new objectId file {} {}", object.toString(), object.toJson());
 
@@ -162,58 +450,95 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
    */
   @Override
   public CdmiObject updateCdmiObject(CdmiObject updateObject, String path) {
-    try {
-
-      Files.write(getCdmiObjectFilePathByUrl(path), updateObject.toJson().toString().getBytes(),
-          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
-
-      log.debug("update objectId file {} {}", updateObject.toString(), updateObject.toJson());
-    } catch (AccessDeniedException ex) {
-      // try to fix file modification issues
+    synchronized (getLock(updateObject.getObjectId())) {
       try {
-        Files.deleteIfExists(getCdmiObjectFilePathByUrl(path));
-        Files.write(getCdmiObjectFilePathByUrl(path), updateObject.toJson().toString().getBytes(),
-            StandardOpenOption.WRITE);
-      } catch (Exception ex1) {
+        Path filePath = getCdmiObjectFilePathByUrl(path);
+        Path objectIdFilePath = findObjectIdFilePath(updateObject.getObjectId());
+        byte[] record = recordCodec.encode(updateObject);
+        replaceRecord(filePath, isLinked(filePath, objectIdFilePath) ? objectIdFilePath : null,
+            record);
+        updateObject.setVersion(RecordCodecs.getVersion(record));
+
+        log.debug("update objectId file {} {}", updateObject.toString(), updateObject.toJson());
+      } catch (Exception ex) {
         // ex.printStackTrace();
-        log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
         return null;
       }
-    } catch (Exception ex) {
-      // ex.printStackTrace();
-      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
-      return null;
     }
     return updateObject;
   }
 
+  /**
+   * Updates the given CDMI object if its record is still at the expected version. The record is
+   * compared and replaced under the lock of the object, which every write of it holds.
+   * 
+   * @param updateObject the updated object
+   * @param path the CDMI URL path
+   * @param expectedVersion the version the object was read at
+   * @return the updated {@link CdmiObject}
+   */
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject updateObject, String path,
+      String expectedVersion) {
+    synchronized (getLock(updateObject.getObjectId())) {
+      checkVersion(path, expectedVersion);
+      return updateCdmiObject(updateObject, path);
+    }
+  }
+
   @Override
   public CdmiObject updateCdmiObject(CdmiObject object) {
-    try {
-
-      Files.write(getObjectIdFilePath(object.getObjectId()), object.toJson().toString().getBytes(),
-          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
-
-      log.debug("update objectId file {} {}", object.toString(), object.toJson());
-    } catch (AccessDeniedException ex) {
-      // try to fix file modification issues
+    synchronized (getLock(object.getObjectId())) {
       try {
-        Files.deleteIfExists(getObjectIdFilePath(object.getObjectId()));
-        Files.write(getObjectIdFilePath(object.getObjectId()),
-            object.toJson().toString().getBytes(), StandardOpenOption.WRITE);
-      } catch (Exception ex1) {
+        Path objectIdFilePath = findObjectIdFilePath(object.getObjectId());
+        byte[] record = recordCodec.encode(object);
+        replaceRecord(objectIdFilePath, getLinkedPathFile(object, objectIdFilePath), record);
+        object.setVersion(RecordCodecs.getVersion(record));
+
+        log.debug("update objectId file {} {}", object.toString(), object.toJson());
+      } catch (Exception ex) {
         // ex.printStackTrace();
-        log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
         return null;
       }
-    } catch (Exception ex) {
-      // ex.printStackTrace();
-      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
-      return null;
     }
     return object;
   }
 
+  private void checkVersion(String path, String expectedVersion) {
+    String version = null;
+    try {
+      version = RecordCodecs.getVersion(Files.readAllBytes(getCdmiObjectFilePathByUrl(path)));
+    } catch (NoSuchFileException ex) {
+      log.debug("no object {}", path);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    if (!expectedVersion.equals(version)) {
+      throw new PreconditionFailedException(path + " is not at version " + expectedVersion);
+    }
+  }
+
+  private Object getLock(String objectId) {
+    return locks[(String.valueOf(objectId).hashCode() & Integer.MAX_VALUE) % locks.length];
+  }
+
+  /**
+   * Replaces the record of an object and then the hard link of its other view, by path or by
+   * objectId, to it. A crash in between leaves the link pointing to the complete old record, which
+   * is repaired by the {@link RecordRecovery} on the next start.
+   */
+  private void replaceRecord(Path path, Path link, byte[] record) throws IOException {
+    stagingDirectory.replaceFile(path, record);
+    if (link != null) {
+      replaceLink(path, link);
+      fileSync.sync(path.getParent(), link.getParent());
+    } else {
+      fileSync.sync(path.getParent());
+    }
+  }
+
   /**
    * Deletes a CdmiObject by path.
    * 
@@ -241,6 +566,26 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     return object;
   }
 
+  /**
+   * Deletes a CdmiObject by path if its record is still at the expected version, compared and
+   * deleted under the lock of the object.
+   * 
+   * @param path the CDMI URL path
+   * @param expectedVersion the version the object was read at
+   * @return the deleted {@link CdmiObject}
+   */
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path, String expectedVersion) {
+    CdmiObject object = getCdmiObjectByPath(path);
+    if (object == null) {
+      return null;
+    }
+    synchronized (getLock(object.getObjectId())) {
+      checkVersion(path, expectedVersion);
+      return deleteCdmiObjectByPath(path);
+    }
+  }
+
   @Override
   public CdmiObject deleteCdmiObject(String objectId) {
     CdmiObject object = getCdmiObject(objectId);
@@ -271,22 +616,7 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     try {
 
       byte[] content = Files.readAllBytes(getCdmiObjectFilePathByUrl(path));
-      JSONObject json = new JSONObject(new String(content));
-
-      String objectType = json.optString("objectType");
-      if (objectType != null) {
-        if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(json);
-        } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(json);
-        } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(json);
-        } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(json);
-        } else {
-          return CdmiObject.fromJson(json);
-        }
-      }
+      return decode(content);
     } catch (Exception ex) {
       // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
@@ -297,28 +627,76 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
   @Override
   public CdmiObject getCdmiObject(String objectId) {
     try {
-      log.debug("Get object {}", getObjectIdFilePath(objectId));
-      byte[] content = Files.readAllBytes(getObjectIdFilePath(objectId));
-      JSONObject json = new JSONObject(new String(content));
-
-      String objectType = json.optString("objectType");
-      if (objectType != null) {
-        if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(json);
-        } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(json);
-        } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(json);
-        } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(json);
-        } else {
-          return CdmiObject.fromJson(json);
-        }
-      }
+      Path objectIdFilePath = findObjectIdFilePath(objectId);
+      log.debug("Get object {}", objectIdFilePath);
+      byte[] content = Files.readAllBytes(objectIdFilePath);
+      return decode(content);
     } catch (Exception ex) {
       // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
     }
     return null;
   }
+
+  private CdmiObject decode(byte[] record) {
+    CdmiObject cdmiObject = recordCodec.decode(record);
+    cdmiObject.setVersion(RecordCodecs.getVersion(record));
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId, int childrenFrom, int childrenTo) {
+    return sliceChildren(getCdmiObject(objectId), childrenFrom, childrenTo);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenFrom, int childrenTo) {
+    return sliceChildren(getCdmiObjectByPath(path), childrenFrom, childrenTo);
+  }
+
+  /**
+   * Gets the object, the children are part of its record, so they are read but not kept unless
+   * they are selected.
+   */
+  @Override
+  public CdmiObject getCdmiObject(String objectId, Projection projection) {
+    return project(getCdmiObject(objectId), projection);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, Projection projection) {
+    return project(getCdmiObjectByPath(path), projection);
+  }
+
+  private CdmiObject project(CdmiObject cdmiObject, Projection projection) {
+    if (cdmiObject instanceof Container && !projection.includesChildren()) {
+      Container container = (Container) cdmiObject;
+      container.setChildren(null);
+      if (!projection.includes("childrenrange")) {
+        container.setChildrenrange(null);
+      }
+      return container;
+    }
+    int[] childrenRange = projection.getChildrenRange();
+    return childrenRange != null ? sliceChildren(cdmiObject, childrenRange[0], childrenRange[1])
+        : cdmiObject;
+  }
+
+  private CdmiObject sliceChildren(CdmiObject cdmiObject, int childrenFrom, int childrenTo) {
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      JSONArray children = container.getChildren();
+      if (children != null) {
+        int last = childrenTo < 0 ? children.length() - 1
+            : Math.min(childrenTo, children.length() - 1);
+        JSONArray slice = new JSONArray();
+        for (int i = Math.max(childrenFrom, 0); i <= last; i++) {
+          slice.put(children.get(i));
+        }
+        container.setChildren(slice);
+      }
+    }
+    return cdmiObject;
+  }
+
 }
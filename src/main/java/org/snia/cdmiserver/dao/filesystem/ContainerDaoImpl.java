@@ -38,7 +38,6 @@
 
 package org.snia.cdmiserver.dao.filesystem;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,10 +46,15 @@ import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * <p>
@@ -117,35 +121,80 @@ public class ContainerDaoImpl implements ContainerDao {
     Container container = new Container(urlPath.getFileName().toString(), parentPath.toString(),
         parentContainer.getObjectId());
 
-    if (parentContainer.getChildren() == null) {
-      parentContainer.setChildren(new JSONArray());
-    }
-
-    JSONArray children = parentContainer.getChildren();
-    JSONArray filteredChildren = new JSONArray();
-
-    for (int i = 0; i < children.length(); i++) {
-      if (!children.get(i).equals(container.getObjectName())) {
-        filteredChildren.put(children.get(i));
-      }
-    }
-
-    filteredChildren.put(container.getObjectName());
-    parentContainer.setChildren(filteredChildren);
-
-    String childrenRange = CdmiObject.getChildrenRange(parentContainer.getChildren());
-    parentContainer.setChildrenrange(childrenRange);
-
     container.setCompletionStatus("Complete");
     container.setMetadata(containerRequest.getMetadata());
     // container.setCapabilitiesUri(containerRequest.getCapabilitiesUri());
 
-    container = (Container) cdmiObjectDao.createCdmiObject(container, urlPath.toString());
-    cdmiObjectDao.updateCdmiObject(parentContainer);
+    // the parent's children are updated under its lock, concurrent creates don't lose entries
+    container = (Container) cdmiObjectDao.createChildCdmiObject(container, urlPath.toString(),
+        parentPath.toString());
 
     return container;
   }
 
+  @Override
+  public List<Container> createChildrenByPath(String path, List<String> names,
+      List<Container> containerRequests) {
+    List<Container> containers = new ArrayList<>(Collections.nCopies(names.size(), null));
+    Path parentPath = Paths.get(path.trim());
+    CdmiObject parentContainer = cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, 0);
+    if (!(parentContainer instanceof Container)) {
+      log.debug("no parent container {}", parentPath);
+      return containers;
+    }
+
+    List<Container> newContainers = new ArrayList<>(names.size());
+    List<String> paths = new ArrayList<>(names.size());
+    List<Integer> indexes = new ArrayList<>(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      Path urlPath = parentPath.resolve(names.get(i));
+      try {
+        // an existing directory is an existing object
+        Files.createDirectory(Paths.get(baseDirectoryName.trim(), urlPath.toString()));
+      } catch (FileAlreadyExistsException ex) {
+        log.debug("container {} already exists", urlPath);
+        continue;
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        continue;
+      }
+      Container container = new Container(names.get(i), parentPath.toString(),
+          parentContainer.getObjectId());
+
+      container.setCompletionStatus("Complete");
+      container.setMetadata(containerRequests.get(i).getMetadata());
+      newContainers.add(container);
+      paths.add(urlPath.toString());
+      indexes.add(i);
+    }
+
+    // the parent's record is rewritten once for all of them
+    List<CdmiObject> created = Collections.emptyList();
+    try {
+      created = cdmiObjectDao.createChildCdmiObjects(newContainers, paths, parentPath.toString());
+    } catch (RuntimeException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    for (int i = 0; i < paths.size(); i++) {
+      Container container = i < created.size() ? (Container) created.get(i) : null;
+      if (container != null) {
+        containers.set(indexes.get(i), container);
+      } else {
+        // a directory without a record would block the name
+        deleteDirectory(Paths.get(baseDirectoryName.trim(), paths.get(i)));
+      }
+    }
+    return containers;
+  }
+
+  private void deleteDirectory(Path directory) {
+    try {
+      Files.deleteIfExists(directory);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
   @Override
   public Container deleteByPath(String path) {
     Container container = null;
@@ -172,6 +221,42 @@ public class ContainerDaoImpl implements ContainerDao {
     return container;
   }
 
+  /**
+   * Deletes the container if it is still at the expected version. The records are compared and
+   * deleted under the lock of the object first, so a conflict leaves the container as it is, the
+   * directory is only deleted afterwards. A container with children isn't deleted, like with
+   * {@link #deleteByPath(String)}.
+   */
+  @Override
+  public Container deleteByPath(String path, String expectedVersion) {
+    log.debug("delete container {} at version {}", path.trim(), expectedVersion);
+
+    final Path containerPath = Paths.get(baseDirectoryName.trim(), path.trim());
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(containerPath)) {
+      if (entries.iterator().hasNext()) {
+        log.error("ERROR: directory {} is not empty", containerPath.toString());
+        return null;
+      }
+    } catch (Exception ex) {
+      log.error("ERROR: {}", ex.getMessage());
+      return null;
+    }
+
+    Container container =
+        (Container) cdmiObjectDao.deleteCdmiObjectByPath(path.trim(), expectedVersion);
+    if (container == null) {
+      return null;
+    }
+    try {
+      log.debug("delete directory {}", containerPath.toString());
+      Files.delete(containerPath);
+    } catch (Exception ex) {
+      // a child was created in the meantime, it can't be linked to the deleted container
+      log.error("ERROR: {}", ex.getMessage());
+    }
+    return container;
+  }
+
   @Override
   public Container findByObjectId(String objectId) {
     return (Container) cdmiObjectDao.getCdmiObject(objectId);
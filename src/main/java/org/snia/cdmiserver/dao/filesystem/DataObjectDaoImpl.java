@@ -30,24 +30,38 @@
 
 package org.snia.cdmiserver.dao.filesystem;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.BlockCompression;
+import org.snia.cdmiserver.codec.ValueHash;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.exception.BadRequestException;
+import org.snia.cdmiserver.model.Capability;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.util.ModificationCount;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
 
 /**
  * <p>
@@ -59,12 +73,35 @@ public class DataObjectDaoImpl implements DataObjectDao {
 
   private static final Logger log = LoggerFactory.getLogger(DataObjectDaoImpl.class);
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int LOCKS = 64;
+
   private String baseDirectoryName;
 
   private CdmiObjectDao cdmiObjectDao;
 
   private ContainerDao containerDao;
 
+  private FileSync fileSync = FileSyncs.forMode(FileSyncs.PER_OP_FSYNC);
+
+  private ValueHash valueHash;
+
+  private BlobStore blobStore;
+
+  private StagingDirectory stagingDirectory;
+
+  private final Object[] locks = new Object[LOCKS];
+
+  /**
+   * Creates a DAO for data objects stored below the base directory set afterwards.
+   */
+  public DataObjectDaoImpl() {
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
+
   public ContainerDao getContainerDao() {
     return containerDao;
   }
@@ -73,6 +110,47 @@ public class DataObjectDaoImpl implements DataObjectDao {
     this.containerDao = containerDao;
   }
 
+  public FileSync getFileSync() {
+    return fileSync;
+  }
+
+  public void setFileSync(FileSync fileSync) {
+    this.fileSync = fileSync;
+  }
+
+  public ValueHash getValueHash() {
+    return valueHash;
+  }
+
+  /**
+   * Sets how the cdmi_value_hash of the data objects is computed, <code>null</code> disables it.
+   */
+  public void setValueHash(ValueHash valueHash) {
+    this.valueHash = valueHash;
+  }
+
+  public BlobStore getBlobStore() {
+    return blobStore;
+  }
+
+  /**
+   * Sets the store that values are deduplicated in, if it is enabled.
+   */
+  public void setBlobStore(BlobStore blobStore) {
+    this.blobStore = blobStore;
+  }
+
+  public StagingDirectory getStagingDirectory() {
+    return stagingDirectory;
+  }
+
+  /**
+   * Sets the directory values are staged in before they replace the content of a data object.
+   */
+  public void setStagingDirectory(StagingDirectory stagingDirectory) {
+    this.stagingDirectory = stagingDirectory;
+  }
+
   public String getBaseDirectoryName() {
     return baseDirectoryName;
   }
@@ -91,16 +169,21 @@ public class DataObjectDaoImpl implements DataObjectDao {
 
   @Override
   public DataObject createByPath(String path, DataObject dataObjectRequest) {
+    String hash = null;
     try {
       final Path dataObjectPath = Paths.get(baseDirectoryName.trim(), path.trim());
       // create the data object file
       Files.createFile(dataObjectPath);
       log.debug("create data object {} {}", path.trim(), dataObjectRequest.toString());
       log.debug("create file {}", dataObjectPath.toString());
+      byte[] value = new byte[0];
       if (dataObjectRequest.getValue() != null) {
-        Files.write(dataObjectPath, dataObjectRequest.getValue().getBytes());
+        value = dataObjectRequest.getValue().getBytes();
+        Files.write(dataObjectPath, value);
         log.debug("writing value to data object");
       }
+      hash = valueHash != null ? valueHash.hash(value) : null;
+      fileSync.sync(dataObjectPath, dataObjectPath.getParent());
     } catch (FileAlreadyExistsException ex) {
       log.error(ex.getMessage());
     } catch (Exception ex) {
@@ -108,7 +191,100 @@ public class DataObjectDaoImpl implements DataObjectDao {
       return null;
     }
 
-    Path urlPath = Paths.get(path.trim());
+    return createRecord(Paths.get(path.trim()), dataObjectRequest, hash, null);
+  }
+
+  @Override
+  public List<DataObject> createChildrenByPath(String path, List<String> names,
+      List<DataObject> dataObjectRequests) {
+    List<DataObject> dataObjects = new ArrayList<>(Collections.nCopies(names.size(), null));
+    Path parentPath = Paths.get(path.trim());
+    CdmiObject parentContainer = cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, 0);
+    if (!(parentContainer instanceof Container)) {
+      log.debug("no parent container {}", parentPath);
+      return dataObjects;
+    }
+
+    List<DataObject> newDataObjects = new ArrayList<>(names.size());
+    List<String> paths = new ArrayList<>(names.size());
+    List<Integer> indexes = new ArrayList<>(names.size());
+    List<Path> files = new ArrayList<>(names.size() + 1);
+    String hash = valueHash != null ? valueHash.hash(new byte[0]) : null;
+    for (int i = 0; i < names.size(); i++) {
+      Path urlPath = parentPath.resolve(names.get(i));
+      Path dataObjectPath = Paths.get(baseDirectoryName.trim(), urlPath.toString());
+      try {
+        // an existing file is an existing object
+        Files.createFile(dataObjectPath);
+      } catch (FileAlreadyExistsException ex) {
+        log.debug("data object {} already exists", urlPath);
+        continue;
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        continue;
+      }
+      files.add(dataObjectPath);
+      DataObject dataObjectRequest = dataObjectRequests.get(i);
+      DataObject dataObject = new DataObject(names.get(i), parentPath.toString(),
+          parentContainer.getObjectId());
+
+      dataObject.setCompletionStatus("Complete");
+      dataObject.setMetadata(dataObjectRequest.getMetadata());
+      ValueHash.set(dataObject, hash);
+      BlockCompression.set(dataObject, null);
+      dataObject.setMimetype(dataObjectRequest.getMimetype());
+      dataObject.setValuetransferencoding(dataObjectRequest.getValuetransferencoding());
+      newDataObjects.add(dataObject);
+      paths.add(urlPath.toString());
+      indexes.add(i);
+    }
+    if (files.isEmpty()) {
+      return dataObjects;
+    }
+    try {
+      // the empty files and their directory are synced together
+      files.add(files.get(0).getParent());
+      fileSync.sync(files.toArray(new Path[files.size()]));
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      paths.clear();
+    }
+
+    // the parent's record is rewritten once for all of them
+    List<CdmiObject> created = Collections.emptyList();
+    try {
+      if (!paths.isEmpty()) {
+        created =
+            cdmiObjectDao.createChildCdmiObjects(newDataObjects, paths, parentPath.toString());
+      }
+    } catch (RuntimeException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    for (int i = 0; i < indexes.size(); i++) {
+      DataObject dataObject = i < created.size() ? (DataObject) created.get(i) : null;
+      if (dataObject != null) {
+        dataObjects.set(indexes.get(i), dataObject);
+      } else {
+        // a file without a record would block the name
+        deleteFile(files.get(i));
+      }
+    }
+    return dataObjects;
+  }
+
+  private void deleteFile(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  /**
+   * Creates the meta-data files of a new data object and adds it to its parent container.
+   */
+  private DataObject createRecord(Path urlPath, DataObject dataObjectRequest, String hash,
+      BlockCompression compression) {
     Path parentPath = urlPath.getParent();
     if (parentPath == null) {
       // root container
@@ -128,38 +304,318 @@ public class DataObjectDaoImpl implements DataObjectDao {
     DataObject dataObject = new DataObject(urlPath.getFileName().toString(), parentPath.toString(),
         parentContainer.getObjectId());
 
-    if (parentContainer.getChildren() == null) {
-      parentContainer.setChildren(new JSONArray());
+    dataObject.setCompletionStatus("Complete");
+    dataObject.setMetadata(dataObjectRequest.getMetadata());
+    // only the server knows the hash of the content it wrote and how it stored it
+    ValueHash.set(dataObject, hash);
+    BlockCompression.set(dataObject, compression);
+    dataObject.setMimetype(dataObjectRequest.getMimetype());
+    dataObject.setValuetransferencoding(dataObjectRequest.getValuetransferencoding());
+    // dataObject.setCapabilitiesUri(dataObjectRequest.getCapabilitiesUri());
+
+    // the parent's children are updated under its lock, concurrent creates don't lose entries
+    dataObject = (DataObject) cdmiObjectDao.createChildCdmiObject(dataObject, urlPath.toString(),
+        parentPath.toString());
+
+    return dataObject;
+  }
+
+  @Override
+  public DataObject createNonCdmiByPath(String path, String contentType,
+      ReadableByteChannel content) {
+    return createNonCdmiByPath(path, contentType, content, null);
+  }
+
+  @Override
+  public DataObject createNonCdmiByPath(String path, String contentType,
+      ReadableByteChannel content, String expectedHash) {
+    Path urlPath = Paths.get(path.trim());
+    if (urlPath.getParent() == null) {
+      // root container
+      return null;
     }
+    String mimetype = contentType != null ? contentType : "application/octet-stream";
 
-    JSONArray children = parentContainer.getChildren();
-    JSONArray filteredChildren = new JSONArray();
+    DataObject dataObject = findByPath(path);
+    // the content is stored as it is, CDMI responses have to encode binary content
+    String valueTransferEncoding = mimetype.startsWith("text/") ? "utf-8" : "base64";
+    try {
+      Path dataObjectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      return replaceContent(dataObjectPath, content, expectedHash, getCompression(dataObject),
+          (hash, compression) -> {
+            if (dataObject == null) {
+              DataObject dataObjectRequest = DataObject.fromJson(new JSONObject("{}"));
+              dataObjectRequest.setMimetype(mimetype);
+              dataObjectRequest.setValuetransferencoding(valueTransferEncoding);
+              return createRecord(urlPath, dataObjectRequest, hash, compression);
+            }
+            return updateContentRecord(path, hash, compression, mimetype, valueTransferEncoding);
+          });
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    }
+  }
 
-    for (int i = 0; i < children.length(); i++) {
-      if (!children.get(i).equals(dataObject.getObjectName())) {
-        filteredChildren.put(children.get(i));
+  /**
+   * Streams the given content into a temporary file and renames it over the data object's file, so
+   * readers see either the old or the new content, and a failed upload leaves the old one. The
+   * content is hashed while it is streamed, and checked before the rename. With deduplication, the
+   * data object's file is linked to the blob of the content instead. With compression, the content
+   * is compressed while it is streamed, its hash is still the one of the uncompressed content.
+   *
+   * @param recordWriter writes the record with the hash of the new content, <code>null</code> if
+   *        hashes are disabled, and the compression it is stored in, under the lock of the file
+   * @return the data object the record writer returned
+   */
+  private DataObject replaceContent(Path path, ReadableByteChannel content, String expectedHash,
+      BlockCompression compression,
+      BiFunction<String, BlockCompression, DataObject> recordWriter) throws IOException {
+    // the temporary files of the staging directory are on the same file system and are cleaned up
+    // by the record recovery
+    Path temporaryFile = stagingDirectory.getTemporaryFilePath();
+    ValueHash.HashingChannel hashingContent = valueHash != null ? valueHash.wrap(content) : null;
+    ValueHash.HashingChannel digestingContent = null;
+    if (isDeduplicating()) {
+      // the digest is the hash if both are SHA-256
+      digestingContent = isDigest(valueHash) ? hashingContent
+          : blobStore.getDigest().wrap(hashingContent != null ? hashingContent : content);
+    }
+    long position = 0;
+    String hash;
+    DataObject dataObject;
+    try {
+      try (FileChannel channel = stagingDirectory.openTemporaryFile(temporaryFile)) {
+        ReadableByteChannel source = digestingContent != null ? digestingContent
+            : hashingContent != null ? hashingContent : content;
+        if (compression != null) {
+          position = compression.compress(source, channel);
+        } else {
+          long count;
+          while ((count = channel.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+            position += count;
+          }
+        }
+      }
+      hash = hashingContent != null ? hashingContent.getValue() : null;
+      checkValueHash(expectedHash, hash);
+      String blobName =
+          digestingContent != null ? getBlobName(digestingContent.getValue(), compression) : null;
+      if (blobName == null) {
+        fileSync.sync(temporaryFile);
       }
+      synchronized (getLock(path)) {
+        storeContent(temporaryFile, blobName, path);
+        dataObject = recordWriter.apply(hash, compression);
+      }
+    } catch (IOException | RuntimeException ex) {
+      Files.deleteIfExists(temporaryFile);
+      throw ex;
+    }
+    log.debug("replaced {} with {} bytes, {} {}", path, position, ValueHash.METADATA_NAME, hash);
+    return dataObject;
+  }
+
+  /**
+   * Renames the given file, synced already, over the data object's file, or links the data object's
+   * file to the given blob. The caller holds the lock of the data object's file, and writes the
+   * record telling how the value is stored under the same lock, so readers never see one without
+   * the other.
+   */
+  private void storeContent(Path file, String blobName, Path objectPath) throws IOException {
+    if (blobName != null) {
+      blobStore.store(file, blobName, objectPath);
+      return;
     }
+    Files.move(file, objectPath, StandardCopyOption.ATOMIC_MOVE);
+    fileSync.sync(objectPath.getParent());
+    released();
+  }
 
-    filteredChildren.put(dataObject.getObjectName());
-    parentContainer.setChildren(filteredChildren);
+  /**
+   * Gets the name of the blob of a value, which tells the compressed and the uncompressed blobs of
+   * the same value apart.
+   */
+  private static String getBlobName(String digest, BlockCompression compression) {
+    return compression != null ? digest + "." + compression.getName() : digest;
+  }
 
-    String childrenRange = CdmiObject.getChildrenRange(parentContainer.getChildren());
-    parentContainer.setChildrenrange(childrenRange);
+  /**
+   * Compresses the given file into a new temporary file.
+   *
+   * @return the compressed file
+   */
+  private Path compress(Path file, BlockCompression compression) throws IOException {
+    Path compressedFile = stagingDirectory.getTemporaryFilePath();
+    try (FileChannel content = FileChannel.open(file, StandardOpenOption.READ);
+        FileChannel channel = stagingDirectory.openTemporaryFile(compressedFile)) {
+      compression.compress(content, channel);
+    } catch (IOException ex) {
+      Files.deleteIfExists(compressedFile);
+      throw ex;
+    }
+    return compressedFile;
+  }
 
-    dataObject.setCompletionStatus("Complete");
-    dataObject.setMetadata(dataObjectRequest.getMetadata());
-    // dataObject.setCapabilitiesUri(dataObjectRequest.getCapabilitiesUri());
+  /**
+   * Gets the compression the capability class of the given data object asks for.
+   *
+   * @return the {@link BlockCompression} or <code>null</code> if values are stored uncompressed
+   */
+  private BlockCompression getCompression(DataObject dataObject) {
+    if (dataObject == null || dataObject.getCapabilitiesUri() == null) {
+      return null;
+    }
+    CdmiObject capability = cdmiObjectDao.getCdmiObjectByPath(dataObject.getCapabilitiesUri());
+    if (!(capability instanceof Capability)
+        || ((Capability) capability).getMetadata() == null) {
+      return null;
+    }
+    String name =
+        ((Capability) capability).getMetadata().optString(BlockCompression.METADATA_NAME, null);
+    try {
+      return BlockCompression.forName(name);
+    } catch (IllegalArgumentException ex) {
+      log.warn("{} of {}: {}", BlockCompression.METADATA_NAME, dataObject.getCapabilitiesUri(),
+          ex.getMessage());
+      return null;
+    }
+  }
 
-    dataObject = (DataObject) cdmiObjectDao.createCdmiObject(dataObject, urlPath.toString());
-    cdmiObjectDao.updateCdmiObject(parentContainer);
+  /**
+   * Opens a data object's file for reading its value, decompressed if its record says it is
+   * compressed. The caller holds the lock of the file, so the file is the one the record describes.
+   *
+   * @param dataObject the record of the data object or <code>null</code> if it has none yet
+   */
+  private static FileChannel openValue(DataObject dataObject, Path objectPath) throws IOException {
+    FileChannel file = FileChannel.open(objectPath, StandardOpenOption.READ);
+    try {
+      BlockCompression compression = dataObject != null ? BlockCompression.get(dataObject) : null;
+      return compression != null ? compression.decompress(file) : file;
+    } catch (IOException | RuntimeException ex) {
+      file.close();
+      throw ex;
+    }
+  }
 
-    return dataObject;
+  private boolean isDeduplicating() {
+    return blobStore != null && blobStore.isEnabled();
   }
 
-  @Override
-  public DataObject createNonCdmiByPath(String path, String contentType, DataObject dataObj) {
-    throw new UnsupportedOperationException("DataObjectDaoImpl.createNonCDMIByPath()");
+  private boolean isDigest(ValueHash hash) {
+    return hash != null && hash.getAlgorithm().equals(blobStore.getDigest().getAlgorithm());
+  }
+
+  /**
+   * Notes that a data object's file has been replaced or deleted, which may leave its blob to be
+   * collected.
+   */
+  private void released() {
+    if (blobStore != null) {
+      blobStore.released();
+    }
+  }
+
+  /**
+   * Opens a data object's file to write it in place, which mustn't change the blob it shares. A
+   * compressed value is decompressed first. The caller holds the lock of the file until it has
+   * written it and its record, so the file isn't replaced in between and the write isn't lost in
+   * the replaced file.
+   */
+  private FileChannel openForWrite(String path, Path objectPath) throws IOException {
+    if (!expand(path, objectPath) && blobStore != null) {
+      blobStore.detach(objectPath);
+    }
+    return FileChannel.open(objectPath, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Replaces a compressed data object's file with its decompressed value, which replaces a shared
+   * blob as well, and marks its record uncompressed. The value stays uncompressed until it is
+   * replaced as a whole. The caller holds the lock of the file.
+   *
+   * @return <code>true</code> if the file was compressed
+   */
+  private boolean expand(String path, Path objectPath) throws IOException {
+    DataObject dataObject = findByPath(path);
+    if (dataObject == null || BlockCompression.get(dataObject) == null) {
+      return false;
+    }
+    Path temporaryFile = stagingDirectory.getTemporaryFilePath();
+    try (FileChannel value = openValue(dataObject, objectPath);
+        FileChannel channel = stagingDirectory.openTemporaryFile(temporaryFile)) {
+      long size = value.size();
+      long position = 0;
+      while (position < size) {
+        position += value.transferTo(position, size - position, channel);
+      }
+    } catch (IOException | RuntimeException ex) {
+      Files.deleteIfExists(temporaryFile);
+      throw ex;
+    }
+    try {
+      fileSync.sync(temporaryFile);
+      Files.move(temporaryFile, objectPath, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException ex) {
+      Files.deleteIfExists(temporaryFile);
+      throw ex;
+    }
+    fileSync.sync(objectPath.getParent());
+    released();
+    BlockCompression.set(dataObject, null);
+    cdmiObjectDao.updateCdmiObject(dataObject, path.trim());
+    log.debug("decompressed {} to write it in place", objectPath);
+    return true;
+  }
+
+  /**
+   * Rejects content that doesn't match the hash the client expects.
+   */
+  private static void checkValueHash(String expectedHash, String hash) {
+    if (expectedHash == null) {
+      return;
+    }
+    if (hash == null) {
+      throw new BadRequestException("cdmi_value_hash can't be checked, value hashes are disabled");
+    }
+    if (!ValueHash.matches(expectedHash, hash)) {
+      throw new BadRequestException(
+          "cdmi_value_hash " + hash + " doesn't match the expected " + expectedHash.trim());
+    }
+  }
+
+  /**
+   * Writes the record of a data object whose content has been changed, with the hash of the new
+   * content. The content isn't part of the record, so the cdmi_mcount is incremented, which changes
+   * the version and with it the entity tag, even if the hash is the same or isn't known. The record
+   * is read again under the lock of the object, so no write of another content change is lost.
+   *
+   * @param hash the hash of the content or <code>null</code> if it isn't known
+   * @param compression the compression the content is stored in or <code>null</code> if it is
+   *        stored uncompressed
+   * @param mimetype the new mime type or <code>null</code> to keep it
+   * @param valueTransferEncoding the new value transfer encoding or <code>null</code> to keep it
+   * @return the updated data object or <code>null</code> if there is none
+   */
+  private DataObject updateContentRecord(String path, String hash, BlockCompression compression,
+      String mimetype, String valueTransferEncoding) {
+    synchronized (getLock(Paths.get(baseDirectoryName.trim(), path.trim()))) {
+      DataObject dataObject = findByPath(path);
+      if (dataObject == null) {
+        return null;
+      }
+      if (mimetype != null) {
+        dataObject.setMimetype(mimetype);
+      }
+      if (valueTransferEncoding != null) {
+        dataObject.setValuetransferencoding(valueTransferEncoding);
+      }
+      ValueHash.set(dataObject, hash);
+      BlockCompression.set(dataObject, compression);
+      ModificationCount.increment(dataObject);
+      return (DataObject) cdmiObjectDao.updateCdmiObject(dataObject, path.trim());
+    }
   }
 
   @Override
@@ -176,10 +632,7 @@ public class DataObjectDaoImpl implements DataObjectDao {
       dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
 
       if (dataObject != null) {
-        final Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
-
-        log.debug("delete file {}", objectPath.toString());
-        Files.delete(objectPath);
+        deleteContent(path, dataObject);
 
         cdmiObjectDao.deleteCdmiObject(dataObject.getObjectId());
         cdmiObjectDao.deleteCdmiObjectByPath(path.trim());
@@ -192,6 +645,37 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  /**
+   * Deletes the data object if it is still at the expected version. The records are deleted
+   * first, so the content is only deleted once the version matched.
+   */
+  @Override
+  public DataObject deleteByPath(String path, String expectedVersion) {
+    log.debug("delete data object {} at version {}", path.trim(), expectedVersion);
+
+    DataObject dataObject =
+        (DataObject) cdmiObjectDao.deleteCdmiObjectByPath(path.trim(), expectedVersion);
+    if (dataObject != null) {
+      try {
+        deleteContent(path, dataObject);
+      } catch (Exception ex) {
+        log.error("ERROR: {}", ex.getMessage());
+      }
+    }
+    return dataObject;
+  }
+
+  private void deleteContent(String path, DataObject dataObject) throws IOException {
+    final Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+
+    log.debug("delete file {}", objectPath.toString());
+    Files.delete(objectPath);
+    released();
+    // drops an unpublished partial upload
+    Files.deleteIfExists(getRangesFilePath(dataObject));
+    Files.deleteIfExists(getStagingFilePath(dataObject));
+  }
+
   @Override
   public DataObject findByPath(String path) {
     DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
@@ -211,6 +695,21 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  @Override
+  public FileChannel openContent(String path) {
+    Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+    try {
+      synchronized (getLock(objectPath)) {
+        return openValue(findByPath(path), objectPath);
+      }
+    } catch (NoSuchFileException ex) {
+      log.debug("no content for data object {}", path.trim());
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
   @SuppressWarnings("unused")
   private byte[] getDataObjectContent(String path) {
     Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
@@ -227,28 +726,423 @@ public class DataObjectDaoImpl implements DataObjectDao {
   public DataObject updateContent(String path, byte[] content) {
     DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
 
+    if (dataObject != null) {
+      Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      synchronized (getLock(objectPath)) {
+        try {
+          try (FileChannel channel = openForWrite(path, objectPath)) {
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+              channel.write(buffer);
+            }
+          }
+          fileSync.sync(objectPath);
+          log.debug("writing value to data object");
+        } catch (AccessDeniedException ex) {
+          // try to fix file modification issues
+          try {
+            Files.deleteIfExists(objectPath);
+            Files.write(objectPath, content, StandardOpenOption.WRITE);
+            fileSync.sync(objectPath, objectPath.getParent());
+          } catch (Exception ex1) {
+            // ex.printStackTrace();
+            log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
+            return null;
+          }
+        } catch (IOException ex) {
+          // ex.printStackTrace();
+          log.error("ERROR {}", ex.getMessage());
+        }
+        dataObject = updateContentRecord(path, null, null, null, null);
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject updateContent(String path, ReadableByteChannel content,
+      String expectedHash) {
+    DataObject dataObject = findByPath(path);
+
     if (dataObject != null) {
       try {
         Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
-        Files.write(objectPath, content, StandardOpenOption.WRITE,
-            StandardOpenOption.TRUNCATE_EXISTING);
-        log.debug("writing value to data object");
-      } catch (AccessDeniedException ex) {
-        // try to fix file modification issues
+        dataObject = replaceContent(objectPath, content, expectedHash, getCompression(dataObject),
+            (hash, compression) -> updateContentRecord(path, hash, compression, null, null));
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject updateContent(String path, long position, long count,
+      ReadableByteChannel content) {
+    DataObject dataObject = findByPath(path);
+
+    if (dataObject != null) {
+      Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      // the range is staged first like an append, so a slow client doesn't hold the lock
+      Path temporaryFile = stagingDirectory.getTemporaryFilePath();
+      try {
+        try (FileChannel staging = stagingDirectory.openTemporaryFile(temporaryFile)) {
+          long written = write(content, staging, 0, count);
+          if (written < count) {
+            throw new EOFException("content ended after " + written + " of " + count + " bytes");
+          }
+        }
+        synchronized (getLock(objectPath)) {
+          // written in place, so only the given range is written
+          try (FileChannel staged = FileChannel.open(temporaryFile, StandardOpenOption.READ);
+              FileChannel channel = openForWrite(path, objectPath)) {
+            long transferred = 0;
+            while (transferred < count) {
+              transferred += staged.transferTo(transferred, count - transferred,
+                  channel.position(position + transferred));
+            }
+          }
+          fileSync.sync(objectPath);
+          log.debug("wrote {} bytes at {} to data object {}", count, position, path.trim());
+          // the hash isn't known without reading the whole content again
+          dataObject = updateContentRecord(path, null, null, null, null);
+        }
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      } finally {
         try {
-          Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
-          Files.deleteIfExists(objectPath);
-          Files.write(objectPath, content, StandardOpenOption.WRITE);
-        } catch (Exception ex1) {
-          // ex.printStackTrace();
-          log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
-          return null;
+          Files.deleteIfExists(temporaryFile);
+        } catch (IOException ex) {
+          log.warn("{} {}", ex.getClass().getName(), ex.getMessage());
+        }
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject appendContent(String path, ReadableByteChannel content) {
+    DataObject dataObject = findByPath(path);
+
+    if (dataObject != null) {
+      Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      // the content is staged first, so appends from slow clients don't block each other and a
+      // failed upload doesn't leave a partial append
+      Path temporaryFile = stagingDirectory.getTemporaryFilePath();
+      try {
+        long size;
+        try (FileChannel staging = stagingDirectory.openTemporaryFile(temporaryFile)) {
+          size = write(content, staging, 0, Long.MAX_VALUE);
+        }
+        synchronized (getLock(objectPath)) {
+          try (FileChannel staged = FileChannel.open(temporaryFile, StandardOpenOption.READ);
+              FileChannel channel = openForWrite(path, objectPath)) {
+            channel.position(channel.size());
+            long position = 0;
+            while (position < size) {
+              position += staged.transferTo(position, size - position, channel);
+            }
+          }
+          fileSync.sync(objectPath);
+          log.debug("appended {} bytes to data object {}", size, path.trim());
+          // the hash isn't known without reading the whole content again
+          dataObject = updateContentRecord(path, null, null, null, null);
         }
       } catch (IOException ex) {
-        // ex.printStackTrace();
-        log.error("ERROR {}", ex.getMessage());
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      } finally {
+        try {
+          Files.deleteIfExists(temporaryFile);
+        } catch (IOException ex) {
+          log.warn("{} {}", ex.getClass().getName(), ex.getMessage());
+        }
       }
     }
     return dataObject;
   }
+
+  @Override
+  public DataObject updatePartialContent(String path, long position, long count, long size,
+      ReadableByteChannel content) {
+    DataObject dataObject = findByPath(path);
+
+    if (dataObject != null) {
+      Path stagingFile = getStagingFilePath(dataObject);
+      Path rangesFile = getRangesFilePath(dataObject);
+      try {
+        // chunks are written in place, so they can be uploaded in parallel
+        long written;
+        try (FileChannel channel = openStagingFile(stagingFile)) {
+          written = write(content, channel, position, count < 0 ? Long.MAX_VALUE : count);
+        }
+        if (count >= 0 && written < count) {
+          throw new EOFException("content ended after " + written + " of " + count + " bytes");
+        }
+        // the ranges are only recorded once their bytes are durable
+        fileSync.sync(stagingFile);
+        // the record is updated under the object's lock like every other write of it
+        Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+        Object[] pair = getLocks(stagingFile, objectPath);
+        synchronized (pair[0]) {
+          synchronized (pair[1]) {
+            dataObject = findByPath(path);
+            if (dataObject == null) {
+              // deleted while the chunk was written
+              Files.deleteIfExists(stagingFile);
+              Files.deleteIfExists(rangesFile);
+              return null;
+            }
+            PartialUpload upload = PartialUpload.read(rangesFile);
+            if (size >= 0) {
+              upload.setSize(size);
+            }
+            if (written > 0) {
+              upload.add(position, position + written - 1);
+            }
+            if (upload.getSize() >= 0 && upload.getEnd() > upload.getSize()) {
+              throw new IOException("chunk beyond the size " + upload.getSize());
+            }
+            stagingDirectory.replaceFile(rangesFile, upload.encode());
+            fileSync.sync(rangesFile.getParent());
+
+            dataObject.setCompletionStatus("Processing");
+            dataObject.setPercentComplete(upload.getPercentComplete());
+            dataObject = (DataObject) cdmiObjectDao.updateCdmiObject(dataObject, path.trim());
+          }
+        }
+        log.debug("staged {} bytes at {} of data object {}", written, position, path.trim());
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject publishContent(String path, String expectedHash) {
+    DataObject dataObject = findByPath(path);
+
+    if (dataObject != null) {
+      Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      Path stagingFile = getStagingFilePath(dataObject);
+      Path rangesFile = getRangesFilePath(dataObject);
+      try {
+        // the object's lock is taken by the rename as well, both are taken in a fixed order
+        Object[] pair = getLocks(stagingFile, objectPath);
+        synchronized (pair[0]) {
+          synchronized (pair[1]) {
+            boolean published = false;
+            String hash = null;
+            BlockCompression compression = null;
+            if (Files.exists(rangesFile)) {
+              PartialUpload upload = PartialUpload.read(rangesFile);
+              if (upload.getSize() < 0) {
+                // all chunks up to the last one received make up the content
+                upload.setSize(upload.getEnd());
+              }
+              if (!upload.isComplete()) {
+                log.debug("partial upload of data object {} is {}% complete", path.trim(),
+                    upload.getPercentComplete());
+                return dataObject;
+              }
+              try (FileChannel channel = openStagingFile(stagingFile)) {
+                // drops bytes of earlier, abandoned uploads
+                channel.truncate(upload.getSize());
+              }
+              if (valueHash != null) {
+                // chunks arrive in any order, so the content is hashed once it is complete
+                try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.READ)) {
+                  hash = valueHash.hash(channel);
+                }
+              }
+              checkValueHash(expectedHash, hash);
+              String digest = null;
+              compression = getCompression(dataObject);
+              if (isDeduplicating()) {
+                try (FileChannel channel =
+                    FileChannel.open(stagingFile, StandardOpenOption.READ)) {
+                  digest = isDigest(valueHash) ? hash : blobStore.getDigest().hash(channel);
+                }
+              }
+              // the staging file is kept with its ranges until the compressed copy is published
+              Path file = compression != null ? compress(stagingFile, compression) : stagingFile;
+              try {
+                if (digest == null) {
+                  fileSync.sync(file);
+                }
+                // without the ranges, a crash before the rename leaves the old content published
+                Files.delete(rangesFile);
+                storeContent(file, digest != null ? getBlobName(digest, compression) : null,
+                    objectPath);
+              } finally {
+                if (file != stagingFile) {
+                  Files.deleteIfExists(file);
+                  Files.deleteIfExists(stagingFile);
+                }
+              }
+              published = true;
+              log.debug("published {} bytes of data object {}", upload.getSize(), path.trim());
+            } else {
+              checkValueHash(expectedHash, ValueHash.get(dataObject));
+            }
+            if (published || !"Complete".equals(dataObject.getCompletionStatus())) {
+              dataObject = findByPath(path);
+              if (dataObject == null) {
+                // deleted while the content was published
+                return null;
+              }
+              dataObject.setCompletionStatus("Complete");
+              dataObject.setPercentComplete(null);
+              if (published) {
+                ValueHash.set(dataObject, hash);
+                BlockCompression.set(dataObject, compression);
+                ModificationCount.increment(dataObject);
+              }
+              dataObject = (DataObject) cdmiObjectDao.updateCdmiObject(dataObject, path.trim());
+            }
+          }
+        }
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject copyByPath(String path, String sourcePath) {
+    Path urlPath = Paths.get(path.trim());
+    DataObject source = findByPath(sourcePath);
+    if (source == null || urlPath.getParent() == null) {
+      return null;
+    }
+
+    Path sourceFile = Paths.get(baseDirectoryName.trim(), sourcePath.trim());
+    Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+    DataObject dataObject = null;
+    try {
+      // a blob is linked, any other value is copied, and stored as a blob with deduplication
+      if (blobStore != null) {
+        Object[] pair = getLocks(sourceFile, objectPath);
+        synchronized (pair[0]) {
+          synchronized (pair[1]) {
+            // the source's record describes the file it is linked to under the source's lock
+            DataObject linkedSource = findByPath(sourcePath);
+            if (linkedSource != null && blobStore.link(sourceFile, objectPath)) {
+              dataObject = writeCopyRecord(urlPath, linkedSource, ValueHash.get(linkedSource),
+                  BlockCompression.get(linkedSource));
+            }
+          }
+        }
+      }
+      if (dataObject == null) {
+        FileChannel content;
+        synchronized (getLock(sourceFile)) {
+          content = openValue(findByPath(sourcePath), sourceFile);
+        }
+        try {
+          dataObject = replaceContent(objectPath, content, null, getCompression(findByPath(path)),
+              (hash, compression) -> writeCopyRecord(urlPath, source, hash, compression));
+        } finally {
+          content.close();
+        }
+      }
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    }
+    log.debug("copied data object {} to {}", sourcePath.trim(), path.trim());
+    return dataObject;
+  }
+
+  /**
+   * Writes the record of a data object copied from the given source, with the hash of the copied
+   * value and the compression it is stored in.
+   */
+  private DataObject writeCopyRecord(Path urlPath, DataObject source, String hash,
+      BlockCompression compression) {
+    DataObject dataObject = findByPath(urlPath.toString());
+    if (dataObject == null) {
+      DataObject dataObjectRequest = DataObject.fromJson(new JSONObject("{}"));
+      dataObjectRequest.setMimetype(source.getMimetype());
+      dataObjectRequest.setValuetransferencoding(source.getValuetransferencoding());
+      dataObjectRequest.setMetadata(source.getMetadata());
+      return createRecord(urlPath, dataObjectRequest, hash, compression);
+    }
+    long modificationCount = ModificationCount.get(dataObject);
+    dataObject.setMimetype(source.getMimetype());
+    dataObject.setValuetransferencoding(source.getValuetransferencoding());
+    dataObject.setMetadata(source.getMetadata());
+    ValueHash.set(dataObject, hash);
+    BlockCompression.set(dataObject, compression);
+    // the count of the replaced data object goes on, so its version doesn't repeat
+    ModificationCount.set(dataObject, modificationCount + 1);
+    return (DataObject) cdmiObjectDao.updateCdmiObject(dataObject, urlPath.toString());
+  }
+
+  private Path getStagingFilePath(DataObject dataObject) {
+    return stagingDirectory.getPartialDirectoryPath().resolve(dataObject.getObjectId());
+  }
+
+  private Path getRangesFilePath(DataObject dataObject) {
+    return stagingDirectory.getPartialDirectoryPath().resolve(dataObject.getObjectId() + ".ranges");
+  }
+
+  private static FileChannel openStagingFile(Path stagingFile) throws IOException {
+    try {
+      return FileChannel.open(stagingFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    } catch (NoSuchFileException ex) {
+      Files.createDirectories(stagingFile.getParent());
+      return FileChannel.open(stagingFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+  }
+
+  private Object getLock(Path objectPath) {
+    return locks[getLockIndex(objectPath)];
+  }
+
+  /**
+   * Gets the locks of both paths in a fixed order, so threads taking both don't deadlock.
+   */
+  private Object[] getLocks(Path path, Path otherPath) {
+    int index = getLockIndex(path);
+    int otherIndex = getLockIndex(otherPath);
+    return new Object[] {locks[Math.min(index, otherIndex)], locks[Math.max(index, otherIndex)]};
+  }
+
+  private int getLockIndex(Path path) {
+    return (path.hashCode() & Integer.MAX_VALUE) % locks.length;
+  }
+
+  /**
+   * Writes up to the given number of bytes read from the channel at the given position of the file,
+   * which may be beyond its end.
+   * 
+   * @return the number of bytes written, less than the given number if the content ended before
+   */
+  private static long write(ReadableByteChannel content, FileChannel channel, long position,
+      long count) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    long written = 0;
+    while (written < count) {
+      buffer.clear();
+      if (count - written < buffer.capacity()) {
+        buffer.limit((int) (count - written));
+      }
+      if (content.read(buffer) < 0) {
+        break;
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        written += channel.write(buffer, position + written);
+      }
+    }
+    return written;
+  }
 }
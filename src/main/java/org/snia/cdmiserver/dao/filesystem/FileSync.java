@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Makes the writes of the filesystem DAOs durable.
+ */
+public interface FileSync {
+
+  /**
+   * Flushes the given files, or the entries of the given directories, to disk.
+   *
+   * @param paths the files and directories
+   * @throws IOException in case any of them couldn't be flushed
+   */
+  public void sync(Path... paths) throws IOException;
+
+  /**
+   * Stops flushing, releasing any threads.
+   */
+  public default void close() {}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Selects how the writes of the filesystem DAOs are made durable.
+ *
+ * <ul>
+ * <li>{@link #NONE} leaves flushing to the operating system. Writes are fast, but a crash loses the
+ * most recent ones and can leave empty records behind, which the {@link RecordRecovery}
+ * quarantines.</li>
+ * <li>{@link #PER_OP_FSYNC} flushes the files and directories of every write before it returns.</li>
+ * <li>{@link #GROUP_COMMIT} flushes the writes of all concurrent requests together, see
+ * {@link GroupCommitFileSync}.</li>
+ * </ul>
+ */
+public final class FileSyncs {
+
+  public static final String NONE = "none";
+
+  public static final String PER_OP_FSYNC = "per-op-fsync";
+
+  public static final String GROUP_COMMIT = "group-commit";
+
+  private static final FileSync NO_SYNC = paths -> {
+  };
+
+  private static final FileSync PER_OP_SYNC = paths -> {
+    for (Path path : paths) {
+      force(path);
+    }
+  };
+
+  private FileSyncs() {}
+
+  /**
+   * Gets a {@link FileSync} for the given durability mode. Every call in {@link #GROUP_COMMIT} mode
+   * starts a new committer thread, which stops on {@link FileSync#close()}.
+   *
+   * @param mode the durability mode, {@link #NONE}, {@link #PER_OP_FSYNC} or {@link #GROUP_COMMIT}
+   * @return the {@link FileSync}
+   * @throws IllegalArgumentException if the mode is unknown
+   */
+  public static FileSync forMode(String mode) {
+    if (NONE.equalsIgnoreCase(mode)) {
+      return NO_SYNC;
+    }
+    if (PER_OP_FSYNC.equalsIgnoreCase(mode)) {
+      return PER_OP_SYNC;
+    }
+    if (GROUP_COMMIT.equalsIgnoreCase(mode)) {
+      GroupCommitFileSync groupCommitFileSync = new GroupCommitFileSync();
+      groupCommitFileSync.start();
+      return groupCommitFileSync;
+    }
+    throw new IllegalArgumentException("unknown durability mode " + mode);
+  }
+
+  /**
+   * Flushes the given file or directory to disk.
+   *
+   * @param path the file or directory
+   * @throws IOException in case it couldn't be flushed
+   */
+  public static void force(Path path) throws IOException {
+    // Linux allows to fsync read-only descriptors, which is the only way to open directories
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Flushes the files and directories of all concurrent requests together on a committer thread.
+ *
+ * <p>
+ * Requests queue the paths to flush and wait until the batch they were taken with has been flushed.
+ * While a batch is flushed, the next requests queue up, so under load a single flush of every
+ * distinct file and directory serves many requests, e.g. the parent directory shared by the
+ * objects created concurrently.
+ * </p>
+ */
+public class GroupCommitFileSync implements FileSync {
+
+  private static final Logger log = LoggerFactory.getLogger(GroupCommitFileSync.class);
+
+  private int maxBatchSize = 1000;
+
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+  private volatile boolean running;
+
+  private Thread committer;
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Starts flushing queued requests.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    committer = new Thread(this::commit, "group-commit");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  /**
+   * Stops flushing, requests still queued fail. Requests are queued under the same lock, so none
+   * is queued after the queue has been failed here.
+   */
+  public synchronized void stop() {
+    running = false;
+    if (committer != null) {
+      committer.interrupt();
+      committer = null;
+    }
+
+    List<Request> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (Request request : remaining) {
+      request.future.completeExceptionally(new IOException("group commit is stopped"));
+    }
+  }
+
+  @Override
+  public void close() {
+    stop();
+  }
+
+  @Override
+  public void sync(Path... paths) throws IOException {
+    Request request = new Request(paths);
+    synchronized (this) {
+      if (!running) {
+        throw new IllegalStateException("group commit is not started");
+      }
+      queue.add(request);
+    }
+    try {
+      request.future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for the group commit");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException(ex.getCause());
+    }
+  }
+
+  private void commit() {
+    List<Request> batch = new ArrayList<>();
+    while (running) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException ex) {
+        break;
+      }
+      queue.drainTo(batch, maxBatchSize - 1);
+
+      Set<Path> paths = new LinkedHashSet<>();
+      for (Request request : batch) {
+        paths.addAll(request.paths);
+      }
+
+      Map<Path, IOException> failures = new HashMap<>();
+      for (Path path : paths) {
+        try {
+          FileSyncs.force(path);
+        } catch (IOException ex) {
+          log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+          failures.put(path, ex);
+        }
+      }
+      log.trace("flushed {} paths of {} requests", paths.size(), batch.size());
+
+      for (Request request : batch) {
+        request.complete(failures);
+      }
+      batch.clear();
+    }
+  }
+
+  private static class Request {
+
+    private final List<Path> paths;
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    Request(Path... paths) {
+      this.paths = Arrays.asList(paths);
+    }
+
+    void complete(Map<Path, IOException> failures) {
+      for (Path path : paths) {
+        if (failures.containsKey(path)) {
+          future.completeExceptionally(failures.get(path));
+          return;
+        }
+      }
+      future.complete(null);
+    }
+  }
+}
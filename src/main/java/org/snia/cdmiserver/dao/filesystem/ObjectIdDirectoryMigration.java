@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Moves the objectId files stored flat in the objectId directory by older versions into the
+ * fan-out directories of the {@link CdmiObjectDaoImpl}. The migration runs while the server is
+ * serving requests, objects accessed before it reaches them are moved by the DAO itself.
+ */
+public class ObjectIdDirectoryMigration implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(ObjectIdDirectoryMigration.class);
+
+  private CdmiObjectDaoImpl cdmiObjectDao;
+
+  public CdmiObjectDaoImpl getCdmiObjectDao() {
+    return cdmiObjectDao;
+  }
+
+  public void setCdmiObjectDao(CdmiObjectDaoImpl cdmiObjectDao) {
+    this.cdmiObjectDao = cdmiObjectDao;
+  }
+
+  /**
+   * Moves all objectId files of the flat layout.
+   *
+   * @return the number of moved files
+   */
+  public int migrate() {
+    if (cdmiObjectDao.getObjectIdFanOut() == 0) {
+      return 0;
+    }
+
+    int migrated = 0;
+    boolean failed = false;
+    try (DirectoryStream<Path> entries =
+        Files.newDirectoryStream(cdmiObjectDao.getObjectIdDirectoryPath())) {
+      for (Path entry : entries) {
+        // skips the fan-out directories
+        if (!Files.isRegularFile(entry)) {
+          continue;
+        }
+        try {
+          if (cdmiObjectDao.moveFlatObjectIdFile(entry.getFileName().toString())) {
+            migrated++;
+          }
+        } catch (Exception ex) {
+          log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+          failed = true;
+        }
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      failed = true;
+    }
+
+    // files left over are still looked up in the flat layout
+    cdmiObjectDao.setFlatObjectIdsMigrated(!failed);
+
+    if (migrated > 0) {
+      log.info("Moved {} objectId files into fan-out directories", migrated);
+    }
+    return migrated;
+  }
+
+  @Override
+  public void run() {
+    migrate();
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The byte ranges received so far of a data object's content uploaded in chunks, stored next to
+ * its staging file as the size followed by one first-last range per line.
+ */
+class PartialUpload {
+
+  private long size = -1;
+
+  // sorted, disjoint and not adjacent
+  private final List<long[]> ranges = new ArrayList<>();
+
+  /**
+   * Gets the size of the uploaded content.
+   *
+   * @return the size or -1 if it isn't known yet
+   */
+  long getSize() {
+    return size;
+  }
+
+  void setSize(long size) {
+    this.size = size;
+  }
+
+  /**
+   * Adds a received range, merging it with the overlapping or adjacent ones.
+   *
+   * @param first the first byte
+   * @param last the last byte
+   */
+  void add(long first, long last) {
+    int index = 0;
+    while (index < ranges.size() && ranges.get(index)[1] + 1 < first) {
+      index++;
+    }
+    while (index < ranges.size() && ranges.get(index)[0] <= last + 1) {
+      long[] range = ranges.remove(index);
+      first = Math.min(first, range[0]);
+      last = Math.max(last, range[1]);
+    }
+    ranges.add(index, new long[] {first, last});
+  }
+
+  /**
+   * Gets the number of bytes received.
+   */
+  long getReceived() {
+    long received = 0;
+    for (long[] range : ranges) {
+      received += range[1] - range[0] + 1;
+    }
+    return received;
+  }
+
+  /**
+   * Gets the size of the content received so far, up to its last received byte.
+   */
+  long getEnd() {
+    return ranges.isEmpty() ? 0 : ranges.get(ranges.size() - 1)[1] + 1;
+  }
+
+  /**
+   * Checks if all bytes of the content have been received, which is only known if its size is.
+   */
+  boolean isComplete() {
+    return size >= 0 && (size == 0 || ranges.size() == 1 && ranges.get(0)[0] == 0
+        && ranges.get(0)[1] == size - 1);
+  }
+
+  /**
+   * Gets the percentage of the content received.
+   *
+   * @return the percentage or <code>null</code> if the size isn't known yet
+   */
+  String getPercentComplete() {
+    if (size < 0) {
+      return null;
+    }
+    if (size == 0) {
+      return "100";
+    }
+    return String.valueOf(Math.min(100, getReceived() * 100 / size));
+  }
+
+  /**
+   * Reads the ranges from the given file.
+   *
+   * @param file the file
+   * @return the {@link PartialUpload}, empty if the file doesn't exist
+   * @throws IOException in case the file couldn't be read or is malformed
+   */
+  static PartialUpload read(Path file) throws IOException {
+    PartialUpload upload = new PartialUpload();
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+    } catch (NoSuchFileException ex) {
+      return upload;
+    }
+    try {
+      upload.size = Long.parseLong(lines.get(0));
+      for (String line : lines.subList(1, lines.size())) {
+        String[] range = line.split("-");
+        upload.add(Long.parseLong(range[0]), Long.parseLong(range[1]));
+      }
+    } catch (RuntimeException ex) {
+      throw new IOException("malformed partial upload " + file, ex);
+    }
+    return upload;
+  }
+
+  /**
+   * Encodes the ranges for writing them to a file.
+   */
+  byte[] encode() {
+    StringBuilder builder = new StringBuilder().append(size).append('\n');
+    for (long[] range : ranges) {
+      builder.append(range[0]).append('-').append(range[1]).append('\n');
+    }
+    return builder.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.model.CdmiObject;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Repairs the records of the {@link CdmiObjectDaoImpl} after the server stopped without being shut
+ * down.
+ *
+ * <p>
+ * Records are replaced atomically, so a crash can only leave temporary files behind, and the two
+ * hard links of an object, by path and by objectId, pointing to different versions of its record.
+ * Those are linked to the newer record again. Records which can't be decoded at all, e.g. torn
+ * writes of older versions, are moved to the quarantine directory.
+ * </p>
+ */
+public class RecordRecovery {
+
+  private static final Logger log = LoggerFactory.getLogger(RecordRecovery.class);
+
+  private CdmiObjectDaoImpl cdmiObjectDao;
+
+  public CdmiObjectDaoImpl getCdmiObjectDao() {
+    return cdmiObjectDao;
+  }
+
+  public void setCdmiObjectDao(CdmiObjectDaoImpl cdmiObjectDao) {
+    this.cdmiObjectDao = cdmiObjectDao;
+  }
+
+  private Path getRunningMarkerPath() {
+    return cdmiObjectDao.getObjectIdDirectoryPath().resolve(".running");
+  }
+
+  /**
+   * Recovers the records if the server didn't shut down cleanly the last time and marks the server
+   * as running.
+   *
+   * @throws IOException in case the server couldn't be marked as running
+   */
+  public void start() throws IOException {
+    if (Files.exists(getRunningMarkerPath())) {
+      log.warn("Server wasn't shut down cleanly, recovering records...");
+      recover();
+    } else {
+      Files.createFile(getRunningMarkerPath());
+    }
+  }
+
+  /**
+   * Marks the server as shut down cleanly.
+   */
+  public void stop() {
+    try {
+      Files.deleteIfExists(getRunningMarkerPath());
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  /**
+   * Deletes left over temporary files, relinks the records by path and by objectId and quarantines
+   * undecodable records.
+   *
+   * @return the number of repaired or quarantined records
+   */
+  public int recover() {
+    Path baseDirectory = Paths.get(cdmiObjectDao.getBaseDirectory().trim());
+    Path objectIdDirectory = cdmiObjectDao.getObjectIdDirectoryPath();
+    Path temporaryDirectory = cdmiObjectDao.getStagingDirectory().getTemporaryDirectoryPath();
+    Path quarantineDirectory = cdmiObjectDao.getQuarantineDirectoryPath();
+    Path partialDirectory = cdmiObjectDao.getStagingDirectory().getPartialDirectoryPath();
+    Path blobDirectory = cdmiObjectDao.getBlobDirectoryPath();
+
+    int[] recovered = {0};
+    try {
+      if (Files.isDirectory(temporaryDirectory)) {
+        // temporary files are only renamed when complete, so the originals are still intact
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(temporaryDirectory)) {
+          for (Path file : files) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+
+      Files.walkFileTree(objectIdDirectory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          // partial uploads are kept to be resumed, blobs are values, not records
+          return dir.equals(temporaryDirectory) || dir.equals(quarantineDirectory)
+              || dir.equals(partialDirectory) || dir.equals(blobDirectory)
+                  ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isRegularFile() && !file.equals(getRunningMarkerPath())
+              && decode(file) == null) {
+            recovered[0]++;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+      Files.walkFileTree(baseDirectory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          return dir.equals(objectIdDirectory) ? FileVisitResult.SKIP_SUBTREE
+              : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isRegularFile()
+              && file.getFileName().toString().startsWith(cdmiObjectDao.getObjectIdPrefix())
+              && recoverPathFile(file)) {
+            recovered[0]++;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+      if (!Files.exists(getRunningMarkerPath())) {
+        Files.createFile(getRunningMarkerPath());
+      }
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+
+    log.info("Recovered {} records", recovered[0]);
+    return recovered[0];
+  }
+
+  /**
+   * Relinks the objectId file of the record at the given path file, or quarantines the record.
+   *
+   * @return <code>true</code> if the record has been repaired or quarantined
+   */
+  private boolean recoverPathFile(Path file) {
+    CdmiObject object = decode(file);
+    if (object == null) {
+      return true;
+    }
+    try {
+      Path objectIdFile = cdmiObjectDao.findObjectIdFilePath(object.getObjectId());
+      if (!Files.exists(objectIdFile)) {
+        cdmiObjectDao.replaceLink(file, objectIdFile);
+      } else if (!Files.isSameFile(file, objectIdFile)) {
+        // the last write to either of the links is the most recent version
+        if (Files.getLastModifiedTime(file)
+            .compareTo(Files.getLastModifiedTime(objectIdFile)) >= 0) {
+          cdmiObjectDao.replaceLink(file, objectIdFile);
+        } else {
+          cdmiObjectDao.replaceLink(objectIdFile, file);
+        }
+      } else {
+        return false;
+      }
+      log.warn("relinked record {} and objectId file {}", file, objectIdFile);
+      return true;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Decodes the record in the given file, moving it to the quarantine directory if it can't be
+   * decoded.
+   *
+   * @return the decoded {@link CdmiObject} or <code>null</code> if it has been quarantined
+   */
+  private CdmiObject decode(Path file) {
+    try {
+      CdmiObject object = cdmiObjectDao.getRecordCodec().decode(Files.readAllBytes(file));
+      if (object != null && object.getObjectId() != null) {
+        return object;
+      }
+    } catch (Exception ex) {
+      log.debug("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+
+    Path quarantineDirectory = cdmiObjectDao.getQuarantineDirectoryPath();
+    Path quarantineFile =
+        quarantineDirectory.resolve(System.currentTimeMillis() + "_" + file.getFileName());
+    try {
+      Files.createDirectories(quarantineDirectory);
+      Files.move(file, quarantineFile, StandardCopyOption.ATOMIC_MOVE);
+      log.warn("quarantined undecodable record {} as {}", file, quarantineFile);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+}
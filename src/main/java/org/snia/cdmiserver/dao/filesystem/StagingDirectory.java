@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * The directories files are written in before they are renamed to their final name: temporary
+ * files of records and values, and the chunks of partial uploads. They are on the same file system
+ * as the objects, so the rename is atomic, and are cleaned up by the {@link RecordRecovery}.
+ */
+public class StagingDirectory {
+
+  private String directory;
+  private FileSync fileSync = FileSyncs.forMode(FileSyncs.PER_OP_FSYNC);
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Sets the directory the staging directories are kept in, the objectId directory.
+   *
+   * @param directory the directory
+   */
+  public void setDirectory(String directory) {
+    this.directory = directory;
+  }
+
+  public FileSync getFileSync() {
+    return fileSync;
+  }
+
+  public void setFileSync(FileSync fileSync) {
+    this.fileSync = fileSync;
+  }
+
+  Path getTemporaryDirectoryPath() {
+    return Paths.get(directory.trim()).resolve(".tmp");
+  }
+
+  Path getPartialDirectoryPath() {
+    return Paths.get(directory.trim()).resolve(".partial");
+  }
+
+  Path getTemporaryFilePath() {
+    return getTemporaryDirectoryPath().resolve(UUID.randomUUID().toString());
+  }
+
+  /**
+   * Creates the given temporary file, which is on the same file system as the objects, so it can be
+   * renamed to its final name once written. It is opened for reading as well, to check what was
+   * written.
+   */
+  FileChannel openTemporaryFile(Path temporaryFile) throws IOException {
+    try {
+      return FileChannel.open(temporaryFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.CREATE_NEW);
+    } catch (NoSuchFileException ex) {
+      Files.createDirectories(temporaryFile.getParent());
+      return FileChannel.open(temporaryFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.CREATE_NEW);
+    }
+  }
+
+  /**
+   * Writes the given content to a new temporary file on the same file system as the objects and
+   * syncs it, so it can be renamed to its final name.
+   */
+  Path writeTemporaryFile(byte[] content) throws IOException {
+    Path temporaryFile = getTemporaryFilePath();
+    FileChannel channel = openTemporaryFile(temporaryFile);
+    try {
+      try (FileChannel fileChannel = channel) {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        while (buffer.hasRemaining()) {
+          fileChannel.write(buffer);
+        }
+      }
+      // the content has to be durable before the name is
+      fileSync.sync(temporaryFile);
+    } catch (IOException ex) {
+      Files.deleteIfExists(temporaryFile);
+      throw ex;
+    }
+    return temporaryFile;
+  }
+
+  /**
+   * Replaces the given file with a new one with the given content, so readers and a crash see
+   * either the old or the new content. Other hard links keep pointing to the old file. The
+   * directory isn't synced.
+   */
+  void replaceFile(Path path, byte[] content) throws IOException {
+    Path temporaryFile = writeTemporaryFile(content);
+    try {
+      Files.move(temporaryFile, path, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      Files.deleteIfExists(temporaryFile);
+      throw ex;
+    }
+  }
+}
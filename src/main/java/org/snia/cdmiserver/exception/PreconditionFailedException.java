@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * <p>
+ * Exception that should be mapped to an HTTP Status 412 Response, thrown when a conditional write
+ * finds the object at another version than expected.
+ * </p>
+ */
+@ResponseStatus(value = HttpStatus.PRECONDITION_FAILED)
+public class PreconditionFailedException extends RuntimeException {
+
+  /**
+   * Generated serial version UID.
+   */
+  private static final long serialVersionUID = -3306208395151237412L;
+
+  public PreconditionFailedException(String message) {
+    super(message);
+  }
+
+  public PreconditionFailedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public PreconditionFailedException(Throwable cause) {
+    super(cause);
+  }
+
+}
@@ -24,6 +24,8 @@ public class CdmiObject {
 
   private String objectId;
 
+  private String version;
+
   /**
    * Creates a new CDMI object.
    */
@@ -52,6 +54,48 @@ public class CdmiObject {
     this.objectId = objectId;
   }
 
+  /**
+   * Gets the version of the stored object, set by the DAOs when the object is read or written. The
+   * version changes whenever another record is written, it isn't part of the object's JSON.
+   *
+   * @return the version or <code>null</code> if the object wasn't read from a DAO
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  public void setVersion(String version) {
+    this.version = version;
+  }
+
+  /**
+   * Gets the object id of the parent, without serializing the object. Plain CDMI objects have no
+   * parent.
+   * 
+   * @return the parent's object id or <code>null</code>
+   */
+  public String getParentId() {
+    return null;
+  }
+
+  /**
+   * Gets the URI of the parent, without serializing the object. Plain CDMI objects have no parent.
+   *
+   * @return the parent's URI or <code>null</code>
+   */
+  public String getParentUri() {
+    return null;
+  }
+
+  /**
+   * Gets the name of the object, without serializing the object. Plain CDMI objects have no name.
+   *
+   * @return the object's name or <code>null</code>
+   */
+  public String getObjectName() {
+    return null;
+  }
+
   /**
    * Calculates the childrenrange parameter.
    * 
@@ -59,12 +103,22 @@ public class CdmiObject {
    * @return the children range as {@link String}
    */
   public static String getChildrenRange(JSONArray children) {
+    return getChildrenRange(children != null ? children.length() : 0);
+  }
+
+  /**
+   * Calculates the childrenrange parameter.
+   * 
+   * @param childrenCount the number of the object's children
+   * @return the children range as {@link String}
+   */
+  public static String getChildrenRange(long childrenCount) {
     String childrenRange = "";
-    if (children != null && children.length() == 1) {
+    if (childrenCount == 1) {
       childrenRange = "0";
     }
-    if (children != null && children.length() > 1) {
-      childrenRange = "0-" + String.valueOf(children.length() - 1);
+    if (childrenCount > 1) {
+      childrenRange = "0-" + String.valueOf(childrenCount - 1);
     }
     return childrenRange;
   }
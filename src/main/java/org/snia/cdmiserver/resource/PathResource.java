@@ -39,7 +39,9 @@ import org.snia.cdmiserver.util.MediaTypes;
 import org.snia.cdmiserver.util.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -416,16 +418,9 @@ public class PathResource {
     try {
       DataObject dataObj = dataObjectDao.findByPath(path);
       if (dataObj == null) {
-        dataObj = DataObject.fromJson(new JSONObject("{}"));
-
-        dataObj.setObjectType("application/cdmi-object");
-        // parse json
-        // dObj.fromJson(bytes, false);
-        if (dataObj.getValue() == null) {
-          dataObj.setValue(new String(bytes));
-        }
         LOG.trace("Calling createNonCDMIByPath");
-        dataObj = dataObjectDao.createNonCdmiByPath(path, contentType, dataObj);
+        dataObj = dataObjectDao.createNonCdmiByPath(path, contentType,
+            Channels.newChannel(new ByteArrayInputStream(bytes)));
         // return representation
         // String respStr = dObj.toJson();
         // return Response.ok(respStr).header(
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes the entity tags of the CDMI representations of objects, for conditional requests.
+ *
+ * <p>
+ * The tag is the object's version, which the DAOs set from its stored record, followed by a hash
+ * of the query selecting the fields and the fields the record doesn't cover: the children, which
+ * the Redis DAOs keep in a set of their own, and the metadata, exports and capabilitiesURI, which
+ * are merged from the storage back-end's status. The value of a data object isn't part of its
+ * record either, every change of it increments the record's {@link ModificationCount}, which
+ * changes the version. The representation itself isn't serialized for it. An If-Match header is
+ * matched against the version alone, which is what a conditional write compares with the stored
+ * record.
+ * </p>
+ */
+public final class EntityTags {
+
+  private static final byte NULL = 0;
+
+  private static final byte STRING = 1;
+
+  private static final byte OBJECT = 2;
+
+  private static final byte ARRAY = 3;
+
+  private static final byte END = 4;
+
+  private static final byte OTHER = 5;
+
+  private static final int HASH_LENGTH = 8;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private EntityTags() {}
+
+  /**
+   * Gets the entity tag of the object's representation.
+   *
+   * @param cdmiObject the {@link CdmiObject} as it will be written
+   * @param projection the {@link Projection} of the request
+   * @return the quoted entity tag or <code>null</code> if the object has no version
+   */
+  public static String getEntityTag(CdmiObject cdmiObject, Projection projection) {
+    if (cdmiObject.getVersion() == null) {
+      return null;
+    }
+    MessageDigest digest = newDigest();
+    update(digest, cdmiObject.getVersion());
+    update(digest, projection.getQuery());
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      update(digest, container.getChildrenrange());
+      update(digest, container.getChildren());
+      update(digest, container.getExports());
+      update(digest, container.getMetadata());
+      update(digest, container.getCapabilitiesUri());
+    } else if (cdmiObject instanceof DataObject) {
+      DataObject dataObject = (DataObject) cdmiObject;
+      update(digest, dataObject.getMetadata());
+      update(digest, dataObject.getCapabilitiesUri());
+    }
+    return "\"" + cdmiObject.getVersion() + "-" + toHex(digest.digest(), HASH_LENGTH) + "\"";
+  }
+
+  /**
+   * Checks whether an If-Match header matches the object at the given version. Weak tags never
+   * match, <code>*</code> matches any version.
+   *
+   * @param ifMatch the value of the If-Match header
+   * @param version the version of the stored object or <code>null</code> if there is none
+   * @return <code>true</code> if one of the tags matches
+   */
+  public static boolean matches(String ifMatch, String version) {
+    if (version == null) {
+      return false;
+    }
+    for (String entityTag : ifMatch.split(",")) {
+      entityTag = entityTag.trim();
+      if ("*".equals(entityTag) || version.equals(getVersion(entityTag))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the version from a strong entity tag.
+   *
+   * @param entityTag the quoted entity tag
+   * @return the version or <code>null</code> if it isn't a strong tag of this class
+   */
+  public static String getVersion(String entityTag) {
+    if (entityTag.length() < 2 || !entityTag.startsWith("\"") || !entityTag.endsWith("\"")) {
+      return null;
+    }
+    int end = entityTag.lastIndexOf('-');
+    return end > 0 ? entityTag.substring(1, end) : null;
+  }
+
+  /**
+   * Hashes the value in a canonical form, the keys of objects sorted, so equal values always give
+   * the same hash.
+   */
+  private static void update(MessageDigest digest, Object value) {
+    if (value == null || JSONObject.NULL.equals(value)) {
+      digest.update(NULL);
+    } else if (value instanceof String) {
+      digest.update(STRING);
+      updateString(digest, (String) value);
+    } else if (value instanceof JSONObject) {
+      JSONObject json = (JSONObject) value;
+      List<String> keys = new ArrayList<>(json.keySet());
+      Collections.sort(keys);
+      digest.update(OBJECT);
+      for (String key : keys) {
+        updateString(digest, key);
+        update(digest, json.get(key));
+      }
+      digest.update(END);
+    } else if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      digest.update(ARRAY);
+      for (int i = 0; i < array.length(); i++) {
+        update(digest, array.get(i));
+      }
+      digest.update(END);
+    } else {
+      digest.update(OTHER);
+      updateString(digest, value.toString());
+    }
+  }
+
+  private static void updateString(MessageDigest digest, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException ex) {
+      // every JDK supports MD5
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String toHex(byte[] bytes, int length) {
+    char[] hex = new char[length * 2];
+    for (int i = 0; i < length; i++) {
+      hex[2 * i] = HEX[bytes[i] >>> 4 & 0xf];
+      hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.util;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+
+/**
+ * Maintains the cdmi_mcount metadata of an object, the number of times it was modified.
+ *
+ * <p>
+ * The version of an object is the hash of its record, so writing the same record again keeps the
+ * version. Writes which must change the version, like the claim of a conditional write or a change
+ * of a data object's value, which isn't part of the record, increment the count. The count is
+ * maintained by the server, it is kept when a client replaces the metadata.
+ * </p>
+ */
+public final class ModificationCount {
+
+  public static final String METADATA_NAME = "cdmi_mcount";
+
+  private ModificationCount() {}
+
+  /**
+   * Gets the cdmi_mcount of a container.
+   *
+   * @return the count or 0 if the container wasn't counted yet
+   */
+  public static long get(Container container) {
+    return get(container.getMetadata());
+  }
+
+  /**
+   * Gets the cdmi_mcount of a data object.
+   *
+   * @return the count or 0 if the data object wasn't counted yet
+   */
+  public static long get(DataObject dataObject) {
+    return get(dataObject.getMetadata());
+  }
+
+  /**
+   * Sets the cdmi_mcount of a container. The metadata is copied, as it may be shared with the
+   * request it was read from.
+   *
+   * @param container the {@link Container}
+   * @param count the count, 0 removes it
+   */
+  public static void set(Container container, long count) {
+    container.setMetadata(withCount(container.getMetadata(), count));
+  }
+
+  /**
+   * Sets the cdmi_mcount of a data object. The metadata is copied, as it may be shared with the
+   * request it was read from.
+   *
+   * @param dataObject the {@link DataObject}
+   * @param count the count, 0 removes it
+   */
+  public static void set(DataObject dataObject, long count) {
+    dataObject.setMetadata(withCount(dataObject.getMetadata(), count));
+  }
+
+  /**
+   * Increments the cdmi_mcount of a container, so its next record differs from the stored one.
+   */
+  public static void increment(Container container) {
+    set(container, get(container) + 1);
+  }
+
+  /**
+   * Increments the cdmi_mcount of a data object, so its next record differs from the stored one.
+   */
+  public static void increment(DataObject dataObject) {
+    set(dataObject, get(dataObject) + 1);
+  }
+
+  private static long get(JSONObject metadata) {
+    if (metadata == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(metadata.optString(METADATA_NAME, "0"));
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private static JSONObject withCount(JSONObject metadata, long count) {
+    JSONObject copy = new JSONObject();
+    if (metadata != null) {
+      for (String name : metadata.keySet()) {
+        copy.put(name, metadata.get(name));
+      }
+    }
+    copy.remove(METADATA_NAME);
+    if (count > 0) {
+      copy.put(METADATA_NAME, String.valueOf(count));
+    }
+    return copy;
+  }
+}
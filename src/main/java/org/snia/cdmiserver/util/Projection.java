@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.util;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fields of a CDMI object selected by the query of a request, e.g.
+ * <code>objectID;metadata:cdmi_;children:0-99</code>. The query is parsed once, and the projection
+ * is passed to the DAOs, which leave out what isn't selected where their store allows it, and used
+ * to select the fields while the response is written.
+ *
+ * <p>
+ * A field name selects the field, children:a-b selects a range of the children and value:a-b a
+ * range of the value. metadata:prefix selects the metadata items whose names begin with the prefix.
+ * </p>
+ */
+public final class Projection {
+
+  /**
+   * The projection of requests without a query, which selects all fields.
+   */
+  public static final Projection ALL =
+      new Projection(null, null, Collections.emptyList(), null, null);
+
+  private static final Logger log = LoggerFactory.getLogger(Projection.class);
+
+  private static final String METADATA_PREFIX = "metadata:";
+
+  private final String query;
+
+  private final List<String> fields;
+
+  private final List<String> metadataPrefixes;
+
+  private final int[] childrenRange;
+
+  private final long[] valueRange;
+
+  private Projection(String query, List<String> fields, List<String> metadataPrefixes,
+      int[] childrenRange, long[] valueRange) {
+    this.query = query;
+    this.fields = fields;
+    this.metadataPrefixes = metadataPrefixes;
+    this.childrenRange = childrenRange;
+    this.valueRange = valueRange;
+  }
+
+  /**
+   * Parses the query of a request.
+   *
+   * @param query the query or <code>null</code>
+   * @return the projection, {@link #ALL} if there is no query
+   */
+  public static Projection parse(String query) {
+    if (query == null) {
+      return ALL;
+    }
+    List<String> fields = Arrays.asList(query.split(";"));
+    List<String> metadataPrefixes = new ArrayList<>();
+    for (String field : fields) {
+      if (field.startsWith(METADATA_PREFIX)) {
+        metadataPrefixes.add(field.substring(METADATA_PREFIX.length()));
+      }
+    }
+    return new Projection(query, fields, metadataPrefixes, parseChildrenRange(fields),
+        parseValueRange(fields));
+  }
+
+  private static int[] parseChildrenRange(List<String> fields) {
+    for (String queryField : fields) {
+      if (queryField.contains("children:")) {
+        String[] rangeValues = queryField.split(":")[1].split("-");
+        try {
+          int rangeStart = Integer.valueOf(rangeValues[0]);
+          int rangeStop = rangeValues.length > 1 ? Integer.valueOf(rangeValues[1]) : rangeStart;
+          return new int[] {rangeStart, rangeStop};
+        } catch (NumberFormatException ex) {
+          log.warn("Invalid children range {}", queryField);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static long[] parseValueRange(List<String> fields) {
+    for (String queryField : fields) {
+      if (queryField.startsWith("value:")) {
+        String[] rangeValues = queryField.split(":")[1].split("-");
+        try {
+          long rangeStart = Long.valueOf(rangeValues[0]);
+          long rangeStop = rangeValues.length > 1 ? Long.valueOf(rangeValues[1]) : rangeStart;
+          if (rangeStart <= rangeStop) {
+            return new long[] {rangeStart, rangeStop};
+          }
+        } catch (NumberFormatException ex) {
+          // fall through
+        }
+        log.warn("Invalid value range {}", queryField);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the query the projection was parsed from.
+   *
+   * @return the query or <code>null</code> for {@link #ALL}
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Checks if the field is selected by its name.
+   *
+   * @param field the field's name
+   * @return <code>true</code> if the field is selected, or all fields are
+   */
+  public boolean includes(String field) {
+    return fields == null || fields.contains(field);
+  }
+
+  /**
+   * Checks if any of the children is selected, by name or by range.
+   */
+  public boolean includesChildren() {
+    return childrenRange != null || includes("children");
+  }
+
+  /**
+   * Checks if the metadata is selected, as a whole or by prefixes.
+   */
+  public boolean includesMetadata() {
+    return !metadataPrefixes.isEmpty() || includes("metadata");
+  }
+
+  /**
+   * Checks if a field the storage back-end reports on is selected, otherwise the object's status
+   * doesn't need to be read from the back-end.
+   */
+  public boolean includesStorageBackendStatus() {
+    return includesMetadata() || includesChildren() || includes("childrenrange")
+        || includes("exports") || includes("capabilitiesURI");
+  }
+
+  /**
+   * Gets the selected items of the metadata.
+   *
+   * @param metadata the object's metadata or <code>null</code>
+   * @return the metadata itself if it is selected as a whole, a new object with the items of the
+   *         selected prefixes or <code>null</code> if no metadata is selected
+   */
+  public JSONObject filterMetadata(JSONObject metadata) {
+    if (metadata == null || includes("metadata")) {
+      return metadata;
+    }
+    if (metadataPrefixes.isEmpty()) {
+      return null;
+    }
+    JSONObject filtered = new JSONObject();
+    for (String name : metadata.keySet()) {
+      if (includesMetadata(name)) {
+        filtered.put(name, metadata.get(name));
+      }
+    }
+    return filtered;
+  }
+
+  /**
+   * Checks if the metadata item is selected, as part of the whole metadata or by a prefix.
+   */
+  public boolean includesMetadata(String name) {
+    if (includes("metadata")) {
+      return true;
+    }
+    for (String prefix : metadataPrefixes) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the requested range of the children.
+   *
+   * @return the first and last requested child or <code>null</code> if no range was requested
+   */
+  public int[] getChildrenRange() {
+    return childrenRange != null ? childrenRange.clone() : null;
+  }
+
+  /**
+   * Gets the requested range of the value.
+   *
+   * @return the first and last requested byte or <code>null</code> if no range was requested
+   */
+  public long[] getValueRange() {
+    return valueRange != null ? valueRange.clone() : null;
+  }
+}
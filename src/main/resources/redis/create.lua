@@ -0,0 +1,35 @@
+-- Atomically creates a CDMI object and links it into its parent container.
+--
+-- KEYS[1] path of the new object
+-- KEYS[2] objectid key of the new object
+-- KEYS[3] (optional) path of the parent object
+-- KEYS[4] (optional) children key of the parent object
+--
+-- ARGV[1] serialized object
+-- ARGV[2] object name
+-- ARGV[3] object id
+-- ARGV[4] (optional) object id the path still refers to although its object is gone, so the path
+--         is taken over
+--
+-- Returns nil if the object was created, otherwise the id of the object already at the path
+-- KEYS[1]. Its objectid key isn't known before, so the caller reads it.
+
+local existingId = redis.call('GET', KEYS[1])
+if existingId and existingId ~= ARGV[4] then
+  return existingId
+end
+
+if KEYS[3] and redis.call('EXISTS', KEYS[3]) == 0 then
+  return redis.error_reply('parent ' .. KEYS[3] .. ' does not exist')
+end
+
+-- the path only refers to the object, which is stored once under its object id
+redis.call('SET', KEYS[1], ARGV[3])
+redis.call('SET', KEYS[2], ARGV[1])
+
+-- all children share the same score, so the set is ordered by name
+if KEYS[4] then
+  redis.call('ZADD', KEYS[4], 0, ARGV[2])
+end
+
+return false
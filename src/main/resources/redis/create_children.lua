@@ -0,0 +1,39 @@
+-- Atomically creates CDMI objects and links all of them into their common parent container.
+--
+-- KEYS[1] path of the parent object
+-- KEYS[2] children key of the parent object
+-- KEYS[2 * i + 1] path of the i-th new object
+-- KEYS[2 * i + 2] objectid key of the i-th new object
+--
+-- ARGV[3 * i - 2] serialized i-th object
+-- ARGV[3 * i - 1] name of the i-th object
+-- ARGV[3 * i] object id of the i-th object
+--
+-- Returns for every object false if it was created, otherwise the id of the object already at its
+-- path.
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+  return redis.error_reply('parent ' .. KEYS[1] .. ' does not exist')
+end
+
+local results = {}
+local members = {}
+for i = 1, (#KEYS - 2) / 2 do
+  local path = KEYS[2 * i + 1]
+  local existing = redis.call('GET', path)
+  if not existing then
+    redis.call('SET', path, ARGV[3 * i])
+    redis.call('SET', KEYS[2 * i + 2], ARGV[3 * i - 2])
+    -- all children share the same score, so the set is ordered by name
+    members[#members + 1] = 0
+    members[#members + 1] = ARGV[3 * i - 1]
+  end
+  results[i] = existing
+end
+
+-- one ZADD for the group, in slices that stay below the limit of unpacked arguments
+for first = 1, #members, 1000 do
+  redis.call('ZADD', KEYS[2], unpack(members, first, math.min(first + 999, #members)))
+end
+
+return results
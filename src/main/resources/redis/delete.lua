@@ -0,0 +1,26 @@
+-- Atomically deletes a CDMI object and unlinks it from its parent container.
+--
+-- KEYS[1] path of the object
+-- KEYS[2] objectid key of the object
+-- KEYS[3] children key of the object
+-- KEYS[4] (optional) children key of the parent object
+--
+-- ARGV[1] object name
+-- ARGV[2] (optional) expected version, the SHA-1 hash of the stored object
+--
+-- Returns the number of deleted keys or -1 if the object is at another version than expected.
+
+if ARGV[2] then
+  local current = redis.call('GET', KEYS[2])
+  if current and redis.sha1hex(current) ~= ARGV[2] then
+    return -1
+  end
+end
+
+local deleted = redis.call('DEL', KEYS[1], KEYS[2], KEYS[3])
+
+if KEYS[4] then
+  redis.call('ZREM', KEYS[4], ARGV[1])
+end
+
+return deleted
@@ -0,0 +1,30 @@
+-- Atomically creates a CDMI object and links it into its parent container, on a shard holding
+-- all of the given keys. Unlike redis/create.lua, the parent's path is on another shard, so its
+-- existence has to be checked before.
+--
+-- KEYS[1] path of the new object
+-- KEYS[2] objectid key of the new object
+-- KEYS[3] (optional) children key of the parent object
+--
+-- ARGV[1] serialized object
+-- ARGV[2] object name
+-- ARGV[3] object id
+-- ARGV[4] (optional) object id the path still refers to although its object is gone, so the path
+--         is taken over
+--
+-- Returns nil if the object was created, otherwise the id of the object already at the path
+-- KEYS[1]. Its objectid key isn't known before, so the caller reads it.
+
+local existingId = redis.call('GET', KEYS[1])
+if existingId and existingId ~= ARGV[4] then
+  return existingId
+end
+
+redis.call('SET', KEYS[1], ARGV[3])
+redis.call('SET', KEYS[2], ARGV[1])
+
+if KEYS[3] then
+  redis.call('ZADD', KEYS[3], 0, ARGV[2])
+end
+
+return false
@@ -0,0 +1,27 @@
+-- Atomically deletes a CDMI object and unlinks it from its parent container, on a shard holding
+-- all of the given keys. Unlike redis/delete.lua, the children set of the object itself is on
+-- another shard, so it has to be deleted separately.
+--
+-- KEYS[1] path of the object
+-- KEYS[2] objectid key of the object
+-- KEYS[3] (optional) children key of the parent object
+--
+-- ARGV[1] object name
+-- ARGV[2] (optional) expected version, the SHA-1 hash of the stored object
+--
+-- Returns the number of deleted keys or -1 if the object is at another version than expected.
+
+if ARGV[2] then
+  local current = redis.call('GET', KEYS[2])
+  if current and redis.sha1hex(current) ~= ARGV[2] then
+    return -1
+  end
+end
+
+local deleted = redis.call('DEL', KEYS[1], KEYS[2])
+
+if KEYS[3] then
+  redis.call('ZREM', KEYS[3], ARGV[1])
+end
+
+return deleted
@@ -0,0 +1,22 @@
+-- Atomically updates a CDMI object and the reference to it from its path, if the stored object is
+-- still at the expected version.
+--
+-- KEYS[1] path of the object
+-- KEYS[2] objectid key of the object
+--
+-- ARGV[1] serialized object
+-- ARGV[2] object id
+-- ARGV[3] expected version, the SHA-1 hash of the stored object
+--
+-- Returns 1 if the object was updated, 0 if it is missing or at another version.
+
+local current = redis.call('GET', KEYS[2])
+
+if not current or redis.sha1hex(current) ~= ARGV[3] then
+  return 0
+end
+
+redis.call('SET', KEYS[1], ARGV[2])
+redis.call('SET', KEYS[2], ARGV[1])
+
+return 1
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.snia.cdmiserver.codec.Base64Codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of {@link Base64Codec} against the codec it replaced, {@link LegacyBase64}, and the
+ * JDK's {@link Base64}.
+ *
+ * <p>
+ * The legacy encoder fails on bytes above 0x7f, so encoding is only compared with the JDK. Run
+ * with <code>mvn test-compile</code> and the main method on the test classpath, e.g.
+ * <code>java -cp target/test-classes:target/classes:$(cat cp.txt)
+ * edu.kit.scc.benchmark.Base64Benchmark</code> after
+ * <code>mvn dependency:build-classpath -Dmdep.outputFile=cp.txt</code>.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64Benchmark {
+
+  @Param({"1024", "1048576"})
+  public int length;
+
+  private byte[] value;
+
+  private byte[] encoded;
+
+  private String encodedString;
+
+  private final byte[] buffer = new byte[8192];
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int octet) {}
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) {}
+  };
+
+  @Setup
+  public void setup() {
+    value = new byte[length];
+    new Random(1).nextBytes(value);
+    encodedString = Base64.getEncoder().encodeToString(value);
+    encoded = encodedString.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private int drain(InputStream in, Blackhole blackhole) throws IOException {
+    int total = 0;
+    int count;
+    while ((count = in.read(buffer)) >= 0) {
+      total += count;
+    }
+    blackhole.consume(buffer);
+    return total;
+  }
+
+  @Benchmark
+  public byte[] decodeLegacy() {
+    return new LegacyBase64().decode(encoded);
+  }
+
+  @Benchmark
+  public String decodeLegacyString() {
+    return LegacyBase64.base64Decode(encodedString);
+  }
+
+  @Benchmark
+  public int decodeJdkStream(Blackhole blackhole) throws IOException {
+    return drain(Base64.getDecoder().wrap(new ByteArrayInputStream(encoded)), blackhole);
+  }
+
+  @Benchmark
+  public int decodeCodecStream(Blackhole blackhole) throws IOException {
+    return drain(Base64Codec.decode(new ByteArrayInputStream(encoded)), blackhole);
+  }
+
+  @Benchmark
+  public String encodeJdkString() {
+    return Base64.getEncoder().encodeToString(value);
+  }
+
+  @Benchmark
+  public String encodeCodecString() {
+    return Base64Codec.encodeToString(value, 0, value.length);
+  }
+
+  @Benchmark
+  public void encodeCodecStream() throws IOException {
+    try (OutputStream out = Base64Codec.encode(DISCARD)) {
+      for (int offset = 0; offset < length; offset += buffer.length) {
+        out.write(value, offset, Math.min(buffer.length, length - offset));
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(Base64Benchmark.class.getSimpleName())
+        .addProfiler("gc").build()).run();
+  }
+}
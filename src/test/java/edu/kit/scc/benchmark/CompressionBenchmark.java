@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.snia.cdmiserver.codec.BlockCompression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of {@link BlockCompression} on values like those of scientific data sets: a
+ * float64 time series of a noisy signal, CSV measurements, and random bytes that don't compress.
+ *
+ * <p>
+ * Whole reads and 4 KiB range reads, which open the value like a GET does, are compared with the
+ * uncompressed file. The main method prints the compression ratios first. Run it like
+ * {@link Base64Benchmark}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+  private static final int LENGTH = 16 * 1024 * 1024;
+
+  private static final int RANGE = 4096;
+
+  @Param({"float64", "csv", "random"})
+  public String data;
+
+  private byte[] value;
+
+  private Path plainFile;
+
+  private Path compressedFile;
+
+  private final BlockCompression compression = BlockCompression.forName(BlockCompression.DEFLATE);
+
+  private final ByteBuffer range = ByteBuffer.allocate(RANGE);
+
+  private final Random random = new Random(2);
+
+  private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+    @Override
+    public int write(ByteBuffer src) {
+      int count = src.remaining();
+      src.position(src.limit());
+      return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+  };
+
+  @Setup
+  public void setup() throws IOException {
+    value = generate(data);
+    plainFile = Files.createTempFile("plain", null);
+    Files.write(plainFile, value);
+    compressedFile = Files.createTempFile("compressed", null);
+    try (FileChannel channel = FileChannel.open(compressedFile, StandardOpenOption.WRITE)) {
+      compression.compress(Channels.newChannel(new ByteArrayInputStream(value)), channel);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(plainFile);
+    Files.delete(compressedFile);
+  }
+
+  static byte[] generate(String data) {
+    Random random = new Random(1);
+    switch (data) {
+      case "float64":
+        ByteBuffer series = ByteBuffer.allocate(LENGTH);
+        for (int i = 0; series.hasRemaining(); i++) {
+          series.putDouble(Math.sin(i / 1000.0) + random.nextGaussian() * 0.01);
+        }
+        return series.array();
+      case "csv":
+        StringBuilder csv = new StringBuilder(LENGTH + 64);
+        for (int i = 0; csv.length() < LENGTH; i++) {
+          csv.append(1475000000 + i).append(",sensor-").append(i % 16).append(',')
+              .append(String.format(Locale.ROOT, "%.2f", 20 + 5 * Math.sin(i / 500.0)
+                  + random.nextGaussian() * 0.1))
+              .append('\n');
+        }
+        return csv.substring(0, LENGTH).getBytes();
+      default:
+        byte[] bytes = new byte[LENGTH];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+  }
+
+  @Benchmark
+  public long compress() throws IOException {
+    return compression.compress(Channels.newChannel(new ByteArrayInputStream(value)), DISCARD);
+  }
+
+  @Benchmark
+  public long readPlain() throws IOException {
+    try (FileChannel channel = FileChannel.open(plainFile, StandardOpenOption.READ)) {
+      return channel.transferTo(0, channel.size(), DISCARD);
+    }
+  }
+
+  @Benchmark
+  public long readCompressed() throws IOException {
+    try (FileChannel channel =
+        BlockCompression.open(FileChannel.open(compressedFile, StandardOpenOption.READ))) {
+      return channel.transferTo(0, channel.size(), DISCARD);
+    }
+  }
+
+  @Benchmark
+  public int rangePlain() throws IOException {
+    try (FileChannel channel = FileChannel.open(plainFile, StandardOpenOption.READ)) {
+      range.clear();
+      return channel.read(range, random.nextInt(LENGTH - RANGE));
+    }
+  }
+
+  @Benchmark
+  public int rangeCompressed() throws IOException {
+    try (FileChannel channel =
+        BlockCompression.open(FileChannel.open(compressedFile, StandardOpenOption.READ))) {
+      range.clear();
+      return channel.read(range, random.nextInt(LENGTH - RANGE));
+    }
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    BlockCompression compression = BlockCompression.forName(BlockCompression.DEFLATE);
+    for (String data : new String[] {"float64", "csv", "random"}) {
+      Path file = Files.createTempFile("compressed", null);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        compression.compress(Channels.newChannel(new ByteArrayInputStream(generate(data))),
+            channel);
+      }
+      System.out.printf(Locale.ROOT, "%-8s %d bytes stored in %d, ratio %.2f%n", data, LENGTH,
+          Files.size(file), (double) LENGTH / Files.size(file));
+      Files.delete(file);
+    }
+    new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName())
+        .addProfiler("gc").build()).run();
+  }
+}
@@ -37,7 +37,7 @@
  *
  */
 
-package org.snia.cdmiserver.filter;
+package edu.kit.scc.benchmark;
 
 /**
  * This class provides encode/decode for RFC 2045 Base64 as defined by RFC 2045, N. Freed and N.
@@ -45,11 +45,16 @@ package org.snia.cdmiserver.filter;
  * Message Bodies. Reference 1996 Available at: http://www.ietf.org/rfc/rfc2045.txt This class is
  * used by XML Schema binary format validation
  * 
+ * <p>
+ * The whole-array codec the server used before {@link org.snia.cdmiserver.codec.Base64Codec}, kept
+ * as the baseline of {@link Base64Benchmark}.
+ * </p>
+ * 
  * @author Jeffrey Rodriguez
  * @version $Revision: 41 $ $Date: 2009-12-06 13:50:36 -0800 (Sun, 06 Dec 2009) $
  */
 
-public final class Base64 {
+public final class LegacyBase64 {
 
   private static final int BASELENGTH = 255;
   private static final int LOOKUPLENGTH = 63;
@@ -105,7 +110,7 @@ public final class Base64 {
       return false;
     }
     for (int i = 0; i < length; i++) {
-      if (Base64.isBase64(arrayOctect[i]) == false) {
+      if (LegacyBase64.isBase64(arrayOctect[i]) == false) {
         return false;
       }
     }
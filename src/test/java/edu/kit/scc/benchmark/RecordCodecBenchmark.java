@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the {@link RecordCodec}s, encoding and decoding a {@link Container}, a
+ * {@link DataObject} and a {@link Capability} with 100 metadata items, in the JSON and the binary
+ * record format. Run it like {@link Base64Benchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordCodecBenchmark {
+
+  @Param({RecordCodecs.JSON, RecordCodecs.BINARY})
+  public String format;
+
+  @Param({"container", "dataObject", "capability"})
+  public String objectType;
+
+  private RecordCodec recordCodec;
+
+  private CdmiObject cdmiObject;
+
+  private byte[] record;
+
+  @Setup
+  public void setup() {
+    JSONObject metadata = new JSONObject();
+    for (int i = 0; i < 100; i++) {
+      metadata.put("cdmi_item_" + i, "value of the metadata item " + i);
+    }
+    if ("container".equals(objectType)) {
+      Container container = new Container("container", "/", "parentId");
+      container.setMetadata(metadata);
+      JSONArray children = new JSONArray();
+      for (int i = 0; i < 10; i++) {
+        children.put("child" + i);
+      }
+      container.setChildren(children);
+      container.setChildrenrange("0-9");
+      cdmiObject = container;
+    } else if ("dataObject".equals(objectType)) {
+      DataObject dataObject = new DataObject("object", "/container", "parentId");
+      dataObject.setMetadata(metadata);
+      dataObject.setMimetype("application/octet-stream");
+      cdmiObject = dataObject;
+    } else {
+      Capability capability = new Capability("profile", "/cdmi_capabilities", "parentId");
+      capability.setMetadata(metadata);
+      capability.setCapabilities(new JSONObject().put("cdmi_compression", true)
+          .put("cdmi_data_redundancy", "3").put("cdmi_geographic_placement", "DE"));
+      cdmiObject = capability;
+    }
+    recordCodec = RecordCodecs.forFormat(format);
+    record = recordCodec.encode(cdmiObject);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return recordCodec.encode(cdmiObject);
+  }
+
+  @Benchmark
+  public CdmiObject decode() {
+    return recordCodec.decode(record);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RecordCodecBenchmark.class.getSimpleName())
+        .addProfiler("gc").build()).run();
+  }
+}
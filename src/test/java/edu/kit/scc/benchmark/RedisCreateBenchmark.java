@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.benchmark;
+
+import edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of creating a data object in a container with the Redis {@link CdmiObjectDaoImpl},
+ * against an embedded Redis on port 6399. <code>script</code> creates it with the single create
+ * script call, <code>commands</code> with the separate commands creates took before: checking the
+ * parent, SETNX of the path, SET of the object id and ZADD to the parent's children. Run it like
+ * {@link Base64Benchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisCreateBenchmark {
+
+  private static final int PORT = 6399;
+
+  private RedisServer redisServer;
+
+  private JedisConnectionFactory connectionFactory;
+
+  private StringRedisTemplate redisTemplate;
+
+  private CdmiObjectDaoImpl cdmiObjectDao;
+
+  private final RecordCodec recordCodec = RecordCodecs.forFormat(RecordCodecs.BINARY);
+
+  private Container parent;
+
+  private long count;
+
+  @Setup
+  public void setup() throws IOException {
+    redisServer = new RedisServer(PORT);
+    redisServer.start();
+    connectionFactory = new JedisConnectionFactory();
+    connectionFactory.setPort(PORT);
+    connectionFactory.afterPropertiesSet();
+    redisTemplate = new StringRedisTemplate(connectionFactory);
+    cdmiObjectDao = new CdmiObjectDaoImpl();
+    cdmiObjectDao.setRedisTemplate(redisTemplate);
+    cdmiObjectDao.setRecordCodec(recordCodec);
+
+    CdmiObject rootObject = new CdmiObject();
+    parent = new Container("container", "/", rootObject.getObjectId());
+    cdmiObjectDao.createCdmiObject(parent, "/container");
+  }
+
+  @TearDown
+  public void tearDown() throws ReflectiveOperationException {
+    connectionFactory.destroy();
+    redisServer.stop();
+    // stop doesn't shut down the thread logging the server's errors, which keeps the fork running
+    Field executor = redisServer.getClass().getSuperclass().getDeclaredField("executor");
+    executor.setAccessible(true);
+    ((ExecutorService) executor.get(redisServer)).shutdownNow();
+  }
+
+  private DataObject nextChild() {
+    return new DataObject("object" + count++, "/container", parent.getObjectId());
+  }
+
+  @Benchmark
+  public CdmiObject script() {
+    DataObject child = nextChild();
+    return cdmiObjectDao.createChildCdmiObject(child,
+        "/container/" + child.getObjectName(), "/container");
+  }
+
+  @Benchmark
+  public CdmiObject commands() {
+    DataObject child = nextChild();
+    String path = "/container/" + child.getObjectName();
+    byte[] record = recordCodec.encode(child);
+    if (!redisTemplate.hasKey("/container")) {
+      return null;
+    }
+    if (!redisTemplate.execute((RedisCallback<Boolean>) connection -> connection
+        .setNX(toBytes(path), toBytes(child.getObjectId())))) {
+      return null;
+    }
+    redisTemplate.execute((RedisCallback<Void>) connection -> {
+      connection.set(toBytes("objectid:" + child.getObjectId()), record);
+      return null;
+    });
+    redisTemplate.execute((RedisCallback<Boolean>) connection -> connection
+        .zAdd(toBytes("children:" + parent.getObjectId()), 0, toBytes(child.getObjectName())));
+    return child;
+  }
+
+  private static byte[] toBytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RedisCreateBenchmark.class.getSimpleName())
+        .addProfiler("gc").build()).run();
+  }
+}
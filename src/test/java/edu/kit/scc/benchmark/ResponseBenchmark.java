@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.snia.cdmiserver.codec.CdmiJsonWriter;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.util.Projection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the CDMI response of a container with 100k children, built as a JSON tree and
+ * string of all fields like before, and written by {@link CdmiJsonWriter}, which selects the fields
+ * of the query. Both are encoded to UTF-8 into a stream that discards the bytes, like a servlet
+ * response would send them. Run it like {@link Base64Benchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class ResponseBenchmark {
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  };
+
+  @Param({"", "objectID;children:0-999"})
+  public String query;
+
+  private Container container;
+
+  @Setup
+  public void setup() {
+    container = new Container("container", "/", "parentId");
+    container.setMetadata(new JSONObject().put("cdmi_size", 4096));
+    JSONArray children = new JSONArray();
+    for (int i = 0; i < 100000; i++) {
+      children.put("measurement-" + i + ".h5");
+    }
+    container.setChildren(children);
+    container.setChildrenrange("0-99999");
+  }
+
+  @Benchmark
+  public void tree() throws IOException {
+    // the tree has all fields, it is what the fields of a query used to be selected from
+    DISCARD.write(container.toJson().toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public void stream() throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(DISCARD, StandardCharsets.UTF_8));
+    new CdmiJsonWriter(out, Projection.parse(query.isEmpty() ? null : query)).write(container);
+    out.flush();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ResponseBenchmark.class.getSimpleName())
+        .addProfiler("gc").build()).run();
+  }
+}
@@ -14,6 +14,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import edu.kit.scc.CdmiServerApplication;
 
@@ -23,7 +24,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.filesystem.ContainerDaoImpl;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.Container;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -32,12 +36,17 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
@@ -47,6 +56,9 @@ public class ContainerFilesystemTest {
   @Autowired
   private ContainerDao containerDao;
 
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
   @Value("${cdmi.data.objectIdPrefix}")
   String objectIdPrefix;
 
@@ -203,6 +215,68 @@ public class ContainerFilesystemTest {
     containerDao.deleteByPath(Paths.get("/", containerName).toString());
   }
 
+  @Test
+  public void testDeleteContainerAtVersion() {
+    String path = Paths.get("/", "deleteContainerAtVersion").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    String version = container.getVersion();
+
+    container.getMetadata().put("updated", System.nanoTime());
+    cdmiObjectDao.updateCdmiObject(container, path, version);
+    try {
+      containerDao.deleteByPath(path, version);
+      fail("deleted at a stale version");
+    } catch (PreconditionFailedException ex) {
+      assertTrue(Files.exists(Paths.get(baseDirectoryName, "deleteContainerAtVersion")));
+      assertNotNull(cdmiObjectDao.getCdmiObjectByPath(path));
+    }
+
+    String updatedVersion = cdmiObjectDao.getCdmiObjectByPath(path).getVersion();
+    assertNotNull(containerDao.deleteByPath(path, updatedVersion));
+    assertFalse(Files.exists(Paths.get(baseDirectoryName, "deleteContainerAtVersion")));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath(path));
+  }
+
+  @Test
+  public void testDeleteNonEmptyContainerAtVersion() {
+    String path = Paths.get("/", "deleteNonEmptyContainerAtVersion").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    containerDao.createByPath(Paths.get(path, "child").toString(),
+        Container.fromJson(new JSONObject("{}")));
+    String version = cdmiObjectDao.getCdmiObjectByPath(path).getVersion();
+
+    assertNull(containerDao.deleteByPath(path, version));
+    assertTrue(Files.exists(Paths.get(baseDirectoryName, "deleteNonEmptyContainerAtVersion")));
+    assertEquals(version, cdmiObjectDao.getCdmiObjectByPath(path).getVersion());
+  }
+
+  @Test
+  public void testConcurrentCreates() throws InterruptedException {
+    String path = Paths.get("/", "concurrentCreates").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      String prefix = "thread" + i + "-";
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < 25; j++) {
+          containerDao.createByPath(Paths.get(path, prefix + j).toString(),
+              Container.fromJson(new JSONObject("{}")));
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Container container = containerDao.findByPath(path);
+    assertEquals(100, container.getChildren().length());
+    assertEquals("0-99", container.getChildrenrange());
+  }
+
   @Test
   public void testCreateContainerFailsForInvalidPath() {
     String containerName = "invalidContainer";
@@ -234,4 +308,62 @@ public class ContainerFilesystemTest {
       }
     });
   }
+
+  @Test
+  public void testCreateChildren() {
+    String path = Paths.get("/", "createChildren" + System.nanoTime()).toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    List<String> names = new ArrayList<>();
+    List<Container> containerRequests = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      names.add("child" + i);
+      JSONObject metadata = new JSONObject().put("i", i);
+      containerRequests.add(Container.fromJson(new JSONObject().put("metadata", metadata)));
+    }
+    names.add("child7");
+    containerRequests.add(Container.fromJson(new JSONObject("{}")));
+    List<Container> containers = containerDao.createChildrenByPath(path, names, containerRequests);
+
+    assertEquals(names.size(), containers.size());
+    assertNull(containers.get(names.size() - 1));
+    Container container = containerDao.findByPath(Paths.get(path, "child7").toString());
+    assertEquals(containers.get(7).getObjectId(), container.getObjectId());
+    assertEquals(7, container.getMetadata().getInt("i"));
+    assertEquals("0-99", containerDao.findByPath(path).getChildrenrange());
+
+    containers = containerDao.createChildrenByPath(Paths.get(path, "missing").toString(),
+        Arrays.asList("child"), Arrays.asList(Container.fromJson(new JSONObject("{}"))));
+    assertNull(containers.get(0));
+  }
+
+  @Test
+  public void testCreateChildrenFailure() {
+    String path = Paths.get("/", "createChildrenFailure" + System.nanoTime()).toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    CdmiObjectDao failingCdmiObjectDao = (CdmiObjectDao) Proxy.newProxyInstance(
+        CdmiObjectDao.class.getClassLoader(), new Class<?>[] {CdmiObjectDao.class},
+        (proxy, method, args) -> {
+          if ("createChildCdmiObjects".equals(method.getName())) {
+            throw new IllegalStateException("records not created");
+          }
+          try {
+            return method.invoke(cdmiObjectDao, args);
+          } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+          }
+        });
+    ContainerDaoImpl failingContainerDao = new ContainerDaoImpl();
+    failingContainerDao.setBaseDirectoryName(baseDirectoryName);
+    failingContainerDao.setCdmiObjectDao(failingCdmiObjectDao);
+
+    List<String> names = Arrays.asList("child");
+    List<Container> containerRequests = Arrays.asList(Container.fromJson(new JSONObject("{}")));
+    assertNull(failingContainerDao.createChildrenByPath(path, names, containerRequests).get(0));
+    assertFalse(Files.exists(Paths.get(baseDirectoryName, path, "child")));
+
+    // the name isn't blocked by what the failed create left behind
+    assertNotNull(containerDao.createChildrenByPath(path, names, containerRequests).get(0));
+  }
 }
@@ -10,8 +10,11 @@
 package edu.kit.scc.cdmi.filesystem;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import edu.kit.scc.CdmiServerApplication;
 
@@ -21,7 +24,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.BlockCompression;
+import org.snia.cdmiserver.codec.ValueHash;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.dao.filesystem.BlobStore;
+import org.snia.cdmiserver.exception.BadRequestException;
 import org.snia.cdmiserver.model.DataObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -29,13 +37,21 @@ import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
@@ -59,6 +75,12 @@ public class DataObjectFilesystemTest {
   @Autowired
   private DataObjectDao dataObjectDao;
 
+  @Autowired
+  private BlobStore blobStore;
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
   @BeforeClass
   public static void setup() {}
 
@@ -81,17 +103,318 @@ public class DataObjectFilesystemTest {
   }
 
   @Test
-  public void testCreateNonCdmiException() {
-    boolean correctException = false;
+  public void testCreateNonCdmiDataObject() throws IOException {
+    String dataObjectName = "nonCdmiDataObject";
+    byte[] content = new byte[300000];
+    new Random(1).nextBytes(content);
+
+    DataObject dataObject = dataObjectDao.createNonCdmiByPath(
+        Paths.get("/", dataObjectName).toString(), "application/octet-stream",
+        Channels.newChannel(new ByteArrayInputStream(content)));
+
+    assertNotNull(dataObject);
+    assertEquals("application/octet-stream", dataObject.getMimetype());
+    assertTrue(Arrays.equals(content, Files.readAllBytes(Paths.get(baseDirectoryName,
+        dataObjectName))));
+
+    try (FileChannel channel =
+        dataObjectDao.openContent(Paths.get("/", dataObjectName).toString())) {
+      assertEquals(content.length, channel.size());
+    }
+  }
+
+  @Test
+  public void testReplaceNonCdmiDataObject() throws IOException {
+    String dataObjectName = "replaceNonCdmiDataObject";
+    String path = Paths.get("/", dataObjectName).toString();
+
+    DataObject dataObject = dataObjectDao.createNonCdmiByPath(path, "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("first version".getBytes())));
+    assertNotNull(dataObject);
+
+    DataObject replacedObject = dataObjectDao.createNonCdmiByPath(path, "text/csv",
+        Channels.newChannel(new ByteArrayInputStream("second".getBytes())));
+
+    assertEquals(dataObject.getObjectId(), replacedObject.getObjectId());
+    assertEquals("text/csv", dataObjectDao.findByPath(path).getMimetype());
+    assertEquals("second",
+        new String(Files.readAllBytes(Paths.get(baseDirectoryName, dataObjectName))));
+  }
+
+  @Test
+  public void testUpdateContentRange() throws IOException {
+    String dataObjectName = "updateContentRange";
+    String path = Paths.get("/", dataObjectName).toString();
+
+    assertNotNull(dataObjectDao.createNonCdmiByPath(path, "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("0123456789".getBytes()))));
+    assertNotNull(dataObjectDao.updateContent(path, 3, 4,
+        Channels.newChannel(new ByteArrayInputStream("abcdef".getBytes()))));
+    assertEquals("012abcd789",
+        new String(Files.readAllBytes(Paths.get(baseDirectoryName, dataObjectName))));
+
+    // content ending before the range fails
+    assertNull(dataObjectDao.updateContent(path, 8, 4,
+        Channels.newChannel(new ByteArrayInputStream("xy".getBytes()))));
+  }
+
+  @Test
+  public void testAppendContent() throws IOException {
+    String dataObjectName = "appendContent";
+    String path = Paths.get("/", dataObjectName).toString();
+
+    assertNotNull(dataObjectDao.createNonCdmiByPath(path, "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("first".getBytes()))));
+    assertNotNull(dataObjectDao.appendContent(path,
+        Channels.newChannel(new ByteArrayInputStream(", second".getBytes()))));
+    assertEquals("first, second",
+        new String(Files.readAllBytes(Paths.get(baseDirectoryName, dataObjectName))));
+
+    assertNull(dataObjectDao.appendContent("/missingAppend",
+        Channels.newChannel(new ByteArrayInputStream("lost".getBytes()))));
+  }
+
+  @Test
+  public void testPartialUpload() throws IOException {
+    String dataObjectName = "partialUpload";
+    String path = Paths.get("/", dataObjectName).toString();
+
+    assertNotNull(dataObjectDao.createNonCdmiByPath(path, "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("old".getBytes()))));
+
+    DataObject dataObject = dataObjectDao.updatePartialContent(path, 6, 4, 10,
+        Channels.newChannel(new ByteArrayInputStream("6789".getBytes())));
+    assertEquals("Processing", dataObject.getCompletionStatus());
+    assertEquals("40", dataObject.getPercentComplete());
+
+    // the published content stays until all chunks have been received
+    dataObject = dataObjectDao.publishContent(path, null);
+    assertEquals("Processing", dataObject.getCompletionStatus());
+    assertEquals("old",
+        new String(Files.readAllBytes(Paths.get(baseDirectoryName, dataObjectName))));
+
+    dataObject = dataObjectDao.updatePartialContent(path, 0, 6, -1,
+        Channels.newChannel(new ByteArrayInputStream("012345".getBytes())));
+    assertEquals("100", dataObject.getPercentComplete());
+
+    dataObject = dataObjectDao.publishContent(path, null);
+    assertEquals("Complete", dataObject.getCompletionStatus());
+    assertNull(dataObject.getPercentComplete());
+    assertEquals("0123456789",
+        new String(Files.readAllBytes(Paths.get(baseDirectoryName, dataObjectName))));
+    assertEquals("Complete", dataObjectDao.findByPath(path).getCompletionStatus());
+
+    // chunks beyond the size fail
+    assertNull(dataObjectDao.updatePartialContent(path, 8, 4, 10,
+        Channels.newChannel(new ByteArrayInputStream("8901".getBytes()))));
+  }
+
+  @Test
+  public void testPartialUploadOfDeletedObject() throws IOException {
+    String dataObjectName = "partialUploadDeleted";
+    String path = Paths.get("/", dataObjectName).toString();
+
+    assertNotNull(dataObjectDao.createNonCdmiByPath(path, "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("old".getBytes()))));
+
+    // the records are deleted while the chunk is read from the client, as a conditional delete
+    // deletes them before the content
+    ReadableByteChannel chunk = Channels.newChannel(new ByteArrayInputStream("0123".getBytes()) {
+      @Override
+      public synchronized int read(byte[] buffer, int offset, int length) {
+        DataObject dataObject = dataObjectDao.findByPath(path);
+        if (dataObject != null) {
+          cdmiObjectDao.deleteCdmiObjectByPath(path, dataObject.getVersion());
+        }
+        return super.read(buffer, offset, length);
+      }
+    });
+    assertNull(dataObjectDao.updatePartialContent(path, 0, 4, 4, chunk));
+    assertNull(dataObjectDao.findByPath(path));
+  }
 
+  @Test
+  public void testValueHash() throws IOException {
+    String dataObjectName = "valueHash";
+    String path = Paths.get("/", dataObjectName).toString();
+    String hash = "15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225";
+
+    DataObject dataObject = dataObjectDao.createNonCdmiByPath(path, "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("123456789".getBytes())), hash.toUpperCase());
+    assertEquals(hash, ValueHash.get(dataObject));
+    assertEquals(hash, ValueHash.get(dataObjectDao.findByPath(path)));
+
+    // a value not matching the expected hash is discarded
     try {
-      dataObjectDao.createNonCdmiByPath(null, null, null);
-    } catch (UnsupportedOperationException ex) {
-      correctException = true;
-    } catch (Exception ex) {
-      correctException = false;
+      dataObjectDao.createNonCdmiByPath(path, "text/plain",
+          Channels.newChannel(new ByteArrayInputStream("corrupted".getBytes())), hash);
+      fail("value with wrong hash was stored");
+    } catch (BadRequestException ex) {
+      assertEquals("123456789",
+          new String(Files.readAllBytes(Paths.get(baseDirectoryName, dataObjectName))));
     }
-    assertTrue(correctException);
+
+    // appending makes the hash stale
+    assertNotNull(dataObjectDao.appendContent(path,
+        Channels.newChannel(new ByteArrayInputStream("0".getBytes()))));
+    assertNull(ValueHash.get(dataObjectDao.findByPath(path)));
+
+    dataObjectDao.updatePartialContent(path, 0, 9, 9,
+        Channels.newChannel(new ByteArrayInputStream("123456789".getBytes())));
+    try {
+      dataObjectDao.publishContent(path, "e3069283");
+      fail("upload with wrong hash was published");
+    } catch (BadRequestException ex) {
+      assertEquals("Processing", dataObjectDao.findByPath(path).getCompletionStatus());
+    }
+    dataObject = dataObjectDao.publishContent(path, hash);
+    assertEquals("Complete", dataObject.getCompletionStatus());
+    assertEquals(hash, ValueHash.get(dataObjectDao.findByPath(path)));
+  }
+
+  @Test
+  public void testDeduplication() throws IOException {
+    Path first = Paths.get(baseDirectoryName, "deduplicatedFirst");
+    Path second = Paths.get(baseDirectoryName, "deduplicatedSecond");
+    Path copy = Paths.get(baseDirectoryName, "deduplicatedCopy");
+    byte[] content = new byte[100000];
+    new Random(6).nextBytes(content);
+    // blobs replaced by other tests
+    blobStore.collect();
+    long savedBytes = blobStore.report().getSavedBytes();
+
+    assertNotNull(dataObjectDao.createNonCdmiByPath("/deduplicatedFirst", "text/plain",
+        Channels.newChannel(new ByteArrayInputStream(content))));
+    assertNotNull(dataObjectDao.createNonCdmiByPath("/deduplicatedSecond", "text/plain",
+        Channels.newChannel(new ByteArrayInputStream(content))));
+    assertTrue(Files.isSameFile(first, second));
+
+    DataObject dataObject = dataObjectDao.copyByPath("/deduplicatedCopy", "/deduplicatedFirst");
+    assertEquals("text/plain", dataObject.getMimetype());
+    assertEquals(ValueHash.get(dataObjectDao.findByPath("/deduplicatedFirst")),
+        ValueHash.get(dataObject));
+    assertTrue(Files.isSameFile(first, copy));
+    assertEquals(savedBytes + 2 * content.length, blobStore.report().getSavedBytes());
+
+    // written in place on a copy of its own
+    assertNotNull(dataObjectDao.updateContent("/deduplicatedSecond", 0, 4,
+        Channels.newChannel(new ByteArrayInputStream("abcd".getBytes()))));
+    assertFalse(Files.isSameFile(first, second));
+    assertTrue(Arrays.equals(content, Files.readAllBytes(first)));
+    assertEquals("abcd", new String(Files.readAllBytes(second), 0, 4));
+
+    // the blob is collected once the last data object linking to it is gone
+    assertNotNull(dataObjectDao.deleteByPath("/deduplicatedFirst"));
+    assertEquals(0, blobStore.collect());
+    assertNotNull(dataObjectDao.createNonCdmiByPath("/deduplicatedCopy", "text/plain",
+        Channels.newChannel(new ByteArrayInputStream("other".getBytes()))));
+    assertEquals(1, blobStore.collect());
+    assertEquals(savedBytes, blobStore.report().getSavedBytes());
+  }
+
+  @Test
+  public void testCompression() throws IOException {
+    Path file = Paths.get(baseDirectoryName, "compressed");
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; csv.length() < 200000; i++) {
+      csv.append(i).append(",").append(20 + i % 7).append(".5,ok\n");
+    }
+    byte[] content = csv.toString().getBytes();
+    DataObject dataObject = dataObjectDao.createNonCdmiByPath("/compressed", "text/csv",
+        Channels.newChannel(new ByteArrayInputStream(content)));
+    String hash = ValueHash.get(dataObject);
+    assertEquals(content.length, Files.size(file));
+
+    dataObject.setCapabilitiesUri("/cdmi_capabilities/dataobject/profile2");
+    cdmiObjectDao.updateCdmiObject(dataObject, "/compressed");
+    dataObject = dataObjectDao.updateContent("/compressed",
+        Channels.newChannel(new ByteArrayInputStream(content)), hash);
+    // the hash is the one of the uncompressed value
+    assertEquals(hash, ValueHash.get(dataObject));
+    assertEquals(BlockCompression.DEFLATE, BlockCompression.get(dataObject).getName());
+    assertTrue(Files.size(file) < content.length / 4);
+    try (FileChannel channel = FileChannel.open(file)) {
+      assertTrue(BlockCompression.isCompressed(channel));
+    }
+    try (FileChannel channel = dataObjectDao.openContent("/compressed")) {
+      assertEquals(content.length, channel.size());
+      ByteBuffer range = ByteBuffer.allocate(1000);
+      assertEquals(1000, channel.read(range, 100000));
+      assertTrue(Arrays.equals(Arrays.copyOfRange(content, 100000, 101000), range.array()));
+    }
+
+    // a copy reads the same value
+    assertNotNull(dataObjectDao.copyByPath("/compressedCopy", "/compressed"));
+    try (FileChannel channel = dataObjectDao.openContent("/compressedCopy")) {
+      ByteBuffer value = ByteBuffer.allocate(content.length);
+      channel.read(value, 0);
+      assertTrue(Arrays.equals(content, value.array()));
+    }
+
+    // written in place on its decompressed value
+    assertNotNull(dataObjectDao.updateContent("/compressed", 4, 4,
+        Channels.newChannel(new ByteArrayInputStream("abcd".getBytes()))));
+    byte[] updated = Files.readAllBytes(file);
+    assertEquals(content.length, updated.length);
+    assertEquals("abcd", new String(updated, 4, 4));
+    assertNull(BlockCompression.get(dataObjectDao.findByPath("/compressed")));
+    try (FileChannel channel = dataObjectDao.openContent("/compressedCopy")) {
+      assertEquals(content.length, channel.size());
+    }
+  }
+
+  @Test
+  public void testCompressedFormatValue() throws IOException {
+    Path compressed = Files.createTempFile("value", null);
+    try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.WRITE)) {
+      BlockCompression.forName(BlockCompression.DEFLATE)
+          .compress(Channels.newChannel(new ByteArrayInputStream("inner".getBytes())), channel);
+    }
+    byte[] content = Files.readAllBytes(compressed);
+    Files.delete(compressed);
+
+    // a value in the block format is read as it was written
+    assertNotNull(dataObjectDao.createNonCdmiByPath("/compressedFormat", "application/octet-stream",
+        Channels.newChannel(new ByteArrayInputStream(content))));
+    assertContent(content, "/compressedFormat");
+
+    // also when it is only in the format after a ranged write or an append
+    assertNotNull(dataObjectDao.updateContent("/compressedFormat",
+        Channels.newChannel(new ByteArrayInputStream(new byte[content.length])), null));
+    assertNotNull(dataObjectDao.updateContent("/compressedFormat", 0, content.length,
+        Channels.newChannel(new ByteArrayInputStream(content))));
+    assertContent(content, "/compressedFormat");
+    assertNotNull(dataObjectDao.updateContent("/compressedFormat",
+        Channels.newChannel(new ByteArrayInputStream(content, 0, 10)), null));
+    assertNotNull(dataObjectDao.appendContent("/compressedFormat",
+        Channels.newChannel(new ByteArrayInputStream(content, 10, content.length - 10))));
+    assertContent(content, "/compressedFormat");
+
+    // or once its chunks are published
+    assertNotNull(dataObjectDao.updatePartialContent("/compressedFormat", 0, content.length,
+        content.length, Channels.newChannel(new ByteArrayInputStream(content))));
+    assertNotNull(dataObjectDao.publishContent("/compressedFormat", null));
+    assertContent(content, "/compressedFormat");
+
+    // the compression of a value is only known to the server
+    DataObject dataObjectRequest = DataObject.fromJson(new JSONObject()
+        .put("metadata", new JSONObject().put(BlockCompression.VALUE_METADATA_NAME, "deflate")));
+    DataObject dataObject =
+        dataObjectDao.createByPath("/compressedFormatRequest", dataObjectRequest);
+    assertNull(BlockCompression.get(dataObject));
+  }
+
+  private void assertContent(byte[] content, String path) throws IOException {
+    try (FileChannel channel = dataObjectDao.openContent(path)) {
+      ByteBuffer value = ByteBuffer.allocate(content.length + 1);
+      assertEquals(content.length, channel.read(value, 0));
+      assertTrue(Arrays.equals(content, Arrays.copyOf(value.array(), content.length)));
+    }
+  }
+
+  @Test
+  public void testOpenMissingContent() {
+    assertNull(dataObjectDao.openContent("/missingContent"));
   }
 
   @Test
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.dao.filesystem.CdmiObjectDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.FileSync;
+import org.snia.cdmiserver.dao.filesystem.FileSyncs;
+import org.snia.cdmiserver.dao.filesystem.StagingDirectory;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class FileSyncTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testModes() throws IOException {
+    Path file = folder.newFile().toPath();
+    for (String mode : new String[] {FileSyncs.NONE, FileSyncs.PER_OP_FSYNC,
+        FileSyncs.GROUP_COMMIT}) {
+      FileSync fileSync = FileSyncs.forMode(mode);
+      try {
+        fileSync.sync(file, folder.getRoot().toPath());
+      } finally {
+        fileSync.close();
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMode() {
+    FileSyncs.forMode("sometimes");
+  }
+
+  @Test
+  public void testGroupCommitConcurrentRequests() throws Exception {
+    FileSync fileSync = FileSyncs.forMode(FileSyncs.GROUP_COMMIT);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Path>> results = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        Path file = folder.getRoot().toPath().resolve("file" + i);
+        results.add(executor.submit(() -> {
+          Files.write(file, new byte[] {1, 2, 3});
+          fileSync.sync(file, file.getParent());
+          return file;
+        }));
+      }
+      for (Future<Path> result : results) {
+        assertEquals(3, Files.size(result.get()));
+      }
+    } finally {
+      executor.shutdown();
+      fileSync.close();
+    }
+  }
+
+  @Test
+  public void testGroupCommitFailsOnlyFailedRequests() throws IOException {
+    FileSync fileSync = FileSyncs.forMode(FileSyncs.GROUP_COMMIT);
+    try {
+      try {
+        fileSync.sync(folder.getRoot().toPath().resolve("missing"));
+        fail("syncing a missing file succeeded");
+      } catch (NoSuchFileException ex) {
+        // expected
+      }
+      fileSync.sync(folder.newFile().toPath());
+    } finally {
+      fileSync.close();
+    }
+  }
+
+  @Test
+  public void testGroupCommitStopWhileSyncing() throws Exception {
+    for (int round = 0; round < 20; round++) {
+      FileSync fileSync = FileSyncs.forMode(FileSyncs.GROUP_COMMIT);
+      Path file = folder.newFile().toPath();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+          results.add(executor.submit(() -> {
+            try {
+              while (true) {
+                fileSync.sync(file);
+              }
+            } catch (IllegalStateException | IOException ex) {
+              // stopped
+            }
+            return null;
+          }));
+        }
+        Thread.sleep(5);
+        fileSync.close();
+        // every request either got flushed or failed, none waits for a committer that is gone
+        for (Future<?> result : results) {
+          result.get(10, TimeUnit.SECONDS);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void testGroupCommitDao() throws IOException {
+    folder.newFolder("cdmi_objectid");
+    FileSync fileSync = FileSyncs.forMode(FileSyncs.GROUP_COMMIT);
+    try {
+      CdmiObjectDaoImpl cdmiObjectDao = new CdmiObjectDaoImpl();
+      cdmiObjectDao.setBaseDirectory(folder.getRoot().toString());
+      cdmiObjectDao.setObjectIdPrefix(".cdmi_");
+      cdmiObjectDao.setObjectIdDirectory("cdmi_objectid");
+      cdmiObjectDao.setFileSync(fileSync);
+      StagingDirectory stagingDirectory = new StagingDirectory();
+      stagingDirectory.setDirectory(folder.getRoot().toPath().resolve("cdmi_objectid").toString());
+      stagingDirectory.setFileSync(fileSync);
+      cdmiObjectDao.setStagingDirectory(stagingDirectory);
+
+      CdmiObject rootObject = new CdmiObject();
+      Container root = new Container("/", "/", rootObject.getObjectId());
+      root.setObjectId(rootObject.getObjectId());
+      assertNotNull(cdmiObjectDao.createCdmiObject(root, "/"));
+      Container child = new Container("child", "/", root.getObjectId());
+      assertNotNull(cdmiObjectDao.createChildCdmiObject(child, "/child", "/"));
+
+      assertEquals("0", ((Container) cdmiObjectDao.getCdmiObjectByPath("/")).getChildrenrange());
+      assertTrue(Files.exists(folder.getRoot().toPath().resolve(".cdmi_child")));
+    } finally {
+      fileSync.close();
+    }
+  }
+}
@@ -25,7 +25,8 @@ import java.util.Properties;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({CdmiObjectFilesystemTest.class, ContainerFilesystemTest.class,
-    DataObjectFilesystemTest.class, CapabilityFilesystemTest.class})
+    DataObjectFilesystemTest.class, CapabilityFilesystemTest.class, ObjectIdFanOutTest.class,
+    RecordRecoveryTest.class, FileSyncTest.class})
 public class FileSystemTestSuite {
 
   @AfterClass
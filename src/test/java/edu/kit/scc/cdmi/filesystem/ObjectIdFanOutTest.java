@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.dao.filesystem.CdmiObjectDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.ObjectIdDirectoryMigration;
+import org.snia.cdmiserver.dao.filesystem.StagingDirectory;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class ObjectIdFanOutTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path objectIdDirectory;
+
+  private Container root;
+
+  private CdmiObjectDaoImpl createDao(int objectIdFanOut) {
+    CdmiObjectDaoImpl cdmiObjectDao = new CdmiObjectDaoImpl();
+    cdmiObjectDao.setBaseDirectory(folder.getRoot().toString());
+    cdmiObjectDao.setObjectIdPrefix(".cdmi_");
+    cdmiObjectDao.setObjectIdDirectory("cdmi_objectid");
+    cdmiObjectDao.setObjectIdFanOut(objectIdFanOut);
+    StagingDirectory stagingDirectory = new StagingDirectory();
+    stagingDirectory.setDirectory(folder.getRoot().toPath().resolve("cdmi_objectid").toString());
+    cdmiObjectDao.setStagingDirectory(stagingDirectory);
+    return cdmiObjectDao;
+  }
+
+  private Container createChild(CdmiObjectDaoImpl cdmiObjectDao, String name) {
+    Container child = Container.fromJson(new JSONObject("{}"));
+    child.setObjectName(name);
+    child.setParentUri("/");
+    child.setParentId(root.getObjectId());
+    return (Container) cdmiObjectDao.createChildCdmiObject(child, "/" + name, "/");
+  }
+
+  private long countFlatFiles() throws IOException {
+    try (Stream<Path> entries = Files.list(objectIdDirectory)) {
+      return entries.filter(Files::isRegularFile).count();
+    }
+  }
+
+  @Before
+  public void setup() throws IOException {
+    objectIdDirectory = folder.newFolder("cdmi_objectid").toPath();
+
+    CdmiObject rootObject = new CdmiObject();
+    root = new Container("/", "/", rootObject.getObjectId());
+    root.setObjectId(rootObject.getObjectId());
+  }
+
+  @Test
+  public void testCreateInFanOutDirectory() {
+    CdmiObjectDaoImpl cdmiObjectDao = createDao(2);
+    cdmiObjectDao.createCdmiObject(root, "/");
+    Container child = createChild(cdmiObjectDao, "child");
+
+    assertNotNull(child);
+    assertNotNull(cdmiObjectDao.getCdmiObject(child.getObjectId()));
+    Path path = objectIdDirectory.relativize(findObjectIdFile(child.getObjectId()));
+    assertEquals(3, path.getNameCount());
+    assertTrue(path.getName(0).toString().matches("[0-9A-F]{2}"));
+    assertTrue(path.getName(1).toString().matches("[0-9A-F]{2}"));
+    assertEquals(child.getObjectId(), path.getFileName().toString());
+    assertNotNull(cdmiObjectDao.getCdmiObjectByPath("/child"));
+    assertEquals("0", ((Container) cdmiObjectDao.getCdmiObjectByPath("/")).getChildrenrange());
+  }
+
+  @Test
+  public void testFlatObjectMovedOnAccess() throws IOException {
+    CdmiObjectDaoImpl flatDao = createDao(0);
+    flatDao.createCdmiObject(root, "/");
+    Container child = createChild(flatDao, "child");
+    assertTrue(Files.exists(objectIdDirectory.resolve(child.getObjectId())));
+
+    CdmiObjectDaoImpl cdmiObjectDao = createDao(2);
+    Container found = (Container) cdmiObjectDao.getCdmiObject(child.getObjectId());
+
+    assertNotNull(found);
+    assertFalse(Files.exists(objectIdDirectory.resolve(child.getObjectId())));
+    assertNotNull(findObjectIdFile(child.getObjectId()));
+
+    // the link by path still points to the moved file
+    found.setMetadata(new JSONObject("{\"moved\":\"true\"}"));
+    cdmiObjectDao.updateCdmiObject(found);
+    assertEquals("true", cdmiObjectDao.getCdmiObjectByPath("/child").toJson()
+        .getJSONObject("metadata").getString("moved"));
+  }
+
+  @Test
+  public void testMigration() throws IOException {
+    CdmiObjectDaoImpl flatDao = createDao(0);
+    flatDao.createCdmiObject(root, "/");
+    for (int i = 0; i < 20; i++) {
+      createChild(flatDao, "child" + i);
+    }
+    assertEquals(21, countFlatFiles());
+
+    CdmiObjectDaoImpl cdmiObjectDao = createDao(2);
+    ObjectIdDirectoryMigration migration = new ObjectIdDirectoryMigration();
+    migration.setCdmiObjectDao(cdmiObjectDao);
+
+    assertEquals(21, migration.migrate());
+    assertEquals(0, countFlatFiles());
+    assertEquals(0, migration.migrate());
+
+    Container updatedRoot = (Container) cdmiObjectDao.getCdmiObject(root.getObjectId());
+    assertEquals("0-19", updatedRoot.getChildrenrange());
+    createChild(cdmiObjectDao, "child20");
+    assertEquals("0-20",
+        ((Container) cdmiObjectDao.getCdmiObjectByPath("/")).getChildrenrange());
+  }
+
+  private Path findObjectIdFile(String objectId) {
+    try (Stream<Path> files = Files.walk(objectIdDirectory)) {
+      return files.filter(file -> file.getFileName().toString().equals(objectId)).findFirst()
+          .orElse(null);
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+}
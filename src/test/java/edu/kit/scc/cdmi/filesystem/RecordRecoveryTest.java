@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.dao.filesystem.CdmiObjectDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.RecordRecovery;
+import org.snia.cdmiserver.dao.filesystem.StagingDirectory;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+public class RecordRecoveryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path objectIdDirectory;
+
+  private CdmiObjectDaoImpl cdmiObjectDao;
+
+  private RecordRecovery recordRecovery;
+
+  private Container child;
+
+  @Before
+  public void setup() throws IOException {
+    objectIdDirectory = folder.newFolder("cdmi_objectid").toPath();
+
+    cdmiObjectDao = new CdmiObjectDaoImpl();
+    cdmiObjectDao.setBaseDirectory(folder.getRoot().toString());
+    cdmiObjectDao.setObjectIdPrefix(".cdmi_");
+    cdmiObjectDao.setObjectIdDirectory("cdmi_objectid");
+    cdmiObjectDao.setRecordCodec(RecordCodecs.forFormat(RecordCodecs.BINARY));
+    StagingDirectory stagingDirectory = new StagingDirectory();
+    stagingDirectory.setDirectory(objectIdDirectory.toString());
+    cdmiObjectDao.setStagingDirectory(stagingDirectory);
+
+    recordRecovery = new RecordRecovery();
+    recordRecovery.setCdmiObjectDao(cdmiObjectDao);
+
+    CdmiObject rootObject = new CdmiObject();
+    Container root = new Container("/", "/", rootObject.getObjectId());
+    root.setObjectId(rootObject.getObjectId());
+    cdmiObjectDao.createCdmiObject(root, "/");
+
+    child = new Container("child", "/", root.getObjectId());
+    child = (Container) cdmiObjectDao.createChildCdmiObject(child, "/child", "/");
+  }
+
+  private Path getPathFile() {
+    return folder.getRoot().toPath().resolve(".cdmi_child");
+  }
+
+  private Path getObjectIdFile() {
+    return objectIdDirectory.resolve(child.getObjectId());
+  }
+
+  @Test
+  public void testUpdateKeepsViewsLinked() throws IOException {
+    child.setMetadata(new JSONObject("{\"color\":\"red\"}"));
+    assertNotNull(cdmiObjectDao.updateCdmiObject(child));
+
+    assertTrue(Files.isSameFile(getPathFile(), getObjectIdFile()));
+    assertEquals("red", ((Container) cdmiObjectDao.getCdmiObjectByPath("/child")).getMetadata()
+        .getString("color"));
+
+    child.setMetadata(new JSONObject("{\"color\":\"blue\"}"));
+    assertNotNull(cdmiObjectDao.updateCdmiObject(child, "/child"));
+
+    assertTrue(Files.isSameFile(getPathFile(), getObjectIdFile()));
+    assertEquals("blue", ((Container) cdmiObjectDao.getCdmiObject(child.getObjectId()))
+        .getMetadata().getString("color"));
+    assertEquals(0, objectIdDirectory.resolve(".tmp").toFile().list().length);
+  }
+
+  @Test
+  public void testRecoverUnlinkedViews() throws IOException {
+    // a crash after replacing the objectId file, but before linking the path file to it
+    child.setMetadata(new JSONObject("{\"color\":\"red\"}"));
+    Path newRecord = folder.newFile().toPath();
+    Files.write(newRecord, cdmiObjectDao.getRecordCodec().encode(child));
+    Files.setLastModifiedTime(newRecord,
+        FileTime.fromMillis(Files.getLastModifiedTime(getPathFile()).toMillis() + 1000));
+    Files.move(newRecord, getObjectIdFile(), StandardCopyOption.ATOMIC_MOVE);
+    Files.write(objectIdDirectory.resolve(".tmp").resolve("left-over"), new byte[10]);
+
+    assertFalse(Files.isSameFile(getPathFile(), getObjectIdFile()));
+    assertEquals(1, recordRecovery.recover());
+
+    assertTrue(Files.isSameFile(getPathFile(), getObjectIdFile()));
+    assertEquals("red", ((Container) cdmiObjectDao.getCdmiObjectByPath("/child")).getMetadata()
+        .getString("color"));
+    assertEquals(0, objectIdDirectory.resolve(".tmp").toFile().list().length);
+  }
+
+  @Test
+  public void testRecoverMissingObjectIdFile() throws IOException {
+    Files.delete(getObjectIdFile());
+
+    assertEquals(1, recordRecovery.recover());
+
+    assertTrue(Files.isSameFile(getPathFile(), getObjectIdFile()));
+    assertNotNull(cdmiObjectDao.getCdmiObject(child.getObjectId()));
+  }
+
+  @Test
+  public void testQuarantineTornRecord() throws IOException {
+    byte[] record = Files.readAllBytes(getObjectIdFile());
+    byte[] tornRecord = new byte[record.length / 2];
+    System.arraycopy(record, 0, tornRecord, 0, tornRecord.length);
+    Files.write(getObjectIdFile(), tornRecord);
+
+    // both links of the record
+    assertEquals(2, recordRecovery.recover());
+
+    assertFalse(Files.exists(getPathFile()));
+    assertFalse(Files.exists(getObjectIdFile()));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath("/child"));
+    assertEquals(2, objectIdDirectory.resolve(".quarantine").toFile().list().length);
+    assertNotNull(cdmiObjectDao.getCdmiObjectByPath("/"));
+  }
+
+  @Test
+  public void testKeepPartialUploads() throws IOException {
+    Path partialDirectory = Files.createDirectories(objectIdDirectory.resolve(".partial"));
+    Files.write(partialDirectory.resolve(child.getObjectId()), new byte[10]);
+    Files.write(partialDirectory.resolve(child.getObjectId() + ".ranges"),
+        "20\n0-9\n".getBytes());
+
+    assertEquals(0, recordRecovery.recover());
+
+    assertEquals(2, partialDirectory.toFile().list().length);
+    assertFalse(Files.exists(objectIdDirectory.resolve(".quarantine")));
+  }
+
+  @Test
+  public void testRecoverOnlyAfterUncleanShutdown() throws IOException {
+    Path marker = objectIdDirectory.resolve(".running");
+
+    recordRecovery.start();
+    assertTrue(Files.exists(marker));
+    recordRecovery.stop();
+    assertFalse(Files.exists(marker));
+
+    recordRecovery.start();
+    Files.delete(getObjectIdFile());
+    // no stop, the next start recovers
+    recordRecovery.start();
+
+    assertTrue(Files.exists(marker));
+    assertTrue(Files.isSameFile(getPathFile(), getObjectIdFile()));
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles({"redis-embedded", "redis-async"})
+public class AsyncRedisTest {
+
+  @Autowired
+  AsyncCdmiObjectDao asyncCdmiObjectDao;
+
+  @Autowired
+  ContainerDao containerDao;
+
+  @Autowired
+  StringRedisTemplate redisTemplate;
+
+  @Test
+  public void testConcurrentLookups() {
+    String path = Paths.get("/", "asyncLookup").toString();
+    String childPath = Paths.get(path, "child").toString();
+    containerDao.createByPath(childPath, Container.fromJson(new JSONObject("{}")));
+
+    CompletableFuture<CdmiObject> parent = asyncCdmiObjectDao.getCdmiObjectByPathAsync(path, 0, 0);
+    CompletableFuture<CdmiObject> child =
+        asyncCdmiObjectDao.getCdmiObjectByPathAsync(childPath, 0, -1);
+    CompletableFuture<CdmiObject> missing =
+        asyncCdmiObjectDao.getCdmiObjectByPathAsync(Paths.get(path, "missing").toString(), 0, -1);
+
+    assertEquals(parent.join().getObjectId(), child.join().toJson().getString("parentID"));
+    assertEquals("0", parent.join().toJson().getString("childrenrange"));
+    assertNull(missing.join());
+  }
+
+  @Test
+  public void testConcurrentCreates() throws InterruptedException {
+    String path = Paths.get("/", "asyncCreate").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      String prefix = "thread" + i + "-";
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < 25; j++) {
+          containerDao.createByPath(Paths.get(path, prefix + j).toString(),
+              Container.fromJson(new JSONObject("{}")));
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Container container = containerDao.findByPath(path);
+    assertEquals(100, container.getChildren().length());
+    assertEquals("0-99", container.getChildrenrange());
+  }
+
+  @Test
+  public void testCompareAndSet() {
+    String path = Paths.get("/", "asyncCompareAndSet").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    Container container = (Container) asyncCdmiObjectDao.getCdmiObjectByPath(path);
+    String version = container.getVersion();
+
+    container.getMetadata().put("updated", System.nanoTime());
+    asyncCdmiObjectDao.updateCdmiObject(container, path, version);
+    String updatedVersion = asyncCdmiObjectDao.getCdmiObjectByPath(path).getVersion();
+    assertNotEquals(version, updatedVersion);
+
+    try {
+      asyncCdmiObjectDao.updateCdmiObject(container, path, version);
+      fail("updated at a stale version");
+    } catch (PreconditionFailedException ex) {
+      assertEquals(updatedVersion, asyncCdmiObjectDao.getCdmiObjectByPath(path).getVersion());
+    }
+
+    assertNotNull(asyncCdmiObjectDao.deleteCdmiObjectByPath(path, updatedVersion));
+    assertNull(asyncCdmiObjectDao.getCdmiObjectByPath(path));
+  }
+
+  @Test
+  public void testScriptsAfterScriptFlush() {
+    redisTemplate.execute((RedisCallback<Void>) connection -> {
+      connection.scriptFlush();
+      return null;
+    });
+
+    String path = Paths.get("/", "asyncScriptFlush").toString();
+    Container container = containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    assertNotNull(container);
+    assertEquals(container.getObjectId(),
+        asyncCdmiObjectDao.getCdmiObjectByPathAsync(path, 0, -1).join().getObjectId());
+  }
+
+  @Test
+  public void testDeleteByPathAsync() {
+    String path = Paths.get("/", "asyncDelete").toString();
+    String childPath = Paths.get(path, "child").toString();
+    containerDao.createByPath(childPath, Container.fromJson(new JSONObject("{}")));
+
+    CdmiObject deleted = asyncCdmiObjectDao.deleteCdmiObjectByPathAsync(childPath).join();
+
+    assertNotNull(deleted);
+    assertNull(asyncCdmiObjectDao.getCdmiObjectByPathAsync(childPath, 0, -1).join());
+    assertEquals(0, containerDao.findByPath(path).getChildren().length());
+  }
+
+  @Test
+  public void testCreateChildren() {
+    String path = Paths.get("/", "createChildren" + System.nanoTime()).toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    // more children than one script call links into the parent
+    List<String> names = new ArrayList<>();
+    List<Container> containerRequests = new ArrayList<>();
+    for (int i = 0; i < 1500; i++) {
+      names.add("child" + i);
+      JSONObject metadata = new JSONObject().put("i", i);
+      containerRequests.add(Container.fromJson(new JSONObject().put("metadata", metadata)));
+    }
+    names.add("child7");
+    containerRequests.add(Container.fromJson(new JSONObject("{}")));
+    List<Container> containers = containerDao.createChildrenByPath(path, names, containerRequests);
+
+    assertEquals(names.size(), containers.size());
+    assertNull(containers.get(names.size() - 1));
+    Container container = containerDao.findByPath(Paths.get(path, "child7").toString());
+    assertEquals(containers.get(7).getObjectId(), container.getObjectId());
+    assertEquals(7, container.getMetadata().getInt("i"));
+    assertEquals("0-1499", containerDao.findByPath(path).getChildrenrange());
+
+    containers = containerDao.createChildrenByPath(Paths.get(path, "missing").toString(),
+        Arrays.asList("child"), Arrays.asList(Container.fromJson(new JSONObject("{}"))));
+    assertNull(containers.get(0));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.cdmiserver.dao.cache.CachingCdmiObjectDao;
+import edu.kit.scc.cdmiserver.dao.redis.RedisCacheInvalidation;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.file.Paths;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("redis-embedded")
+public class CacheRedisTest {
+
+  @Autowired
+  CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  ContainerDao containerDao;
+
+  @Autowired
+  StringRedisTemplate redisTemplate;
+
+  @Test
+  public void testCacheHit() {
+    CachingCdmiObjectDao cache = (CachingCdmiObjectDao) cdmiObjectDao;
+    String path = Paths.get("/", "cacheHit").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    cdmiObjectDao.getCdmiObjectByPath(path);
+    long hits = cache.getHits();
+    cdmiObjectDao.getCdmiObjectByPath(path);
+
+    assertEquals(hits + 1, cache.getHits());
+  }
+
+  @Test
+  public void testCachedObjectsAreCopies() {
+    String path = Paths.get("/", "cacheCopy").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    container.getMetadata().put("modified", true);
+
+    container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    assertFalse(container.getMetadata().has("modified"));
+  }
+
+  @Test
+  public void testCachedObjectsKeepVersion() {
+    String path = Paths.get("/", "cacheVersion").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    String version = container.getVersion();
+    assertNotNull(version);
+    assertEquals(version, cdmiObjectDao.getCdmiObjectByPath(path).getVersion());
+
+    container.getMetadata().put("updated", System.nanoTime());
+    cdmiObjectDao.updateCdmiObject(container, path);
+    assertNotEquals(version, cdmiObjectDao.getCdmiObjectByPath(path).getVersion());
+  }
+
+  @Test
+  public void testCreateChildEvictsParent() {
+    String path = Paths.get("/", "cacheParent").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    Container parent = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    cdmiObjectDao.getCdmiObject(parent.getObjectId());
+
+    containerDao.createByPath(Paths.get(path, "child").toString(),
+        Container.fromJson(new JSONObject("{}")));
+
+    assertEquals("child", containerDao.findByPath(path).getChildren().get(0));
+    assertEquals("child", containerDao.findByObjectId(parent.getObjectId()).getChildren().get(0));
+  }
+
+  @Test
+  public void testRemoteEviction() throws InterruptedException {
+    String path = Paths.get("/", "cacheRemote").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+
+    // another server instance updates the object
+    container.getMetadata().put("remote", true);
+    redisTemplate.opsForValue().set("objectid:" + container.getObjectId(),
+        container.toJson().toString());
+    redisTemplate.convertAndSend(RedisCacheInvalidation.CHANNEL,
+        "otherInstance\nobjectid:" + container.getObjectId());
+
+    boolean evicted = false;
+    for (int i = 0; i < 50 && !evicted; i++) {
+      Thread.sleep(100);
+      evicted = ((Container) cdmiObjectDao.getCdmiObjectByPath(path)).getMetadata().has("remote");
+    }
+    assertTrue(evicted);
+  }
+}
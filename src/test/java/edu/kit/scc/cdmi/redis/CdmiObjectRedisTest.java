@@ -9,21 +9,36 @@
 
 package edu.kit.scc.cdmi.redis;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import edu.kit.scc.CdmiServerApplication;
 
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.BinaryRecordCodec;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.nio.file.Paths;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
 @ActiveProfiles("redis-embedded")
@@ -34,6 +49,12 @@ public class CdmiObjectRedisTest {
   @Autowired
   CdmiObjectDao cdmiObjectDao;
 
+  @Autowired
+  ContainerDao containerDao;
+
+  @Autowired
+  StringRedisTemplate redisTemplate;
+
   @Test
   public void redisSetupTest() {
 
@@ -50,4 +71,77 @@ public class CdmiObjectRedisTest {
     log.debug(createdObject.toJson().toString());
   }
 
+  @Test
+  public void testStoredRecordIsBinary() {
+    CdmiObject cdmiObject = cdmiObjectDao.createCdmiObject(new CdmiObject());
+
+    byte[] record = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection
+        .get(("objectid:" + cdmiObject.getObjectId()).getBytes()));
+
+    assertEquals(BinaryRecordCodec.MAGIC, record[0]);
+  }
+
+  @Test
+  public void testReadJsonRecord() {
+    DataObject dataObject = new DataObject("legacy", "/", "parentId");
+    redisTemplate.opsForValue().set("/legacy", dataObject.getObjectId());
+    redisTemplate.opsForValue().set("objectid:" + dataObject.getObjectId(),
+        dataObject.toJson().toString());
+
+    CdmiObject readObject = cdmiObjectDao.getCdmiObjectByPath("/legacy");
+
+    assertTrue(readObject instanceof DataObject);
+    assertEquals(dataObject.getObjectId(), readObject.getObjectId());
+  }
+
+  @Test
+  public void testCreateAtTakenPath() {
+    String path = Paths.get("/", "takenPath").toString();
+    Container container = containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    // the object at the path is returned
+    Container other = new Container("takenPath", "/", container.getParentId());
+    CdmiObject existing = cdmiObjectDao.createChildCdmiObject(other, path, "/");
+    assertEquals(container.getObjectId(), existing.getObjectId());
+
+    // a path referring to an object that is gone is taken over
+    String danglingPath = Paths.get("/", "danglingPath").toString();
+    redisTemplate.opsForValue().set(danglingPath, new CdmiObject().getObjectId());
+    Container created =
+        containerDao.createByPath(danglingPath, Container.fromJson(new JSONObject("{}")));
+    assertNotNull(created);
+    assertEquals(created.getObjectId(),
+        cdmiObjectDao.getCdmiObjectByPath(danglingPath).getObjectId());
+  }
+
+  @Test
+  public void testCompareAndSet() {
+    String path = Paths.get("/", "compareAndSet").toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    String version = container.getVersion();
+
+    // the script compares with the version computed when the record was read
+    container.getMetadata().put("updated", System.nanoTime());
+    assertNotNull(cdmiObjectDao.updateCdmiObject(container, path, version));
+    String updatedVersion = cdmiObjectDao.getCdmiObjectByPath(path).getVersion();
+    assertNotEquals(version, updatedVersion);
+
+    container.getMetadata().put("updated", System.nanoTime());
+    try {
+      cdmiObjectDao.updateCdmiObject(container, path, version);
+      fail("updated at a stale version");
+    } catch (PreconditionFailedException ex) {
+      assertEquals(updatedVersion, cdmiObjectDao.getCdmiObjectByPath(path).getVersion());
+    }
+    try {
+      cdmiObjectDao.deleteCdmiObjectByPath(path, version);
+      fail("deleted at a stale version");
+    } catch (PreconditionFailedException ex) {
+      assertNotNull(cdmiObjectDao.getCdmiObjectByPath(path));
+    }
+
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPath(path, updatedVersion));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath(path));
+  }
 }
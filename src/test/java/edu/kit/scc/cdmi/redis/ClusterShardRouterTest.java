@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import edu.kit.scc.cdmiserver.dao.redis.ClusterShardRouter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ClusterShardRouterTest {
+
+  private ClusterShardRouter shardRouter;
+
+  private StringRedisTemplate first;
+
+  private StringRedisTemplate second;
+
+  private StringRedisTemplate third;
+
+  /**
+   * Gets a slot range of a CLUSTER SLOTS reply, served by a master on localhost.
+   */
+  private static List<Object> getSlotRange(long start, long end, long port) {
+    return Arrays.asList(start, end,
+        Arrays.asList("127.0.0.1".getBytes(StandardCharsets.UTF_8), port));
+  }
+
+  @Before
+  public void setup() {
+    // the nodes aren't connected to before a key is read or written
+    shardRouter = new ClusterShardRouter();
+    shardRouter.setSlots(Arrays.asList(getSlotRange(0, 5460, 7000),
+        getSlotRange(5461, 10922, 7001), getSlotRange(10923, 16383, 7002)));
+    List<StringRedisTemplate> shards = shardRouter.getShards();
+    assertEquals(3, shards.size());
+    first = shards.get(0);
+    second = shards.get(1);
+    third = shards.get(2);
+  }
+
+  @After
+  public void teardown() {
+    shardRouter.stop();
+  }
+
+  @Test
+  public void testSlotLookup() {
+    // slot 5061, 9995 and 12182
+    assertSame(first, shardRouter.getShard("bar"));
+    assertSame(second, shardRouter.getShard("qux"));
+    assertSame(third, shardRouter.getShard("foo"));
+  }
+
+  @Test
+  public void testHashTags() {
+    assertSame(third, shardRouter.getShard("{foo}bar"));
+    assertSame(first, shardRouter.getShard("foo{bar}"));
+    assertSame(second, shardRouter.getShard("bar{qux}foo{bar}"));
+    // an empty hash tag doesn't count
+    assertNotSame(shardRouter.getShard("foo"), shardRouter.getShard("{}foo"));
+  }
+
+  @Test
+  public void testObjectKeysColocated() {
+    List<String> keys = new ArrayList<>();
+    keys.add("{/container}/container/file");
+    keys.add("objectid:{/container}0001869F0018");
+    keys.add("children:{/container}0001869F0017");
+    for (String key : keys) {
+      assertSame(shardRouter.getShard(keys.get(0)), shardRouter.getShard(key));
+    }
+  }
+
+  @Test
+  public void testUnservedSlot() {
+    shardRouter.setSlots(Arrays.asList(getSlotRange(0, 10922, 7000)));
+    assertSame(shardRouter.getShard("bar"), shardRouter.getShard("qux"));
+    try {
+      shardRouter.getShard("foo");
+      fail("routed a key to a slot no node serves");
+    } catch (IllegalStateException ex) {
+      assertEquals("slot 12182 is not served by any cluster node", ex.getMessage());
+    }
+  }
+}
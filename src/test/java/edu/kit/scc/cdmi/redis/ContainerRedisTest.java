@@ -16,20 +16,29 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.cdmiserver.dao.redis.ChildrenIndexMigration;
+import edu.kit.scc.cdmiserver.dao.redis.PathIndexMigration;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.util.Projection;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
@@ -39,6 +48,18 @@ public class ContainerRedisTest {
   @Autowired
   ContainerDao containerDao;
 
+  @Autowired
+  CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  StringRedisTemplate redisTemplate;
+
+  @Autowired
+  PathIndexMigration pathIndexMigration;
+
+  @Autowired
+  ChildrenIndexMigration childrenIndexMigration;
+
   private static final Logger log = LoggerFactory.getLogger(ContainerRedisTest.class);
 
   @Test
@@ -167,6 +188,103 @@ public class ContainerRedisTest {
     containerDao.deleteByPath(Paths.get("/", containerName).toString());
   }
 
+  @Test
+  public void testParentMetadataAfterDeleteContainer() {
+    String containerName = "deleteMetadataTest";
+
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    Container container =
+        containerDao.createByPath(Paths.get("/", containerName).toString(), containerRequest);
+    containerDao.createByPath(Paths.get("/", containerName, "child1").toString(),
+        containerRequest);
+    containerDao.createByPath(Paths.get("/", containerName, "child2").toString(),
+        containerRequest);
+
+    Container parentContainer = containerDao.findByPath(Paths.get("/", containerName).toString());
+    assertEquals("0-1", parentContainer.getChildrenrange());
+
+    containerDao.deleteByPath(Paths.get("/", containerName, "child1").toString());
+
+    parentContainer = containerDao.findByPath(Paths.get("/", containerName).toString());
+    assertEquals("0", parentContainer.getChildrenrange());
+    assertEquals("child2", parentContainer.getChildren().get(0));
+
+    parentContainer = containerDao.findByObjectId(container.getObjectId());
+    assertEquals("0", parentContainer.getChildrenrange());
+    assertNull(containerDao.findByPath(Paths.get("/", containerName, "child1").toString()));
+  }
+
+  @Test
+  public void testFindChildrenRange() {
+    String containerName = "childrenRangeTest";
+
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    containerDao.createByPath(Paths.get("/", containerName).toString(), containerRequest);
+    for (String child : new String[] {"d", "a", "c", "b"}) {
+      containerDao.createByPath(Paths.get("/", containerName, child).toString(), containerRequest);
+    }
+
+    Container container = (Container) cdmiObjectDao
+        .getCdmiObjectByPath(Paths.get("/", containerName).toString(), 1, 2);
+
+    assertEquals("0-3", container.getChildrenrange());
+    assertEquals(2, container.getChildren().length());
+    assertEquals("b", container.getChildren().get(0));
+    assertEquals("c", container.getChildren().get(1));
+  }
+
+  @Test
+  public void testFindProjection() {
+    String containerName = "projectionTest";
+
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    containerDao.createByPath(Paths.get("/", containerName).toString(), containerRequest);
+    for (String child : new String[] {"c", "a", "b"}) {
+      containerDao.createByPath(Paths.get("/", containerName, child).toString(), containerRequest);
+    }
+    String path = Paths.get("/", containerName).toString();
+
+    Container container =
+        (Container) cdmiObjectDao.getCdmiObjectByPath(path, Projection.parse("objectID"));
+    assertNull(container.getChildren());
+    assertNull(container.getChildrenrange());
+
+    container = (Container) cdmiObjectDao.getCdmiObject(container.getObjectId(),
+        Projection.parse("objectID;childrenrange"));
+    assertNull(container.getChildren());
+    assertEquals("0-2", container.getChildrenrange());
+
+    container =
+        (Container) cdmiObjectDao.getCdmiObjectByPath(path, Projection.parse("children:1-2"));
+    assertEquals("0-2", container.getChildrenrange());
+    assertEquals(2, container.getChildren().length());
+    assertEquals("b", container.getChildren().get(0));
+  }
+
+  @Test
+  public void testMigrateInlineChildren() {
+    Container container = new Container("migrationTest", "/", "parentId");
+    container.setChildren(new JSONArray().put("child1").put("child2"));
+    container.setChildrenrange("0-1");
+
+    redisTemplate.opsForValue().set("/migrationTest", container.toJson().toString());
+    redisTemplate.opsForValue().set("objectid:" + container.getObjectId(),
+        container.toJson().toString());
+
+    assertTrue(pathIndexMigration.migrate() >= 1);
+    assertTrue(childrenIndexMigration.migrate() >= 1);
+
+    assertEquals(container.getObjectId(), redisTemplate.opsForValue().get("/migrationTest"));
+    JSONObject stored = new JSONObject(
+        redisTemplate.opsForValue().get("objectid:" + container.getObjectId()));
+    assertFalse(stored.has("children"));
+
+    Container migratedContainer = containerDao.findByPath("/migrationTest");
+    assertEquals("0-1", migratedContainer.getChildrenrange());
+    assertEquals("child1", migratedContainer.getChildren().get(0));
+    assertEquals("child2", migratedContainer.getChildren().get(1));
+  }
+
   @Test
   public void testCreateContainerFailsForInvalidPath() {
     String containerName = "invalidContainer";
@@ -175,4 +293,33 @@ public class ContainerRedisTest {
 
     assertNull(container);
   }
+
+  @Test
+  public void testCreateChildren() {
+    String path = Paths.get("/", "createChildren" + System.nanoTime()).toString();
+    containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+
+    // more children than one script call links into the parent
+    List<String> names = new ArrayList<>();
+    List<Container> containerRequests = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      names.add("child" + i);
+      JSONObject metadata = new JSONObject().put("i", i);
+      containerRequests.add(Container.fromJson(new JSONObject().put("metadata", metadata)));
+    }
+    names.add("child7");
+    containerRequests.add(Container.fromJson(new JSONObject("{}")));
+    List<Container> containers = containerDao.createChildrenByPath(path, names, containerRequests);
+
+    assertEquals(names.size(), containers.size());
+    assertNull(containers.get(names.size() - 1));
+    Container container = containerDao.findByPath(Paths.get(path, "child7").toString());
+    assertEquals(containers.get(7).getObjectId(), container.getObjectId());
+    assertEquals(7, container.getMetadata().getInt("i"));
+    assertEquals("0-2499", containerDao.findByPath(path).getChildrenrange());
+
+    containers = containerDao.createChildrenByPath(Paths.get(path, "missing").toString(),
+        Arrays.asList("child"), Arrays.asList(Container.fromJson(new JSONObject("{}"))));
+    assertNull(containers.get(0));
+  }
 }
@@ -13,8 +13,9 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({CapabilityRedisTest.class, CdmiObjectRedisTest.class, ContainerRedisTest.class,
-    DataObjectRedisTest.class})
+@Suite.SuiteClasses({AsyncRedisTest.class, CacheRedisTest.class, CapabilityRedisTest.class,
+    CdmiObjectRedisTest.class, ContainerRedisTest.class, DataObjectRedisTest.class,
+    ShardedRedisTest.class, ClusterShardRouterTest.class})
 public class RedisTestSuite {
 
 
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.cdmiserver.dao.cache.CachingCdmiObjectDao;
+import edu.kit.scc.cdmiserver.dao.redis.ShardRouter;
+import edu.kit.scc.cdmiserver.dao.redis.ShardedCdmiObjectDaoImpl;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles({"redis-embedded", "redis-sharded"})
+@TestPropertySource(
+    properties = {"cdmi.redis.shards=localhost:63800,localhost:63801,localhost:63802"})
+public class ShardedRedisTest {
+
+  @Autowired
+  CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  ContainerDao containerDao;
+
+  @Autowired
+  ShardRouter shardRouter;
+
+  private Container createContainer(String path) {
+    return containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+  }
+
+  private List<StringRedisTemplate> getShardsHolding(String key) {
+    List<StringRedisTemplate> shards = new ArrayList<>();
+    for (StringRedisTemplate shard : shardRouter.getShards()) {
+      if (shard.hasKey(key)) {
+        shards.add(shard);
+      }
+    }
+    return shards;
+  }
+
+  @Test
+  public void testShardedDao() {
+    CdmiObjectDao dao = cdmiObjectDao instanceof CachingCdmiObjectDao
+        ? ((CachingCdmiObjectDao) cdmiObjectDao).getCdmiObjectDao() : cdmiObjectDao;
+
+    assertEquals(3, shardRouter.getShards().size());
+    assertTrue(dao instanceof ShardedCdmiObjectDaoImpl);
+  }
+
+  @Test
+  public void testKeysColocatedWithParentChildren() {
+    String path = Paths.get("/", "shardedColocated").toString();
+    String childPath = Paths.get(path, "child").toString();
+    Container parent = createContainer(path);
+    Container child = createContainer(childPath);
+
+    List<StringRedisTemplate> shards = getShardsHolding("{" + path + "}" + childPath);
+    assertEquals(1, shards.size());
+    StringRedisTemplate shard = shards.get(0);
+    assertTrue(shard.hasKey("objectid:{" + path + "}" + child.getObjectId()));
+    assertEquals(Long.valueOf(1),
+        shard.opsForZSet().zCard("children:{" + path + "}" + parent.getObjectId()));
+  }
+
+  @Test
+  public void testObjectsSpreadOverShards() {
+    Set<StringRedisTemplate> used = new HashSet<>();
+    for (int i = 0; i < 20; i++) {
+      String path = Paths.get("/", "shardedSpread" + i).toString();
+      String childPath = Paths.get(path, "child").toString();
+      createContainer(path);
+      createContainer(childPath);
+      used.addAll(getShardsHolding("{" + path + "}" + childPath));
+    }
+
+    assertTrue(used.size() > 1);
+  }
+
+  @Test
+  public void testFindById() {
+    String path = Paths.get("/", "shardedById").toString();
+    Container parent = createContainer(path);
+    createContainer(Paths.get(path, "child").toString());
+
+    CdmiObject found = cdmiObjectDao.getCdmiObject(parent.getObjectId());
+
+    assertNotNull(found);
+    assertEquals(path, Paths.get(found.toJson().getString("parentURI"),
+        found.toJson().getString("objectName")).toString());
+    assertEquals("0", found.toJson().getString("childrenrange"));
+  }
+
+  @Test
+  public void testCreateWithoutParentFails() {
+    String parentPath = Paths.get("/", "shardedMissing").toString();
+    String path = Paths.get(parentPath, "child").toString();
+    Container container = new Container("child", parentPath, new CdmiObject().getObjectId());
+
+    assertNull(cdmiObjectDao.createChildCdmiObject(container, path, parentPath));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath(path));
+  }
+
+  @Test
+  public void testDeleteChild() {
+    String path = Paths.get("/", "shardedDelete").toString();
+    String childPath = Paths.get(path, "child").toString();
+    createContainer(path);
+    Container child = createContainer(childPath);
+    createContainer(Paths.get(childPath, "grandchild").toString());
+
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPath(Paths.get(childPath, "grandchild")
+        .toString()));
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPath(childPath));
+
+    assertNull(cdmiObjectDao.getCdmiObjectByPath(childPath));
+    assertNull(cdmiObjectDao.getCdmiObject(child.getObjectId()));
+    assertEquals(0, containerDao.findByPath(path).getChildren().length());
+    assertTrue(getShardsHolding("children:{" + childPath + "}" + child.getObjectId()).isEmpty());
+    assertTrue(getShardsHolding("objectpath:" + child.getObjectId()).isEmpty());
+  }
+
+  @Test
+  public void testCompareAndSet() {
+    String path = Paths.get("/", "shardedCompareAndSet").toString();
+    createContainer(path);
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+    String version = container.getVersion();
+
+    container.getMetadata().put("updated", System.nanoTime());
+    cdmiObjectDao.updateCdmiObject(container, path, version);
+    String updatedVersion = cdmiObjectDao.getCdmiObjectByPath(path).getVersion();
+    assertNotEquals(version, updatedVersion);
+
+    try {
+      cdmiObjectDao.deleteCdmiObjectByPath(path, version);
+      fail("deleted at a stale version");
+    } catch (PreconditionFailedException ex) {
+      assertNotNull(cdmiObjectDao.getCdmiObjectByPath(path));
+    }
+
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPath(path, updatedVersion));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath(path));
+  }
+
+  @Test
+  public void testConcurrentCreates() throws InterruptedException {
+    String path = Paths.get("/", "shardedConcurrent").toString();
+    createContainer(path);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      String prefix = "thread" + i + "-";
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < 25; j++) {
+          createContainer(Paths.get(path, prefix + j).toString());
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals("0-99", containerDao.findByPath(path).getChildrenrange());
+  }
+}
@@ -10,15 +10,25 @@
 package edu.kit.scc.cdmi.rest;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
 
 import org.apache.commons.codec.binary.Base64;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.boot.test.WebIntegrationTest;
@@ -28,6 +38,12 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.response.Response;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
 @WebIntegrationTest
@@ -36,6 +52,9 @@ public class ContainerTest {
 
   private static final Logger log = LoggerFactory.getLogger(ContainerTest.class);
 
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
   @Value("${rest.user}")
   private String restUser;
 
@@ -96,6 +115,51 @@ public class ContainerTest {
     log.debug("Response {}", response.asString());
   }
 
+  @Test
+  public void testGetRootContainerProjection() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    Response response = given().urlEncodingEnabled(false)
+        .header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").when().get("/?objectID;metadata:cdmi_")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    log.debug("Response {}", response.asString());
+    JSONObject json = new JSONObject(response.asString());
+    assertEquals(2, json.length());
+    assertTrue(json.has("objectID"));
+    assertFalse(json.has("children"));
+    for (String name : json.getJSONObject("metadata").keySet()) {
+      assertTrue(name, name.startsWith("cdmi_"));
+    }
+  }
+
+  @Test
+  public void testGetRootContainerNotModified() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").when().get("/").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    String entityTag = response.getHeader("ETag");
+    assertNotNull(entityTag);
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .header("If-None-Match", entityTag).when().get("/").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_MODIFIED).extract().response();
+
+    assertEquals(entityTag, response.getHeader("ETag"));
+    assertEquals("", response.asString());
+
+    // another selection of fields is another representation
+    response = given().urlEncodingEnabled(false).header("Authorization", "Basic " + authString)
+        .and().header("Content-Type", "application/cdmi-object").and()
+        .header("If-None-Match", entityTag).when().get("/?objectID").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertNotEquals(entityTag, response.getHeader("ETag"));
+  }
+
   @Test
   public void testGetContainerNotFound() {
     String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
@@ -117,4 +181,126 @@ public class ContainerTest {
 
     log.debug("Response {}", response.asString());
   }
+
+  @Test
+  public void testBatch() {
+    String containerName = "batchContainer" + System.nanoTime();
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-container").and().body("{}".getBytes()).when()
+        .put("/" + containerName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    String batch = "{\"op\":\"create\",\"path\":\"sub\","
+        + "\"objectType\":\"application/cdmi-container\"}\n"
+        + "{\"op\":\"create\",\"path\":\"sub/a\",\"metadata\":{\"color\":\"red\"}}\n"
+        + "{\"op\":\"create\",\"path\":\"b\",\"value\":\"hello\"}\n"
+        + "{\"op\":\"create\",\"path\":\"b\"}\n"
+        + "{\"op\":\"update\",\"path\":\"sub/a\",\"metadata\":{\"color\":\"blue\"}}\n"
+        + "{\"op\":\"delete\",\"path\":\"b\"}\n"
+        + "{\"op\":\"create\",\"path\":\"../escaped\"}\n"
+        + "{\"op\":\"update\",\"path\":\"missing\"}\n"
+        + "{\"op\":\"rename\",\"path\":\"sub\"}\n";
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/x-ndjson").and().body(batch.getBytes()).when()
+        .post("/" + containerName).then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+
+    log.debug("Response {}", response.asString());
+    int[] statuses = new int[9];
+    String[] results = response.asString().split("\n");
+    assertEquals(statuses.length, results.length);
+    for (String result : results) {
+      JSONObject json = new JSONObject(result);
+      statuses[json.getInt("index")] = json.getInt("status");
+    }
+    assertArrayEquals(new int[] {201, 201, 201, 204, 204, 204, 400, 404, 400}, statuses);
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + containerName + "/sub/a")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    assertEquals("blue", response.jsonPath().getString("metadata.color"));
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-container").when().get("/" + containerName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    List<String> children = response.jsonPath().getList("children");
+    assertTrue(children.contains("sub"));
+    assertFalse(children.contains("b"));
+
+    // creating an existing object updates it, like a PUT
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/x-ndjson").and()
+        .body("{\"op\":\"create\",\"path\":\"sub/a\",\"metadata\":{\"color\":\"green\"}}"
+            .getBytes())
+        .when().post("/" + containerName).then().statusCode(org.apache.http.HttpStatus.SC_OK)
+        .extract().response();
+    assertEquals(204, new JSONObject(response.asString().trim()).getInt("status"));
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + containerName + "/sub/a")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    assertEquals("green", response.jsonPath().getString("metadata.color"));
+
+    // a JSON array of operations
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/json").and()
+        .body("[{\"op\":\"create\",\"path\":\"c\"}, {\"op\":\"delete\",\"path\":\"c\"}]"
+            .getBytes())
+        .when().post("/" + containerName).then().statusCode(org.apache.http.HttpStatus.SC_OK)
+        .extract().response();
+    results = response.asString().split("\n");
+    assertEquals(2, results.length);
+    JSONObject created = new JSONObject(results[0]);
+    assertEquals("/" + containerName + "/c", created.getString("path"));
+    assertEquals(201, created.getInt("status"));
+    assertTrue(created.has("objectID"));
+    assertEquals(204, new JSONObject(results[1]).getInt("status"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/x-ndjson").and().body(batch.getBytes()).when()
+        .post("/" + containerName + "Missing").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void testUpdateMetadataWhileCreatingChildren() throws Exception {
+    String containerName = "updatedWhileCreating" + System.nanoTime();
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-container").and().body("{}".getBytes()).when()
+        .put("/" + containerName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    // the metadata is replaced while the children are linked to the container's record
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> writes = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        String body = "{\"metadata\":{\"update\":\"" + i + "\"}}";
+        writes.add(executor.submit(() -> given().header("Authorization", "Basic " + authString)
+            .and().header("Content-Type", "application/cdmi-container").and()
+            .body(body.getBytes()).when().put("/" + containerName).then().extract()
+            .statusCode()));
+        String childName = "child" + i;
+        writes.add(executor.submit(() -> given().header("Authorization", "Basic " + authString)
+            .and().header("Content-Type", "application/cdmi-object").and()
+            .body("{\"value\":\"value\"}".getBytes()).when()
+            .put("/" + containerName + "/" + childName).then().extract().statusCode()));
+      }
+      for (Future<Integer> write : writes) {
+        assertEquals(org.apache.http.HttpStatus.SC_NO_CONTENT, (int) write.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // the listing of the response is merged with the directory, so the record is checked
+    Container container = (Container) cdmiObjectDao.getCdmiObjectByPath("/" + containerName);
+    List<Object> children = container.getChildren().toList();
+    for (int i = 0; i < 40; i++) {
+      assertTrue("child" + i + " in " + children, children.contains("child" + i));
+    }
+    assertEquals(children.toString(), "0-39", container.getChildrenrange());
+    assertTrue(container.getMetadata().has("update"));
+  }
 }
@@ -10,6 +10,10 @@
 package edu.kit.scc.cdmi.rest;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
 
@@ -26,8 +30,18 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.config.EncoderConfig;
 import com.jayway.restassured.response.Response;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
 @WebIntegrationTest
@@ -84,6 +98,482 @@ public class DataObjectTest {
     // log.debug("Response {}", response.asString());
   }
 
+  @Test
+  public void testPutAndGetNonCdmiDataObject() {
+    String objectName = "nonCdmiData";
+    byte[] content = new byte[100000];
+    new Random(1).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(content).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertTrue(response.getContentType().startsWith("application/octet-stream"));
+    assertArrayEquals(content, response.asByteArray());
+
+    // the stored mime type is the sent one, so keep rest-assured from adding a charset
+    given().config(RestAssured.config().encoderConfig(
+        EncoderConfig.encoderConfig().appendDefaultContentCharsetToContentTypeIfUndefined(false)))
+        .header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "image/png").and().body("replaced".getBytes()).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("image/png", response.jsonPath().getString("mimetype"));
+  }
+
+  @Test
+  public void testGetNonCdmiDataObjectRanges() {
+    String objectName = "rangeData";
+    byte[] content = new byte[10000];
+    new Random(2).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(content).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").header("Range", "bytes=100-199").when()
+        .get("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_PARTIAL_CONTENT)
+        .extract().response();
+
+    assertEquals("bytes 100-199/10000", response.getHeader("Content-Range"));
+    assertArrayEquals(Arrays.copyOfRange(content, 100, 200), response.asByteArray());
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").header("Range", "bytes=-10").when()
+        .get("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_PARTIAL_CONTENT)
+        .extract().response();
+
+    assertArrayEquals(Arrays.copyOfRange(content, 9990, 10000), response.asByteArray());
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").header("Range", "bytes=0-9,5000-5009")
+        .when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_PARTIAL_CONTENT).extract().response();
+
+    assertTrue(response.getContentType().startsWith("multipart/byteranges"));
+    String body = new String(response.asByteArray(), StandardCharsets.ISO_8859_1);
+    assertTrue(body.contains("Content-Range: bytes 0-9/10000"));
+    assertTrue(body.contains("Content-Range: bytes 5000-5009/10000"));
+    assertTrue(body.contains(
+        new String(Arrays.copyOfRange(content, 5000, 5010), StandardCharsets.ISO_8859_1)));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").header("Range", "bytes=10000-").when()
+        .get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+  }
+
+  @Test
+  public void testGetDataObjectValueRange() {
+    String objectName = "valueRangeData";
+    byte[] content = new byte[10000];
+    new Random(3).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(content).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    Response response = given().urlEncodingEnabled(false)
+        .header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when()
+        .get("/" + objectName + "?value:9990-10009;valuerange;valuetransferencoding").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("9990-9999", response.jsonPath().getString("valuerange"));
+    assertEquals("base64", response.jsonPath().getString("valuetransferencoding"));
+    assertArrayEquals(Arrays.copyOfRange(content, 9990, 10000),
+        Base64.decodeBase64(response.jsonPath().getString("value")));
+  }
+
+  @Test
+  public void testUpdateDataObjectRanges() {
+    String objectName = "partialData";
+    byte[] content = new byte[1000];
+    new Random(4).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(content).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    byte[] part = new byte[100];
+    new Random(5).nextBytes(part);
+    System.arraycopy(part, 0, content, 200, part.length);
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and()
+        .header("Content-Range", "bytes 200-299/*").and().body(part).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and()
+        .header("Content-Range", "bytes 200-299/*").and().body(new byte[10]).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+
+    System.arraycopy(part, 0, content, 900, part.length);
+    given().urlEncodingEnabled(false).header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body(("{\"value\":\"" + Base64.encodeBase64String(part) + "\"}").getBytes()).when()
+        .put("/" + objectName + "?value:900-999").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    byte[] appended = Arrays.copyOf(content, content.length + part.length);
+    System.arraycopy(part, 0, appended, content.length, part.length);
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(part).when()
+        .put("/" + objectName + "?append").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertArrayEquals(appended, response.asByteArray());
+  }
+
+  @Test
+  public void testPartialUpload() throws Exception {
+    String objectName = "partialUploadData";
+    byte[] content = new byte[64000];
+    new Random(6).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and()
+        .header("X-CDMI-Partial", "true").and().body(new byte[0]).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    // all chunks but the last one in parallel
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> chunks = new ArrayList<>();
+      for (int i = 0; i < 7; i++) {
+        int first = i * 8000;
+        chunks.add(executor.submit(() -> given().header("Authorization", "Basic " + authString)
+            .and().header("Content-Type", "application/octet-stream").and()
+            .header("X-CDMI-Partial", "true").and()
+            .header("Content-Range", "bytes " + first + "-" + (first + 7999) + "/64000").and()
+            .body(Arrays.copyOfRange(content, first, first + 8000)).when()
+            .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT)));
+      }
+      for (Future<?> chunk : chunks) {
+        chunk.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("Processing", response.jsonPath().getString("completionStatus"));
+    assertEquals("87", response.jsonPath().getString("percentComplete"));
+
+    // publishing fails while a chunk is missing
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(new byte[0]).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CONFLICT);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and()
+        .header("Content-Range", "bytes 56000-63999/64000").and()
+        .body(Arrays.copyOfRange(content, 56000, 64000)).when().put("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("Complete", response.jsonPath().getString("completionStatus"));
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertArrayEquals(content, response.asByteArray());
+  }
+
+  @Test
+  public void testPutCdmiDataObjectValue() {
+    String objectName = "cdmiValueData";
+    byte[] content = new byte[1000000];
+    new Random(7).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body(("{\"metadata\":{\"color\":\"red\"},\"value\":\"" + Base64.encodeBase64String(content)
+            + "\",\"valuetransferencoding\":\"base64\"}").getBytes())
+        .when().put("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertArrayEquals(content, response.asByteArray());
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName + "?metadata")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("red", response.jsonPath().getString("metadata.color"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"not closed".getBytes()).when().put("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void testIfMatch() {
+    String objectName = "ifMatchData";
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"metadata\":{\"color\":\"red\"},\"value\":\"value\"}".getBytes()).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    String entityTag = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().header("ETag");
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and().header("If-Match", entityTag)
+        .and().body("{\"metadata\":{\"color\":\"blue\"}}".getBytes()).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    // the object changed since the tag was read
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and().header("If-Match", entityTag)
+        .and().body("{\"metadata\":{\"color\":\"green\"}}".getBytes()).when()
+        .put("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_PRECONDITION_FAILED);
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-Match", entityTag).when().delete("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_PRECONDITION_FAILED);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("blue", response.jsonPath().getString("metadata.color"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-Match", response.getHeader("ETag")).when().delete("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-Match", "*").when().delete("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_PRECONDITION_FAILED);
+  }
+
+  @Test
+  public void testEntityTagAfterAppend() {
+    String objectName = "appendTagData";
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body("first".getBytes())
+        .when().put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    String entityTag = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().header("ETag");
+
+    // the value isn't part of the record, every append has to change the tag anyway
+    for (int i = 0; i < 2; i++) {
+      given().header("Authorization", "Basic " + authString).and()
+          .header("Content-Type", "application/octet-stream").and().body("-next".getBytes())
+          .when().put("/" + objectName + "?append").then()
+          .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+      String appendedTag = given().header("Authorization", "Basic " + authString).and()
+          .header("Accept", "application/cdmi-object").and().header("If-None-Match", entityTag)
+          .when().get("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_OK)
+          .extract().header("ETag");
+
+      assertNotEquals(entityTag, appendedTag);
+      entityTag = appendedTag;
+    }
+  }
+
+  @Test
+  public void testIfMatchRace() throws Exception {
+    String objectName = "ifMatchRaceData";
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"metadata\":{\"color\":\"red\"},\"value\":\"value\"}".getBytes()).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    String entityTag = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().header("ETag");
+
+    // the same record with different values, all with the same tag
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Integer> written = new ArrayList<>();
+    try {
+      List<Future<Integer>> writes = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        String body = "{\"metadata\":{\"color\":\"blue\"},\"value\":\"value" + i + "\"}";
+        writes.add(executor.submit(() -> given().header("Authorization", "Basic " + authString)
+            .and().header("Content-Type", "application/cdmi-object").and()
+            .header("If-Match", entityTag).and().body(body.getBytes()).when()
+            .put("/" + objectName).then().extract().statusCode()));
+      }
+      for (int i = 0; i < writes.size(); i++) {
+        int statusCode = writes.get(i).get();
+        if (statusCode == org.apache.http.HttpStatus.SC_NO_CONTENT) {
+          written.add(i);
+        } else {
+          assertEquals(org.apache.http.HttpStatus.SC_PRECONDITION_FAILED, statusCode);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, written.size());
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("value" + written.get(0), response.asString());
+  }
+
+  @Test
+  public void testCopyDataObject() {
+    String objectName = "copiedData";
+    byte[] content = new byte[10000];
+    new Random(8).nextBytes(content);
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(content).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body(("{\"copy\":\"/" + objectName + "\",\"metadata\":{\"color\":\"red\"}}").getBytes())
+        .when().put("/" + objectName + "Copy").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName + "Copy")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertArrayEquals(content, response.asByteArray());
+    assertTrue(response.getContentType().startsWith("application/octet-stream"));
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when()
+        .get("/" + objectName + "Copy?metadata").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("red", response.jsonPath().getString("metadata.color"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"copy\":\"/missingData\"}".getBytes()).when().put("/" + objectName + "Missing")
+        .then().statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void testCompressedDataObject() {
+    String objectName = "compressedData";
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; csv.length() < 200000; i++) {
+      csv.append(i).append(",").append(20 + i % 7).append(".5,ok\n");
+    }
+    byte[] content = csv.toString().getBytes();
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and().body(new byte[10]).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    // the value is compressed at rest by its new capability class
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body(("{\"capabilitiesURI\":\"/cdmi_capabilities/dataobject/profile2\","
+            + "\"valuetransferencoding\":\"base64\",\"value\":\""
+            + Base64.encodeBase64String(content) + "\"}").getBytes())
+        .when().put("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertArrayEquals(content, response.asByteArray());
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").header("Range", "bytes=65500-65599")
+        .when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_PARTIAL_CONTENT).extract().response();
+
+    assertArrayEquals(Arrays.copyOfRange(content, 65500, 65600), response.asByteArray());
+
+    response = given().urlEncodingEnabled(false)
+        .header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when()
+        .get("/" + objectName + "?value:150000-150099;valuerange").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals("150000-150099", response.jsonPath().getString("valuerange"));
+    assertArrayEquals(Arrays.copyOfRange(content, 150000, 150100),
+        Base64.decodeBase64(response.jsonPath().getString("value")));
+  }
+
+  @Test
+  public void testDataObjectValueHash() {
+    String objectName = "hashedData";
+    String hash = "15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225";
+
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and()
+        .header("X-CDMI-Value-Hash", "e3069283").and().body("123456789".getBytes()).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/octet-stream").and()
+        .header("X-CDMI-Value-Hash", hash).and().body("123456789".getBytes()).when()
+        .put("/" + objectName).then().statusCode(org.apache.http.HttpStatus.SC_CREATED);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/octet-stream").when().get("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).header("X-CDMI-Value-Hash", hash);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Accept", "application/cdmi-object").when().get("/" + objectName + "?metadata")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    assertEquals(hash, response.jsonPath().getString("metadata.cdmi_value_hash"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"metadata\":{\"cdmi_value_hash\":\"e3069283\"},\"value\":\"987654321\"}"
+            .getBytes())
+        .when().put("/" + objectName).then()
+        .statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+  }
+
   @Test
   public void testGetDataObjectNotFound() {
     String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
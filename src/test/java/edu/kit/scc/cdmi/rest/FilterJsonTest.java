@@ -11,62 +11,69 @@ package edu.kit.scc.cdmi.rest;
 
 import static org.junit.Assert.assertTrue;
 
-import edu.kit.scc.CdmiRestController;
-import edu.kit.scc.CdmiServerApplication;
-
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.Rule;
 import org.junit.Test;
-import org.junit.runner.RunWith;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.codec.CdmiJsonWriter;
 import org.snia.cdmiserver.model.Capability;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.SpringApplicationConfiguration;
-import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
-
-@RunWith(SpringJUnit4ClassRunner.class)
-@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
-@ActiveProfiles("filesystem-test")
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.util.Projection;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The fields of queries as selected by the {@link CdmiJsonWriter} of the responses.
+ */
 public class FilterJsonTest {
 
   private static final Logger log = LoggerFactory.getLogger(FilterJsonTest.class);
 
-  @Autowired
-  private CdmiRestController controller;
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
 
   @Test
-  public void testQueryNoParamter() {
+  public void testQueryNoParamter() throws IOException {
     String query = "";
     Capability capability = new Capability("newProfile", "/cdmi_capabilities", "parentId");
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.length() == 0);
   }
 
   @Test
-  public void testQueryOneParameter() {
+  public void testQueryOneParameter() throws IOException {
     String query = "objectID";
     Capability capability = new Capability("newProfile", "/cdmi_capabilities", "parentId");
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("objectID"));
   }
 
   @Test
-  public void testQueryMultipleParameter() {
+  public void testQueryMultipleParameter() throws IOException {
     String query = "objectID;metadata;objectName";
     Capability capability = new Capability("newProfile", "/cdmi_capabilities", "parentId");
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("objectID"));
@@ -75,31 +82,31 @@ public class FilterJsonTest {
   }
 
   @Test
-  public void testQueryOneWrongParameter() {
+  public void testQueryOneWrongParameter() throws IOException {
     String query = "objectId";
     Capability capability = new Capability("newProfile", "/cdmi_capabilities", "parentId");
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.length() == 0);
   }
 
   @Test
-  public void testQueryMixedWrongParameter() {
+  public void testQueryMixedWrongParameter() throws IOException {
     String query = "objectID;invalid";
     Capability capability = new Capability("newProfile", "/cdmi_capabilities", "parentId");
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("objectID"));
   }
 
   @Test
-  public void testQueryChildren() {
+  public void testQueryChildren() throws IOException {
     String query = "children";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -109,14 +116,14 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("children"));
   }
 
   @Test
-  public void testQueryMixedChildren() {
+  public void testQueryMixedChildren() throws IOException {
     String query = "children;objectID";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -126,7 +133,7 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("objectID"));
@@ -134,7 +141,7 @@ public class FilterJsonTest {
   }
 
   @Test
-  public void testQueryChildrenRange() {
+  public void testQueryChildrenRange() throws IOException {
     String query = "children:0-1";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -144,7 +151,7 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("children"));
@@ -156,7 +163,7 @@ public class FilterJsonTest {
   }
 
   @Test
-  public void testQueryOneChildren() {
+  public void testQueryOneChildren() throws IOException {
     String query = "children:1";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -166,7 +173,7 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("children"));
@@ -177,7 +184,29 @@ public class FilterJsonTest {
   }
 
   @Test
-  public void testQueryMixedChildrenRange() {
+  public void testQueryNarrowedChildrenRange() throws IOException {
+    String query = "children:4-5";
+    JSONArray children = new JSONArray();
+    children.put("child5");
+    children.put("child6");
+
+    Container container = new Container("newContainer", "/", "parentId");
+    container.setChildren(children);
+    container.setChildrenrange("0-9");
+
+    log.debug("Test filter JSON with {}", container.toJson().toString());
+    JSONObject filteredJson = filter(container, query);
+    log.debug("Filtered JSON {}", filteredJson.toString());
+
+    assertTrue(filteredJson.getJSONArray("children").length() == 2);
+
+    JSONArray returnChildren = filteredJson.getJSONArray("children");
+    assertTrue(returnChildren.get(0).equals("child5"));
+    assertTrue(returnChildren.get(1).equals("child6"));
+  }
+
+  @Test
+  public void testQueryMixedChildrenRange() throws IOException {
     String query = "objectID;children:0-1";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -187,7 +216,7 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("children"));
@@ -200,7 +229,7 @@ public class FilterJsonTest {
   }
 
   @Test
-  public void testQueryChildrenOneOutOfRange() {
+  public void testQueryChildrenOneOutOfRange() throws IOException {
     String query = "objectID;children:3";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -210,7 +239,7 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     // assertTrue(!filteredJson.has("children"));
@@ -218,7 +247,7 @@ public class FilterJsonTest {
   }
 
   @Test
-  public void testQueryChildrenOutOfRange() {
+  public void testQueryChildrenOutOfRange() throws IOException {
     String query = "objectID;children:0-3";
     JSONArray children = new JSONArray();
     children.put("child1");
@@ -228,7 +257,7 @@ public class FilterJsonTest {
     capability.setChildren(children);
 
     log.debug("Test filter JSON with {}", capability.toJson().toString());
-    JSONObject filteredJson = controller.filterQueryFields(capability.toJson(), query);
+    JSONObject filteredJson = filter(capability, query);
     log.debug("Filtered JSON {}", filteredJson.toString());
 
     assertTrue(filteredJson.has("children"));
@@ -239,4 +268,59 @@ public class FilterJsonTest {
     assertTrue(returnChildren.get(0).equals("child1"));
     assertTrue(returnChildren.get(1).equals("child2"));
   }
+
+  @Test
+  public void testQueryValueRange() throws IOException {
+    String query = "objectID;value:2-4";
+
+    DataObject dataObject = new DataObject("newDataObject", "/", "parentId");
+    dataObject.setValue("0123456789");
+
+    log.debug("Test filter JSON with {}", dataObject.toJson().toString());
+    JSONObject filteredJson = filter(dataObject, query);
+    log.debug("Filtered JSON {}", filteredJson.toString());
+
+    assertTrue(filteredJson.has("objectID"));
+    assertTrue(filteredJson.getString("value").equals("234"));
+  }
+
+  @Test
+  public void testQueryNarrowedValueRange() throws IOException {
+    String query = "value:100-102;valuerange";
+
+    Path file = folder.newFile().toPath();
+    byte[] value = new byte[103];
+    System.arraycopy("abc".getBytes(StandardCharsets.UTF_8), 0, value, 100, 3);
+    Files.write(file, value);
+
+    DataObject dataObject = new DataObject("newDataObject", "/", "parentId");
+    StringWriter out = new StringWriter();
+    try (FileChannel content = FileChannel.open(file, StandardOpenOption.READ)) {
+      new CdmiJsonWriter(out, Projection.parse(query)).write(dataObject, content, 100, 102);
+    }
+    JSONObject filteredJson = new JSONObject(out.toString());
+    log.debug("Filtered JSON {}", filteredJson.toString());
+
+    assertTrue(filteredJson.getString("value").equals("abc"));
+    assertTrue(filteredJson.getString("valuerange").equals("100-102"));
+  }
+
+  @Test
+  public void testQueryValueOutOfRange() throws IOException {
+    String query = "value:20-30";
+
+    DataObject dataObject = new DataObject("newDataObject", "/", "parentId");
+    dataObject.setValue("0123456789");
+
+    JSONObject filteredJson = filter(dataObject, query);
+    log.debug("Filtered JSON {}", filteredJson.toString());
+
+    assertTrue(!filteredJson.has("value"));
+  }
+
+  private static JSONObject filter(CdmiObject cdmiObject, String query) throws IOException {
+    StringWriter out = new StringWriter();
+    new CdmiJsonWriter(out, Projection.parse(query)).write(cdmiObject);
+    return new JSONObject(out.toString());
+  }
 }
@@ -4,10 +4,17 @@ import edu.kit.scc.cdmi.filesystem.CapabilityFilesystemTest;
 import edu.kit.scc.cdmi.filesystem.CdmiObjectFilesystemTest;
 import edu.kit.scc.cdmi.filesystem.ContainerFilesystemTest;
 import edu.kit.scc.cdmi.filesystem.DataObjectFilesystemTest;
+import edu.kit.scc.cdmi.filesystem.FileSyncTest;
+import edu.kit.scc.cdmi.filesystem.ObjectIdFanOutTest;
+import edu.kit.scc.cdmi.filesystem.RecordRecoveryTest;
+import edu.kit.scc.cdmi.redis.AsyncRedisTest;
+import edu.kit.scc.cdmi.redis.CacheRedisTest;
 import edu.kit.scc.cdmi.redis.CapabilityRedisTest;
 import edu.kit.scc.cdmi.redis.CdmiObjectRedisTest;
+import edu.kit.scc.cdmi.redis.ClusterShardRouterTest;
 import edu.kit.scc.cdmi.redis.ContainerRedisTest;
 import edu.kit.scc.cdmi.redis.DataObjectRedisTest;
+import edu.kit.scc.cdmi.redis.ShardedRedisTest;
 import edu.kit.scc.cdmi.rest.AuthorizationTest;
 import edu.kit.scc.cdmi.rest.CapabilitiesTest;
 import edu.kit.scc.cdmi.rest.CdmiObjectTest;
@@ -16,7 +23,16 @@ import edu.kit.scc.cdmi.rest.DataObjectTest;
 import edu.kit.scc.cdmi.rest.DomainTest;
 import edu.kit.scc.cdmi.rest.FilterJsonTest;
 import edu.kit.scc.http.client.HttpClientTest;
+import edu.kit.scc.utils.Base64CodecTest;
+import edu.kit.scc.utils.BatchReaderTest;
+import edu.kit.scc.utils.BlockCompressionTest;
+import edu.kit.scc.utils.CdmiJsonWriterTest;
+import edu.kit.scc.utils.CdmiRequestBodyTest;
+import edu.kit.scc.utils.EntityTagsTest;
+import edu.kit.scc.utils.ProjectionTest;
+import edu.kit.scc.utils.RecordCodecTest;
 import edu.kit.scc.utils.UtilsTest;
+import edu.kit.scc.utils.ValueHashTest;
 
 import org.junit.AfterClass;
 import org.junit.runner.RunWith;
@@ -34,11 +50,15 @@ import java.util.Properties;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({CapabilityFilesystemTest.class, CdmiObjectFilesystemTest.class,
-    ContainerFilesystemTest.class, DataObjectFilesystemTest.class, AuthorizationTest.class,
+    ContainerFilesystemTest.class, DataObjectFilesystemTest.class, ObjectIdFanOutTest.class,
+    RecordRecoveryTest.class, FileSyncTest.class, AuthorizationTest.class,
     CapabilitiesTest.class, CdmiObjectTest.class, ContainerTest.class, DataObjectTest.class,
     DomainTest.class, FilterJsonTest.class, HttpClientTest.class, UtilsTest.class,
+    RecordCodecTest.class, CdmiRequestBodyTest.class, Base64CodecTest.class, ValueHashTest.class,
+    BlockCompressionTest.class, CdmiJsonWriterTest.class, ProjectionTest.class,
+    EntityTagsTest.class, BatchReaderTest.class, AsyncRedisTest.class, CacheRedisTest.class,
     CapabilityRedisTest.class, CdmiObjectRedisTest.class, ContainerRedisTest.class,
-    DataObjectRedisTest.class})
+    DataObjectRedisTest.class, ShardedRedisTest.class, ClusterShardRouterTest.class})
 public class TestSuite {
 
   @AfterClass
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.snia.cdmiserver.codec.Base64Codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+public class Base64CodecTest {
+
+  private static final int[] LENGTHS = {0, 1, 2, 3, 4, 5, 57, 8191, 8192, 8193, 100000};
+
+  private static byte[] random(int length) {
+    byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] decode(String encoded, int chunk) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = Base64Codec
+        .decode(new ByteArrayInputStream(encoded.getBytes(StandardCharsets.US_ASCII)))) {
+      byte[] buffer = new byte[chunk];
+      int count;
+      while ((count = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, count);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testEncodeToString() {
+    for (int length : LENGTHS) {
+      byte[] bytes = random(length);
+      assertEquals(Base64.getEncoder().encodeToString(bytes),
+          Base64Codec.encodeToString(bytes, 0, bytes.length));
+    }
+    assertEquals("aGVsbG8=", Base64Codec.encodeToString("(hello)".getBytes(), 1, 5));
+    assertEquals(8, Base64Codec.getEncodedLength(5));
+  }
+
+  @Test
+  public void testEncodeStream() throws IOException {
+    for (int length : LENGTHS) {
+      byte[] bytes = random(length);
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+      try (OutputStream out = Base64Codec.encode(encoded)) {
+        // chunks that split the blocks of 3 bytes
+        for (int offset = 0; offset < length; offset += 1000) {
+          out.write(bytes, offset, Math.min(1000, length - offset));
+        }
+      }
+      assertEquals(Base64.getEncoder().encodeToString(bytes),
+          new String(encoded.toByteArray(), StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Test
+  public void testDecodeStream() throws IOException {
+    for (int length : LENGTHS) {
+      byte[] bytes = random(length);
+      String encoded = Base64.getEncoder().encodeToString(bytes);
+      assertArrayEquals(bytes, decode(encoded, 8192));
+      assertArrayEquals(bytes, decode(encoded, 2));
+    }
+  }
+
+  @Test
+  public void testDecodeWhitespaceAndMissingPadding() throws IOException {
+    assertEquals("hello", new String(decode("aGVs\r\nbG8=", 10)));
+    assertEquals("hello", new String(decode("aGVsbG8", 10)));
+    assertEquals("hell", new String(decode(" aGVsbA==\n", 1)));
+    assertEquals(0, decode("", 10).length);
+  }
+
+  @Test
+  public void testChannels() throws IOException {
+    byte[] bytes = random(20000);
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try (WritableByteChannel out = Base64Codec.encode(Channels.newChannel(encoded))) {
+      out.write(ByteBuffer.wrap(bytes));
+    }
+
+    ByteBuffer decoded = ByteBuffer.allocate(bytes.length + 1);
+    try (ReadableByteChannel in = Base64Codec
+        .decode(Channels.newChannel(new ByteArrayInputStream(encoded.toByteArray())))) {
+      while (in.read(decoded) >= 0) {
+        continue;
+      }
+    }
+    assertEquals(bytes.length, decoded.position());
+    assertArrayEquals(bytes, Arrays.copyOf(decoded.array(), bytes.length));
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidCharacter() throws IOException {
+    decode("aGVs*G8=", 10);
+  }
+
+  @Test(expected = IOException.class)
+  public void testDataAfterPadding() throws IOException {
+    decode("aGU=bG8=", 10);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedBlock() throws IOException {
+    decode("aGVsb", 10);
+  }
+}
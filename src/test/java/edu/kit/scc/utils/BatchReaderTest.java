@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.snia.cdmiserver.codec.BatchReader;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class BatchReaderTest {
+
+  private BatchReader read(String body) {
+    return new BatchReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testNewlineDelimited() {
+    BatchReader reader = read("{\"op\":\"create\",\"path\":\"a\"}\n"
+        + "{\"op\":\"delete\",\"path\":\"b\",\"metadata\":{\"color\":\"red\"}}\n\n");
+
+    assertEquals("a", reader.next().getString("path"));
+    assertEquals("red", reader.next().getJSONObject("metadata").getString("color"));
+    assertNull(reader.next());
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testArray() {
+    BatchReader reader = read(" [ {\"path\":\"a\"},\n{\"path\":\"b\"} ] ");
+
+    assertEquals("a", reader.next().getString("path"));
+    assertEquals("b", reader.next().getString("path"));
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testEmpty() {
+    assertNull(read("").next());
+    assertNull(read("[]").next());
+  }
+
+  @Test(expected = JSONException.class)
+  public void testMissingComma() {
+    BatchReader reader = read("[{\"path\":\"a\"} {\"path\":\"b\"}]");
+    assertEquals("a", reader.next().getString("path"));
+    reader.next();
+  }
+
+  @Test(expected = JSONException.class)
+  public void testTruncatedArray() {
+    BatchReader reader = read("[{\"path\":\"a\"}");
+    assertEquals("a", reader.next().getString("path"));
+    reader.next();
+  }
+
+  @Test(expected = JSONException.class)
+  public void testNoObject() {
+    BatchReader reader = read("{\"path\":\"a\"}\n[1]");
+    assertEquals("a", reader.next().getString("path"));
+    reader.next();
+  }
+}
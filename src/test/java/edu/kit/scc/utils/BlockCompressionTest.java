@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.codec.BlockCompression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BlockCompressionTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final BlockCompression compression = BlockCompression.forName(BlockCompression.DEFLATE);
+
+  @Test
+  public void testForName() {
+    assertNull(BlockCompression.forName(null));
+    assertNull(BlockCompression.forName("none"));
+    assertEquals(BlockCompression.DEFLATE, BlockCompression.forName("Deflate").getName());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownCompression() {
+    BlockCompression.forName("lzma");
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    // compressible and random blocks, and a partial last block
+    byte[] value = new byte[3 * BlockCompression.BLOCK_SIZE + 1234];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = (byte) ("0123456789,".charAt(i % 11));
+    }
+    byte[] random = new byte[BlockCompression.BLOCK_SIZE];
+    new Random(1).nextBytes(random);
+    System.arraycopy(random, 0, value, BlockCompression.BLOCK_SIZE, random.length);
+    Path file = compress(value);
+    assertTrue(Files.size(file) < value.length - BlockCompression.BLOCK_SIZE);
+
+    try (FileChannel channel = BlockCompression.open(open(file))) {
+      assertEquals(value.length, channel.size());
+      ByteBuffer buffer = ByteBuffer.allocate(value.length);
+      while (channel.read(buffer) > 0) {
+        // reads to the end
+      }
+      assertArrayEquals(value, buffer.array());
+      assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertEquals(value.length, channel.transferTo(0, Long.MAX_VALUE, Channels.newChannel(out)));
+      assertArrayEquals(value, out.toByteArray());
+    }
+  }
+
+  @Test
+  public void testRanges() throws IOException {
+    byte[] value = new byte[5 * BlockCompression.BLOCK_SIZE / 2];
+    Random random = new Random(2);
+    for (int i = 0; i < value.length; i++) {
+      value[i] = (byte) random.nextInt(16);
+    }
+    Path file = compress(value);
+
+    try (FileChannel channel = BlockCompression.open(open(file))) {
+      // across block boundaries, backwards and into the last block
+      long[][] ranges = {{BlockCompression.BLOCK_SIZE - 10, 20}, {5, 100},
+          {2 * BlockCompression.BLOCK_SIZE + 7, 4096}, {value.length - 3, 3}};
+      for (long[] range : ranges) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) range[1]);
+        assertEquals(range[1], channel.read(buffer, range[0]));
+        assertArrayEquals(
+            Arrays.copyOfRange(value, (int) range[0], (int) (range[0] + range[1])),
+            buffer.array());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        channel.transferTo(range[0], range[1], Channels.newChannel(out));
+        assertArrayEquals(buffer.array(), out.toByteArray());
+      }
+      assertEquals(-1, channel.read(ByteBuffer.allocate(1), value.length));
+      assertEquals(0, channel.transferTo(value.length, 10, Channels.newChannel(
+          new ByteArrayOutputStream())));
+    }
+  }
+
+  @Test
+  public void testEmptyValue() throws IOException {
+    Path file = compress(new byte[0]);
+    try (FileChannel channel = open(file)) {
+      assertTrue(BlockCompression.isCompressed(channel));
+    }
+    try (FileChannel channel = BlockCompression.open(open(file))) {
+      assertEquals(0, channel.size());
+      assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+    }
+  }
+
+  @Test
+  public void testUncompressedFile() throws IOException {
+    Path file = folder.newFile().toPath();
+    Files.write(file, "plain value".getBytes());
+    try (FileChannel channel = open(file)) {
+      assertFalse(BlockCompression.isCompressed(channel));
+      assertSame(channel, BlockCompression.open(channel));
+    }
+
+    // a damaged trailer isn't taken for a compressed value
+    byte[] compressed = Files.readAllBytes(compress(new byte[1000]));
+    compressed[compressed.length - 10]++;
+    Files.write(file, compressed);
+    try (FileChannel channel = open(file)) {
+      assertFalse(BlockCompression.isCompressed(channel));
+    }
+  }
+
+  @Test(expected = NonWritableChannelException.class)
+  public void testReadOnly() throws IOException {
+    try (FileChannel channel = BlockCompression.open(open(compress(new byte[10])))) {
+      channel.write(ByteBuffer.allocate(1));
+    }
+  }
+
+  private Path compress(byte[] value) throws IOException {
+    Path file = folder.newFile().toPath();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      assertEquals(value.length,
+          compression.compress(Channels.newChannel(new ByteArrayInputStream(value)), channel));
+    }
+    return file;
+  }
+
+  private static FileChannel open(Path file) throws IOException {
+    return FileChannel.open(file, StandardOpenOption.READ);
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.codec.Base64Codec;
+import org.snia.cdmiserver.codec.CdmiJsonWriter;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.util.Projection;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class CdmiJsonWriterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testAllFields() throws IOException {
+    Container container = new Container("container", "/", "parentId");
+    container.setMetadata(new JSONObject().put("cdmi_size", 10).put("color", "blue"));
+    container.setExports(new JSONObject().put("nfs", new JSONObject()));
+    container.setChildren(new JSONArray(Arrays.asList("a", "b/")));
+    container.setChildrenrange("0-1");
+    DataObject dataObject = new DataObject("object", "/container", "parentId");
+    dataObject.setValue("value");
+    dataObject.setMimetype("text/plain");
+    Capability capability = new Capability("profile", "/cdmi_capabilities", "parentId");
+    capability.setCapabilities(new JSONObject().put("cdmi_compression", true));
+    Domain domain = new Domain("domain", "/cdmi_domains", "parentId");
+
+    for (CdmiObject cdmiObject : new CdmiObject[] {container, dataObject, capability, domain}) {
+      JSONObject json = new JSONObject(write(cdmiObject, null));
+      assertTrue(json.toString(), json.similar(cdmiObject.toJson()));
+    }
+  }
+
+  @Test
+  public void testQueryFields() throws IOException {
+    Container container = new Container("container", "/", "parentId");
+    container.setChildren(new JSONArray(Arrays.asList("a", "b", "c", "d")));
+    container.setChildrenrange("0-3");
+    JSONObject metadata = new JSONObject().put("cdmi_size", 4).put("cdmi_ctime", "now")
+        .put("color", "blue");
+    container.setMetadata(metadata);
+    DataObject dataObject = new DataObject("object", "/container", "parentId");
+    dataObject.setValue("0123456789");
+    String containerId = container.getObjectId();
+    String dataObjectId = dataObject.getObjectId();
+
+    Object[][] cases = {
+        {container, "", new JSONObject()},
+        {container, "objectId", new JSONObject()},
+        {container, "objectID;metadata;objectName", new JSONObject().put("objectID", containerId)
+            .put("metadata", metadata).put("objectName", container.getObjectName())},
+        {container, "children", new JSONObject().put("children", container.getChildren())},
+        {container, "children:1-2",
+            new JSONObject().put("children", new JSONArray(Arrays.asList("b", "c")))},
+        {container, "objectID;children:2", new JSONObject().put("objectID", containerId)
+            .put("children", new JSONArray(Arrays.asList("c")))},
+        {container, "children:2-9",
+            new JSONObject().put("children", new JSONArray(Arrays.asList("c", "d")))},
+        {container, "children:7", new JSONObject().put("children", new JSONArray())},
+        {container, "childrenrange;children:0-1", new JSONObject().put("childrenrange", "0-3")
+            .put("children", new JSONArray(Arrays.asList("a", "b")))},
+        {container, "metadata:cdmi_", new JSONObject().put("metadata",
+            new JSONObject().put("cdmi_size", 4).put("cdmi_ctime", "now"))},
+        {container, "objectID;metadata:cdmi_;metadata:col",
+            new JSONObject().put("objectID", containerId).put("metadata", metadata)},
+        {container, "metadata:none", new JSONObject().put("metadata", new JSONObject())},
+        {dataObject, "value", new JSONObject().put("value", "0123456789")},
+        {dataObject, "objectID;value:2-4",
+            new JSONObject().put("objectID", dataObjectId).put("value", "234")},
+        {dataObject, "value:20-30", new JSONObject()},
+        {dataObject, "children:0-1", new JSONObject()}};
+    for (Object[] testCase : cases) {
+      String query = (String) testCase[1];
+      JSONObject json = new JSONObject(write((CdmiObject) testCase[0], query));
+      assertTrue(query + ": " + json, json.similar(testCase[2]));
+    }
+  }
+
+  @Test
+  public void testNarrowedChildren() throws IOException {
+    Container container = new Container("container", "/", "parentId");
+    container.setChildren(new JSONArray(Arrays.asList("child5", "child6")));
+    container.setChildrenrange("0-9");
+
+    JSONObject json = new JSONObject(write(container, "children:4-5"));
+    assertEquals(1, json.length());
+    assertEquals(Arrays.asList("child5", "child6"), json.getJSONArray("children").toList());
+  }
+
+  @Test
+  public void testMetadataPrefix() throws IOException {
+    Container container = new Container("container", "/", "parentId");
+    container.setMetadata(new JSONObject().put("cdmi_size", 4).put("cdmi_ctime", "now")
+        .put("color", "blue"));
+
+    JSONObject json = new JSONObject(write(container, "objectID;metadata:cdmi_"));
+    assertEquals(2, json.length());
+    assertEquals(2, json.getJSONObject("metadata").length());
+    assertEquals(4, json.getJSONObject("metadata").getInt("cdmi_size"));
+    assertEquals("now", json.getJSONObject("metadata").getString("cdmi_ctime"));
+
+    json = new JSONObject(write(container, "metadata:none"));
+    assertEquals(0, json.getJSONObject("metadata").length());
+  }
+
+  @Test
+  public void testEscapes() throws IOException {
+    String name = "quote\" backslash\\ </script> \u0001\t\n\u2028 \u00e4\ud83d\ude00";
+    DataObject dataObject = new DataObject(name, "/", "parentId");
+    dataObject.setMetadata(new JSONObject().put(name, name));
+
+    String written = write(dataObject, null);
+    assertFalse(written.contains("</"));
+    assertFalse(written.contains("\u2028"));
+    JSONObject json = new JSONObject(written);
+    assertEquals(name, json.getString("objectName"));
+    assertEquals(name, json.getJSONObject("metadata").getString(name));
+  }
+
+  @Test
+  public void testValueRange() throws IOException {
+    // multi-byte characters across the chunks the value is read in
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < 100000) {
+      builder.append("\u00e4\ud83d\ude00\"x\n");
+    }
+    byte[] value = builder.toString().getBytes(StandardCharsets.UTF_8);
+    Path file = folder.newFile().toPath();
+    Files.write(file, value);
+    DataObject dataObject = new DataObject("object", "/", "parentId");
+
+    try (FileChannel content = FileChannel.open(file, StandardOpenOption.READ)) {
+      String query = "value:0-" + (value.length - 1) + ";valuerange";
+      JSONObject json = new JSONObject(write(dataObject, query, content, 0, value.length - 1));
+      assertEquals(builder.toString(), json.getString("value"));
+      assertEquals("0-" + (value.length - 1), json.getString("valuerange"));
+
+      // beyond the end of the content, only the bytes read are written
+      json = new JSONObject(write(dataObject, "value:2-" + value.length + ";valuerange", content,
+          value.length - 2, value.length + 10));
+      assertEquals(new String(value, value.length - 2, 2, StandardCharsets.UTF_8),
+          json.getString("value"));
+      assertEquals((value.length - 2) + "-" + (value.length - 1), json.getString("valuerange"));
+      assertEquals(2, json.length());
+
+      dataObject.setValuetransferencoding("base64");
+      json = new JSONObject(write(dataObject, "value:7-70006", content, 7, 70006));
+      assertEquals(Base64Codec.encodeToString(value, 7, 70000), json.getString("value"));
+      assertFalse(json.has("valuerange"));
+    }
+  }
+
+  private static String write(CdmiObject cdmiObject, String query) throws IOException {
+    StringWriter out = new StringWriter();
+    new CdmiJsonWriter(out, Projection.parse(query)).write(cdmiObject);
+    return out.toString();
+  }
+
+  private static String write(DataObject dataObject, String query, FileChannel content,
+      long rangeStart, long rangeStop) throws IOException {
+    StringWriter out = new StringWriter();
+    new CdmiJsonWriter(out, Projection.parse(query)).write(dataObject, content, rangeStart,
+        rangeStop);
+    return out.toString();
+  }
+}
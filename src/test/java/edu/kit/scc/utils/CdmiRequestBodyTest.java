@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.codec.CdmiRequestBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+public class CdmiRequestBodyTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private CdmiRequestBody parse(String json) throws IOException {
+    return CdmiRequestBody.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+        folder.getRoot().toPath());
+  }
+
+  private static byte[] readValue(CdmiRequestBody body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = body.openValue()) {
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        out.write(buffer, 0, count);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testMembers() throws IOException {
+    try (CdmiRequestBody body = parse("{\"metadata\": {\"color\": \"red\", \"list\": [1, \"}\"]},"
+        + " \"value\": \"Gr\\u00fc\\u00dfe \\\"\\n\", \"capabilitiesURI\": \"/cdmi_capabilities\","
+        + " \"size\" : 42 }")) {
+      assertEquals("red", body.getJson().getJSONObject("metadata").getString("color"));
+      assertEquals("}", body.getJson().getJSONObject("metadata").getJSONArray("list").get(1));
+      assertEquals("/cdmi_capabilities", body.getJson().getString("capabilitiesURI"));
+      assertEquals(42, body.getJson().getInt("size"));
+      assertFalse(body.getJson().has("value"));
+
+      assertTrue(body.hasValue());
+      assertEquals("Grüße \"\n", new String(readValue(body), StandardCharsets.UTF_8));
+      assertEquals(10, body.getValueLength());
+    }
+  }
+
+  @Test
+  public void testWithoutValue() throws IOException {
+    try (CdmiRequestBody body = parse(" {} ")) {
+      assertFalse(body.hasValue());
+      assertEquals(0, body.getJson().length());
+      assertEquals(0, readValue(body).length);
+    }
+  }
+
+  @Test
+  public void testSpoolLargeValue() throws IOException {
+    byte[] content = new byte[CdmiRequestBody.MEMORY_THRESHOLD * 3 + 1];
+    new Random(1).nextBytes(content);
+    String value = Base64.getEncoder().encodeToString(content);
+
+    CdmiRequestBody body = parse("{\"value\":\"" + value + "\",\"valuetransferencoding\":\"base64\"}");
+    try {
+      assertEquals(1, folder.getRoot().list().length);
+      assertEquals("base64", body.getJson().getString("valuetransferencoding"));
+      assertEquals(value.length(), body.getValueLength());
+      assertEquals(content.length, body.getDecodedValueLength("base64"));
+      assertArrayEquals(content, Base64.getDecoder().decode(readValue(body)));
+    } finally {
+      body.close();
+    }
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testDecodedValueLength() throws IOException {
+    try (CdmiRequestBody body = parse("{\"value\":\"aGVsbG8=\"}")) {
+      assertEquals(5, body.getDecodedValueLength("base64"));
+      assertEquals(8, body.getDecodedValueLength("utf-8"));
+    }
+    try (CdmiRequestBody body = parse("{\"value\":\"aGVsbG8\"}")) {
+      assertEquals(-1, body.getDecodedValueLength("base64"));
+    }
+  }
+
+  @Test(expected = JSONException.class)
+  public void testUnterminatedValue() throws IOException {
+    parse("{\"value\":\"abc");
+  }
+
+  @Test(expected = JSONException.class)
+  public void testMissingComma() throws IOException {
+    parse("{\"value\":\"abc\" \"metadata\":{}}");
+  }
+
+  @Test(expected = JSONException.class)
+  public void testNoObject() throws IOException {
+    parse("[\"value\"]");
+  }
+}
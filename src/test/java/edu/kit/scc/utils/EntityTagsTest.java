@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.util.EntityTags;
+import org.snia.cdmiserver.util.Projection;
+
+import java.util.Arrays;
+
+public class EntityTagsTest {
+
+  @Test
+  public void testEntityTag() {
+    Projection projection = Projection.parse("objectID;children");
+    String entityTag = EntityTags.getEntityTag(newContainer("1"), projection);
+    assertTrue(entityTag, entityTag.matches("\"1-[0-9a-f]{16}\""));
+    assertEquals(entityTag, EntityTags.getEntityTag(newContainer("1"), projection));
+
+    assertNotEquals(entityTag, EntityTags.getEntityTag(newContainer("2"), projection));
+    assertNotEquals(entityTag, EntityTags.getEntityTag(newContainer("1"), Projection.ALL));
+
+    Container container = newContainer("1");
+    container.getChildren().put("c");
+    assertNotEquals(entityTag, EntityTags.getEntityTag(container, projection));
+
+    // merged from the storage back-end, not covered by the version
+    container = newContainer("1");
+    container.getMetadata().put("cdmi_capabilities_target", "/cdmi_capabilities/container/tape");
+    assertNotEquals(entityTag, EntityTags.getEntityTag(container, projection));
+  }
+
+  @Test
+  public void testMetadataOrder() {
+    DataObject dataObject = new DataObject("object", "/", "parentId");
+    dataObject.setVersion("1");
+    JSONObject metadata = new JSONObject();
+    for (int i = 0; i < 100; i++) {
+      metadata.put("name" + i, i);
+    }
+    dataObject.setMetadata(metadata);
+    String entityTag = EntityTags.getEntityTag(dataObject, Projection.ALL);
+
+    metadata = new JSONObject();
+    for (int i = 99; i >= 0; i--) {
+      metadata.put("name" + i, i);
+    }
+    dataObject.setMetadata(metadata);
+    assertEquals(entityTag, EntityTags.getEntityTag(dataObject, Projection.ALL));
+  }
+
+  @Test
+  public void testMatches() {
+    String version = "0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33";
+    Container container = newContainer(version);
+    String entityTag = EntityTags.getEntityTag(container, Projection.parse("objectID"));
+    assertEquals(version, EntityTags.getVersion(entityTag));
+
+    // any representation of the version matches, whatever fields it selected
+    assertTrue(EntityTags.matches(entityTag, version));
+    assertTrue(EntityTags.matches(EntityTags.getEntityTag(container, Projection.ALL), version));
+    assertTrue(EntityTags.matches("\"other-0\", " + entityTag, version));
+    assertTrue(EntityTags.matches("*", version));
+
+    assertFalse(EntityTags.matches(entityTag, "62cdb7020ff920e5aa642c3d4066950dd1f01f4d"));
+    assertFalse(EntityTags.matches("W/" + entityTag, version));
+    assertFalse(EntityTags.matches("*", null));
+    assertNull(EntityTags.getVersion("\"noversion\""));
+  }
+
+  @Test
+  public void testNoVersion() {
+    assertNull(EntityTags.getEntityTag(new Container("container", "/", "parentId"),
+        Projection.ALL));
+  }
+
+  private static Container newContainer(String version) {
+    Container container = new Container("container", "/", "parentId");
+    container.setVersion(version);
+    container.setMetadata(new JSONObject().put("cdmi_size", 4096));
+    container.setChildren(new JSONArray(Arrays.asList("a", "b")));
+    container.setChildrenrange("0-1");
+    return container;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.snia.cdmiserver.util.Projection;
+
+public class ProjectionTest {
+
+  @Test
+  public void testAll() {
+    assertSame(Projection.ALL, Projection.parse(null));
+    assertTrue(Projection.ALL.includes("objectID"));
+    assertTrue(Projection.ALL.includesChildren());
+    assertTrue(Projection.ALL.includesStorageBackendStatus());
+    assertNull(Projection.ALL.getChildrenRange());
+    assertNull(Projection.ALL.getValueRange());
+
+    JSONObject metadata = new JSONObject().put("color", "blue");
+    assertSame(metadata, Projection.ALL.filterMetadata(metadata));
+  }
+
+  @Test
+  public void testObjectId() {
+    Projection projection = Projection.parse("objectID");
+    assertTrue(projection.includes("objectID"));
+    assertFalse(projection.includes("objectName"));
+    assertFalse(projection.includesChildren());
+    assertFalse(projection.includesMetadata());
+    assertFalse(projection.includesStorageBackendStatus());
+    assertNull(projection.filterMetadata(new JSONObject().put("color", "blue")));
+  }
+
+  @Test
+  public void testRanges() {
+    Projection projection = Projection.parse("objectID;children:0-99;value:10-19");
+    assertFalse(projection.includes("children"));
+    assertTrue(projection.includesChildren());
+    assertTrue(projection.includesStorageBackendStatus());
+    assertArrayEquals(new int[] {0, 99}, projection.getChildrenRange());
+    assertArrayEquals(new long[] {10, 19}, projection.getValueRange());
+
+    // the ranges can't be changed through the arrays returned
+    projection.getValueRange()[1] = 11;
+    assertArrayEquals(new long[] {10, 19}, projection.getValueRange());
+
+    assertArrayEquals(new int[] {7, 7}, Projection.parse("children:7").getChildrenRange());
+    assertNull(Projection.parse("children:x-y").getChildrenRange());
+    assertNull(Projection.parse("value:9-1").getValueRange());
+  }
+
+  @Test
+  public void testMetadataPrefixes() {
+    Projection projection = Projection.parse("objectID;metadata:cdmi_;metadata:col");
+    assertFalse(projection.includes("metadata"));
+    assertTrue(projection.includesMetadata());
+    assertTrue(projection.includesStorageBackendStatus());
+    assertTrue(projection.includesMetadata("cdmi_size"));
+    assertTrue(projection.includesMetadata("color"));
+    assertFalse(projection.includesMetadata("size"));
+
+    JSONObject filtered = projection.filterMetadata(
+        new JSONObject().put("cdmi_size", 4).put("color", "blue").put("size", 4));
+    assertEquals(2, filtered.length());
+    assertEquals(4, filtered.getInt("cdmi_size"));
+    assertEquals("blue", filtered.getString("color"));
+
+    assertTrue(Projection.parse("metadata:").includesMetadata("anything"));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.codec.BinaryRecordCodec;
+import org.snia.cdmiserver.codec.RecordCodec;
+import org.snia.cdmiserver.codec.RecordCodecs;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigInteger;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("filesystem-test")
+public class RecordCodecTest {
+
+  RecordCodec binaryCodec = RecordCodecs.forFormat(RecordCodecs.BINARY);
+
+  RecordCodec jsonCodec = RecordCodecs.forFormat(RecordCodecs.JSON);
+
+  private static JSONObject metadata() {
+    JSONObject metadata = new JSONObject();
+    metadata.put("cdmi_size", 1234);
+    metadata.put("cdmi_ctime", "2016-08-22T11:27:52.362Z");
+    metadata.put("counter", Long.MAX_VALUE);
+    metadata.put("negative", -42);
+    metadata.put("ratio", 0.25);
+    metadata.put("huge", new BigInteger("123456789012345678901234567890"));
+    metadata.put("flag", true);
+    metadata.put("nothing", JSONObject.NULL);
+    metadata.put("umlaut", "Grüße ☃");
+    metadata.put("nested", new JSONObject().put("list", new JSONArray().put(1).put("two")));
+    return metadata;
+  }
+
+  private void assertRoundTrip(CdmiObject cdmiObject) {
+    byte[] record = binaryCodec.encode(cdmiObject);
+    assertEquals(BinaryRecordCodec.MAGIC, record[0]);
+
+    CdmiObject decoded = binaryCodec.decode(record);
+    assertEquals(cdmiObject.getClass(), decoded.getClass());
+    assertTrue(cdmiObject.toJson().similar(decoded.toJson()));
+  }
+
+  @Test
+  public void testContainerRoundTrip() {
+    Container container = new Container("container", "/", "parentId");
+    container.setMetadata(metadata());
+    container.setChildren(new JSONArray().put("child1").put("child2"));
+    container.setChildrenrange("0-1");
+    container.setCompletionStatus("Complete");
+
+    assertRoundTrip(container);
+  }
+
+  @Test
+  public void testDataObjectRoundTrip() {
+    DataObject dataObject = new DataObject("dataobject", "/container", "parentId");
+    dataObject.setMetadata(metadata());
+    dataObject.setCompletionStatus("Complete");
+
+    assertRoundTrip(dataObject);
+  }
+
+  @Test
+  public void testCapabilityRoundTrip() {
+    Capability capability = new Capability("container", "/cdmi_capabilities", "parentId");
+    capability.setMetadata(metadata());
+    capability.setCapabilities(new JSONObject().put("cdmi_latency", "true"));
+
+    assertRoundTrip(capability);
+  }
+
+  @Test
+  public void testBinaryRecordIsSmaller() {
+    Container container = new Container("container", "/", "parentId");
+    container.setMetadata(metadata());
+
+    assertTrue(binaryCodec.encode(container).length < jsonCodec.encode(container).length);
+  }
+
+  @Test
+  public void testDecodeJsonRecord() {
+    DataObject dataObject = new DataObject("dataobject", "/container", "parentId");
+    byte[] record = jsonCodec.encode(dataObject);
+
+    CdmiObject decoded = binaryCodec.decode(record);
+    assertTrue(decoded instanceof DataObject);
+    assertEquals(dataObject.getObjectId(), decoded.getObjectId());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeUnknownVersion() {
+    byte[] record = binaryCodec.encode(new Container("container", "/", "parentId"));
+    record[1] = 99;
+
+    binaryCodec.decode(record);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeTruncatedRecord() {
+    byte[] record = binaryCodec.encode(new Container("container", "/", "parentId"));
+
+    binaryCodec.decode(java.util.Arrays.copyOf(record, record.length / 2));
+  }
+}
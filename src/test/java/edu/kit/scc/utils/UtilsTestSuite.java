@@ -24,7 +24,9 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Properties;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({UtilsTest.class})
+@Suite.SuiteClasses({UtilsTest.class, RecordCodecTest.class, CdmiRequestBodyTest.class,
+    Base64CodecTest.class, ValueHashTest.class, BlockCompressionTest.class,
+    CdmiJsonWriterTest.class, ProjectionTest.class, EntityTagsTest.class, BatchReaderTest.class})
 public class UtilsTestSuite {
 
   @AfterClass
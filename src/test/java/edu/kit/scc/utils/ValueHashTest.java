@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.codec.ValueHash;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class ValueHashTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testKnownHashes() {
+    byte[] check = "123456789".getBytes();
+    assertEquals("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225",
+        ValueHash.forAlgorithm(ValueHash.SHA256).hash(check));
+    assertEquals("25f9e794323b453885f5181f1b624d0b",
+        ValueHash.forAlgorithm(ValueHash.MD5).hash(check));
+    assertEquals("e3069283", ValueHash.forAlgorithm(ValueHash.CRC32C).hash(check));
+    assertEquals("00000000", ValueHash.forAlgorithm("crc32c").hash(new byte[0]));
+  }
+
+  @Test
+  public void testStreamedHash() throws IOException {
+    byte[] value = new byte[100003];
+    new Random(1).nextBytes(value);
+    Path file = folder.newFile().toPath();
+    Files.write(file, value);
+
+    for (String algorithm : new String[] {ValueHash.SHA256, ValueHash.MD5, ValueHash.CRC32C}) {
+      ValueHash valueHash = ValueHash.forAlgorithm(algorithm);
+      ValueHash.HashingChannel channel =
+          valueHash.wrap(Channels.newChannel(new ByteArrayInputStream(value)));
+      ByteBuffer buffer = ByteBuffer.allocate(4093);
+      while (channel.read(buffer) >= 0) {
+        buffer.clear();
+      }
+      assertEquals(valueHash.hash(value), channel.getValue());
+
+      try (FileChannel content = FileChannel.open(file, StandardOpenOption.READ)) {
+        assertEquals(valueHash.hash(value), valueHash.hash(content));
+      }
+    }
+  }
+
+  @Test
+  public void testMetadata() {
+    JSONObject metadata = new JSONObject("{\"color\":\"red\"}");
+    DataObject dataObject = DataObject.fromJson(new JSONObject().put("metadata", metadata));
+
+    ValueHash.set(dataObject, "e3069283");
+    assertEquals("e3069283", ValueHash.get(dataObject));
+    assertEquals("red", dataObject.getMetadata().getString("color"));
+    // the request's metadata stays as it is
+    assertFalse(metadata.has(ValueHash.METADATA_NAME));
+
+    ValueHash.set(dataObject, null);
+    assertNull(ValueHash.get(dataObject));
+  }
+
+  @Test
+  public void testMatches() {
+    assertTrue(ValueHash.matches(" E3069283 ", "e3069283"));
+    assertFalse(ValueHash.matches("e3069284", "e3069283"));
+    assertFalse(ValueHash.matches("e3069283", null));
+  }
+
+  @Test
+  public void testAlgorithms() {
+    assertNull(ValueHash.forAlgorithm(ValueHash.NONE));
+    assertEquals(ValueHash.SHA256, ValueHash.forAlgorithm("sha-256").getAlgorithm());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownAlgorithm() {
+    ValueHash.forAlgorithm("SHA-1024");
+  }
+}